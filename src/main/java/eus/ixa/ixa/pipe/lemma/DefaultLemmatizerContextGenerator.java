@@ -17,10 +17,16 @@ package eus.ixa.ixa.pipe.lemma;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+
+import eus.ixa.ixa.pipe.pos.FeatureHasher;
+import eus.ixa.ixa.pipe.pos.TokenVocabulary;
+import eus.ixa.ixa.pipe.pos.WordFeatureCache;
 
 /**
- * Simple feature generator for learning statistical lemmatizers.
+ * Simple feature generator for learning statistical lemmatizers. The features
+ * depending only on the word are looked up in a {@link WordFeatureCache}, if
+ * any, and computed once per word type. If a {@link FeatureHasher} is given
+ * every feature is replaced by its bucket.
  * @author ragerri
  * @version 2016-02-15
  */
@@ -29,10 +35,37 @@ public class DefaultLemmatizerContextGenerator implements LemmatizerContextGener
   private static final int PREFIX_LENGTH = 5;
   private static final int SUFFIX_LENGTH = 7;
 
-  private static Pattern hasCap = Pattern.compile("[A-Z]");
-  private static Pattern hasNum = Pattern.compile("[0-9]");
+  /**
+   * The cache of the word features or null.
+   */
+  private final WordFeatureCache wordFeatureCache;
+  /**
+   * The feature hasher or null.
+   */
+  private final FeatureHasher featureHasher;
 
   public DefaultLemmatizerContextGenerator() {
+    this(null);
+  }
+
+  /**
+   * Construct a context generator sharing the features of every word type.
+   * @param aWordFeatureCache the word feature cache or null
+   */
+  public DefaultLemmatizerContextGenerator(WordFeatureCache aWordFeatureCache) {
+    this(aWordFeatureCache, null);
+  }
+
+  /**
+   * Construct a context generator sharing the features of every word type
+   * and hashing the features.
+   * @param aWordFeatureCache the word feature cache or null
+   * @param aFeatureHasher the feature hasher or null
+   */
+  public DefaultLemmatizerContextGenerator(WordFeatureCache aWordFeatureCache,
+      FeatureHasher aFeatureHasher) {
+    this.wordFeatureCache = aWordFeatureCache;
+    this.featureHasher = aFeatureHasher;
   }
 
   protected static String[] getPrefixes(String lex) {
@@ -56,32 +89,54 @@ public class DefaultLemmatizerContextGenerator implements LemmatizerContextGener
   }
 
   public String[] getContext(int index, String[] toks, String[] tags, String[] preds) {
-    // Word
-    String w0;
+    // Word features, the word itself first
+    String[] wordFeatures = getWordFeatures(toks[index]);
+    String w0 = wordFeatures[0];
     // Tag
     String t0;
     // Previous prediction
     String p_1;
 
-    String lex = toks[index].toString();
     if (index < 1) {
       p_1 = "p_1=bos";
     }
     else {
       p_1 = "p_1=" + preds[index - 1];
     }
-
-    w0 = "w0=" + toks[index];
     t0 = "t0=" + tags[index];
 
+    String[] features = new String[wordFeatures.length + 4];
+    features[0] = w0;
+    if (featureHasher == null) {
+      features[1] = t0;
+      features[2] = p_1;
+      features[3] = p_1 + t0;
+      features[4] = p_1 + w0;
+    } else {
+      // the cached w0 is hashed, the conjunction uses the word itself
+      features[1] = featureHasher.hash(t0);
+      features[2] = featureHasher.hash(p_1);
+      features[3] = featureHasher.hash(p_1 + t0);
+      features[4] = featureHasher.hash(p_1 + "w0=" + toks[index]);
+    }
+    System.arraycopy(wordFeatures, 1, features, 5, wordFeatures.length - 1);
+    return features;
+  }
+
+  /**
+   * Get the features of a word which do not depend on its context.
+   * @param lex the word
+   * @return the word feature first and then the suffixes, prefixes and shape
+   */
+  private String[] getWordFeatures(String lex) {
+    if (wordFeatureCache != null) {
+      String[] wordFeatures = wordFeatureCache.get(lex);
+      if (wordFeatures != null) {
+        return wordFeatures;
+      }
+    }
     List<String> features = new ArrayList<String>();
-    
-    features.add(w0);
-    features.add(t0);
-    features.add(p_1);
-    features.add(p_1 + t0);
-    features.add(p_1 + w0);
-    
+    features.add("w0=" + lex);
     // do some basic suffix analysis
     String[] suffs = getSuffixes(lex);
     for (int i = 0; i < suffs.length; i++) {
@@ -93,18 +148,25 @@ public class DefaultLemmatizerContextGenerator implements LemmatizerContextGener
       features.add("pre=" + prefs[i]);
     }
     // see if the word has any special characters
-    if (lex.indexOf('-') != -1) {
+    int shape = TokenVocabulary.getShape(lex);
+    if ((shape & TokenVocabulary.HAS_HYPHEN) != 0) {
       features.add("h");
     }
 
-    if (hasCap.matcher(lex).find()) {
+    if ((shape & TokenVocabulary.HAS_CAP) != 0) {
       features.add("c");
     }
 
-    if (hasNum.matcher(lex).find()) {
+    if ((shape & TokenVocabulary.HAS_DIGIT) != 0) {
       features.add("d");
     }
-    
-    return features.toArray(new String[features.size()]);
+    String[] wordFeatures = features.toArray(new String[features.size()]);
+    if (featureHasher != null) {
+      wordFeatures = featureHasher.hash(wordFeatures);
+    }
+    if (wordFeatureCache != null) {
+      wordFeatureCache.put(lex, wordFeatures);
+    }
+    return wordFeatures;
   }
 }
@@ -15,13 +15,139 @@
  */
 package eus.ixa.ixa.pipe.lemma;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import eus.ixa.ixa.pipe.pos.StringUtils;
+
 import opennlp.tools.util.SequenceValidator;
 
+/**
+ * Validates the lemma classes proposed by the decoder. A lemma class is valid
+ * if it can be applied to the current word and, when a {@link LemmaClassIndex}
+ * and the postags of the sentence are available, if it has been observed in
+ * the training data with the same word suffix and postag.
+ */
 public class DefaultLemmatizerSequenceValidator implements SequenceValidator<String>{
 
-  //TODO complete this
+  /**
+   * Marks the tokens for which the index does not restrict the lemma classes.
+   */
+  private static final Set<String> UNRESTRICTED = Collections.emptySet();
+  /**
+   * The lemma class index, or null if not available.
+   */
+  private final LemmaClassIndex classIndex;
+  /**
+   * The postags of the sentence being lemmatized.
+   */
+  private final String[] tags;
+  /**
+   * The candidate lemma classes of each token, looked up on demand.
+   */
+  private final List<Set<String>> candidates;
+  /**
+   * The lowercased tokens of the sentence, or null if not known.
+   */
+  private final String[] lowerCaseTokens;
+
+  /**
+   * Construct a validator that only checks whether lemma classes are
+   * applicable to the words.
+   */
+  public DefaultLemmatizerSequenceValidator() {
+    this(null, null);
+  }
+
+  /**
+   * Construct a validator restricting the lemma classes to the ones in the
+   * index for the given postags.
+   *
+   * @param aClassIndex
+   *          the lemma class index
+   * @param aTags
+   *          the postags of the sentence to be validated
+   */
+  public DefaultLemmatizerSequenceValidator(final LemmaClassIndex aClassIndex,
+      final String[] aTags) {
+    this(aClassIndex, aTags, null);
+  }
+
+  /**
+   * Construct a validator for a sentence whose lowercased tokens are known,
+   * restricting the lemma classes to the ones in the index, if any, for the
+   * given postags.
+   *
+   * @param aClassIndex
+   *          the lemma class index or null
+   * @param aTags
+   *          the postags of the sentence to be validated
+   * @param aLowerCaseTokens
+   *          the lowercased tokens of the sentence or null
+   */
+  public DefaultLemmatizerSequenceValidator(final LemmaClassIndex aClassIndex,
+      final String[] aTags, final String[] aLowerCaseTokens) {
+    this.classIndex = aClassIndex;
+    this.tags = aTags;
+    this.candidates = aTags == null ? null : new ArrayList<Set<String>>(
+        Collections.<Set<String>> nCopies(aTags.length, null));
+    this.lowerCaseTokens = aLowerCaseTokens;
+  }
+
   public boolean validSequence(int i, String[] sequence, String[] s, String outcome) {
-    return true;
+    // identity is always allowed so that the beam can always advance
+    if (outcome.equals("O")) {
+      return true;
+    }
+    final Set<String> lemmaClasses = getCandidates(i, sequence[i]);
+    if (lemmaClasses != null && !lemmaClasses.contains(outcome)) {
+      return false;
+    }
+    if (outcome.equals("1")) {
+      return true;
+    }
+    return StringUtils.isApplicableLowerCaseEditScript(
+        getLowerCase(i, sequence[i]), outcome);
+  }
+
+  /**
+   * Get the lowercased form of a token.
+   *
+   * @param i
+   *          the index of the token
+   * @param word
+   *          the token
+   * @return the lowercased token
+   */
+  private String getLowerCase(final int i, final String word) {
+    return this.lowerCaseTokens == null ? word.toLowerCase()
+        : this.lowerCaseTokens[i];
+  }
+
+  /**
+   * Get and cache the candidate lemma classes for a token. Besides them, only
+   * the identity lemma class "O" is valid for the token.
+   *
+   * @param i
+   *          the index of the token
+   * @param word
+   *          the token
+   * @return the candidate lemma classes or null if unrestricted
+   */
+  final Set<String> getCandidates(final int i, final String word) {
+    if (this.classIndex == null || this.tags == null) {
+      return null;
+    }
+    if (this.candidates.get(i) == null) {
+      final Set<String> lemmaClasses = this.classIndex.getLowerCaseCandidates(
+          getLowerCase(i, word), this.tags[i]);
+      this.candidates.set(i, lemmaClasses == null ? UNRESTRICTED
+          : lemmaClasses);
+    }
+    return this.candidates.get(i) == UNRESTRICTED ? null : this.candidates
+        .get(i);
   }
 
 }
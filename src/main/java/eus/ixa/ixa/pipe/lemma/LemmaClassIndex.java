@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import opennlp.tools.util.ObjectStream;
+
+/**
+ * Index of the lemma classes observed in the training data for every (word
+ * suffix, postag) pair. It is used to restrict the lemma classes considered by
+ * the decoder to those that have been seen with words ending like the current
+ * one and carrying the same postag.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class LemmaClassIndex {
+
+  /**
+   * Separator between the postag and the suffix in the index keys.
+   */
+  private static final char KEY_SEPARATOR = '\t';
+  /**
+   * The maximum suffix length indexed.
+   */
+  private final int suffixLength;
+  /**
+   * The (postag, suffix) keys and their observed lemma classes.
+   */
+  private final Map<String, Set<String>> classIndex;
+
+  /**
+   * Construct an empty index.
+   *
+   * @param aSuffixLength
+   *          the maximum suffix length to index
+   */
+  public LemmaClassIndex(final int aSuffixLength) {
+    this(aSuffixLength, new HashMap<String, Set<String>>());
+  }
+
+  /**
+   * Construct an index from an existing map; used for deserialization.
+   *
+   * @param aSuffixLength
+   *          the maximum suffix length indexed
+   * @param aClassIndex
+   *          the keys and their lemma classes
+   */
+  LemmaClassIndex(final int aSuffixLength,
+      final Map<String, Set<String>> aClassIndex) {
+    if (aSuffixLength < 0) {
+      throw new IllegalArgumentException(
+          "Suffix length must be positive: " + aSuffixLength);
+    }
+    this.suffixLength = aSuffixLength;
+    this.classIndex = aClassIndex;
+  }
+
+  /**
+   * Build the index from the lemma samples. The stream is reset after reading.
+   *
+   * @param samples
+   *          the lemma samples
+   * @param suffixLength
+   *          the maximum suffix length to index
+   * @return the lemma class index
+   * @throws IOException
+   *           if io problems while reading the samples
+   */
+  public static LemmaClassIndex create(final ObjectStream<LemmaSample> samples,
+      final int suffixLength) throws IOException {
+    final LemmaClassIndex index = new LemmaClassIndex(suffixLength);
+    LemmaSample sample;
+    while ((sample = samples.read()) != null) {
+      final String[] tokens = sample.getTokens();
+      final String[] tags = sample.getTags();
+      final String[] lemmaClasses = sample.getLemmas();
+      for (int i = 0; i < tokens.length; i++) {
+        index.put(tokens[i], tags[i], lemmaClasses[i]);
+      }
+    }
+    samples.reset();
+    return index;
+  }
+
+  /**
+   * Add an observed lemma class for every suffix of the word up to the maximum
+   * suffix length.
+   *
+   * @param word
+   *          the word
+   * @param postag
+   *          the postag
+   * @param lemmaClass
+   *          the lemma class
+   */
+  public final void put(final String word, final String postag,
+      final String lemmaClass) {
+    final String lex = word.toLowerCase();
+    final int maxLength = Math.min(this.suffixLength, lex.length());
+    for (int i = 0; i <= maxLength; i++) {
+      final String key = getKey(postag, lex.substring(lex.length() - i));
+      Set<String> lemmaClasses = this.classIndex.get(key);
+      if (lemmaClasses == null) {
+        lemmaClasses = new HashSet<String>();
+        this.classIndex.put(key, lemmaClasses);
+      }
+      lemmaClasses.add(lemmaClass);
+    }
+  }
+
+  /**
+   * Get the lemma classes observed with the longest indexed suffix of the word
+   * and the postag.
+   *
+   * @param word
+   *          the word
+   * @param postag
+   *          the postag
+   * @return the candidate lemma classes or null if the postag was never seen,
+   *         in which case no restriction should apply
+   */
+  public final Set<String> getCandidates(final String word,
+      final String postag) {
+    return getLowerCaseCandidates(word.toLowerCase(), postag);
+  }
+
+  /**
+   * Get the lemma classes observed with the longest indexed suffix of a word
+   * already lowercased and the postag.
+   *
+   * @param lex
+   *          the lowercased word
+   * @param postag
+   *          the postag
+   * @return the candidate lemma classes or null if the postag was never seen,
+   *         in which case no restriction should apply
+   */
+  public final Set<String> getLowerCaseCandidates(final String lex,
+      final String postag) {
+    for (int i = Math.min(this.suffixLength, lex.length()); i >= 0; i--) {
+      final Set<String> lemmaClasses = this.classIndex.get(getKey(postag,
+          lex.substring(lex.length() - i)));
+      if (lemmaClasses != null) {
+        return lemmaClasses;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the maximum suffix length indexed.
+   *
+   * @return the suffix length
+   */
+  public final int getSuffixLength() {
+    return this.suffixLength;
+  }
+
+  /**
+   * Get the map backing this index.
+   *
+   * @return the keys and their lemma classes
+   */
+  final Map<String, Set<String>> getClassIndex() {
+    return this.classIndex;
+  }
+
+  /**
+   * Build the index key for a postag and a suffix.
+   *
+   * @param postag
+   *          the postag
+   * @param suffix
+   *          the suffix
+   * @return the key
+   */
+  private static String getKey(final String postag, final String suffix) {
+    return new StringBuilder(postag.length() + suffix.length() + 1)
+        .append(postag).append(KEY_SEPARATOR).append(suffix).toString();
+  }
+
+  @Override
+  public String toString() {
+    return "LemmaClassIndex{suffixLength=" + this.suffixLength + ", keys="
+        + this.classIndex.size() + "}";
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import opennlp.tools.util.InvalidFormatException;
+import opennlp.tools.util.model.ArtifactSerializer;
+
+/**
+ * Serializes a {@link LemmaClassIndex} inside a {@link LemmatizerModel}.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class LemmaClassIndexSerializer implements
+    ArtifactSerializer<LemmaClassIndex> {
+
+  /**
+   * The extension of the artifact entries handled by this serializer.
+   */
+  public static final String EXTENSION = "classindex";
+
+  public LemmaClassIndex create(final InputStream in) throws IOException,
+      InvalidFormatException {
+    // do not close, the model input stream is shared by all artifacts
+    final DataInputStream dataIn = new DataInputStream(in);
+    final int suffixLength = dataIn.readInt();
+    final int numKeys = dataIn.readInt();
+    if (suffixLength < 0 || numKeys < 0) {
+      throw new InvalidFormatException("Lemma class index is corrupt!");
+    }
+    final Map<String, Set<String>> classIndex = new HashMap<String, Set<String>>();
+    for (int i = 0; i < numKeys; i++) {
+      final String key = dataIn.readUTF();
+      final int numClasses = dataIn.readInt();
+      final Set<String> lemmaClasses = new HashSet<String>();
+      for (int j = 0; j < numClasses; j++) {
+        lemmaClasses.add(dataIn.readUTF());
+      }
+      classIndex.put(key, lemmaClasses);
+    }
+    return new LemmaClassIndex(suffixLength, classIndex);
+  }
+
+  public void serialize(final LemmaClassIndex artifact, final OutputStream out)
+      throws IOException {
+    final DataOutputStream dataOut = new DataOutputStream(out);
+    final Map<String, Set<String>> classIndex = artifact.getClassIndex();
+    dataOut.writeInt(artifact.getSuffixLength());
+    dataOut.writeInt(classIndex.size());
+    for (final Map.Entry<String, Set<String>> entry : classIndex.entrySet()) {
+      dataOut.writeUTF(entry.getKey());
+      dataOut.writeInt(entry.getValue().size());
+      for (final String lemmaClass : entry.getValue()) {
+        dataOut.writeUTF(lemmaClass);
+      }
+    }
+    dataOut.flush();
+  }
+}
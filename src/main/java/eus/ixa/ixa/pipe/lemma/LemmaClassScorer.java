@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import java.util.Arrays;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.IndexHashTable;
+import opennlp.tools.ml.model.MaxentModel;
+
+/**
+ * Scores a subset of the lemma classes of a perceptron or maxent model. The
+ * parameters of the model are only added up and normalized for the candidate
+ * lemma classes, so that the decoder does not score every lemma class of the
+ * model for the words whose lemma classes are restricted by a
+ * {@link LemmaClassIndex}. The scores are normalized as the model does, but
+ * over the candidates only. Instances are not thread safe.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class LemmaClassScorer {
+
+  /**
+   * The parameters of every predicate.
+   */
+  private final Context[] params;
+  /**
+   * The index of every predicate.
+   */
+  private final IndexHashTable<String> pmap;
+  /**
+   * Whether the model is a perceptron, otherwise it is a maxent model.
+   */
+  private final boolean perceptron;
+  /**
+   * The correction constant of the maxent model.
+   */
+  private final double correctionConstant;
+  /**
+   * The inverse of the correction constant.
+   */
+  private final double constantInverse;
+  /**
+   * The correction parameter of the maxent model.
+   */
+  private final double correctionParam;
+  /**
+   * The position of every lemma class in the candidates being scored, -1 for
+   * the lemma classes not scored.
+   */
+  private final int[] slots;
+
+  private LemmaClassScorer(final Context[] aParams,
+      final IndexHashTable<String> aPmap, final int numOutcomes,
+      final boolean aPerceptron, final double aCorrectionConstant,
+      final double aCorrectionParam) {
+    this.params = aParams;
+    this.pmap = aPmap;
+    this.perceptron = aPerceptron;
+    this.correctionConstant = aCorrectionConstant;
+    this.constantInverse = 1.0 / aCorrectionConstant;
+    this.correctionParam = aCorrectionParam;
+    this.slots = new int[numOutcomes];
+    Arrays.fill(this.slots, -1);
+  }
+
+  /**
+   * Create a scorer for a model.
+   *
+   * @param model
+   *          the model
+   * @return the scorer or null if the model is not a perceptron or a maxent
+   *         model trained with GIS
+   */
+  @SuppressWarnings("unchecked")
+  public static LemmaClassScorer create(final MaxentModel model) {
+    if (!(model instanceof AbstractModel)) {
+      return null;
+    }
+    final AbstractModel.ModelType modelType = ((AbstractModel) model)
+        .getModelType();
+    if (modelType != AbstractModel.ModelType.Perceptron
+        && modelType != AbstractModel.ModelType.Maxent) {
+      return null;
+    }
+    final Object[] data = ((AbstractModel) model).getDataStructures();
+    return new LemmaClassScorer((Context[]) data[0],
+        (IndexHashTable<String>) data[1], model.getNumOutcomes(),
+        modelType == AbstractModel.ModelType.Perceptron,
+        (Integer) data[3], (Double) data[4]);
+  }
+
+  /**
+   * Evaluate a context for the candidate lemma classes.
+   *
+   * @param context
+   *          the context
+   * @param candidates
+   *          the indexes of the candidate lemma classes in the model
+   * @return the probability of every candidate, in the order of the
+   *         candidates
+   */
+  public final double[] eval(final String[] context, final int[] candidates) {
+    final double[] scores = new double[candidates.length];
+    final int[] numFeats = this.perceptron ? null : new int[candidates.length];
+    for (int k = 0; k < candidates.length; k++) {
+      this.slots[candidates[k]] = k;
+    }
+    try {
+      for (final String feature : context) {
+        final int pi = this.pmap.get(feature);
+        if (pi < 0) {
+          continue;
+        }
+        final int[] activeOutcomes = this.params[pi].getOutcomes();
+        final double[] activeParameters = this.params[pi].getParameters();
+        for (int ai = 0; ai < activeOutcomes.length; ai++) {
+          final int k = this.slots[activeOutcomes[ai]];
+          if (k >= 0) {
+            scores[k] += activeParameters[ai];
+            if (numFeats != null) {
+              numFeats[k]++;
+            }
+          }
+        }
+      }
+    } finally {
+      for (final int candidate : candidates) {
+        this.slots[candidate] = -1;
+      }
+    }
+    normalize(scores, numFeats);
+    return scores;
+  }
+
+  /**
+   * Turn the scores into probabilities as the model does.
+   *
+   * @param scores
+   *          the scores
+   * @param numFeats
+   *          the number of active features of every candidate, null for the
+   *          perceptron
+   */
+  private void normalize(final double[] scores, final int[] numFeats) {
+    double maxScore = 1;
+    if (this.perceptron) {
+      for (final double score : scores) {
+        maxScore = Math.max(maxScore, Math.abs(score));
+      }
+    }
+    double normal = 0.0;
+    for (int k = 0; k < scores.length; k++) {
+      if (this.perceptron) {
+        scores[k] = Math.exp(scores[k] / maxScore);
+      } else if (this.correctionParam != 0) {
+        scores[k] = Math.exp(scores[k] * this.constantInverse
+            + (1.0 - numFeats[k] / this.correctionConstant)
+            * this.correctionParam);
+      } else {
+        scores[k] = Math.exp(scores[k] * this.constantInverse);
+      }
+      normal += scores[k];
+    }
+    for (int k = 0; k < scores.length; k++) {
+      scores[k] /= normal;
+    }
+  }
+
+}
@@ -16,6 +16,8 @@
 package eus.ixa.ixa.pipe.lemma;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import opennlp.tools.ml.model.AbstractModel;
 import opennlp.tools.ml.model.Event;
@@ -27,15 +29,40 @@ public class LemmaSampleSequenceStream implements SequenceStream {
 
   private final ObjectStream<LemmaSample> samples;
   private final LemmatizerContextGenerator contextGenerator;
+  /**
+   * The processor creating the events in parallel, or null.
+   */
+  private final ParallelLemmaProcessor processor;
+  private List<LemmaSample> sampleBatch = new ArrayList<LemmaSample>();
+  private List<Event[]> eventBatch = new ArrayList<Event[]>();
+  private int next;
 
   public LemmaSampleSequenceStream(ObjectStream<LemmaSample> samples,
       LemmatizerContextGenerator contextGenerator) {
     this.samples = samples;
     this.contextGenerator = contextGenerator;
+    this.processor = null;
+  }
+
+  /**
+   * Creates a sequence stream whose events are created by several threads, in
+   * batches of samples.
+   * @param samples the samples
+   * @param factory the factory providing the context generators
+   * @param threads the number of threads
+   */
+  public LemmaSampleSequenceStream(ObjectStream<LemmaSample> samples,
+      LemmatizerFactory factory, int threads) {
+    this.samples = samples;
+    this.contextGenerator = null;
+    this.processor = new ParallelLemmaProcessor(factory, threads);
   }
 
   @Override
   public Sequence read() throws IOException {
+    if (processor != null) {
+      return readBatched();
+    }
     LemmaSample sample = samples.read();
 
     if (sample != null) {
@@ -57,6 +84,32 @@ public class LemmaSampleSequenceStream implements SequenceStream {
     return null;
   }
 
+  /**
+   * Read the next sequence from the current batch, reading and processing a
+   * new batch of samples if needed.
+   * @return the next sequence or null if there are no more samples
+   * @throws IOException if the samples can not be read
+   */
+  private Sequence<LemmaSample> readBatched() throws IOException {
+    if (next == sampleBatch.size()) {
+      sampleBatch = new ArrayList<LemmaSample>();
+      LemmaSample sample;
+      while (sampleBatch.size() < ParallelLemmaProcessor.DEFAULT_BATCH_SIZE
+          && (sample = samples.read()) != null) {
+        sampleBatch.add(sample);
+      }
+      eventBatch = processor.createEvents(sampleBatch, true);
+      next = 0;
+      if (sampleBatch.isEmpty()) {
+        return null;
+      }
+    }
+    Sequence<LemmaSample> sequence = new Sequence<LemmaSample>(
+        eventBatch.get(next), sampleBatch.get(next));
+    next++;
+    return sequence;
+  }
+
   @Override
   public Event[] updateContext(Sequence sequence, AbstractModel model) {
     // TODO: Should be implemented for Perceptron sequence learning ...
@@ -66,11 +119,17 @@ public class LemmaSampleSequenceStream implements SequenceStream {
   @Override
   public void reset() throws IOException, UnsupportedOperationException {
     samples.reset();
+    sampleBatch = new ArrayList<LemmaSample>();
+    eventBatch = new ArrayList<Event[]>();
+    next = 0;
   }
 
   @Override
   public void close() throws IOException {
     samples.close();
+    if (processor != null) {
+      processor.close();
+    }
   }
 
 }
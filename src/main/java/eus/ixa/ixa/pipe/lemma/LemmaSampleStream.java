@@ -33,8 +33,24 @@ import opennlp.tools.util.ObjectStream;
  */
 public class LemmaSampleStream extends FilterObjectStream<String, LemmaSample> {
 
+  /**
+   * Whether the lemmas are replaced by their lemma classes.
+   */
+  private final boolean encodeLemmas;
+
   public LemmaSampleStream(ObjectStream<String> samples) {
+    this(samples, true);
+  }
+
+  /**
+   * Construct a stream which may keep the lemmas instead of computing the
+   * lemma classes, e.g., to compute them later in parallel.
+   * @param samples the lines of the corpus
+   * @param encodeLemmas whether the lemmas are replaced by their lemma classes
+   */
+  public LemmaSampleStream(ObjectStream<String> samples, boolean encodeLemmas) {
     super(samples);
+    this.encodeLemmas = encodeLemmas;
   }
 
   public LemmaSample read() throws IOException {
@@ -51,8 +67,12 @@ public class LemmaSampleStream extends FilterObjectStream<String, LemmaSample> {
       else {
         toks.add(parts[0]);
         tags.add(parts[1]);
-        String ses = StringUtils.getShortestEditScript(parts[0], parts[2]);
-        preds.add(ses);
+        if (encodeLemmas) {
+          String ses = StringUtils.getShortestEditScript(parts[0], parts[2]);
+          preds.add(ses);
+        } else {
+          preds.add(parts[2]);
+        }
       }
     }
     if (toks.size() > 0) {
@@ -15,13 +15,36 @@
  */
 package eus.ixa.ixa.pipe.lemma;
 
+import java.util.Map;
+
 import opennlp.tools.util.BaseToolFactory;
 import opennlp.tools.util.InvalidFormatException;
 import opennlp.tools.util.SequenceValidator;
 import opennlp.tools.util.ext.ExtensionLoader;
+import opennlp.tools.util.model.ArtifactSerializer;
+import eus.ixa.ixa.pipe.pos.FeatureHasher;
+import eus.ixa.ixa.pipe.pos.WordFeatureCache;
 
 public class LemmatizerFactory extends BaseToolFactory {
 
+  /**
+   * The model entry of the lemma class index.
+   */
+  public static final String LEMMA_CLASS_INDEX_ENTRY_NAME = "lemmas."
+      + LemmaClassIndexSerializer.EXTENSION;
+  /**
+   * The lemma class index, if any.
+   */
+  private LemmaClassIndex classIndex;
+  /**
+   * The word features shared by the context generators of this factory.
+   */
+  private final WordFeatureCache wordFeatureCache = new WordFeatureCache();
+  /**
+   * The feature hasher, if the features are hashed.
+   */
+  private FeatureHasher featureHasher;
+
   /**
    * Creates a {@link LemmatizerFactory} that provides the default implementation
    * of the resources.
@@ -48,16 +71,145 @@ public class LemmatizerFactory extends BaseToolFactory {
     }
   }
 
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Map<String, ArtifactSerializer> createArtifactSerializersMap() {
+    final Map<String, ArtifactSerializer> serializers = super
+        .createArtifactSerializersMap();
+    serializers.put(LemmaClassIndexSerializer.EXTENSION,
+        new LemmaClassIndexSerializer());
+    return serializers;
+  }
+
+  @Override
+  public Map<String, Object> createArtifactMap() {
+    final Map<String, Object> artifactMap = super.createArtifactMap();
+    if (this.classIndex != null) {
+      artifactMap.put(LEMMA_CLASS_INDEX_ENTRY_NAME, this.classIndex);
+    }
+    return artifactMap;
+  }
+
+  @Override
+  public Map<String, String> createManifestEntries() {
+    final Map<String, String> manifestEntries = super.createManifestEntries();
+    if (getFeatureHasher() != null) {
+      manifestEntries.put(FeatureHasher.MANIFEST_ENTRY,
+          Integer.toString(getFeatureHasher().getDimension()));
+    }
+    return manifestEntries;
+  }
+
   @Override
   public void validateArtifactMap() throws InvalidFormatException {
-    // no additional artifacts
+    if (this.artifactProvider == null) {
+      return;
+    }
+    final Object classIndexEntry = this.artifactProvider
+        .getArtifact(LEMMA_CLASS_INDEX_ENTRY_NAME);
+    if (classIndexEntry != null
+        && !(classIndexEntry instanceof LemmaClassIndex)) {
+      throw new InvalidFormatException("Lemma class index has wrong type!");
+    }
+  }
+
+  /**
+   * Get the lemma class index, loading it from the model if required.
+   *
+   * @return the lemma class index or null if not available
+   */
+  public LemmaClassIndex getLemmaClassIndex() {
+    if (this.classIndex == null && this.artifactProvider != null) {
+      this.classIndex = this.artifactProvider
+          .getArtifact(LEMMA_CLASS_INDEX_ENTRY_NAME);
+    }
+    return this.classIndex;
+  }
+
+  /**
+   * Set the lemma class index to be stored in the model.
+   *
+   * @param aClassIndex
+   *          the lemma class index
+   */
+  public void setLemmaClassIndex(final LemmaClassIndex aClassIndex) {
+    this.classIndex = aClassIndex;
   }
 
   public SequenceValidator<String> getSequenceValidator() {
     return new DefaultLemmatizerSequenceValidator();
   }
 
+  /**
+   * Get a sequence validator for a sentence with the given postags. If the
+   * model contains a {@link LemmaClassIndex} the validator restricts the lemma
+   * classes to the ones observed with each word suffix and postag.
+   *
+   * @param tags
+   *          the postags of the sentence
+   * @return the sequence validator
+   */
+  public SequenceValidator<String> getSequenceValidator(final String[] tags) {
+    final LemmaClassIndex lemmaClassIndex = getLemmaClassIndex();
+    if (lemmaClassIndex == null) {
+      return getSequenceValidator();
+    }
+    return new DefaultLemmatizerSequenceValidator(lemmaClassIndex, tags);
+  }
+
+  /**
+   * Get a sequence validator for a sentence with the given postags and
+   * lowercased tokens, restricting the lemma classes if the model contains a
+   * {@link LemmaClassIndex}.
+   *
+   * @param tags
+   *          the postags of the sentence
+   * @param lowerCaseTokens
+   *          the lowercased tokens of the sentence
+   * @return the sequence validator
+   */
+  public SequenceValidator<String> getSequenceValidator(final String[] tags,
+      final String[] lowerCaseTokens) {
+    return new DefaultLemmatizerSequenceValidator(getLemmaClassIndex(), tags,
+        lowerCaseTokens);
+  }
+
+  /**
+   * Get the feature hasher, reading its dimension from the model manifest if
+   * required.
+   *
+   * @return the feature hasher or null if the features are not hashed
+   */
+  public FeatureHasher getFeatureHasher() {
+    if (this.featureHasher == null && this.artifactProvider != null) {
+      this.featureHasher = FeatureHasher.create(this.artifactProvider
+          .getManifestProperty(FeatureHasher.MANIFEST_ENTRY));
+    }
+    return this.featureHasher;
+  }
+
+  /**
+   * Set the feature hasher used to train the model.
+   *
+   * @param aFeatureHasher
+   *          the feature hasher
+   */
+  public void setFeatureHasher(final FeatureHasher aFeatureHasher) {
+    this.featureHasher = aFeatureHasher;
+  }
+
+  /**
+   * Get the cache of the word features shared by every context generator
+   * created by this factory.
+   *
+   * @return the word feature cache
+   */
+  public WordFeatureCache getWordFeatureCache() {
+    return this.wordFeatureCache;
+  }
+
   public LemmatizerContextGenerator getContextGenerator() {
-    return new DefaultLemmatizerContextGenerator();
+    return new DefaultLemmatizerContextGenerator(this.wordFeatureCache,
+        getFeatureHasher());
   }
 }
@@ -17,11 +17,17 @@ package eus.ixa.ixa.pipe.lemma;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import eus.ixa.ixa.pipe.pos.StringUtils;
+import eus.ixa.ixa.pipe.pos.WordFeatureCache;
+import eus.ixa.ixa.pipe.pos.train.Flags;
 
 import opennlp.tools.ml.BeamSearch;
 import opennlp.tools.ml.EventModelSequenceTrainer;
@@ -51,9 +57,20 @@ public class LemmatizerME implements Lemmatizer {
   private Sequence bestSequence;
 
   private SequenceClassificationModel<String> model;
+  private MaxentModel maxentModel;
 
+  private LemmatizerFactory factory;
   private LemmatizerContextGenerator contextGenerator;
   private SequenceValidator<String> sequenceValidator;
+  /**
+   * Scores only the candidate lemma classes of the words, or null if the model
+   * has no {@link LemmaClassIndex} or can not be scored partially.
+   */
+  private LemmaClassScorer classScorer;
+  /**
+   * The model indexes of every set of candidate lemma classes in the index.
+   */
+  private final Map<Set<String>, int[]> candidateOutcomes = new IdentityHashMap<Set<String>, int[]>();
 
   /**
    * Initializes the current instance with the provided model and the default
@@ -64,7 +81,7 @@ public class LemmatizerME implements Lemmatizer {
    */
   public LemmatizerME(LemmatizerModel model) {
 
-    LemmatizerFactory factory = model.getFactory();
+    factory = model.getFactory();
     int defaultBeamSize = LemmatizerME.DEFAULT_BEAM_SIZE;
     String beamSizeString = model
         .getManifestProperty(BeamSearch.BEAM_SIZE_PARAMETER);
@@ -77,12 +94,24 @@ public class LemmatizerME implements Lemmatizer {
 
     sequenceValidator = factory.getSequenceValidator();
 
+    maxentModel = model.getLemmatizerMaxentModel();
     if (model.getLemmatizerSequenceModel() != null) {
       this.model = model.getLemmatizerSequenceModel();
     } else {
       this.model = new opennlp.tools.ml.BeamSearch<String>(beamSize,
           (MaxentModel) model.getLemmatizerSequenceModel(), 0);
     }
+    if (maxentModel != null && factory.getLemmaClassIndex() != null) {
+      classScorer = LemmaClassScorer.create(maxentModel);
+    }
+  }
+
+  /**
+   * Get the cache of the word features shared by the lemmatizers of the model.
+   * @return the word feature cache
+   */
+  public WordFeatureCache getWordFeatureCache() {
+    return factory.getWordFeatureCache();
   }
 
   /**
@@ -94,13 +123,226 @@ public class LemmatizerME implements Lemmatizer {
     return model.getOutcomes();
   }
 
+  /**
+   * Get the sequence validator for a sentence. If the model provides a
+   * {@link LemmaClassIndex} only the lemma classes observed with the suffix
+   * and postag of each word are considered by the decoder.
+   * @param tags the postags of the sentence
+   * @return the sequence validator
+   */
+  private SequenceValidator<String> getSequenceValidator(String[] tags) {
+    if (factory.getLemmaClassIndex() == null) {
+      return sequenceValidator;
+    }
+    return factory.getSequenceValidator(tags);
+  }
+
+  /**
+   * Get the sequence validator for a sentence whose lowercased tokens are
+   * known, so that the validator does not lowercase them for every candidate
+   * lemma class.
+   * @param tags the postags of the sentence
+   * @param lowerCaseToks the lowercased tokens or null
+   * @return the sequence validator
+   */
+  private SequenceValidator<String> getSequenceValidator(String[] tags,
+      String[] lowerCaseToks) {
+    if (lowerCaseToks == null) {
+      return getSequenceValidator(tags);
+    }
+    return factory.getSequenceValidator(tags, lowerCaseToks);
+  }
+
   public String[] lemmatize(String[] toks, String[] tags) {
+    return lemmatize(toks, null, tags, null);
+  }
+
+  /**
+   * Decode the best sequence of lemma classes of a sentence.
+   * @param toks the sentence tokens
+   * @param lowerCaseToks the lowercased tokens or null
+   * @param tags the sentence tags
+   * @return the lemma classes for every token
+   */
+  private String[] bestLemmaClasses(String[] toks, String[] lowerCaseToks,
+      String[] tags) {
     bestSequence = model.bestSequence(toks, new Object[] { tags },
-        contextGenerator, sequenceValidator);
+        contextGenerator, getSequenceValidator(tags, lowerCaseToks));
     List<String> c = bestSequence.getOutcomes();
     return c.toArray(new String[c.size()]);
   }
 
+  /**
+   * Lemmatize a sentence for which the lemma classes of some tokens are already
+   * known, e.g., because their lemmas were found in a dictionary. The known
+   * classes are kept fixed and used as history by the decoder, which only
+   * evaluates the model for the remaining tokens.
+   * @param toks the sentence tokens
+   * @param tags the sentence tags
+   * @param knownClasses the known lemma classes, null for the tokens to be
+   *          lemmatized by the model
+   * @return the lemma classes for every token
+   */
+  public String[] lemmatize(String[] toks, String[] tags, String[] knownClasses) {
+    return lemmatize(toks, null, tags, knownClasses);
+  }
+
+  /**
+   * Lemmatize a sentence whose lowercased tokens are already known, so that
+   * they are not computed again to validate and decode the lemma classes. If
+   * the model provides a {@link LemmaClassIndex} only the candidate lemma
+   * classes of each word are scored.
+   * @param toks the sentence tokens
+   * @param lowerCaseToks the lowercased tokens or null
+   * @param tags the sentence tags
+   * @param knownClasses the known lemma classes, null for the tokens to be
+   *          lemmatized by the model, or null if none is known
+   * @return the lemma classes for every token
+   */
+  public String[] lemmatize(String[] toks, String[] lowerCaseToks,
+      String[] tags, String[] knownClasses) {
+    if (maxentModel == null) {
+      // sequence models decode the whole sentence
+      String[] lemmaClasses = bestLemmaClasses(toks, lowerCaseToks, tags);
+      for (int i = 0; knownClasses != null && i < toks.length; i++) {
+        if (knownClasses[i] != null) {
+          lemmaClasses[i] = knownClasses[i];
+        }
+      }
+      return lemmaClasses;
+    }
+    if (knownClasses == null && classScorer == null) {
+      return bestLemmaClasses(toks, lowerCaseToks, tags);
+    }
+    SequenceValidator<String> validator = getSequenceValidator(tags,
+        lowerCaseToks);
+    Object[] additionalContext = new Object[] { tags };
+    List<Sequence> prev = new ArrayList<Sequence>(beamSize);
+    List<Sequence> next = new ArrayList<Sequence>(beamSize);
+    prev.add(new Sequence());
+    for (int i = 0; i < toks.length; i++) {
+      if (knownClasses != null && knownClasses[i] != null) {
+        for (Sequence top : prev) {
+          next.add(new Sequence(top, knownClasses[i], 1.0));
+        }
+      } else {
+        int[] candidates = getCandidateOutcomes(i, toks, validator);
+        for (Sequence top : prev) {
+          List<String> outcomes = top.getOutcomes();
+          String[] priorDecisions = outcomes.toArray(new String[outcomes.size()]);
+          String[] context = contextGenerator.getContext(i, toks,
+              priorDecisions, additionalContext);
+          double[] scores = candidates == null ? maxentModel.eval(context)
+              : classScorer.eval(context, candidates);
+          addBestOutcomes(i, toks, priorDecisions, top, candidates, scores,
+              validator, next);
+        }
+        if (next.isEmpty()) {
+          for (Sequence top : prev) {
+            next.add(new Sequence(top, "O", 1.0));
+          }
+        }
+      }
+      Collections.sort(next);
+      List<Sequence> tmp = prev;
+      prev = next.size() > beamSize ? new ArrayList<Sequence>(next.subList(0,
+          beamSize)) : next;
+      next = tmp;
+      next.clear();
+    }
+    bestSequence = prev.get(0);
+    List<String> c = bestSequence.getOutcomes();
+    return c.toArray(new String[c.size()]);
+  }
+
+  /**
+   * Get the model indexes of the lemma classes to be scored for a token, that
+   * is, its candidate lemma classes in the {@link LemmaClassIndex} and the
+   * identity lemma class.
+   * @param i the index of the token
+   * @param toks the sentence tokens
+   * @param validator the sequence validator of the sentence
+   * @return the indexes of the lemma classes or null to score every lemma class
+   */
+  private int[] getCandidateOutcomes(int i, String[] toks,
+      SequenceValidator<String> validator) {
+    if (classScorer == null
+        || !(validator instanceof DefaultLemmatizerSequenceValidator)) {
+      return null;
+    }
+    Set<String> lemmaClasses = ((DefaultLemmatizerSequenceValidator) validator)
+        .getCandidates(i, toks[i]);
+    if (lemmaClasses == null) {
+      return null;
+    }
+    int[] candidates = candidateOutcomes.get(lemmaClasses);
+    if (candidates == null) {
+      candidates = new int[lemmaClasses.size() + 1];
+      int numCandidates = 0;
+      int identity = maxentModel.getIndex("O");
+      if (identity >= 0) {
+        candidates[numCandidates++] = identity;
+      }
+      for (String lemmaClass : lemmaClasses) {
+        int outcome = maxentModel.getIndex(lemmaClass);
+        if (outcome >= 0 && outcome != identity) {
+          candidates[numCandidates++] = outcome;
+        }
+      }
+      candidates = Arrays.copyOf(candidates, numCandidates);
+      candidateOutcomes.put(lemmaClasses, candidates);
+    }
+    return candidates;
+  }
+
+  /**
+   * Extends a sequence with the best scored valid lemma classes.
+   * @param i the index of the token
+   * @param toks the sentence tokens
+   * @param priorDecisions the lemma classes of the sequence so far
+   * @param top the sequence to extend
+   * @param candidates the model indexes of the scored lemma classes, or null
+   *          if every lemma class was scored
+   * @param scores the scores of the scored lemma classes
+   * @param validator the sequence validator
+   * @param next the list to add the extended sequences to
+   */
+  private void addBestOutcomes(int i, String[] toks, String[] priorDecisions,
+      Sequence top, int[] candidates, double[] scores,
+      SequenceValidator<String> validator, List<Sequence> next) {
+    int[] best = new int[beamSize];
+    int numBest = 0;
+    for (int p = 0; p < scores.length; p++) {
+      if (numBest == beamSize && scores[p] <= scores[best[numBest - 1]]) {
+        continue;
+      }
+      if (!validator.validSequence(i, toks, priorDecisions,
+          getOutcome(candidates, p))) {
+        continue;
+      }
+      int pos = numBest == beamSize ? numBest - 1 : numBest++;
+      while (pos > 0 && scores[best[pos - 1]] < scores[p]) {
+        best[pos] = best[pos - 1];
+        pos--;
+      }
+      best[pos] = p;
+    }
+    for (int b = 0; b < numBest; b++) {
+      next.add(new Sequence(top, getOutcome(candidates, best[b]),
+          scores[best[b]]));
+    }
+  }
+
+  /**
+   * Get the name of a scored lemma class.
+   * @param candidates the model indexes of the scored lemma classes or null
+   * @param p the position of the lemma class in the scores
+   * @return the lemma class
+   */
+  private String getOutcome(int[] candidates, int p) {
+    return maxentModel.getOutcome(candidates == null ? p : candidates[p]);
+  }
+
   /**
    * Generates a specified number of lemma classes for the input tokens
    * and tags.
@@ -111,7 +353,7 @@ public class LemmatizerME implements Lemmatizer {
    */
   public String[][] lemmatize(int numTaggings, String[] toks, String[] tags) {
     Sequence[] bestSequences = model.bestSequences(numTaggings, toks,
-        new Object[] { tags }, contextGenerator, sequenceValidator);
+        new Object[] { tags }, contextGenerator, getSequenceValidator(tags));
     String[][] lemmaClasses = new String[bestSequences.length][];
     for (int i = 0; i < lemmaClasses.length; i++) {
       List<String> t = bestSequences[i].getOutcomes();
@@ -130,36 +372,60 @@ public class LemmatizerME implements Lemmatizer {
    * @return the array of decoded lemmas
    */
   public String[] decodeLemmas(String[] toks, String[] preds) {
-    List<String> lemmas = new ArrayList<String>();
-    String lemma = null;
+    String[] lemmas = new String[toks.length];
+    decodeLemmas(toks, preds, lemmas);
+    return lemmas;
+  }
+
+  /**
+   * Decode the lemma classes of a sentence into a caller supplied buffer.
+   * The buffer can be the lemma classes array itself.
+   * @param toks the tokens
+   * @param preds the lemma classes
+   * @param lemmas the buffer for the lemmas, at least as long as the tokens
+   */
+  public void decodeLemmas(String[] toks, String[] preds, String[] lemmas) {
+    decodeLemmas(toks, null, preds, lemmas);
+  }
+
+  /**
+   * Decode the lemma classes of a sentence whose lowercased tokens are already
+   * known into a caller supplied buffer.
+   * @param toks the tokens
+   * @param lowerCaseToks the lowercased tokens or null
+   * @param preds the lemma classes
+   * @param lemmas the buffer for the lemmas, at least as long as the tokens
+   */
+  public void decodeLemmas(String[] toks, String[] lowerCaseToks,
+      String[] preds, String[] lemmas) {
     for (int i = 0; i < toks.length; i++) {
+      String lemma;
       if (preds[i].equals("1")) {
-        lemma = toks[i].toLowerCase();
+        lemma = lowerCaseToks == null ? toks[i].toLowerCase() : lowerCaseToks[i];
       } else if (preds[i].equals("O")){
         lemma = toks[i];
       } else {
-        lemma = StringUtils.decodeShortestEditScript(toks[i], preds[i]);
+        lemma = StringUtils.decodeShortestEditScript(toks[i],
+            lowerCaseToks == null ? toks[i].toLowerCase() : lowerCaseToks[i],
+            preds[i]);
         if (lemma.length() == 0) {
           lemma = "_";
         }
       }
-      // System.err.println("-> DEBUG: " + toks[i].toLowerCase() + " " +
-      // preds[i] + " " + lemma);
-      lemmas.add(lemma);
+      lemmas[i] = lemma;
     }
-    return lemmas.toArray(new String[lemmas.size()]);
   }
 
   public Sequence[] topKSequences(String[] sentence, String[] tags) {
     return model.bestSequences(DEFAULT_BEAM_SIZE, sentence,
-        new Object[] { tags }, contextGenerator, sequenceValidator);
+        new Object[] { tags }, contextGenerator, getSequenceValidator(tags));
   }
 
   public Sequence[] topKSequences(String[] sentence, String[] tags,
       double minSequenceScore) {
     return model.bestSequences(DEFAULT_BEAM_SIZE, sentence,
         new Object[] { tags }, minSequenceScore, contextGenerator,
-        sequenceValidator);
+        getSequenceValidator(tags));
   }
 
   /**
@@ -201,6 +467,8 @@ public class LemmatizerME implements Lemmatizer {
 
     LemmatizerContextGenerator contextGenerator = posFactory
         .getContextGenerator();
+    // the events are created by as many threads as the optimizer uses
+    int threads = Flags.getThreads(trainParams);
 
     Map<String, String> manifestInfoEntries = new HashMap<String, String>();
 
@@ -210,14 +478,16 @@ public class LemmatizerME implements Lemmatizer {
     MaxentModel lemmatizerModel = null;
     SequenceClassificationModel<String> seqLemmatizerModel = null;
     if (TrainerType.EVENT_MODEL_TRAINER.equals(trainerType)) {
-      ObjectStream<Event> es = new LemmaSampleEventStream(samples,
+      ObjectStream<Event> es = threads > 1 ? new ParallelLemmaSampleEventStream(
+          samples, posFactory, threads) : new LemmaSampleEventStream(samples,
           contextGenerator);
 
       EventTrainer trainer = TrainerFactory.getEventTrainer(
           trainParams.getSettings(), manifestInfoEntries);
       lemmatizerModel = trainer.train(es);
     } else if (TrainerType.EVENT_MODEL_SEQUENCE_TRAINER.equals(trainerType)) {
-      LemmaSampleSequenceStream ss = new LemmaSampleSequenceStream(samples,
+      LemmaSampleSequenceStream ss = threads > 1 ? new LemmaSampleSequenceStream(
+          samples, posFactory, threads) : new LemmaSampleSequenceStream(samples,
           contextGenerator);
       EventModelSequenceTrainer trainer = TrainerFactory
           .getEventModelSequenceTrainer(trainParams.getSettings(),
@@ -249,14 +519,14 @@ public class LemmatizerME implements Lemmatizer {
 
   public Sequence[] topKLemmaClasses(String[] sentence, String[] tags) {
     return model.bestSequences(DEFAULT_BEAM_SIZE, sentence,
-        new Object[] { tags }, contextGenerator, sequenceValidator);
+        new Object[] { tags }, contextGenerator, getSequenceValidator(tags));
   }
 
   public Sequence[] topKLemmaClasses(String[] sentence, String[] tags,
       double minSequenceScore) {
     return model.bestSequences(DEFAULT_BEAM_SIZE, sentence,
         new Object[] { tags }, minSequenceScore, contextGenerator,
-        sequenceValidator);
+        getSequenceValidator(tags));
   }
 
 }
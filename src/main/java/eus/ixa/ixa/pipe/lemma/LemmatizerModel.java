@@ -110,6 +110,18 @@ public class LemmatizerModel extends BaseModel {
     }
   }
 
+  /**
+   * Get the underlying classifier if the lemmatizer was trained as an event
+   * model.
+   * @return the maxent model or null if the model is a sequence model
+   */
+  public MaxentModel getLemmatizerMaxentModel() {
+    if (artifactMap.get(LEMMATIZER_MODEL_ENTRY_NAME) instanceof MaxentModel) {
+      return (MaxentModel) artifactMap.get(LEMMATIZER_MODEL_ENTRY_NAME);
+    }
+    return null;
+  }
+
   @Override
   protected Class<? extends BaseToolFactory> getDefaultFactory() {
     return LemmatizerFactory.class;
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import opennlp.tools.ml.model.Event;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import eus.ixa.ixa.pipe.pos.StringUtils;
+
+/**
+ * Parallel preprocessing of lemma samples for training. A batch of samples is
+ * split in as many contiguous shards as threads, every shard is processed by a
+ * different thread and the results are merged in the order of the samples, so
+ * that the output is the same as processing the samples sequentially.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class ParallelLemmaProcessor {
+
+  /**
+   * Default number of samples read and processed at once.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 4096;
+  /**
+   * Seconds an idle worker thread waits for a new batch before stopping.
+   */
+  private static final long KEEP_ALIVE_SECONDS = 5;
+
+  /**
+   * The factory providing the context generators, or null.
+   */
+  private final LemmatizerFactory factory;
+  /**
+   * The number of threads.
+   */
+  private final int threads;
+  /**
+   * The worker threads. The trainers do not close the streams they read, so
+   * the threads stop by themselves once the samples are exhausted.
+   */
+  private final ThreadPoolExecutor executor;
+  /**
+   * The context generator of every worker thread.
+   */
+  private final ThreadLocal<LemmatizerContextGenerator> contextGenerators = new ThreadLocal<LemmatizerContextGenerator>() {
+    @Override
+    protected LemmatizerContextGenerator initialValue() {
+      return ParallelLemmaProcessor.this.factory.getContextGenerator();
+    }
+  };
+
+  /**
+   * Construct a processor.
+   *
+   * @param aFactory
+   *          the factory providing a context generator for every thread, or
+   *          null if no events are created
+   * @param aThreads
+   *          the number of threads
+   */
+  public ParallelLemmaProcessor(final LemmatizerFactory aFactory,
+      final int aThreads) {
+    if (aThreads < 1) {
+      throw new IllegalArgumentException(
+          "The number of threads must be positive!");
+    }
+    this.factory = aFactory;
+    this.threads = aThreads;
+    this.executor = new ThreadPoolExecutor(aThreads, aThreads,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+            .setDaemon(true).setNameFormat("ixa-pipe-lemma-preprocessor-%d")
+            .build());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Replace the lemmas of the samples by their lemma classes, that is, the
+   * shortest edit scripts from the words to the lemmas.
+   *
+   * @param samples
+   *          the samples with lemmas
+   * @return the samples with lemma classes, in the same order
+   * @throws IOException
+   *           if a worker fails
+   */
+  public final List<LemmaSample> encodeLemmas(final List<LemmaSample> samples)
+      throws IOException {
+    return process(samples, new SampleTask<LemmaSample>() {
+      public LemmaSample process(final LemmaSample sample) {
+        final String[] toks = sample.getTokens();
+        final String[] lemmas = sample.getLemmas();
+        final String[] lemmaClasses = new String[toks.length];
+        for (int i = 0; i < toks.length; i++) {
+          lemmaClasses[i] = StringUtils.getShortestEditScript(toks[i],
+              lemmas[i]);
+        }
+        return new LemmaSample(toks, sample.getTags(), lemmaClasses);
+      }
+    });
+  }
+
+  /**
+   * Create the training events of the samples.
+   *
+   * @param samples
+   *          the samples with lemma classes
+   * @param tagOutcomes
+   *          whether the outcome of the events is the postag, as in
+   *          {@link LemmaSampleSequenceStream}, instead of the lemma class, as
+   *          in {@link LemmaSampleEventStream}
+   * @return the events of every sample, in the same order
+   * @throws IOException
+   *           if a worker fails
+   */
+  public final List<Event[]> createEvents(final List<LemmaSample> samples,
+      final boolean tagOutcomes) throws IOException {
+    if (this.factory == null) {
+      throw new IllegalStateException("No factory to create the events!");
+    }
+    return process(samples, new SampleTask<Event[]>() {
+      public Event[] process(final LemmaSample sample) {
+        final LemmatizerContextGenerator contextGenerator = ParallelLemmaProcessor.this.contextGenerators
+            .get();
+        final String[] toks = sample.getTokens();
+        final String[] tags = sample.getTags();
+        final String[] preds = sample.getLemmas();
+        final Event[] events = new Event[toks.length];
+        for (int i = 0; i < toks.length; i++) {
+          events[i] = new Event(tagOutcomes ? tags[i] : preds[i],
+              contextGenerator.getContext(i, toks, tags, preds));
+        }
+        return events;
+      }
+    });
+  }
+
+  /**
+   * Process the samples in contiguous shards, one per thread.
+   *
+   * @param samples
+   *          the samples
+   * @param task
+   *          the processing of each sample
+   * @return the results, in the order of the samples
+   * @throws IOException
+   *           if a worker fails
+   */
+  private <T> List<T> process(final List<LemmaSample> samples,
+      final SampleTask<T> task) throws IOException {
+    final int shardSize = (samples.size() + this.threads - 1) / this.threads;
+    final List<Future<List<T>>> shards = new ArrayList<Future<List<T>>>();
+    for (int from = 0; from < samples.size(); from += shardSize) {
+      final List<LemmaSample> shard = samples.subList(from,
+          Math.min(from + shardSize, samples.size()));
+      shards.add(this.executor.submit(new Callable<List<T>>() {
+        public List<T> call() {
+          final List<T> results = new ArrayList<T>(shard.size());
+          for (final LemmaSample sample : shard) {
+            results.add(task.process(sample));
+          }
+          return results;
+        }
+      }));
+    }
+    final List<T> results = new ArrayList<T>(samples.size());
+    try {
+      for (final Future<List<T>> shard : shards) {
+        results.addAll(shard.get());
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while processing lemma samples!", e);
+    } catch (final ExecutionException e) {
+      throw new IOException("Error while processing lemma samples!",
+          e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * Stop the worker threads.
+   */
+  public final void close() {
+    this.executor.shutdown();
+  }
+
+  /**
+   * The processing of a sample.
+   */
+  private interface SampleTask<T> {
+    T process(LemmaSample sample);
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.util.ObjectStream;
+
+/**
+ * Event stream for training a probabilistic lemmatizer whose events are
+ * created by several threads. The samples are read in batches and the events
+ * of every batch are created in parallel by a {@link ParallelLemmaProcessor};
+ * the events are returned in the same order as by
+ * {@link LemmaSampleEventStream}.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class ParallelLemmaSampleEventStream implements ObjectStream<Event> {
+
+  /**
+   * The samples.
+   */
+  private final ObjectStream<LemmaSample> samples;
+  /**
+   * The processor creating the events.
+   */
+  private final ParallelLemmaProcessor processor;
+  /**
+   * The number of samples processed at once.
+   */
+  private final int batchSize;
+  /**
+   * The events of the current batch.
+   */
+  private List<Event[]> batch = new ArrayList<Event[]>();
+  /**
+   * The index of the next sample of the batch.
+   */
+  private int nextSample;
+  /**
+   * The index of the next event of the sample.
+   */
+  private int nextEvent;
+
+  /**
+   * Creates a new event stream.
+   *
+   * @param d
+   *          the samples
+   * @param factory
+   *          the factory providing the context generators
+   * @param threads
+   *          the number of threads
+   */
+  public ParallelLemmaSampleEventStream(final ObjectStream<LemmaSample> d,
+      final LemmatizerFactory factory, final int threads) {
+    this.samples = d;
+    this.processor = new ParallelLemmaProcessor(factory, threads);
+    this.batchSize = ParallelLemmaProcessor.DEFAULT_BATCH_SIZE;
+  }
+
+  public final Event read() throws IOException {
+    while (this.nextSample < this.batch.size()
+        && this.nextEvent == this.batch.get(this.nextSample).length) {
+      this.nextSample++;
+      this.nextEvent = 0;
+    }
+    if (this.nextSample == this.batch.size()) {
+      if (!readBatch()) {
+        return null;
+      }
+      return read();
+    }
+    return this.batch.get(this.nextSample)[this.nextEvent++];
+  }
+
+  /**
+   * Read the next batch of samples and create their events.
+   *
+   * @return false if there are no more samples
+   * @throws IOException
+   *           if the samples can not be read
+   */
+  private boolean readBatch() throws IOException {
+    final List<LemmaSample> sampleBatch = new ArrayList<LemmaSample>(
+        this.batchSize);
+    LemmaSample sample;
+    while (sampleBatch.size() < this.batchSize
+        && (sample = this.samples.read()) != null) {
+      sampleBatch.add(sample);
+    }
+    this.batch = this.processor.createEvents(sampleBatch, false);
+    this.nextSample = 0;
+    this.nextEvent = 0;
+    return !sampleBatch.isEmpty();
+  }
+
+  public final void reset() throws IOException {
+    this.samples.reset();
+    this.batch = new ArrayList<Event[]>();
+    this.nextSample = 0;
+    this.nextEvent = 0;
+  }
+
+  public final void close() throws IOException {
+    this.samples.close();
+    this.processor.close();
+  }
+
+}
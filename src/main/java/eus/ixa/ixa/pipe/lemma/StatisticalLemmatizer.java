@@ -27,8 +27,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 
+import eus.ixa.ixa.pipe.pos.AnnotatedSentence;
 import eus.ixa.ixa.pipe.pos.Morpheme;
 import eus.ixa.ixa.pipe.pos.MorphoFactory;
+import eus.ixa.ixa.pipe.pos.StringUtils;
+import eus.ixa.ixa.pipe.pos.WordFeatureCache;
 
 /**
  * Probabilistic lemmatizer.
@@ -80,6 +83,15 @@ public class StatisticalLemmatizer {
     this.morphoFactory = aMorphoFactory;
   }
 
+  /**
+   * Get the cache of the word features shared by the lemmatizers of the model.
+   * 
+   * @return the word feature cache
+   */
+  public final WordFeatureCache getWordFeatureCache() {
+    return this.lemmatizer.getWordFeatureCache();
+  }
+
   /**
    * Get lemmas from a tokenized and pos tagged sentence.
    * 
@@ -101,10 +113,99 @@ public class StatisticalLemmatizer {
    * @return the lemmas
    */
   public List<String> lemmatize(String[] tokens, String[] posTags) {
-    String[] annotatedLemmas = lemmatizer.lemmatize(tokens, posTags);
-    String[] decodedLemmas = lemmatizer.decodeLemmas(tokens, annotatedLemmas);
-    final List<String> lemmas = new ArrayList<String>(Arrays.asList(decodedLemmas));
-    return lemmas;
+    final String[] lemmas = new String[tokens.length];
+    lemmatize(tokens, null, posTags, null, lemmas);
+    return new ArrayList<String>(Arrays.asList(lemmas));
+  }
+
+  /**
+   * Fill the lemmas of a sentence whose postags are already annotated.
+   * @param sentence the sentence
+   */
+  public final void annotate(final AnnotatedSentence sentence) {
+    lemmatize(sentence.getTokens(), sentence.getLowerCaseTokens(),
+        sentence.getTags(), null, sentence.getLemmas());
+  }
+
+  /**
+   * Fill the lemmas of a sentence whose postags are already annotated and for
+   * which some lemmas are already known. The known lemmas are kept and the
+   * lemmatizer model is only applied to the rest of the tokens.
+   * @param sentence the sentence
+   * @param knownLemmas the known lemmas, null for the tokens to be lemmatized
+   */
+  public final void annotate(final AnnotatedSentence sentence,
+      final String[] knownLemmas) {
+    lemmatize(sentence.getTokens(), sentence.getLowerCaseTokens(),
+        sentence.getTags(), knownLemmas, sentence.getLemmas());
+  }
+
+  /**
+   * Lemmatize a sentence into a caller supplied buffer.
+   * @param tokens the tokens
+   * @param lowerCaseTokens the lowercased tokens or null
+   * @param posTags the pos tags, at least as many as tokens
+   * @param knownLemmas the known lemmas, null for the tokens to be lemmatized,
+   * or null if no lemma is known
+   * @param lemmas the buffer for the lemmas, at least as long as the tokens
+   */
+  private void lemmatize(final String[] tokens,
+      final String[] lowerCaseTokens, final String[] posTags,
+      final String[] knownLemmas, final String[] lemmas) {
+    final String[] lemmaClasses;
+    if (knownLemmas == null) {
+      lemmaClasses = this.lemmatizer.lemmatize(tokens, lowerCaseTokens,
+          posTags, null);
+    } else {
+      final String[] knownClasses = new String[tokens.length];
+      for (int i = 0; i < tokens.length; i++) {
+        if (knownLemmas[i] != null) {
+          knownClasses[i] = StringUtils.getShortestEditScript(tokens[i], knownLemmas[i]);
+        }
+      }
+      lemmaClasses = this.lemmatizer.lemmatize(tokens, lowerCaseTokens,
+          posTags, knownClasses);
+    }
+    this.lemmatizer.decodeLemmas(tokens, lowerCaseTokens, lemmaClasses,
+        lemmas);
+    if (knownLemmas != null) {
+      for (int i = 0; i < tokens.length; i++) {
+        if (knownLemmas[i] != null) {
+          lemmas[i] = knownLemmas[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Get lemmas from a tokenized and pos tagged sentence for which some lemmas
+   * are already known, e.g., from a dictionary.
+   * 
+   * @param tokens
+   *          the tokenized sentence
+   * @param posTags the pos tags of the sentence
+   * @param knownLemmas the known lemmas, null for the tokens to be lemmatized
+   * @return a list of {@code Morpheme} objects containing morphological info
+   */
+  public final List<Morpheme> getMorphemes(final String[] tokens, final String[] posTags, final String[] knownLemmas) {
+    final List<String> lemmas = lemmatize(tokens, posTags, knownLemmas);
+    final List<Morpheme> morphemes = getMorphemesFromStrings(tokens, posTags, lemmas);
+    return morphemes;
+  }
+
+  /**
+   * Produce lemmas from a tokenized sentence and its postags when some of the
+   * lemmas are already known. The known lemmas are kept and the lemmatizer
+   * model is only applied to the rest of the tokens.
+   * @param tokens the tokens
+   * @param posTags the pos tags
+   * @param knownLemmas the known lemmas, null for the tokens to be lemmatized
+   * @return the lemmas
+   */
+  public List<String> lemmatize(String[] tokens, String[] posTags, String[] knownLemmas) {
+    final String[] lemmas = new String[tokens.length];
+    lemmatize(tokens, null, posTags, knownLemmas, lemmas);
+    return new ArrayList<String>(Arrays.asList(lemmas));
   }
 
   /**
@@ -169,6 +270,7 @@ public class StatisticalLemmatizer {
             model = new LemmatizerModel(new FileInputStream(modelName));
             lemmaModels.put(lang, model);
           }
+          model = lemmaModels.get(lang);
         }
       } else {
         model = new LemmatizerModel(new FileInputStream(modelName));
@@ -22,12 +22,11 @@ import java.io.InputStream;
 
 import opennlp.tools.util.ObjectStream;
 import eus.ixa.ixa.pipe.lemma.LemmaSample;
-import eus.ixa.ixa.pipe.lemma.LemmaSampleStream;
 import eus.ixa.ixa.pipe.lemma.LemmatizerEvaluator;
 import eus.ixa.ixa.pipe.lemma.LemmatizerME;
 import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
 import eus.ixa.ixa.pipe.pos.eval.Evaluate;
-import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
+import eus.ixa.ixa.pipe.pos.TaggedCorpus;
 
 /**
  * Evaluation class.
@@ -62,9 +61,7 @@ public class LemmaEvaluate implements Evaluate {
    */
   public LemmaEvaluate(final String testData, final String model) throws IOException {
 
-    final ObjectStream<String> testStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(testData);
-    this.testSamples = new LemmaSampleStream(testStream);
+    this.testSamples = TaggedCorpus.loadLemmaCorpus(testData).getLemmaSamples();
     InputStream trainedModelInputStream = null;
     try {
       if (lemmatizerModel == null) {
@@ -85,6 +82,35 @@ public class LemmaEvaluate implements Evaluate {
     this.lemmatizer = new LemmatizerME(lemmatizerModel);
   }
 
+  /**
+   * Construct an evaluator of a model already loaded.
+   * 
+   * @param aTestSamples
+   *          the reference samples to evaluate against
+   * @param model
+   *          the model to be evaluated
+   */
+  public LemmaEvaluate(final ObjectStream<LemmaSample> aTestSamples,
+      final LemmatizerModel model) {
+    this.testSamples = aTestSamples;
+    this.lemmatizer = new LemmatizerME(model);
+  }
+
+  /**
+   * Get the word accuracy, evaluating from the start of the reference samples.
+   * 
+   * @return the word accuracy
+   * @throws IOException
+   *           if the reference samples can not be read
+   */
+  public final double getWordAccuracy() throws IOException {
+    this.testSamples.reset();
+    final LemmatizerEvaluator evaluator = new LemmatizerEvaluator(
+        this.lemmatizer);
+    evaluator.evaluate(this.testSamples);
+    return evaluator.getWordAccuracy();
+  }
+
   /**
    * Evaluate and print word accuracy.
    */
@@ -18,16 +18,20 @@ package eus.ixa.ixa.pipe.lemma.train;
 
 import java.io.IOException;
 
+import opennlp.tools.ml.model.MaxentModel;
 import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.cmdline.TerminateToolException;
+import eus.ixa.ixa.pipe.lemma.LemmaClassIndex;
 import eus.ixa.ixa.pipe.lemma.LemmaSample;
-import eus.ixa.ixa.pipe.lemma.LemmaSampleStream;
 import eus.ixa.ixa.pipe.lemma.LemmatizerEvaluator;
 import eus.ixa.ixa.pipe.lemma.LemmatizerFactory;
 import eus.ixa.ixa.pipe.lemma.LemmatizerME;
 import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
+import eus.ixa.ixa.pipe.pos.TaggedCorpus;
+import eus.ixa.ixa.pipe.pos.train.EarlyStopping;
 import eus.ixa.ixa.pipe.pos.train.Flags;
-import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
+import eus.ixa.ixa.pipe.pos.train.ParallelPerceptronTrainer;
 
 /**
  * Training a Lemmatizer.
@@ -50,16 +54,26 @@ public abstract class AbstractLemmatizerTrainer implements LemmatizerTrainer {
    * ObjectStream of the test data.
    */
   private final ObjectStream<LemmaSample> testSamples;
+  /**
+   * Maximum suffix length of the lemma class index built from the training
+   * data.
+   */
+  private final int classIndexSuffixLength;
   /**
    * posTaggerFactory features need to be implemented by any class extending
    * this one.
    */
   private LemmatizerFactory lemmatizerFactory;
+  /**
+   * The word accuracy of the last model trained on the test data.
+   */
+  private double wordAccuracy;
 
   /**
    * Construct an AbstractTrainer. In the params parameter there is information
    * about the language, the featureset, and whether to use pos tag dictionaries
-   * or automatically created dictionaries from the training set.
+   * or automatically created dictionaries from the training set. When the
+   * events are indexed on disk, the training set is streamed from its file.
    * 
    * @param params
    *          the training parameters
@@ -70,13 +84,40 @@ public abstract class AbstractLemmatizerTrainer implements LemmatizerTrainer {
     this.lang = Flags.getLanguage(params);
     final String trainData = Flags.getDataSet("TrainSet", params);
     final String testData = Flags.getDataSet("TestSet", params);
-    final ObjectStream<String> trainStream = InputOutputUtils.readFileIntoMarkableStreamFactory(trainData);
-    this.trainSamples = new LemmaSampleStream(trainStream);
-    final ObjectStream<String> testStream = InputOutputUtils.readFileIntoMarkableStreamFactory(testData);
-    this.testSamples = new LemmaSampleStream(testStream);
+    final int threads = Flags.getThreads(params);
+    if (Flags.isIndexDir(params)) {
+      this.trainSamples = TaggedCorpus.streamLemmaCorpus(trainData);
+    } else {
+      this.trainSamples = TaggedCorpus.loadLemmaCorpus(trainData, threads)
+          .getLemmaSamples();
+    }
+    this.testSamples = TaggedCorpus.loadLemmaCorpus(testData, threads)
+        .getLemmaSamples();
+    this.classIndexSuffixLength = Flags.getLemmaClassIndex(params);
+  }
+
+  /**
+   * Construct an AbstractTrainer with samples already loaded, e.g., the folds
+   * of a cross validation.
+   * 
+   * @param params
+   *          the training parameters
+   * @param aTrainSamples
+   *          the training samples
+   * @param aTestSamples
+   *          the test samples
+   */
+  public AbstractLemmatizerTrainer(final TrainingParameters params,
+      final ObjectStream<LemmaSample> aTrainSamples,
+      final ObjectStream<LemmaSample> aTestSamples) {
+    this.lang = Flags.getLanguage(params);
+    this.trainSamples = aTrainSamples;
+    this.testSamples = aTestSamples;
+    this.classIndexSuffixLength = Flags.getLemmaClassIndex(params);
   }
 
-  public final LemmatizerModel train(final TrainingParameters params) {
+  public final LemmatizerModel train(final TrainingParameters params)
+      throws IOException {
     // features
     if (getLemmatizerFactory() == null) {
       throw new IllegalStateException(
@@ -86,21 +127,110 @@ public abstract class AbstractLemmatizerTrainer implements LemmatizerTrainer {
     // training model
     LemmatizerModel trainedModel = null;
     LemmatizerEvaluator lemmatizerEvaluator = null;
+    EarlyStopping earlyStopping = null;
     try {
+      earlyStopping = createEarlyStopping(params);
+      EarlyStopping.setCurrent(earlyStopping);
       trainedModel = LemmatizerME.train(this.lang, this.trainSamples, params,
           getLemmatizerFactory());
       final LemmatizerME lemmatizer = new LemmatizerME(trainedModel);
       lemmatizerEvaluator = new LemmatizerEvaluator(lemmatizer);
+      this.testSamples.reset();
       lemmatizerEvaluator.evaluate(this.testSamples);
-    } catch (final IOException e) {
-      System.err.println("IO error while loading training and test sets!");
-      e.printStackTrace();
-      System.exit(1);
+    } finally {
+      EarlyStopping.setCurrent(null);
+      if (earlyStopping != null) {
+        earlyStopping.close();
+      }
     }
-    System.out.println("Final result: " + lemmatizerEvaluator.getWordAccuracy());
+    this.wordAccuracy = lemmatizerEvaluator.getWordAccuracy();
     return trainedModel;
   }
 
+  /**
+   * Get the word accuracy on the test data of the last model trained.
+   * 
+   * @return the word accuracy
+   */
+  public final double getWordAccuracy() {
+    return this.wordAccuracy;
+  }
+
+  /**
+   * Create the early stopping on the development set if the training
+   * parameters define an evaluation interval. The test set is only used to
+   * report the accuracy of the final model, so without a development set
+   * early stopping is disabled.
+   *
+   * @param params
+   *          the training parameters
+   * @return the early stopping or null
+   * @throws IOException
+   *           if the development set can not be read
+   */
+  private EarlyStopping createEarlyStopping(final TrainingParameters params)
+      throws IOException {
+    if (!Flags.isEarlyStopping(params)) {
+      return null;
+    }
+    if (!EarlyStopping.isSupported(params)) {
+      System.err.println("WARNING: early stopping requires the "
+          + ParallelPerceptronTrainer.PARALLEL_PERCEPTRON_VALUE
+          + " algorithm, training all the iterations");
+      return null;
+    }
+    if (!Flags.isDevSet(params)) {
+      System.err.println("WARNING: early stopping requires a DevSet, "
+          + "training all the iterations");
+      return null;
+    }
+    final ObjectStream<LemmaSample> devSamples = TaggedCorpus.loadLemmaCorpus(
+        Flags.getDevSet(params), Flags.getThreads(params)).getLemmaSamples();
+    final int beamSize = Flags.getBeamsize(params);
+    return new EarlyStopping(new EarlyStopping.HeldOutEvaluator() {
+      public double evaluate(final MaxentModel model) throws IOException {
+        final LemmatizerModel lemmatizerModel = new LemmatizerModel(
+            AbstractLemmatizerTrainer.this.lang, model, beamSize, null,
+            getLemmatizerFactory());
+        final LemmatizerEvaluator lemmatizerEvaluator = new LemmatizerEvaluator(
+            new LemmatizerME(lemmatizerModel));
+        devSamples.reset();
+        lemmatizerEvaluator.evaluate(devSamples);
+        return lemmatizerEvaluator.getWordAccuracy();
+      }
+    }, Flags.getEvalInterval(params), Flags.getPatience(params));
+  }
+
+  /**
+   * Build the index of lemma classes observed for every word suffix and postag
+   * in the training data and add it to the lemmatizerFactory.
+   * 
+   * @param aSuffixLength
+   *          the maximum suffix length to index
+   */
+  protected final void createLemmaClassIndex(final int aSuffixLength) {
+    if (aSuffixLength != Flags.DEFAULT_LEMMA_CLASS_INDEX) {
+      System.err.print("Building lemma class index ... ");
+      try {
+        getLemmatizerFactory().setLemmaClassIndex(
+            LemmaClassIndex.create(this.trainSamples, aSuffixLength));
+      } catch (final IOException e) {
+        throw new TerminateToolException(-1,
+            "IO error while building lemma class index: " + e.getMessage(), e);
+      }
+      System.err.println("done");
+    }
+  }
+
+  /**
+   * Get the maximum suffix length of the lemma class index.
+   * 
+   * @return the suffix length
+   */
+  protected final Integer getLemmaClassIndexSuffixLength() {
+    return this.classIndexSuffixLength;
+  }
+
   /**
    * Get the lemmatizerFactory. Every extension of this class must provide an
    * implementation of the lemmatizerFactory.
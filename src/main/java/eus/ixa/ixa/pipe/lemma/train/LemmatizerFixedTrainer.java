@@ -17,10 +17,13 @@ package eus.ixa.ixa.pipe.lemma.train;
 
 import java.io.IOException;
 
+import eus.ixa.ixa.pipe.lemma.LemmaSample;
 import eus.ixa.ixa.pipe.lemma.LemmatizerFactory;
+import eus.ixa.ixa.pipe.pos.FeatureHasher;
 import eus.ixa.ixa.pipe.pos.train.Flags;
 
 import opennlp.tools.util.InvalidFormatException;
+import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
 
 /**
@@ -43,6 +46,25 @@ public class LemmatizerFixedTrainer extends AbstractLemmatizerTrainer {
   public LemmatizerFixedTrainer(final TrainingParameters params) throws IOException {
     super(params);
     setLemmatizerFactory(getTrainerFactory(params));
+    createLemmaClassIndex(getLemmaClassIndexSuffixLength());
+  }
+
+  /**
+   * Extends the {@code AbstractLemmatizerTrainer} with samples already loaded.
+   * 
+   * @param params
+   *          the training parameters
+   * @param trainSamples
+   *          the training samples
+   * @param testSamples
+   *          the test samples
+   */
+  public LemmatizerFixedTrainer(final TrainingParameters params,
+      final ObjectStream<LemmaSample> trainSamples,
+      final ObjectStream<LemmaSample> testSamples) {
+    super(params, trainSamples, testSamples);
+    setLemmatizerFactory(getTrainerFactory(params));
+    createLemmaClassIndex(getLemmaClassIndexSuffixLength());
   }
 
   /**
@@ -72,6 +94,10 @@ public class LemmatizerFixedTrainer extends AbstractLemmatizerTrainer {
         e.printStackTrace();
       }
     }
+    if (Flags.isFeatureHashing(params)) {
+      lemmatizerFactory.setFeatureHasher(new FeatureHasher(Flags
+          .getFeatureHashing(params)));
+    }
     return lemmatizerFactory;
   }
 
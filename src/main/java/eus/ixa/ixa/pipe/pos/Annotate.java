@@ -20,20 +20,24 @@ import ixa.kaflib.KAFDocument;
 import ixa.kaflib.Term;
 import ixa.kaflib.WF;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 
 import opennlp.tools.util.Span;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ListMultimap;
 
 import eus.ixa.ixa.pipe.lemma.StatisticalLemmatizer;
-import eus.ixa.ixa.pipe.lemma.dict.MorfologikLemmatizer;
-import eus.ixa.ixa.pipe.pos.dict.DictionaryTagger;
-import eus.ixa.ixa.pipe.pos.dict.MorfologikTagger;
+import eus.ixa.ixa.pipe.pos.dict.DictionaryAnalysis;
+import eus.ixa.ixa.pipe.pos.dict.MorfologikDictionary;
 import eus.ixa.ixa.pipe.pos.dict.MultiWordMatcher;
 
 /**
@@ -57,14 +61,26 @@ public class Annotate {
    * The language.
    */
   private final String lang;
+  /**
+   * The mapping of the postags to the KAF postags and term types.
+   */
+  private final TagSetMapping tagSetMapping;
   /**
    * The factory to build morpheme objects.
    */
   private final MorphoFactory morphoFactory;
   /**
-   * The dictionary lemmatizer.
+   * The lemmatizer and monosemic postag dictionaries.
+   */
+  private MorfologikDictionary morphoDictionary;
+  /**
+   * The URL of the lemmatizer dictionary.
+   */
+  private URL binLemmatizerURL;
+  /**
+   * The URL of the monosemic postag dictionary.
    */
-  private MorfologikLemmatizer dictLemmatizer;
+  private URL binDictMorphoTaggerURL;
   /**
    * If true detect multiwords.
    */
@@ -78,9 +94,35 @@ public class Annotate {
    */
   private final Boolean dictag;
   /**
-   * The monosemic dictionary postagger.
+   * If true lemmatize via dictionary first and use the statistical lemmatizer
+   * only for the words not found in the dictionary.
+   */
+  private final Boolean dictionaryFirst;
+  /**
+   * The sentence annotation cache, or null if not active.
+   */
+  private AnnotationCache annotationCache;
+  /**
+   * The persistent sentence annotation store, or null if not active.
+   */
+  private AnnotationStore annotationStore;
+  /**
+   * The postag and lemmatizer model files.
    */
-  private DictionaryTagger dictMorphoTagger;
+  private final File[] modelFiles;
+  /**
+   * The hash of the models, dictionaries and settings, computed when first
+   * needed.
+   */
+  private String modelIdentity;
+  /**
+   * The buffers of the sentence being annotated.
+   */
+  private final AnnotatedSentence sentence = new AnnotatedSentence();
+  /**
+   * The vocabulary of the tokens seen by this annotator.
+   */
+  private final TokenVocabulary vocabulary = new TokenVocabulary();
 
   /**
    * Construct an annotator with a {@code MorphoFactory}.
@@ -94,6 +136,9 @@ public class Annotate {
     this.lang = properties.getProperty("language");
     this.multiwords = Boolean.valueOf(properties.getProperty("multiwords"));
     this.dictag = Boolean.valueOf(properties.getProperty("dictag"));
+    this.dictionaryFirst = Boolean.valueOf(properties.getProperty("dictionaryFirst"));
+    this.modelFiles = new File[] { new File(properties.getProperty("model")),
+        new File(properties.getProperty("lemmatizerModel")) };
     if (this.multiwords) {
       this.multiWordMatcher = new MultiWordMatcher(properties);
       loadMorphoTaggerDicts(properties);
@@ -102,9 +147,67 @@ public class Annotate {
       loadMorphoTaggerDicts(properties);
     }
     loadLemmatizerDicts(properties);
+    if (this.binLemmatizerURL != null || this.binDictMorphoTaggerURL != null) {
+      try {
+        this.morphoDictionary = new MorfologikDictionary(this.binLemmatizerURL,
+            this.binDictMorphoTaggerURL);
+      } catch (final IOException e) {
+        e.printStackTrace();
+      }
+    }
     this.morphoFactory = new MorphoFactory();
     this.posTagger = new StatisticalTagger(properties, this.morphoFactory);
     this.lemmatizer = new StatisticalLemmatizer(properties, this.morphoFactory);
+    this.tagSetMapping = TagSetMapping.getSharedMapping(properties,
+        this.posTagger.getTags());
+    final int annotationCacheSize = Integer.parseInt(properties.getProperty(
+        "annotationCacheSize", "0"));
+    if (annotationCacheSize > 0) {
+      this.annotationCache = AnnotationCache.getSharedCache(properties,
+          annotationCacheSize);
+    }
+    final String annotationStoreDirectory = properties
+        .getProperty("annotationStore");
+    if (annotationStoreDirectory != null) {
+      loadAnnotationStore(annotationStoreDirectory);
+    }
+  }
+
+  /**
+   * Open the persistent annotation store for the models, dictionaries and
+   * settings of this annotator.
+   * 
+   * @param annotationStoreDirectory
+   *          the directory of the annotation stores
+   * @throws IOException
+   *           if io problems
+   */
+  private void loadAnnotationStore(final String annotationStoreDirectory)
+      throws IOException {
+    this.annotationStore = AnnotationStore.getSharedStore(new File(
+        annotationStoreDirectory), getModelIdentity());
+  }
+
+  /**
+   * Get the hash of the models, dictionaries and settings of this annotator,
+   * which identifies the annotations it produces.
+   * 
+   * @return the model identity
+   * @throws IOException
+   *           if the models or dictionaries can not be read
+   */
+  public final String getModelIdentity() throws IOException {
+    if (this.modelIdentity == null) {
+      final URL[] dictURLs = { this.binLemmatizerURL,
+          this.binDictMorphoTaggerURL };
+      final String multiWordDictHash = this.multiWordMatcher == null ? null
+          : this.multiWordMatcher.getDictionaryHash();
+      this.modelIdentity = AnnotationStore.getModelIdentity(this.modelFiles,
+          dictURLs, this.lang, this.multiwords.toString(),
+          this.dictag.toString(), this.dictionaryFirst.toString(),
+          multiWordDictHash);
+    }
+    return this.modelIdentity;
   }
 
   // TODO static loading of lemmatizer dictionaries
@@ -118,18 +221,12 @@ public class Annotate {
   private void loadLemmatizerDicts(final Properties props) {
     final String resourcesDirectory = props.getProperty("resourcesDirectory");
     final Resources resources = new Resources();
-    final URL binLemmatizerURL = resources.getBinaryDict(this.lang, resourcesDirectory);
-    if (binLemmatizerURL == null) {
+    this.binLemmatizerURL = resources.getBinaryDict(this.lang, resourcesDirectory);
+    if (this.binLemmatizerURL == null) {
       final String resourcesLocation = resourcesDirectory == null ? "src/main/resources" : resourcesDirectory;
       System.err
           .println("WARNING: No lemmatizer dictionary available for language "
               + this.lang + " in " + resourcesLocation + "!");
-    } else {
-      try {
-        this.dictLemmatizer = new MorfologikLemmatizer(binLemmatizerURL);
-      } catch (final IOException e) {
-        e.printStackTrace();
-      }
     }
 
   }
@@ -145,20 +242,14 @@ public class Annotate {
   private void loadMorphoTaggerDicts(final Properties props) {
     final String resourcesDirectory = props.getProperty("resourcesDirectory");
     final Resources resources = new Resources();
-    final URL binDictMorphoTaggerURL = resources.getBinaryTaggerDict(this.lang, resourcesDirectory);
-    if (binDictMorphoTaggerURL == null) {
+    this.binDictMorphoTaggerURL = resources.getBinaryTaggerDict(this.lang, resourcesDirectory);
+    if (this.binDictMorphoTaggerURL == null) {
       final String resourcesLocation = resourcesDirectory == null ? "src/main/resources" : resourcesDirectory;
       System.err
           .println("ERROR: No binary POS tagger dictionary available for language "
               + this.lang + " in " + resourcesLocation + "!!");
       System.exit(1);
     }
-    try {
-      this.dictMorphoTagger = new MorfologikTagger(binDictMorphoTaggerURL,
-          this.lang);
-    } catch (final IOException e) {
-      e.printStackTrace();
-    }
   }
 
  
@@ -170,11 +261,32 @@ public class Annotate {
    *          the NAF document
    */
   public final void annotatePOSToKAF(final KAFDocument kaf) {
+    annotatePOSToKAF(kaf, null);
+  }
+
+  /**
+   * Annotate morphological information into a NAF document incrementally.
+   * The terms of the sentences whose words have not changed with respect to a
+   * previous version of the document are copied from it; only the new or
+   * edited sentences are tagged and lemmatized.
+   * 
+   * @param kaf
+   *          the NAF document
+   * @param previousAnnotations
+   *          the terms of the previous version of the document, or null
+   * @return the number of sentences copied from the previous version
+   */
+  public final int annotatePOSToKAF(final KAFDocument kaf,
+      final PreviousAnnotations previousAnnotations) {
+    int copiedSentences = 0;
     final List<List<WF>> sentences = kaf.getSentences();
     for (final List<WF> wfs : sentences) {
-
+      if (previousAnnotations != null
+          && previousAnnotations.copyTerms(kaf, wfs)) {
+        copiedSentences++;
+        continue;
+      }
       final List<ixa.kaflib.Span<WF>> tokenSpans = new ArrayList<ixa.kaflib.Span<WF>>();
-      List<Morpheme> morphemes = null;
       final String[] tokens = new String[wfs.size()];
       for (int i = 0; i < wfs.size(); i++) {
         tokens[i] = wfs.get(i).getForm();
@@ -182,61 +294,216 @@ public class Annotate {
         wfTarget.add(wfs.get(i));
         tokenSpans.add(KAFDocument.newWFSpan(wfTarget));
       }
-      if (this.multiwords) {
-        final String[] multiWordTokens = this.multiWordMatcher
-            .getTokensWithMultiWords(tokens);
-        List<String> posTags = this.posTagger.posAnnotate(multiWordTokens);
-        String[] posTagsArray = new String[posTags.size()];
-        posTagsArray = posTags.toArray(posTagsArray);
-        morphemes = this.lemmatizer.getMorphemes(multiWordTokens, posTagsArray);
-        getMultiWordSpans(tokens, wfs, tokenSpans);
-      } else {
-        List<String> posTags = this.posTagger.posAnnotate(tokens);
-        String[] posTagsArray = new String[posTags.size()];
-        posTagsArray = posTags.toArray(posTagsArray);
-        morphemes = this.lemmatizer.getMorphemes(tokens, posTagsArray);
-      }
-      for (int i = 0; i < morphemes.size(); i++) {
+      final AnnotatedSentence annotated = annotateSentence(tokens, wfs,
+          tokenSpans);
+      for (int i = 0; i < annotated.getLength(); i++) {
         final Term term = kaf.newTerm(tokenSpans.get(i));
-        if (this.dictag || multiwords) {
-          final String dictPosTag = this.dictMorphoTagger.tag(morphemes.get(i)
-              .getWord(), morphemes.get(i).getTag());
-          morphemes.get(i).setTag(dictPosTag);
+        final String posId = this.tagSetMapping.getPosId(annotated.getTag(i));
+        final String type = this.tagSetMapping.getTermType(annotated.getTag(i));
+        term.setType(type);
+        term.setLemma(annotated.getLemma(i));
+        term.setPos(posId);
+        term.setMorphofeat(annotated.getTag(i));
+      }
+    }
+    return copiedSentences;
+  }
+
+  /**
+   * Get the final postags and lemmas of a sentence of a NAF document.
+   * 
+   * @param tokens
+   *          the tokens of the sentence
+   * @param wfs
+   *          the WFs of the sentence
+   * @param tokenSpans
+   *          the token spans, modified if multiwords are detected
+   * @return the annotated sentence, valid until the next sentence is annotated
+   */
+  private AnnotatedSentence annotateSentence(final String[] tokens,
+      final List<WF> wfs, final List<ixa.kaflib.Span<WF>> tokenSpans) {
+    final Span[] multiWordSpans = annotateTokens(tokens);
+    if (this.multiwords) {
+      getMultiWordSpans(multiWordSpans, wfs, tokenSpans);
+    }
+    return this.sentence;
+  }
+
+  /**
+   * Get the final postags and lemmas of a sentence, after multiword detection
+   * and dictionary post-processing, into the sentence buffers. If the
+   * annotation cache is active and the sentence has already been annotated,
+   * the cached annotation is used; otherwise the persistent annotation store,
+   * if active, is looked up.
+   * 
+   * @param tokens
+   *          the tokens of the sentence
+   * @return the multiword spans or null if multiwords are not detected
+   */
+  private Span[] annotateTokens(final String[] tokens) {
+    final AnnotationCache.CachedSentence cached = getCachedSentence(tokens);
+    if (cached != null) {
+      cached.copyTo(this.sentence);
+      return cached.getMultiWordSpans();
+    }
+    final String[] lowerCaseTokens = this.vocabulary.getLowerCase(tokens);
+    String[] sentenceTokens = tokens;
+    String[] sentenceLowerCaseTokens = lowerCaseTokens;
+    Span[] multiWordSpans = null;
+    if (this.multiwords) {
+      multiWordSpans = this.multiWordMatcher
+          .lowerCaseMultiWordsToSpans(lowerCaseTokens);
+      sentenceTokens = this.multiWordMatcher.getTokensWithMultiWords(tokens,
+          multiWordSpans);
+      sentenceLowerCaseTokens = this.multiWordMatcher.getTokensWithMultiWords(
+          lowerCaseTokens, multiWordSpans);
+    }
+    this.sentence.reset(sentenceTokens, sentenceLowerCaseTokens);
+    this.posTagger.annotate(this.sentence);
+    final DictionaryAnalysis[] analyses = getDictionaryAnalyses(
+        sentenceLowerCaseTokens);
+    lemmatize(this.sentence, analyses);
+    if (!isDictionaryFirst()) {
+      for (int i = 0; i < this.sentence.getLength(); i++) {
+        if (this.dictag || this.multiwords) {
+          this.sentence.setTag(i, analyses[i].getTag(this.sentence.getTag(i)));
         }
-        final String posId = Resources.getKafTagSet(morphemes.get(i).getTag(), lang);
-        final String type = Resources.setTermType(posId);
         // dictionary lemmatizer overwrites probabilistic predictions if
         // lemma is not equal to "O"
-        if (this.dictLemmatizer != null) {
-          final String lemma = this.dictLemmatizer.apply(morphemes.get(i)
-              .getWord(), morphemes.get(i).getTag());
+        if (hasLemmatizerDict()) {
+          final String lemma = analyses[i].getLemma(this.sentence.getTag(i));
           if (!lemma.equalsIgnoreCase("O")) {
-            morphemes.get(i).setLemma(lemma);
+            this.sentence.setLemma(i, lemma);
           }
         }
-        term.setType(type);
-        term.setLemma(morphemes.get(i).getLemma());
-        term.setPos(posId);
-        term.setMorphofeat(morphemes.get(i).getTag());
       }
     }
+    if (this.annotationCache != null || this.annotationStore != null) {
+      final AnnotationCache.CachedSentence annotated = new AnnotationCache.CachedSentence(
+          this.sentence, multiWordSpans);
+      if (this.annotationCache != null) {
+        this.annotationCache.put(tokens, annotated);
+      }
+      if (this.annotationStore != null) {
+        try {
+          this.annotationStore.putIfAbsent(tokens, annotated);
+        } catch (final IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+    return multiWordSpans;
+  }
+
+  /**
+   * Look up a sentence in the annotation cache and then in the persistent
+   * annotation store. Sentences found in the store are added to the cache.
+   * 
+   * @param tokens
+   *          the tokens of the sentence
+   * @return the annotation or null if the sentence was not found
+   */
+  private AnnotationCache.CachedSentence getCachedSentence(
+      final String[] tokens) {
+    AnnotationCache.CachedSentence cached = null;
+    if (this.annotationCache != null) {
+      cached = this.annotationCache.get(tokens);
+    }
+    if (cached == null && this.annotationStore != null) {
+      try {
+        cached = this.annotationStore.get(tokens);
+      } catch (final IOException e) {
+        e.printStackTrace();
+      }
+      if (cached != null && this.annotationCache != null) {
+        this.annotationCache.put(tokens, cached);
+      }
+    }
+    return cached;
+  }
+
+  /**
+   * Get the lemmas for a pos tagged sentence. By default the statistical
+   * lemmatizer is applied to every token. In dictionary first mode, the
+   * monosemic dictionary postags and the dictionary lemmas are obtained first
+   * and the statistical lemmatizer is only used for the tokens not found in
+   * the lemmatizer dictionary.
+   * 
+   * @param annotated
+   *          the sentence with the postags assigned by the statistical tagger
+   * @param analyses
+   *          the dictionary analyses of the tokens
+   */
+  private void lemmatize(final AnnotatedSentence annotated,
+      final DictionaryAnalysis[] analyses) {
+    if (!isDictionaryFirst()) {
+      this.lemmatizer.annotate(annotated);
+      return;
+    }
+    final String[] dictLemmas = new String[annotated.getLength()];
+    final String[] dictPosTags = new String[annotated.getLength()];
+    for (int i = 0; i < annotated.getLength(); i++) {
+      dictPosTags[i] = annotated.getTag(i);
+      if (this.dictag || this.multiwords) {
+        dictPosTags[i] = analyses[i].getTag(annotated.getTag(i));
+      }
+      final String lemma = analyses[i].getLemma(dictPosTags[i]);
+      if (!lemma.equalsIgnoreCase("O")) {
+        dictLemmas[i] = lemma;
+      }
+    }
+    this.lemmatizer.annotate(annotated, dictLemmas);
+    System.arraycopy(dictPosTags, 0, annotated.getTags(), 0,
+        dictPosTags.length);
+  }
+
+  /**
+   * Whether lemmatization is performed via dictionary first. It requires a
+   * lemmatizer dictionary for the language.
+   * 
+   * @return true if dictionary first lemmatization is active
+   */
+  private boolean isDictionaryFirst() {
+    return this.dictionaryFirst && hasLemmatizerDict();
+  }
+
+  /**
+   * Whether a lemmatizer dictionary is available for the language.
+   * 
+   * @return true if the lemmatizer dictionary was loaded
+   */
+  private boolean hasLemmatizerDict() {
+    return this.morphoDictionary != null && this.morphoDictionary.hasLemmas();
+  }
+
+  /**
+   * Look up the tokens of a sentence in the dictionaries, once per token.
+   * 
+   * @param lowerCaseTokens
+   *          the lowercased tokens
+   * @return the analyses or null if no dictionary is available
+   */
+  private DictionaryAnalysis[] getDictionaryAnalyses(
+      final String[] lowerCaseTokens) {
+    if (this.morphoDictionary == null) {
+      return null;
+    }
+    return this.morphoDictionary.lookupLowerCase(lowerCaseTokens);
   }
 
   /**
    * Creates the multiword spans. It gets an initial list of spans (one per
    * token) and creates a multiword span when a multiword is detected.
    * 
-   * @param tokens
-   *          the list of tokens
+   * @param multiWordSpans
+   *          the multiword spans detected in the tokens
    * @param wfs
    *          the list of WFs
    * @param tokenSpans
    *          the list of initial token spans
    */
-  private void getMultiWordSpans(final String[] tokens, final List<WF> wfs,
-      final List<ixa.kaflib.Span<WF>> tokenSpans) {
-    final Span[] multiWordSpans = this.multiWordMatcher
-        .multiWordsToSpans(tokens);
+  private void getMultiWordSpans(final Span[] multiWordSpans,
+      final List<WF> wfs, final List<ixa.kaflib.Span<WF>> tokenSpans) {
     int counter = 0;
     for (final Span mwSpan : multiWordSpans) {
       final Integer fromIndex = mwSpan.getStart() - counter;
@@ -268,12 +535,28 @@ public class Annotate {
    */
   public final String annotatePOSToCoNLL(final KAFDocument kaf)
       throws IOException {
-    final StringBuilder sb = new StringBuilder();
+    final StringWriter stringWriter = new StringWriter();
+    annotatePOSToCoNLL(kaf, stringWriter);
+    return stringWriter.toString();
+  }
+
+  /**
+   * Annotate morphological information in tabulated CoNLL-style format,
+   * writing every sentence as soon as it is annotated.
+   * 
+   * @param kaf
+   *          the naf input document
+   * @param writer
+   *          the output; it is not flushed nor closed
+   * @throws IOException
+   *           throws io exception
+   */
+  public final void annotatePOSToCoNLL(final KAFDocument kaf,
+      final Writer writer) throws IOException {
     final List<List<WF>> sentences = kaf.getSentences();
     for (final List<WF> wfs : sentences) {
 
       final List<ixa.kaflib.Span<WF>> tokenSpans = new ArrayList<ixa.kaflib.Span<WF>>();
-      List<Morpheme> morphemes = null;
       // Get an array of token forms from a list of WF objects.
       final String[] tokens = new String[wfs.size()];
       for (int i = 0; i < wfs.size(); i++) {
@@ -282,44 +565,111 @@ public class Annotate {
         wfTarget.add(wfs.get(i));
         tokenSpans.add(KAFDocument.newWFSpan(wfTarget));
       }
-      if (this.multiwords) {
-        final String[] multiWordTokens = this.multiWordMatcher
-            .getTokensWithMultiWords(tokens);
-        List<String> posTags = this.posTagger.posAnnotate(multiWordTokens);
-        String[] posTagsArray = new String[posTags.size()];
-        posTagsArray = posTags.toArray(posTagsArray);
-        morphemes = this.lemmatizer.getMorphemes(multiWordTokens, posTagsArray);
-        getMultiWordSpans(tokens, wfs, tokenSpans);
-      } else {
-        List<String> posTags = this.posTagger.posAnnotate(tokens);
-        String[] posTagsArray = new String[posTags.size()];
-        posTagsArray = posTags.toArray(posTagsArray);
-        morphemes = this.lemmatizer.getMorphemes(tokens, posTagsArray);
-      }
-      for (int i = 0; i < morphemes.size(); i++) {
-        final String posTag = morphemes.get(i).getTag();
-        final String word = morphemes.get(i).getWord();
-        if (this.dictag || this.multiwords) {
-          final String dictPosTag = this.dictMorphoTagger.tag(word, posTag);
-          morphemes.get(i).setTag(dictPosTag);
-        }
-        // dictionary lemmatizer overwrites probabilistic predictions
-        // if lemma is not equal to word
-        if (this.dictLemmatizer != null) {
-          final String lemma = this.dictLemmatizer.apply(word, morphemes.get(i)
-              .getTag());
-          if (!lemma.equalsIgnoreCase("O")) {
-            morphemes.get(i).setLemma(lemma);
-          }
-        }
-        sb.append(word).append("\t").append(morphemes.get(i).getLemma())
-            .append("\t").append(morphemes.get(i).getTag()).append("\n");
+      final AnnotatedSentence annotated = annotateSentence(tokens, wfs,
+          tokenSpans);
+      for (int i = 0; i < annotated.getLength(); i++) {
+        writer.write(annotated.getToken(i));
+        writer.write("\t");
+        writer.write(annotated.getLemma(i));
+        writer.write("\t");
+        writer.write(annotated.getTag(i));
+        writer.write("\n");
       }
-      sb.append("\n");
+      writer.write("\n");
     }
-    return sb.toString();
   }
   
+  /**
+   * Annotate a tokenized sentence without building a NAF document. Multiwords,
+   * dictionary postags and dictionary lemmas are applied as in
+   * {@link #annotatePOSToKAF(KAFDocument)}.
+   * 
+   * @param tokens
+   *          the tokens of the sentence
+   * @return the annotation of the sentence
+   */
+  public final SentenceAnnotation annotate(final String[] tokens) {
+    final Span[] multiWordSpans = annotateTokens(tokens);
+    return new SentenceAnnotation(this.sentence, this.tagSetMapping,
+        multiWordSpans);
+  }
+
+  /**
+   * Annotate a batch of tokenized sentences without building a NAF document.
+   * 
+   * @param sentences
+   *          the tokens of each sentence
+   * @return the annotation of each sentence
+   */
+  public final SentenceAnnotation[] annotate(final String[][] sentences) {
+    final SentenceAnnotation[] annotations = new SentenceAnnotation[sentences.length];
+    for (int i = 0; i < sentences.length; i++) {
+      annotations[i] = annotate(sentences[i]);
+    }
+    return annotations;
+  }
+
+  /**
+   * Annotate tokenized sentences lazily, as the returned iterator is consumed.
+   * 
+   * @param sentences
+   *          the iterator over the tokens of each sentence
+   * @return the iterator over the annotation of each sentence
+   */
+  public final Iterator<SentenceAnnotation> annotate(
+      final Iterator<String[]> sentences) {
+    return new Iterator<SentenceAnnotation>() {
+      public boolean hasNext() {
+        return sentences.hasNext();
+      }
+
+      public SentenceAnnotation next() {
+        return annotate(sentences.next());
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Get the statistics of the sentence annotation cache.
+   * 
+   * @return the cache statistics or null if the cache is not active
+   */
+  public final CacheStats getAnnotationCacheStats() {
+    return this.annotationCache == null ? null : this.annotationCache
+        .getStats();
+  }
+
+  /**
+   * Get the cache of the word features of the postagger.
+   * 
+   * @return the word feature cache or null if the model does not use one
+   */
+  public final WordFeatureCache getPosFeatureCache() {
+    return this.posTagger.getWordFeatureCache();
+  }
+
+  /**
+   * Get the cache of the word features of the lemmatizer.
+   * 
+   * @return the word feature cache
+   */
+  public final WordFeatureCache getLemmaFeatureCache() {
+    return this.lemmatizer.getWordFeatureCache();
+  }
+
+  /**
+   * Get the persistent sentence annotation store.
+   * 
+   * @return the annotation store or null if the store is not active
+   */
+  public final AnnotationStore getAnnotationStore() {
+    return this.annotationStore;
+  }
+
   /**
    * Add all postags and lemmas to morphofeat attribute.
    * @param kaf the NAF document
@@ -343,12 +693,13 @@ public class Annotate {
       for (int i = 0; i < tokens.length; i++) {
         final Term term = kaf.newTerm(tokenSpans.get(i));
         List<String> posLemmaValues = morphMap.get(tokens[i]);
-        if (this.dictLemmatizer != null) {
-          dictLemmatizer.getAllPosLemmas(tokens[i], posLemmaValues);
+        if (hasLemmatizerDict()) {
+          this.morphoDictionary.lookupCaseSensitive(tokens[i]).getAllPosLemmas(
+              posLemmaValues);
         }
         String allPosLemmasSet = StringUtils.getSetStringFromList(posLemmaValues);
-        final String posId = Resources.getKafTagSet(allPosTags[0][i], lang);
-        final String type = Resources.setTermType(posId);
+        final String posId = this.tagSetMapping.getPosId(allPosTags[0][i]);
+        final String type = this.tagSetMapping.getTermType(allPosTags[0][i]);
         term.setType(type);
         term.setLemma(posLemmaValues.get(0).split("#")[1]);
         term.setPos(posId);
@@ -363,7 +714,25 @@ public class Annotate {
    * @return the output in tabulated format
    */
   public final String getAllTagsLemmasToCoNLL(final KAFDocument kaf) {
-    final StringBuilder sb = new StringBuilder();
+    final StringWriter stringWriter = new StringWriter();
+    try {
+      getAllTagsLemmasToCoNLL(kaf, stringWriter);
+    } catch (final IOException e) {
+      // a StringWriter does not throw
+      throw new IllegalStateException(e);
+    }
+    return stringWriter.toString();
+  }
+
+  /**
+   * Give all lemmas and tags possible for a sentence in conll tabulated format,
+   * writing every sentence as soon as it is analyzed.
+   * @param kaf the NAF document
+   * @param writer the output; it is not flushed nor closed
+   * @throws IOException if io problems
+   */
+  public final void getAllTagsLemmasToCoNLL(final KAFDocument kaf,
+      final Writer writer) throws IOException {
     final List<List<WF>> sentences = kaf.getSentences();
     for (final List<WF> wfs : sentences) {
 
@@ -380,15 +749,18 @@ public class Annotate {
       ListMultimap<String, String> morphMap = lemmatizer.getMultipleLemmas(tokens, allPosTags);
       for (int i = 0; i < tokens.length; i++) {
         List<String> posLemmaValues = morphMap.get(tokens[i]);
-        if (this.dictLemmatizer != null) {
-          dictLemmatizer.getAllPosLemmas(tokens[i], posLemmaValues);
+        if (hasLemmatizerDict()) {
+          this.morphoDictionary.lookupCaseSensitive(tokens[i]).getAllPosLemmas(
+              posLemmaValues);
         }
         String allPosLemmasSet = StringUtils.getSetStringFromList(posLemmaValues);
-        sb.append(tokens[i]).append("\t").append(allPosLemmasSet).append("\n");
+        writer.write(tokens[i]);
+        writer.write("\t");
+        writer.write(allPosLemmasSet);
+        writer.write("\n");
       }
-      sb.append("\n");
+      writer.write("\n");
     }
-    return sb.toString();
   }
 
 }
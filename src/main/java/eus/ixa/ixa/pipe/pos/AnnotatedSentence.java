@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tokens, postags and lemmas of a sentence stored as parallel arrays. The
+ * postag and lemma buffers are reused across sentences and only grow when a
+ * longer sentence is annotated, so that annotating a sentence does not create
+ * one {@link Morpheme} object per token. The buffers may be longer than the
+ * sentence; only the first {@link #getLength()} elements are valid.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class AnnotatedSentence {
+
+  /**
+   * The tokens of the sentence.
+   */
+  private String[] tokens;
+  /**
+   * The lowercased tokens, or null until they are needed.
+   */
+  private String[] lowerCaseTokens;
+  /**
+   * The postags buffer.
+   */
+  private String[] tags;
+  /**
+   * The lemmas buffer.
+   */
+  private String[] lemmas;
+
+  /**
+   * Construct an empty sentence.
+   */
+  public AnnotatedSentence() {
+    this(0);
+  }
+
+  /**
+   * Construct an empty sentence with buffers for the given number of tokens.
+   *
+   * @param capacity
+   *          the initial capacity of the buffers
+   */
+  public AnnotatedSentence(final int capacity) {
+    this.tokens = new String[0];
+    this.tags = new String[capacity];
+    this.lemmas = new String[capacity];
+  }
+
+  /**
+   * Construct a sentence for the given tokens.
+   *
+   * @param aTokens
+   *          the tokens
+   */
+  public AnnotatedSentence(final String[] aTokens) {
+    this(aTokens.length);
+    reset(aTokens);
+  }
+
+  /**
+   * Start annotating a new sentence, reusing the buffers. The token array is
+   * not copied.
+   *
+   * @param aTokens
+   *          the tokens of the new sentence
+   */
+  public final void reset(final String[] aTokens) {
+    reset(aTokens, null);
+  }
+
+  /**
+   * Start annotating a new sentence whose lowercased tokens are already known,
+   * reusing the buffers. The token arrays are not copied.
+   *
+   * @param aTokens
+   *          the tokens of the new sentence
+   * @param aLowerCaseTokens
+   *          the lowercased tokens or null to compute them when needed
+   */
+  public final void reset(final String[] aTokens,
+      final String[] aLowerCaseTokens) {
+    this.tokens = aTokens;
+    this.lowerCaseTokens = aLowerCaseTokens;
+    if (this.tags.length < aTokens.length) {
+      final int capacity = Math.max(aTokens.length, this.tags.length * 2);
+      this.tags = new String[capacity];
+      this.lemmas = new String[capacity];
+    } else {
+      Arrays.fill(this.tags, 0, aTokens.length, null);
+      Arrays.fill(this.lemmas, 0, aTokens.length, null);
+    }
+  }
+
+  /**
+   * Get the number of tokens of the sentence.
+   *
+   * @return the number of tokens
+   */
+  public final int getLength() {
+    return this.tokens.length;
+  }
+
+  /**
+   * Get the tokens of the sentence.
+   *
+   * @return the tokens
+   */
+  public final String[] getTokens() {
+    return this.tokens;
+  }
+
+  /**
+   * Get the lowercased tokens of the sentence.
+   *
+   * @return the lowercased tokens
+   */
+  public final String[] getLowerCaseTokens() {
+    if (this.lowerCaseTokens == null) {
+      this.lowerCaseTokens = new String[this.tokens.length];
+      for (int i = 0; i < this.tokens.length; i++) {
+        this.lowerCaseTokens[i] = this.tokens[i].toLowerCase();
+      }
+    }
+    return this.lowerCaseTokens;
+  }
+
+  /**
+   * Get the postags buffer. It may be longer than the sentence.
+   *
+   * @return the postags buffer
+   */
+  public final String[] getTags() {
+    return this.tags;
+  }
+
+  /**
+   * Get the lemmas buffer. It may be longer than the sentence.
+   *
+   * @return the lemmas buffer
+   */
+  public final String[] getLemmas() {
+    return this.lemmas;
+  }
+
+  /**
+   * Get a token of the sentence.
+   *
+   * @param i
+   *          the index of the token
+   * @return the token
+   */
+  public final String getToken(final int i) {
+    return this.tokens[i];
+  }
+
+  /**
+   * Get the postag of a token.
+   *
+   * @param i
+   *          the index of the token
+   * @return the postag
+   */
+  public final String getTag(final int i) {
+    return this.tags[i];
+  }
+
+  /**
+   * Set the postag of a token.
+   *
+   * @param i
+   *          the index of the token
+   * @param tag
+   *          the postag
+   */
+  public final void setTag(final int i, final String tag) {
+    this.tags[i] = tag;
+  }
+
+  /**
+   * Get the lemma of a token.
+   *
+   * @param i
+   *          the index of the token
+   * @return the lemma
+   */
+  public final String getLemma(final int i) {
+    return this.lemmas[i];
+  }
+
+  /**
+   * Set the lemma of a token.
+   *
+   * @param i
+   *          the index of the token
+   * @param lemma
+   *          the lemma
+   */
+  public final void setLemma(final int i, final String lemma) {
+    this.lemmas[i] = lemma;
+  }
+
+  /**
+   * Create {@code Morpheme} objects from the sentence.
+   *
+   * @param morphoFactory
+   *          the morpho factory
+   * @return a list of morpheme objects
+   */
+  public final List<Morpheme> toMorphemes(final MorphoFactory morphoFactory) {
+    final List<Morpheme> morphemes = new ArrayList<Morpheme>(getLength());
+    for (int i = 0; i < getLength(); i++) {
+      morphemes.add(morphoFactory.createMorpheme(this.tokens[i], this.tags[i],
+          this.lemmas[i]));
+    }
+    return morphemes;
+  }
+
+}
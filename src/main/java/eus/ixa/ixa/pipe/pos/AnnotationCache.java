@@ -0,0 +1,260 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import opennlp.tools.util.Span;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Bounded LRU cache of sentence annotations. The keys are the tokens of the
+ * sentences and the values the final postags and lemmas, after multiword
+ * detection and dictionary post-processing, so that a repeated sentence skips
+ * every annotation stage. A cache is shared by every annotator using the same
+ * models and settings.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class AnnotationCache {
+
+  /**
+   * The caches for every model identity. The keys of the hashmap are built from
+   * the models, language and settings of the annotator.
+   */
+  private final static ConcurrentHashMap<String, AnnotationCache> annotationCaches = new ConcurrentHashMap<String, AnnotationCache>();
+  /**
+   * The properties that identify the output of an annotator.
+   */
+  private static final String[] IDENTITY_PROPERTIES = { "language", "model",
+      "lemmatizerModel", "multiwords", "dictag", "dictionaryFirst",
+      "resourcesDirectory" };
+  /**
+   * The sentence annotations.
+   */
+  private final Cache<List<String>, CachedSentence> cache;
+
+  /**
+   * Construct an annotation cache.
+   *
+   * @param maximumSize
+   *          the maximum number of sentences cached
+   */
+  public AnnotationCache(final long maximumSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+        .recordStats().build();
+  }
+
+  /**
+   * Get the annotation cache shared by the annotators with the same models and
+   * settings. The maximum size is set by the first annotator requesting the
+   * cache.
+   *
+   * @param props
+   *          the properties of the annotator
+   * @param maximumSize
+   *          the maximum number of sentences cached
+   * @return the annotation cache
+   */
+  public static AnnotationCache getSharedCache(final Properties props,
+      final long maximumSize) {
+    final String identity = getModelIdentity(props);
+    AnnotationCache annotationCache = annotationCaches.get(identity);
+    if (annotationCache == null) {
+      annotationCache = new AnnotationCache(maximumSize);
+      final AnnotationCache previous = annotationCaches.putIfAbsent(identity,
+          annotationCache);
+      if (previous != null) {
+        annotationCache = previous;
+      }
+    }
+    return annotationCache;
+  }
+
+  /**
+   * Build the model identity of an annotator from its properties.
+   *
+   * @param props
+   *          the properties
+   * @return the model identity
+   */
+  private static String getModelIdentity(final Properties props) {
+    final StringBuilder sb = new StringBuilder();
+    for (final String property : IDENTITY_PROPERTIES) {
+      sb.append(property).append('=').append(props.getProperty(property))
+          .append('\t');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Get the cached annotation of a sentence.
+   *
+   * @param tokens
+   *          the tokens of the sentence
+   * @return the annotation or null if not cached
+   */
+  public final CachedSentence get(final String[] tokens) {
+    return this.cache.getIfPresent(Arrays.asList(tokens));
+  }
+
+  /**
+   * Cache the annotation of a sentence.
+   *
+   * @param tokens
+   *          the tokens of the sentence
+   * @param cachedSentence
+   *          the annotation of the sentence
+   */
+  public final void put(final String[] tokens,
+      final CachedSentence cachedSentence) {
+    this.cache.put(Arrays.asList(tokens.clone()), cachedSentence);
+  }
+
+  /**
+   * Get the statistics of the cache.
+   *
+   * @return the cache statistics
+   */
+  public final CacheStats getStats() {
+    return this.cache.stats();
+  }
+
+  /**
+   * Get the number of sentences cached.
+   *
+   * @return the number of sentences
+   */
+  public final long size() {
+    return this.cache.size();
+  }
+
+  /**
+   * The immutable annotation of a sentence.
+   */
+  public static final class CachedSentence {
+
+    /**
+     * The words, multiwords included.
+     */
+    private final String[] words;
+    /**
+     * The final postags.
+     */
+    private final String[] tags;
+    /**
+     * The final lemmas.
+     */
+    private final String[] lemmas;
+    /**
+     * The multiword spans, or null.
+     */
+    private final Span[] multiWordSpans;
+
+    /**
+     * Construct a cached sentence from a copy of an annotated sentence.
+     *
+     * @param sentence
+     *          the annotated sentence
+     * @param aMultiWordSpans
+     *          the multiword spans or null
+     */
+    public CachedSentence(final AnnotatedSentence sentence,
+        final Span[] aMultiWordSpans) {
+      this.words = sentence.getTokens().clone();
+      this.tags = Arrays.copyOf(sentence.getTags(), sentence.getLength());
+      this.lemmas = Arrays.copyOf(sentence.getLemmas(), sentence.getLength());
+      this.multiWordSpans = aMultiWordSpans;
+    }
+
+    /**
+     * Construct a cached sentence from its words, postags and lemmas.
+     *
+     * @param aWords
+     *          the words
+     * @param aTags
+     *          the postags
+     * @param aLemmas
+     *          the lemmas
+     * @param aMultiWordSpans
+     *          the multiword spans or null
+     */
+    CachedSentence(final String[] aWords, final String[] aTags,
+        final String[] aLemmas, final Span[] aMultiWordSpans) {
+      this.words = aWords;
+      this.tags = aTags;
+      this.lemmas = aLemmas;
+      this.multiWordSpans = aMultiWordSpans;
+    }
+
+    /**
+     * Copy the cached annotation into a sentence, reusing its buffers.
+     *
+     * @param sentence
+     *          the sentence
+     */
+    public void copyTo(final AnnotatedSentence sentence) {
+      sentence.reset(this.words);
+      System.arraycopy(this.tags, 0, sentence.getTags(), 0, this.tags.length);
+      System.arraycopy(this.lemmas, 0, sentence.getLemmas(), 0,
+          this.lemmas.length);
+    }
+
+    /**
+     * Get the multiword spans of the sentence.
+     *
+     * @return the multiword spans or null
+     */
+    public Span[] getMultiWordSpans() {
+      return this.multiWordSpans;
+    }
+
+    /**
+     * Get the words of the sentence.
+     *
+     * @return the words
+     */
+    String[] getWords() {
+      return this.words;
+    }
+
+    /**
+     * Get the postags of the sentence.
+     *
+     * @return the postags
+     */
+    String[] getTags() {
+      return this.tags;
+    }
+
+    /**
+     * Get the lemmas of the sentence.
+     *
+     * @return the lemmas
+     */
+    String[] getLemmas() {
+      return this.lemmas;
+    }
+  }
+
+}
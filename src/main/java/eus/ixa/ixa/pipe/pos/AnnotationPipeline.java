@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Ordered multi-threaded annotation of a stream of tokenized sentences with
+ * back-pressure. Sentences are read from the source only when there is room
+ * in a window of sentences in flight, and the window is only refilled as the
+ * consumer takes the annotated sentences, in the same order as the source.
+ * Memory is thus bounded by the window size and by the consumer demand, not
+ * by the size of the input.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class AnnotationPipeline {
+
+  /**
+   * The asynchronous annotator running the sentences.
+   */
+  private final AsyncAnnotator annotator;
+  /**
+   * The maximum number of sentences in flight.
+   */
+  private final int maxInFlight;
+
+  /**
+   * Construct an annotation pipeline.
+   *
+   * @param properties
+   *          the properties to create the annotators
+   * @param numThreads
+   *          the number of worker threads
+   * @param aMaxInFlight
+   *          the maximum number of sentences read from the source and not yet
+   *          taken by the consumer
+   */
+  public AnnotationPipeline(final Properties properties, final int numThreads,
+      final int aMaxInFlight) {
+    this.annotator = new AsyncAnnotator(properties, numThreads, aMaxInFlight);
+    this.maxInFlight = aMaxInFlight;
+  }
+
+  /**
+   * Annotate a stream of tokenized sentences. The source is read as the
+   * returned iterator is consumed; the iterator is not thread safe.
+   *
+   * @param sentences
+   *          the source of tokenized sentences
+   * @return the annotated sentences, in the order of the source
+   */
+  public final Iterator<SentenceAnnotation> annotate(
+      final Iterator<String[]> sentences) {
+    return new OrderedIterator(sentences);
+  }
+
+  /**
+   * Stop the worker threads once the sentences in flight are annotated.
+   *
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the time unit of the timeout
+   * @return true if every sentence finished before the timeout
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public final boolean shutdown(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    return this.annotator.shutdown(timeout, unit);
+  }
+
+  /**
+   * Iterator over the annotated sentences keeping a window of sentences in
+   * flight.
+   */
+  private class OrderedIterator implements Iterator<SentenceAnnotation> {
+
+    private final Iterator<String[]> source;
+    private final Queue<ListenableFuture<SentenceAnnotation>> window = new ArrayDeque<ListenableFuture<SentenceAnnotation>>();
+
+    OrderedIterator(final Iterator<String[]> aSource) {
+      this.source = aSource;
+    }
+
+    /**
+     * Submit sentences from the source until the window is full.
+     */
+    private void fill() {
+      while (this.window.size() < AnnotationPipeline.this.maxInFlight
+          && this.source.hasNext()) {
+        this.window.add(AnnotationPipeline.this.annotator
+            .annotateWaiting(this.source.next()));
+      }
+    }
+
+    public boolean hasNext() {
+      fill();
+      return !this.window.isEmpty();
+    }
+
+    public SentenceAnnotation next() {
+      fill();
+      final ListenableFuture<SentenceAnnotation> next = this.window.poll();
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      final SentenceAnnotation annotation = Futures.getUnchecked(next);
+      // keep the workers busy while the consumer processes this sentence
+      fill();
+      return annotation;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
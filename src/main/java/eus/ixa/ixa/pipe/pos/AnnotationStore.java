@@ -0,0 +1,466 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import opennlp.tools.util.Span;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import eus.ixa.ixa.pipe.pos.AnnotationCache.CachedSentence;
+
+/**
+ * File-backed store of sentence annotations persisting across runs. The
+ * annotations are appended to a log file named after the hash of the models,
+ * dictionaries and settings used to produce them, so that any change in the
+ * models automatically starts a new, empty store. The log is indexed by the
+ * hash of the sentence tokens when the store is opened; records truncated by
+ * an interrupted run are discarded.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class AnnotationStore {
+
+  /**
+   * The stores opened in this JVM. The keys of the hashmap are the log files.
+   */
+  private final static ConcurrentHashMap<File, AnnotationStore> annotationStores = new ConcurrentHashMap<File, AnnotationStore>();
+  /**
+   * The hashes of the contents of the models and dictionaries. The keys of the
+   * hashmap are the paths, sizes and modification times of the model files
+   * and the dictionary URLs, so that every file is only hashed once unless it
+   * changes.
+   */
+  private final static ConcurrentHashMap<String, byte[]> contentHashes = new ConcurrentHashMap<String, byte[]>();
+  /**
+   * Header of the log files.
+   */
+  private static final int MAGIC_NUMBER = 0x49504f53;
+  /**
+   * Version of the log format.
+   */
+  private static final int VERSION = 1;
+  /**
+   * Encoding of the strings in the log.
+   */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  /**
+   * Extension of the log files.
+   */
+  public static final String EXTENSION = ".annotations";
+  /**
+   * The log file.
+   */
+  private final File logFile;
+  /**
+   * The log.
+   */
+  private final RandomAccessFile log;
+  /**
+   * The offset of the records for every sentence token hash.
+   */
+  private final Map<Long, Long> index = new HashMap<Long, Long>();
+  /**
+   * Number of sentences found in the store.
+   */
+  private long hitCount;
+  /**
+   * Number of sentences not found in the store.
+   */
+  private long missCount;
+
+  /**
+   * Open or create an annotation store.
+   *
+   * @param aLogFile
+   *          the log file
+   * @throws IOException
+   *           if the log file is not an annotation store or io problems
+   */
+  public AnnotationStore(final File aLogFile) throws IOException {
+    this.logFile = aLogFile;
+    this.log = new RandomAccessFile(aLogFile, "rw");
+    if (this.log.length() == 0) {
+      this.log.writeInt(MAGIC_NUMBER);
+      this.log.writeInt(VERSION);
+    } else if (this.log.length() < 8 || this.log.readInt() != MAGIC_NUMBER
+        || this.log.readInt() != VERSION) {
+      this.log.close();
+      throw new IOException(aLogFile + " is not a valid annotation store!");
+    }
+    loadIndex();
+  }
+
+  /**
+   * Get the annotation store shared by the annotators with the same store
+   * directory and model identity.
+   *
+   * @param directory
+   *          the directory containing the stores
+   * @param modelIdentity
+   *          the hash of the models, dictionaries and settings
+   * @return the annotation store
+   * @throws IOException
+   *           if io problems
+   */
+  public static AnnotationStore getSharedStore(final File directory,
+      final String modelIdentity) throws IOException {
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Could not create annotation store directory "
+          + directory);
+    }
+    final File logFile = new File(directory, modelIdentity + EXTENSION)
+        .getCanonicalFile();
+    AnnotationStore annotationStore = annotationStores.get(logFile);
+    if (annotationStore == null) {
+      synchronized (annotationStores) {
+        annotationStore = annotationStores.get(logFile);
+        if (annotationStore == null) {
+          annotationStore = new AnnotationStore(logFile);
+          annotationStores.put(logFile, annotationStore);
+        }
+      }
+    }
+    return annotationStore;
+  }
+
+  /**
+   * Build the model identity from the contents of the models and dictionaries
+   * and the annotation settings. The contents of every model and dictionary
+   * are hashed once and shared by every annotator in the JVM.
+   *
+   * @param modelFiles
+   *          the model files, null elements are ignored
+   * @param dictURLs
+   *          the dictionary URLs, null elements are ignored
+   * @param settings
+   *          other settings affecting the annotation, null elements allowed
+   * @return the model identity
+   * @throws IOException
+   *           if io problems while reading the models
+   */
+  public static String getModelIdentity(final File[] modelFiles,
+      final URL[] dictURLs, final String... settings) throws IOException {
+    final Hasher hasher = Hashing.sha1().newHasher();
+    for (final File modelFile : modelFiles) {
+      if (modelFile != null) {
+        hasher.putBytes(getContentHash(modelFile));
+      }
+    }
+    for (final URL dictURL : dictURLs) {
+      if (dictURL != null) {
+        hasher.putBytes(getContentHash(dictURL));
+      }
+    }
+    for (final String setting : settings) {
+      hasher.putString(String.valueOf(setting), UTF_8).putChar('\t');
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Get the hash of the contents of a model file, hashing it only if it was
+   * not hashed before with the same size and modification time.
+   *
+   * @param modelFile
+   *          the model file
+   * @return the hash
+   * @throws IOException
+   *           if io problems while reading the model
+   */
+  private static byte[] getContentHash(final File modelFile)
+      throws IOException {
+    final File file = modelFile.getCanonicalFile();
+    final String key = file.getPath() + '\t' + file.length() + '\t'
+        + file.lastModified();
+    byte[] contentHash = contentHashes.get(key);
+    if (contentHash == null) {
+      contentHash = Files.hash(file, Hashing.sha1()).asBytes();
+      contentHashes.putIfAbsent(key, contentHash);
+    }
+    return contentHash;
+  }
+
+  /**
+   * Get the hash of the contents of a dictionary. Dictionaries in files are
+   * hashed again if they change, while resources are only hashed once.
+   *
+   * @param dictURL
+   *          the dictionary URL
+   * @return the hash
+   * @throws IOException
+   *           if io problems while reading the dictionary
+   */
+  private static byte[] getContentHash(final URL dictURL) throws IOException {
+    if ("file".equals(dictURL.getProtocol())) {
+      try {
+        return getContentHash(new File(dictURL.toURI()));
+      } catch (final URISyntaxException e) {
+        // hashed as any other resource
+      }
+    }
+    final String key = dictURL.toExternalForm();
+    byte[] contentHash = contentHashes.get(key);
+    if (contentHash == null) {
+      contentHash = Resources.asByteSource(dictURL).hash(Hashing.sha1())
+          .asBytes();
+      contentHashes.putIfAbsent(key, contentHash);
+    }
+    return contentHash;
+  }
+
+  /**
+   * Read the log and index the offset of every record.
+   *
+   * @throws IOException
+   *           if io problems
+   */
+  private void loadIndex() throws IOException {
+    long offset = this.log.getFilePointer();
+    final long length = this.log.length();
+    while (offset + 4 <= length) {
+      this.log.seek(offset);
+      final int recordLength = this.log.readInt();
+      if (recordLength < 0 || offset + 4 + recordLength > length) {
+        break;
+      }
+      final byte[] record = new byte[recordLength];
+      this.log.readFully(record);
+      final String[] tokens = readStrings(new DataInputStream(
+          new ByteArrayInputStream(record)));
+      this.index.put(hashTokens(tokens), offset);
+      offset += 4 + recordLength;
+    }
+    if (offset < length) {
+      System.err.println("WARNING: discarding truncated records in "
+          + this.logFile);
+      this.log.setLength(offset);
+    }
+  }
+
+  /**
+   * Get the stored annotation of a sentence.
+   *
+   * @param tokens
+   *          the tokens of the sentence
+   * @return the annotation or null if not stored
+   * @throws IOException
+   *           if io problems
+   */
+  public final synchronized CachedSentence get(final String[] tokens)
+      throws IOException {
+    final CachedSentence cachedSentence = read(tokens);
+    if (cachedSentence == null) {
+      this.missCount++;
+    } else {
+      this.hitCount++;
+    }
+    return cachedSentence;
+  }
+
+  /**
+   * Read the stored annotation of a sentence.
+   *
+   * @param tokens
+   *          the tokens of the sentence
+   * @return the annotation or null if not stored
+   * @throws IOException
+   *           if io problems
+   */
+  private CachedSentence read(final String[] tokens) throws IOException {
+    final Long offset = this.index.get(hashTokens(tokens));
+    if (offset != null) {
+      this.log.seek(offset);
+      final byte[] record = new byte[this.log.readInt()];
+      this.log.readFully(record);
+      final DataInputStream dataIn = new DataInputStream(
+          new ByteArrayInputStream(record));
+      // check for hash collisions
+      if (Arrays.equals(tokens, readStrings(dataIn))) {
+        final String[] words = readStrings(dataIn);
+        final String[] tags = readStrings(dataIn);
+        final String[] lemmas = readStrings(dataIn);
+        return new CachedSentence(words, tags, lemmas, readSpans(dataIn));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Append the annotation of a sentence to the store.
+   *
+   * @param tokens
+   *          the tokens of the sentence
+   * @param cachedSentence
+   *          the final annotation of the sentence
+   * @throws IOException
+   *           if io problems
+   */
+  public final synchronized void put(final String[] tokens,
+      final CachedSentence cachedSentence) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream dataOut = new DataOutputStream(bytes);
+    dataOut.writeInt(0);
+    writeStrings(dataOut, tokens);
+    writeStrings(dataOut, cachedSentence.getWords());
+    writeStrings(dataOut, cachedSentence.getTags());
+    writeStrings(dataOut, cachedSentence.getLemmas());
+    final Span[] multiWordSpans = cachedSentence.getMultiWordSpans();
+    if (multiWordSpans == null) {
+      dataOut.writeInt(-1);
+    } else {
+      dataOut.writeInt(multiWordSpans.length);
+      for (final Span span : multiWordSpans) {
+        dataOut.writeInt(span.getStart());
+        dataOut.writeInt(span.getEnd());
+      }
+    }
+    dataOut.flush();
+    final byte[] record = bytes.toByteArray();
+    final int recordLength = record.length - 4;
+    record[0] = (byte) (recordLength >>> 24);
+    record[1] = (byte) (recordLength >>> 16);
+    record[2] = (byte) (recordLength >>> 8);
+    record[3] = (byte) recordLength;
+    final long offset = this.log.length();
+    this.log.seek(offset);
+    this.log.write(record);
+    this.index.put(hashTokens(tokens), offset);
+  }
+
+  /**
+   * Append the annotation of a sentence to the store unless the sentence is
+   * already stored. Annotators sharing the store that annotated the same
+   * sentence at the same time only append it once.
+   *
+   * @param tokens
+   *          the tokens of the sentence
+   * @param cachedSentence
+   *          the final annotation of the sentence
+   * @return the annotation already stored or null if it was appended
+   * @throws IOException
+   *           if io problems
+   */
+  public final synchronized CachedSentence putIfAbsent(final String[] tokens,
+      final CachedSentence cachedSentence) throws IOException {
+    final CachedSentence stored = read(tokens);
+    if (stored == null) {
+      put(tokens, cachedSentence);
+    }
+    return stored;
+  }
+
+  /**
+   * Get the ratio of sentences found in the store.
+   *
+   * @return the hit ratio
+   */
+  public final synchronized double getHitRatio() {
+    final long requestCount = this.hitCount + this.missCount;
+    return requestCount == 0 ? 1.0 : (double) this.hitCount / requestCount;
+  }
+
+  /**
+   * Get the number of sentences stored.
+   *
+   * @return the number of sentences
+   */
+  public final synchronized int size() {
+    return this.index.size();
+  }
+
+  /**
+   * Close the log file.
+   *
+   * @throws IOException
+   *           if io problems
+   */
+  public final void close() throws IOException {
+    annotationStores.remove(this.logFile, this);
+    synchronized (this) {
+      this.log.close();
+    }
+  }
+
+  /**
+   * Hash the tokens of a sentence.
+   *
+   * @param tokens
+   *          the tokens
+   * @return the hash
+   */
+  private static long hashTokens(final String[] tokens) {
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (final String token : tokens) {
+      hasher.putInt(token.length()).putUnencodedChars(token);
+    }
+    return hasher.hash().asLong();
+  }
+
+  private static void writeStrings(final DataOutputStream dataOut,
+      final String[] strings) throws IOException {
+    dataOut.writeInt(strings.length);
+    for (final String string : strings) {
+      // writeUTF cannot write strings longer than 64KB
+      final byte[] bytes = string.getBytes(UTF_8);
+      dataOut.writeInt(bytes.length);
+      dataOut.write(bytes);
+    }
+  }
+
+  private static String[] readStrings(final DataInputStream dataIn)
+      throws IOException {
+    final String[] strings = new String[dataIn.readInt()];
+    for (int i = 0; i < strings.length; i++) {
+      final byte[] bytes = new byte[dataIn.readInt()];
+      dataIn.readFully(bytes);
+      strings[i] = new String(bytes, UTF_8);
+    }
+    return strings;
+  }
+
+  private static Span[] readSpans(final DataInputStream dataIn)
+      throws IOException {
+    final int numSpans = dataIn.readInt();
+    if (numSpans < 0) {
+      return null;
+    }
+    final Span[] spans = new Span[numSpans];
+    for (int i = 0; i < numSpans; i++) {
+      spans[i] = new Span(dataIn.readInt(), dataIn.readInt());
+    }
+    return spans;
+  }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Asynchronous facade of {@link Annotate}. The annotation requests are run in
+ * a fixed pool of worker threads, each of them with its own {@link Annotate}
+ * instance, and their results are returned as {@link ListenableFuture}s. The
+ * number of requests in flight is bounded: requests over the limit are not
+ * queued but immediately failed with a {@link RejectedExecutionException}, so
+ * that the caller is never blocked. Only the sentences of an
+ * {@link AnnotationPipeline} wait for a permit.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class AsyncAnnotator {
+
+  /**
+   * The properties used to create the annotator of every worker.
+   */
+  private final Properties properties;
+  /**
+   * The workers.
+   */
+  private final ListeningExecutorService executor;
+  /**
+   * The permits for the requests in flight.
+   */
+  private final Semaphore inFlight;
+  /**
+   * The annotator of every worker thread.
+   */
+  private final ThreadLocal<Annotate> annotators = new ThreadLocal<Annotate>() {
+    @Override
+    protected Annotate initialValue() {
+      try {
+        return new Annotate(AsyncAnnotator.this.properties);
+      } catch (final IOException e) {
+        throw new IllegalStateException("Could not load the annotator!", e);
+      }
+    }
+  };
+
+  /**
+   * Construct an asynchronous annotator.
+   *
+   * @param aProperties
+   *          the properties to create the annotators
+   * @param numThreads
+   *          the number of worker threads
+   * @param maxInFlight
+   *          the maximum number of requests queued or running
+   */
+  public AsyncAnnotator(final Properties aProperties, final int numThreads,
+      final int maxInFlight) {
+    if (numThreads < 1 || maxInFlight < 1) {
+      throw new IllegalArgumentException(
+          "The number of threads and requests in flight must be positive!");
+    }
+    this.properties = aProperties;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.executor = MoreExecutors.listeningDecorator(Executors
+        .newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+            .setDaemon(true).setNameFormat("ixa-pipe-pos-annotator-%d")
+            .build()));
+  }
+
+  /**
+   * Annotate a tokenized sentence.
+   *
+   * @param tokens
+   *          the tokens of the sentence
+   * @return the future annotation of the sentence
+   */
+  public final ListenableFuture<SentenceAnnotation> annotate(
+      final String[] tokens) {
+    return submit(createRequest(tokens), false);
+  }
+
+  /**
+   * Annotate a tokenized sentence, waiting for a request in flight to finish
+   * if the limit is reached instead of rejecting it. It is used by the
+   * {@link AnnotationPipeline}, which bounds the sentences in flight itself
+   * but can submit a sentence before the worker of a finished one has
+   * released its permit.
+   *
+   * @param tokens
+   *          the tokens of the sentence
+   * @return the future annotation of the sentence
+   */
+  final ListenableFuture<SentenceAnnotation> annotateWaiting(
+      final String[] tokens) {
+    return submit(createRequest(tokens), true);
+  }
+
+  private Callable<SentenceAnnotation> createRequest(final String[] tokens) {
+    return new Callable<SentenceAnnotation>() {
+      public SentenceAnnotation call() {
+        return AsyncAnnotator.this.annotators.get().annotate(tokens);
+      }
+    };
+  }
+
+  /**
+   * Annotate a batch of tokenized sentences.
+   *
+   * @param sentences
+   *          the tokens of each sentence
+   * @return the future annotation of each sentence
+   */
+  public final ListenableFuture<SentenceAnnotation[]> annotate(
+      final String[][] sentences) {
+    return submit(new Callable<SentenceAnnotation[]>() {
+      public SentenceAnnotation[] call() {
+        return AsyncAnnotator.this.annotators.get().annotate(sentences);
+      }
+    }, false);
+  }
+
+  /**
+   * Annotate morphological information into a NAF document. The document is
+   * modified by a worker thread and should not be accessed until the future is
+   * completed.
+   *
+   * @param kaf
+   *          the NAF document
+   * @return the future annotated document
+   */
+  public final ListenableFuture<KAFDocument> annotatePOSToKAF(
+      final KAFDocument kaf) {
+    return submit(new Callable<KAFDocument>() {
+      public KAFDocument call() {
+        AsyncAnnotator.this.annotators.get().annotatePOSToKAF(kaf);
+        return kaf;
+      }
+    }, false);
+  }
+
+  /**
+   * Annotate morphological information in tabulated CoNLL-style format.
+   *
+   * @param kaf
+   *          the NAF document
+   * @return the future text annotated in tabulated format
+   */
+  public final ListenableFuture<String> annotatePOSToCoNLL(
+      final KAFDocument kaf) {
+    return submit(new Callable<String>() {
+      public String call() throws IOException {
+        return AsyncAnnotator.this.annotators.get().annotatePOSToCoNLL(kaf);
+      }
+    }, false);
+  }
+
+  /**
+   * Run a request if the number of requests in flight allows it.
+   *
+   * @param request
+   *          the request
+   * @param wait
+   *          whether to wait for a permit instead of rejecting the request
+   * @return the future result or a failed future if the request was rejected
+   *         or the wait interrupted
+   */
+  private <T> ListenableFuture<T> submit(final Callable<T> request,
+      final boolean wait) {
+    if (wait) {
+      try {
+        this.inFlight.acquire();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return Futures.immediateFailedFuture(e);
+      }
+    } else if (!this.inFlight.tryAcquire()) {
+      return Futures.immediateFailedFuture(new RejectedExecutionException(
+          "Too many annotation requests in flight!"));
+    }
+    final AtomicBoolean released = new AtomicBoolean();
+    final Runnable release = new Runnable() {
+      public void run() {
+        if (released.compareAndSet(false, true)) {
+          AsyncAnnotator.this.inFlight.release();
+        }
+      }
+    };
+    final ListenableFuture<T> future;
+    try {
+      // released before the future is completed, so that a caller waiting
+      // for it can submit a new request straight away
+      future = this.executor.submit(new Callable<T>() {
+        public T call() throws Exception {
+          try {
+            return request.call();
+          } finally {
+            release.run();
+          }
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      release.run();
+      return Futures.immediateFailedFuture(e);
+    }
+    // requests cancelled before running are released here
+    future.addListener(release, MoreExecutors.directExecutor());
+    return future;
+  }
+
+  /**
+   * Get the number of requests that can still be accepted.
+   *
+   * @return the number of available permits
+   */
+  public final int getAvailableRequests() {
+    return this.inFlight.availablePermits();
+  }
+
+  /**
+   * Stop accepting requests and wait for the requests in flight to finish.
+   *
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the time unit of the timeout
+   * @return true if every request finished before the timeout
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public final boolean shutdown(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    this.executor.shutdown();
+    return this.executor.awaitTermination(timeout, unit);
+  }
+
+}
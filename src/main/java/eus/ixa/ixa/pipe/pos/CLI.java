@@ -41,22 +41,24 @@ import net.sourceforge.argparse4j.inf.Subparsers;
 import opennlp.tools.cmdline.CmdLineUtil;
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.model.BaseModel;
 
 import org.jdom2.JDOMException;
 
 import com.google.common.io.Files;
 
+import eus.ixa.ixa.pipe.lemma.LemmaSampleStream;
 import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
 import eus.ixa.ixa.pipe.lemma.eval.LemmaEvaluate;
 import eus.ixa.ixa.pipe.lemma.train.LemmatizerFixedTrainer;
-import eus.ixa.ixa.pipe.lemma.train.LemmatizerTrainer;
-import eus.ixa.ixa.pipe.pos.eval.POSCrossValidator;
+import eus.ixa.ixa.pipe.pos.eval.CrossValidator;
 import eus.ixa.ixa.pipe.pos.eval.Evaluate;
 import eus.ixa.ixa.pipe.pos.eval.POSEvaluate;
 import eus.ixa.ixa.pipe.pos.train.FixedTrainer;
 import eus.ixa.ixa.pipe.pos.train.Flags;
 import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
-import eus.ixa.ixa.pipe.pos.train.TaggerTrainer;
+import eus.ixa.ixa.pipe.pos.train.ModelPruner;
+import eus.ixa.ixa.pipe.pos.train.ParallelPerceptronTrainer;
 
 /**
  * Main class of ixa-pipe-pos, the pos tagger of ixa-pipes
@@ -111,6 +113,14 @@ public class CLI {
    * The parser that manages the cross validation sub-command.
    */
   private final Subparser crossValidateParser;
+  /**
+   * The parser that manages the corpus preprocessing sub-command.
+   */
+  private final Subparser preprocessParser;
+  /**
+   * The parser that manages the model pruning sub-command.
+   */
+  private final Subparser pruneParser;
   /**
    * Parser to start TCP socket for server-client functionality.
    */
@@ -138,6 +148,12 @@ public class CLI {
     this.crossValidateParser = this.subParsers.addParser("cross").help(
         "Cross validation CLI");
     loadCrossValidateParameters();
+    this.preprocessParser = this.subParsers.addParser("preprocess").help(
+        "Corpus preprocessing CLI");
+    loadPreprocessParameters();
+    this.pruneParser = this.subParsers.addParser("prune").help(
+        "Model pruning CLI");
+    loadPruneParameters();
     serverParser = subParsers.addParser("server").help("Start TCP socket server");
     loadServerParameters();
     clientParser = subParsers.addParser("client").help("Send queries to the TCP socket server");
@@ -179,6 +195,10 @@ public class CLI {
         train();
       } else if (args[0].equals("cross")) {
         crossValidate();
+      } else if (args[0].equals("preprocess")) {
+        preprocess();
+      } else if (args[0].equals("prune")) {
+        prune();
       } else if (args[0].equals("server")) {
         server();
       } else if (args[0].equals("client")) {
@@ -187,7 +207,7 @@ public class CLI {
     } catch (final ArgumentParserException e) {
       this.argParser.handleError(e);
       System.out.println("Run java -jar target/ixa-pipe-pos-" + this.version
-          + ".jar (tag|train|eval|cross|server|client) -help for details");
+          + ".jar (tag|train|eval|cross|preprocess|prune|server|client) -help for details");
       System.exit(1);
     }
   }
@@ -217,12 +237,45 @@ public class CLI {
         .getBoolean("multiwords"));
     final String dictag = Boolean.toString(this.parsedArguments
         .getBoolean("dictag"));
+    final String dictionaryFirst = Boolean.toString(this.parsedArguments
+        .getBoolean("dictionaryFirst"));
+    final String annotationCacheSize = this.parsedArguments
+        .getString("annotationCache");
+    final String annotationStore = this.parsedArguments
+        .getString("annotationStore");
+    final String tagsetMapping = this.parsedArguments
+        .getString("tagsetMapping");
+    final String previousNAF = this.parsedArguments.getString("previous");
+    final boolean streaming = this.parsedArguments.getBoolean("streaming");
     String outputFormat = parsedArguments.getString("outputFormat");
     BufferedReader breader = null;
     BufferedWriter bwriter = null;
     breader = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
     bwriter = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"));
 
+    if (streaming) {
+      if (allMorphology || previousNAF != null) {
+        System.err
+            .println("The --streaming option can not be used with --allMorphology or --previous!");
+        System.exit(1);
+      }
+      final Properties properties = setAnnotateProperties(model,
+          lemmatizerModel, this.parsedArguments.getString("language"),
+          multiwords, dictag, dictionaryFirst, annotationCacheSize,
+          annotationStore, tagsetMapping);
+      final StreamingNAFAnnotator streamingAnnotator = new StreamingNAFAnnotator(
+          properties, "ixa-pipe-pos-" + Files.getNameWithoutExtension(model),
+          this.version + "-" + this.commit);
+      if (outputFormat.equalsIgnoreCase("conll")) {
+        streamingAnnotator.annotatePOSToCoNLL(breader, bwriter);
+      } else {
+        streamingAnnotator.annotatePOSToKAF(breader, bwriter);
+      }
+      printAnnotationStats(streamingAnnotator.getAnnotator());
+      bwriter.close();
+      breader.close();
+      return;
+    }
     final KAFDocument kaf = KAFDocument.createFromStream(breader);
     // language
     String lang;
@@ -236,16 +289,19 @@ public class CLI {
       lang = kaf.getLang();
     }
     final Properties properties = setAnnotateProperties(model, lemmatizerModel,
-        lang, multiwords, dictag);
+        lang, multiwords, dictag, dictionaryFirst, annotationCacheSize,
+        annotationStore, tagsetMapping);
     final Annotate annotator = new Annotate(properties);
+    final String lpName = "ixa-pipe-pos-" + Files.getNameWithoutExtension(model);
+    final String lpVersion = this.version + "-" + this.commit;
     final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
-        "terms", "ixa-pipe-pos-" + Files.getNameWithoutExtension(model),
-        this.version + "-" + this.commit);
+        "terms", lpName, PreviousAnnotations.getTermsVersion(lpVersion,
+            annotator.getModelIdentity()));
     newLp.setBeginTimestamp();
 
     if (allMorphology) {
       if (outputFormat.equalsIgnoreCase("conll")) {
-        bwriter.write(annotator.getAllTagsLemmasToCoNLL(kaf));
+        annotator.getAllTagsLemmasToCoNLL(kaf, bwriter);
       } else {
         annotator.getAllTagsLemmasToNAF(kaf);
         newLp.setEndTimestamp();
@@ -253,17 +309,79 @@ public class CLI {
       }
     } else {
       if (outputFormat.equalsIgnoreCase("conll")) {
-        bwriter.write(annotator.annotatePOSToCoNLL(kaf));
+        annotator.annotatePOSToCoNLL(kaf, bwriter);
       } else {
-        annotator.annotatePOSToKAF(kaf);
+        PreviousAnnotations previousAnnotations = null;
+        if (previousNAF != null) {
+          previousAnnotations = new PreviousAnnotations(
+              KAFDocument.createFromFile(new File(previousNAF)), lpName,
+              lpVersion, annotator.getModelIdentity());
+          if (!previousAnnotations.isSameProcessor()) {
+            System.err.println("WARNING: the terms of " + previousNAF
+                + " were not produced by " + lpName + " " + lpVersion
+                + " with the same models and options,"
+                + " annotating every sentence again");
+          }
+        }
+        final int copiedSentences = annotator.annotatePOSToKAF(kaf,
+            previousAnnotations);
+        if (previousAnnotations != null) {
+          System.err.println("Copied the terms of " + copiedSentences + " of "
+              + kaf.getSentences().size() + " sentences from " + previousNAF);
+        }
         newLp.setEndTimestamp();
         bwriter.write(kaf.toString());
       }
     }
+    printAnnotationStats(annotator);
     bwriter.close();
     breader.close();
   }
 
+  /**
+   * Print the annotation cache and store statistics and close the store.
+   *
+   * @param annotator
+   *          the annotator, may be null
+   * @throws IOException
+   *           if io problems while closing the store
+   */
+  private void printAnnotationStats(final Annotate annotator)
+      throws IOException {
+    if (annotator == null) {
+      return;
+    }
+    if (annotator.getAnnotationCacheStats() != null) {
+      System.err.println("Annotation cache hit ratio: "
+          + annotator.getAnnotationCacheStats().hitRate());
+    }
+    printFeatureCacheStats("Postagger", annotator.getPosFeatureCache());
+    printFeatureCacheStats("Lemmatizer", annotator.getLemmaFeatureCache());
+    if (annotator.getAnnotationStore() != null) {
+      System.err.println("Annotation store hit ratio: "
+          + annotator.getAnnotationStore().getHitRatio());
+      annotator.getAnnotationStore().close();
+    }
+  }
+
+  /**
+   * Print the hit ratio and size of a word feature cache.
+   * 
+   * @param component
+   *          the name of the component using the cache
+   * @param cache
+   *          the cache, may be null
+   */
+  private void printFeatureCacheStats(final String component,
+      final WordFeatureCache cache) {
+    if (cache == null || cache.getStats().requestCount() == 0) {
+      return;
+    }
+    System.err.println(component + " word feature cache hit ratio: "
+        + cache.getStats().hitRate() + " (" + cache.size()
+        + " word types, maximum " + cache.getMaximumMemory() + " bytes)");
+  }
+
   /**
    * Generate the annotation parameter of the CLI.
    */
@@ -294,6 +412,25 @@ public class CLI {
     this.annotateParser.addArgument("-d", "--dictag")
         .action(Arguments.storeTrue())
         .help("Post process POS tagger output with a monosemic dictionary.\n");
+    this.annotateParser.addArgument("-df", "--dictionaryFirst")
+        .action(Arguments.storeTrue())
+        .help("Lemmatize via dictionary first and use the lemmatizer model only for words not in the dictionary.\n");
+    this.annotateParser.addArgument("--annotationCache")
+        .required(false)
+        .setDefault("0")
+        .help("Cache the annotation of up to this number of sentences; it defaults to 0 (no cache).\n");
+    this.annotateParser.addArgument("--annotationStore")
+        .required(false)
+        .help("Directory where annotations are stored to be reused across runs with the same models.\n");
+    this.annotateParser.addArgument("--tagsetMapping")
+        .required(false)
+        .help("File mapping the postags of the model to the KAF postags; it defaults to the built-in mapping of the language.\n");
+    this.annotateParser.addArgument("--previous")
+        .required(false)
+        .help("Previously annotated NAF version of the input document; the terms of the unchanged sentences are copied from it (NAF output only).\n");
+    this.annotateParser.addArgument("--streaming")
+        .action(Arguments.storeTrue())
+        .help("Read and annotate the NAF document sentence by sentence instead of loading it in memory; for very large documents.\n");
     this.annotateParser.addArgument("-a","--allMorphology")
         .action(Arguments.storeTrue())
         .help("Print all the POS tags and lemmas before disambiguation.\n");
@@ -317,14 +454,27 @@ public class CLI {
     } else {
       outModel = Flags.getModel(params);
     }
+    if (this.parsedArguments.getBoolean("resume")) {
+      if (params.getSettings().get(
+          ParallelPerceptronTrainer.CHECKPOINT_DIR_PARAM) == null
+          || !ParallelPerceptronTrainer.isSelected(params)) {
+        System.err.println("Resuming training requires the "
+            + ParallelPerceptronTrainer.PARALLEL_PERCEPTRON_VALUE
+            + " algorithm and a CheckpointDir in the training parameters!");
+        System.exit(1);
+      }
+      params.put(ParallelPerceptronTrainer.RESUME_PARAM, "true");
+    }
     String component = Flags.getComponent(params);
     if (component.equalsIgnoreCase("POS")) {
-      final TaggerTrainer posTaggerTrainer = new FixedTrainer(params);
+      final FixedTrainer posTaggerTrainer = new FixedTrainer(params);
       final POSModel trainedModel = posTaggerTrainer.train(params);
+      System.out.println("Final result: " + posTaggerTrainer.getWordAccuracy());
       CmdLineUtil.writeModel("ixa-pipe-pos", new File(outModel), trainedModel);
     } else if (component.equalsIgnoreCase("Lemma")) {
-      final LemmatizerTrainer lemmatizerTrainer = new LemmatizerFixedTrainer(params);
+      final LemmatizerFixedTrainer lemmatizerTrainer = new LemmatizerFixedTrainer(params);
       final LemmatizerModel trainedModel = lemmatizerTrainer.train(params);
+      System.out.println("Final result: " + lemmatizerTrainer.getWordAccuracy());
       CmdLineUtil.writeModel("ixa-pipe-lemma", new File(outModel), trainedModel);
     }
   }
@@ -335,6 +485,10 @@ public class CLI {
   private void loadTrainingParameters() {
     this.trainParser.addArgument("-p", "--params").required(true)
         .help("Load the training parameters file\n");
+    this.trainParser.addArgument("--resume")
+        .action(Arguments.storeTrue())
+        .help("Resume training from the last checkpoint in the CheckpointDir "
+            + "of the training parameters\n");
   }
 
   /**
@@ -384,10 +538,18 @@ public class CLI {
         .getBoolean("multiwords"));
     final String dictag = Boolean.toString(this.parsedArguments
         .getBoolean("dictag"));
+    final String dictionaryFirst = Boolean.toString(this.parsedArguments
+        .getBoolean("dictionaryFirst"));
+    final String annotationCacheSize = this.parsedArguments
+        .getString("annotationCache");
+    final String annotationStore = this.parsedArguments
+        .getString("annotationStore");
+    final String tagsetMapping = this.parsedArguments
+        .getString("tagsetMapping");
     String outputFormat = parsedArguments.getString("outputFormat");
     // language parameter
     String lang = parsedArguments.getString("language");
-    Properties serverproperties = setServerProperties(port, model, lemmatizerModel, lang, multiwords, dictag, outputFormat, allMorphology);
+    Properties serverproperties = setServerProperties(port, model, lemmatizerModel, lang, multiwords, dictag, dictionaryFirst, annotationCacheSize, annotationStore, tagsetMapping, outputFormat, allMorphology);
     new StatisticalTaggerServer(serverproperties);
   }
   
@@ -475,8 +637,8 @@ public class CLI {
     final String paramFile = this.parsedArguments.getString("params");
     final TrainingParameters params = InputOutputUtils
         .loadTrainingParameters(paramFile);
-    final POSCrossValidator crossValidator = new POSCrossValidator(params);
-    crossValidator.crossValidate(params);
+    final CrossValidator crossValidator = new CrossValidator(params);
+    crossValidator.crossValidate(System.out);
   }
 
   /**
@@ -486,7 +648,129 @@ public class CLI {
     this.crossValidateParser.addArgument("-p", "--params").required(true)
         .help("Load the Cross validation parameters file\n");
   }
+
+  /**
+   * Main access to the corpus preprocessing. Converts a tabulated corpus into
+   * the binary corpus format read by the training, evaluation and cross
+   * validation CLIs.
+   * @throws IOException
+   *           input output exception if problems with corpora
+   */
+  public final void preprocess() throws IOException {
+    final String component = this.parsedArguments.getString("component");
+    final String input = this.parsedArguments.getString("input");
+    final String output = this.parsedArguments.getString("output");
+    final TaggedCorpus corpus;
+    if (component.equalsIgnoreCase("pos")) {
+      corpus = TaggedCorpus.load(new MorphoSampleStream(InputOutputUtils
+          .readFileIntoMarkableStreamFactory(input)));
+    } else {
+      corpus = TaggedCorpus.loadLemmas(new LemmaSampleStream(InputOutputUtils
+          .readFileIntoMarkableStreamFactory(input)));
+    }
+    corpus.write(new File(output));
+    System.err.println("Preprocessed " + corpus.getNumSentences()
+        + " sentences and " + corpus.getNumTokens() + " tokens into " + output);
+  }
+
+  /**
+   * Create the parameters available for corpus preprocessing.
+   */
+  private void loadPreprocessParameters() {
+    this.preprocessParser.addArgument("-c", "--component")
+        .required(true)
+        .choices("pos", "lemma")
+        .help("Choose component: lemma also computes the lemma classes, "
+            + "and its output can be used for postagging too");
+    this.preprocessParser.addArgument("-i", "--input")
+        .required(true)
+        .help("Input tabulated corpus");
+    this.preprocessParser.addArgument("-o", "--output")
+        .required(true)
+        .help("Output binary corpus");
+  }
   
+  /**
+   * Main access to the model pruning. Prints the size, accuracy and throughput
+   * of the model pruned to keep decreasing fractions of its weights and, if a
+   * threshold or a size are given, writes the model pruned to them.
+   * @throws IOException
+   *           input output exception if problems with models or corpora
+   */
+  public final void prune() throws IOException {
+    final String component = this.parsedArguments.getString("component");
+    final String model = this.parsedArguments.getString("model");
+    final String testFile = this.parsedArguments.getString("testSet");
+    final String output = this.parsedArguments.getString("output");
+    final Double threshold = this.parsedArguments.getDouble("threshold");
+    final Long size = this.parsedArguments.getLong("size");
+    if (threshold != null && size != null) {
+      System.err.println("Choose either a pruning threshold or a size!");
+      System.exit(1);
+    }
+    if (output != null && threshold == null && size == null) {
+      System.err.println("Choose a pruning threshold or a size to write the "
+          + "pruned model!");
+      System.exit(1);
+    }
+    final BaseModel trainedModel;
+    final TaggedCorpus testCorpus;
+    if (component.equalsIgnoreCase("pos")) {
+      trainedModel = new POSModel(new File(model));
+      testCorpus = TaggedCorpus.loadPOSCorpus(testFile);
+    } else {
+      trainedModel = new LemmatizerModel(new File(model));
+      testCorpus = TaggedCorpus.loadLemmaCorpus(testFile);
+    }
+    try {
+      final ModelPruner pruner = new ModelPruner(trainedModel, testCorpus);
+      pruner.printCurve(System.out);
+      if (threshold != null || size != null) {
+        final double modelThreshold = threshold != null ? threshold : pruner
+            .getThresholdForSize(size);
+        System.out.println();
+        ModelPruner.printHeader(System.out);
+        final BaseModel prunedModel = pruner.printEvaluation(modelThreshold,
+            System.out);
+        if (output != null) {
+          CmdLineUtil.writeModel("ixa-pipe-" + component.toLowerCase(),
+              new File(output), prunedModel);
+        }
+      }
+    } catch (final IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Create the parameters available for model pruning.
+   */
+  private void loadPruneParameters() {
+    this.pruneParser.addArgument("-c", "--component")
+        .required(true)
+        .choices("pos", "lemma")
+        .help("Choose component of the model to be pruned");
+    this.pruneParser.addArgument("-m", "--model")
+        .required(true)
+        .help("Choose model to be pruned");
+    this.pruneParser.addArgument("-t", "--testSet")
+        .required(true)
+        .help("Input testset to evaluate the pruned models");
+    this.pruneParser.addArgument("-o", "--output")
+        .required(false)
+        .help("Output pruned model");
+    this.pruneParser.addArgument("--threshold")
+        .required(false)
+        .type(Double.class)
+        .help("Remove the weights whose magnitude is below the threshold");
+    this.pruneParser.addArgument("--size")
+        .required(false)
+        .type(Long.class)
+        .help("Remove the smallest weights until the model takes at most "
+            + "this number of bytes");
+  }
+
   /**
    * Create the available parameters for POS tagging.
    */
@@ -516,6 +800,19 @@ public class CLI {
     serverParser.addArgument("-d", "--dictag")
         .action(Arguments.storeTrue())
         .help("Post process POS tagger output with a monosemic dictionary.\n");
+    serverParser.addArgument("-df", "--dictionaryFirst")
+        .action(Arguments.storeTrue())
+        .help("Lemmatize via dictionary first and use the lemmatizer model only for words not in the dictionary.\n");
+    serverParser.addArgument("--annotationCache")
+        .required(false)
+        .setDefault("0")
+        .help("Cache the annotation of up to this number of sentences; it defaults to 0 (no cache).\n");
+    serverParser.addArgument("--annotationStore")
+        .required(false)
+        .help("Directory where annotations are stored to be reused across runs with the same models.\n");
+    serverParser.addArgument("--tagsetMapping")
+        .required(false)
+        .help("File mapping the postags of the model to the KAF postags; it defaults to the built-in mapping of the language.\n");
     serverParser.addArgument("-a","--allMorphology")
         .action(Arguments.storeTrue())
         .help("Print all the POS tags and lemmas before disambiguation.\n");
@@ -538,21 +835,38 @@ public class CLI {
    * @param language the language
    * @param multiwords whether multiwords are to be detected
    * @param dictag whether tagging from a dictionary is activated
+   * @param dictionaryFirst whether to lemmatize via dictionary first
+   * @param annotationCacheSize the number of sentences to cache
+   * @param annotationStore the annotation store directory, or null
+   * @param tagsetMapping the tagset mapping file, or null
    * @return a properties object
    */
   private Properties setAnnotateProperties(final String model, final String lemmatizerModel,
       final String language, final String multiwords,
-      final String dictag) {
+      final String dictag, final String dictionaryFirst,
+      final String annotationCacheSize, final String annotationStore,
+      final String tagsetMapping) {
     final Properties annotateProperties = new Properties();
     annotateProperties.setProperty("model", model);
     annotateProperties.setProperty("lemmatizerModel", lemmatizerModel);
-    annotateProperties.setProperty("language", language);
+    // taken from the document when streaming
+    if (language != null) {
+      annotateProperties.setProperty("language", language);
+    }
     annotateProperties.setProperty("multiwords", multiwords);
     annotateProperties.setProperty("dictag", dictag);
+    annotateProperties.setProperty("dictionaryFirst", dictionaryFirst);
+    annotateProperties.setProperty("annotationCacheSize", annotationCacheSize);
+    if (annotationStore != null) {
+      annotateProperties.setProperty("annotationStore", annotationStore);
+    }
+    if (tagsetMapping != null) {
+      annotateProperties.setProperty("tagsetMapping", tagsetMapping);
+    }
     return annotateProperties;
   }
   
-  private Properties setServerProperties(String port, String model, String lemmatizerModel, String language, String multiwords, String dictag, String outputFormat, String allMorphology) {
+  private Properties setServerProperties(String port, String model, String lemmatizerModel, String language, String multiwords, String dictag, String dictionaryFirst, String annotationCacheSize, String annotationStore, String tagsetMapping, String outputFormat, String allMorphology) {
     Properties serverProperties = new Properties();
     serverProperties.setProperty("port", port);
     serverProperties.setProperty("model", model);
@@ -560,6 +874,14 @@ public class CLI {
     serverProperties.setProperty("language", language);
     serverProperties.setProperty("multiwords", multiwords);
     serverProperties.setProperty("dictTag", dictag);
+    serverProperties.setProperty("dictionaryFirst", dictionaryFirst);
+    serverProperties.setProperty("annotationCacheSize", annotationCacheSize);
+    if (annotationStore != null) {
+      serverProperties.setProperty("annotationStore", annotationStore);
+    }
+    if (tagsetMapping != null) {
+      serverProperties.setProperty("tagsetMapping", tagsetMapping);
+    }
     serverProperties.setProperty("outputFormat", outputFormat);
     serverProperties.setProperty("allMorphology", allMorphology);
     return serverProperties;
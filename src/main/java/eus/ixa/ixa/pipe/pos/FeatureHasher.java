@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Maps features into a fixed number of buckets, so that the number of
+ * predicates of a model, and the memory taken by them, is bounded by the
+ * dimension instead of growing with the training data. Every feature is
+ * replaced by its bucket, written in base 36; different features falling in
+ * the same bucket share their weights. The dimension is stored in the model
+ * manifest, so that the features are hashed in the same way when tagging.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class FeatureHasher {
+
+  /**
+   * The manifest entry with the dimension of the hashed features.
+   */
+  public static final String MANIFEST_ENTRY = "Feature-Hash-Dimension";
+  /**
+   * The hash function, which does not depend on the JVM.
+   */
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+  /**
+   * The number of buckets.
+   */
+  private final int dimension;
+
+  /**
+   * Construct a feature hasher.
+   *
+   * @param aDimension
+   *          the number of buckets
+   */
+  public FeatureHasher(final int aDimension) {
+    if (aDimension < 1) {
+      throw new IllegalArgumentException(
+          "The feature hashing dimension must be positive!");
+    }
+    this.dimension = aDimension;
+  }
+
+  /**
+   * Create the feature hasher of a model.
+   *
+   * @param manifestEntry
+   *          the dimension in the model manifest, or null
+   * @return the feature hasher or null if the features are not hashed
+   */
+  public static FeatureHasher create(final String manifestEntry) {
+    if (manifestEntry == null) {
+      return null;
+    }
+    return new FeatureHasher(Integer.parseInt(manifestEntry));
+  }
+
+  /**
+   * Get the number of buckets.
+   *
+   * @return the dimension
+   */
+  public final int getDimension() {
+    return this.dimension;
+  }
+
+  /**
+   * Hash a feature.
+   *
+   * @param feature
+   *          the feature
+   * @return the bucket of the feature
+   */
+  public final String hash(final String feature) {
+    final int hash = HASH_FUNCTION.hashString(feature, Charsets.UTF_8).asInt();
+    return Integer.toString((hash & Integer.MAX_VALUE) % this.dimension,
+        Character.MAX_RADIX);
+  }
+
+  /**
+   * Hash features.
+   *
+   * @param features
+   *          the features
+   * @return the buckets of the features, in the same order
+   */
+  public final String[] hash(final String[] features) {
+    final String[] buckets = new String[features.length];
+    for (int i = 0; i < features.length; i++) {
+      buckets[i] = hash(features[i]);
+    }
+    return buckets;
+  }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+import ixa.kaflib.Term;
+import ixa.kaflib.WF;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The terms layer of a previous version of a NAF document, indexed by the
+ * word forms of each sentence. It is used to carry over the term annotations
+ * of the sentences that have not changed when re-annotating an edited
+ * document. The terms are only carried over if the last terms layer of the
+ * previous document was produced by the same linguistic processor name and
+ * version with the same configuration, that is, the same postag and
+ * lemmatizer models, dictionaries and options, whose identity is written in
+ * the version of the linguistic processor by
+ * {@link #getTermsVersion(String, String)}.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class PreviousAnnotations {
+
+  /**
+   * Separator between the version of the linguistic processor and the
+   * identity of its configuration.
+   */
+  private static final char IDENTITY_SEPARATOR = '#';
+
+  /**
+   * The terms of every sentence, keyed by the word forms of the sentence.
+   */
+  private final Map<List<String>, List<PreviousTerm>> sentenceTerms = new HashMap<List<String>, List<PreviousTerm>>();
+  /**
+   * Whether the terms of the previous document were produced by the same
+   * linguistic processor.
+   */
+  private final boolean sameProcessor;
+
+  /**
+   * Index the terms layer of a NAF document if it was produced by the given
+   * linguistic processor and configuration. Sentences whose words are not
+   * covered exactly once by the terms layer are not indexed.
+   *
+   * @param previousKaf
+   *          the previously annotated NAF document
+   * @param lpName
+   *          the name of the linguistic processor annotating the terms
+   * @param lpVersion
+   *          the version of the linguistic processor annotating the terms
+   * @param modelIdentity
+   *          the identity of the models, dictionaries and options, as given
+   *          by {@link Annotate#getModelIdentity()}
+   */
+  public PreviousAnnotations(final KAFDocument previousKaf,
+      final String lpName, final String lpVersion, final String modelIdentity) {
+    this.sameProcessor = isTermsProcessor(previousKaf, lpName,
+        getTermsVersion(lpVersion, modelIdentity));
+    if (!this.sameProcessor) {
+      return;
+    }
+    for (final List<WF> wfs : previousKaf.getSentences()) {
+      if (wfs.isEmpty()) {
+        continue;
+      }
+      final List<String> forms = new ArrayList<String>(wfs.size());
+      final Map<WF, Integer> wfIndexes = new IdentityHashMap<WF, Integer>();
+      for (int i = 0; i < wfs.size(); i++) {
+        forms.add(wfs.get(i).getForm());
+        wfIndexes.put(wfs.get(i), i);
+      }
+      if (this.sentenceTerms.containsKey(forms)) {
+        continue;
+      }
+      final List<PreviousTerm> terms = getPreviousTerms(
+          previousKaf.getTermsBySent(wfs.get(0).getSent()), wfIndexes);
+      if (terms != null) {
+        this.sentenceTerms.put(forms, terms);
+      }
+    }
+  }
+
+  /**
+   * Get the version of the linguistic processor written in the terms layer,
+   * with the identity of the configuration producing the terms.
+   *
+   * @param lpVersion
+   *          the version of the linguistic processor
+   * @param modelIdentity
+   *          the identity of the models, dictionaries and options
+   * @return the version followed by the identity
+   */
+  public static String getTermsVersion(final String lpVersion,
+      final String modelIdentity) {
+    return lpVersion + IDENTITY_SEPARATOR + modelIdentity;
+  }
+
+  /**
+   * Check whether the last terms layer of a NAF document was produced by a
+   * linguistic processor and configuration.
+   *
+   * @param kaf
+   *          the NAF document
+   * @param lpName
+   *          the name of the linguistic processor
+   * @param termsVersion
+   *          the version of the linguistic processor with the identity of its
+   *          configuration
+   * @return true if the name, version and configuration match
+   */
+  private static boolean isTermsProcessor(final KAFDocument kaf,
+      final String lpName, final String termsVersion) {
+    final List<KAFDocument.LinguisticProcessor> termsProcessors = kaf
+        .getLinguisticProcessors().get("terms");
+    if (termsProcessors == null || termsProcessors.isEmpty()) {
+      return false;
+    }
+    final KAFDocument.LinguisticProcessor lp = termsProcessors
+        .get(termsProcessors.size() - 1);
+    return lpName.equals(lp.getName()) && lp.hasVersion()
+        && termsVersion.equals(lp.getVersion());
+  }
+
+  /**
+   * Get the terms of a sentence with their words as indexes in the sentence.
+   *
+   * @param terms
+   *          the terms of the sentence
+   * @param wfIndexes
+   *          the index of every word in the sentence
+   * @return the terms or null if the words are not covered exactly once
+   */
+  private static List<PreviousTerm> getPreviousTerms(final List<Term> terms,
+      final Map<WF, Integer> wfIndexes) {
+    final boolean[] covered = new boolean[wfIndexes.size()];
+    final List<PreviousTerm> previousTerms = new ArrayList<PreviousTerm>(
+        terms.size());
+    for (final Term term : terms) {
+      final List<WF> termWFs = term.getWFs();
+      final int[] indexes = new int[termWFs.size()];
+      for (int i = 0; i < indexes.length; i++) {
+        final Integer index = wfIndexes.get(termWFs.get(i));
+        if (index == null || covered[index]) {
+          return null;
+        }
+        covered[index] = true;
+        indexes[i] = index;
+      }
+      previousTerms.add(new PreviousTerm(indexes, term));
+    }
+    for (final boolean isCovered : covered) {
+      if (!isCovered) {
+        return null;
+      }
+    }
+    return previousTerms;
+  }
+
+  /**
+   * Copy the previous terms of a sentence into a NAF document, if the sentence
+   * has not changed.
+   *
+   * @param kaf
+   *          the NAF document
+   * @param wfs
+   *          the words of the sentence in the NAF document
+   * @return true if the sentence was found and its terms copied
+   */
+  public final boolean copyTerms(final KAFDocument kaf, final List<WF> wfs) {
+    final List<String> forms = new ArrayList<String>(wfs.size());
+    for (final WF wf : wfs) {
+      forms.add(wf.getForm());
+    }
+    final List<PreviousTerm> terms = this.sentenceTerms.get(forms);
+    if (terms == null) {
+      return false;
+    }
+    for (final PreviousTerm previousTerm : terms) {
+      final List<WF> wfTargets = new ArrayList<WF>(previousTerm.wfIndexes.length);
+      for (final int index : previousTerm.wfIndexes) {
+        wfTargets.add(wfs.get(index));
+      }
+      final Term term = kaf.newTerm(KAFDocument.newWFSpan(wfTargets));
+      term.setType(previousTerm.type);
+      term.setLemma(previousTerm.lemma);
+      term.setPos(previousTerm.pos);
+      term.setMorphofeat(previousTerm.morphofeat);
+    }
+    return true;
+  }
+
+  /**
+   * Check whether the previous terms were produced by the same linguistic
+   * processor and configuration and can be reused.
+   *
+   * @return true if the linguistic processor name, version and configuration
+   *         match
+   */
+  public final boolean isSameProcessor() {
+    return this.sameProcessor;
+  }
+
+  /**
+   * Get the number of sentences indexed.
+   *
+   * @return the number of sentences
+   */
+  public final int size() {
+    return this.sentenceTerms.size();
+  }
+
+  /**
+   * The annotation of a term of a previous document.
+   */
+  private static class PreviousTerm {
+
+    private final int[] wfIndexes;
+    private final String type;
+    private final String lemma;
+    private final String pos;
+    private final String morphofeat;
+
+    PreviousTerm(final int[] aWfIndexes, final Term term) {
+      this.wfIndexes = aWfIndexes;
+      this.type = term.getType();
+      this.lemma = term.getLemma();
+      this.pos = term.getPos();
+      this.morphofeat = term.getMorphofeat();
+    }
+  }
+
+}
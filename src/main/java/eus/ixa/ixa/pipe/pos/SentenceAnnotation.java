@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import java.util.Arrays;
+
+import opennlp.tools.util.Span;
+
+/**
+ * The morphological annotation of a tokenized sentence as returned by the
+ * batch API of {@link Annotate}: the words, postags, KAF postags, term types
+ * and lemmas as parallel arrays. If multiwords are detected, the words are the tokens with
+ * the multiwords joined and the multiword spans give the original tokens of
+ * each multiword.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class SentenceAnnotation {
+
+  /**
+   * Empty multiword spans.
+   */
+  private static final Span[] NO_SPANS = new Span[0];
+  /**
+   * The words, with the multiwords joined.
+   */
+  private final String[] words;
+  /**
+   * The postags.
+   */
+  private final String[] tags;
+  /**
+   * The KAF postags.
+   */
+  private final String[] posIds;
+  /**
+   * The term types.
+   */
+  private final String[] termTypes;
+  /**
+   * The lemmas.
+   */
+  private final String[] lemmas;
+  /**
+   * The multiword spans over the original tokens.
+   */
+  private final Span[] multiWordSpans;
+
+  /**
+   * Construct the annotation from a copy of an annotated sentence.
+   *
+   * @param sentence
+   *          the annotated sentence
+   * @param tagSetMapping
+   *          the mapping of the postags to the KAF tagset
+   * @param aMultiWordSpans
+   *          the multiword spans or null
+   */
+  SentenceAnnotation(final AnnotatedSentence sentence,
+      final TagSetMapping tagSetMapping, final Span[] aMultiWordSpans) {
+    final int length = sentence.getLength();
+    this.words = sentence.getTokens().clone();
+    this.tags = Arrays.copyOf(sentence.getTags(), length);
+    this.lemmas = Arrays.copyOf(sentence.getLemmas(), length);
+    this.posIds = new String[length];
+    this.termTypes = new String[length];
+    for (int i = 0; i < length; i++) {
+      this.posIds[i] = tagSetMapping.getPosId(this.tags[i]);
+      this.termTypes[i] = tagSetMapping.getTermType(this.tags[i]);
+    }
+    this.multiWordSpans = aMultiWordSpans == null ? NO_SPANS : aMultiWordSpans;
+  }
+
+  /**
+   * Get the number of words.
+   *
+   * @return the number of words
+   */
+  public final int getLength() {
+    return this.words.length;
+  }
+
+  /**
+   * Get the words, with the multiwords joined.
+   *
+   * @return the words
+   */
+  public final String[] getWords() {
+    return this.words;
+  }
+
+  /**
+   * Get the postags.
+   *
+   * @return the postags
+   */
+  public final String[] getTags() {
+    return this.tags;
+  }
+
+  /**
+   * Get the KAF postags.
+   *
+   * @return the KAF postags
+   */
+  public final String[] getPosIds() {
+    return this.posIds;
+  }
+
+  /**
+   * Get the term types.
+   *
+   * @return the term types
+   */
+  public final String[] getTermTypes() {
+    return this.termTypes;
+  }
+
+  /**
+   * Get the lemmas.
+   *
+   * @return the lemmas
+   */
+  public final String[] getLemmas() {
+    return this.lemmas;
+  }
+
+  /**
+   * Get the multiword spans over the original tokens.
+   *
+   * @return the multiword spans, empty if none
+   */
+  public final Span[] getMultiWordSpans() {
+    return this.multiWordSpans;
+  }
+
+}
@@ -24,8 +24,10 @@ import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
+import opennlp.tools.ml.model.MaxentModel;
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSTaggerME;
+import eus.ixa.ixa.pipe.pos.train.BaselineFactory;
 
 /**
  * POS tagging module based on Apache OpenNLP machine learning API.
@@ -40,6 +42,10 @@ public class StatisticalTagger {
    * The morpho tagger.
    */
   private final POSTaggerME posTagger;
+  /**
+   * The postag model.
+   */
+  private final POSModel posModel;
   /**
    * The models to use for every language. The keys of the hashmap are the language
    * codes, the values the models.
@@ -72,8 +78,8 @@ public class StatisticalTagger {
     final String lang = props.getProperty("language");
     final String model = props.getProperty("model");
     final Boolean useModelCache = Boolean.valueOf(props.getProperty("useModelCache", "true"));
-    final POSModel posModel = loadModel(lang, model, useModelCache);
-    this.posTagger = new POSTaggerME(posModel);
+    this.posModel = loadModel(lang, model, useModelCache);
+    this.posTagger = new POSTaggerME(this.posModel);
     this.morphoFactory = aMorphoFactory;
   }
 
@@ -104,6 +110,29 @@ public class StatisticalTagger {
         Arrays.asList(annotatedText));
     return posTags;
   }
+
+  /**
+   * Produce postags from a tokenized sentence into a caller supplied buffer.
+   * 
+   * @param tokens
+   *          the sentence
+   * @param posTags
+   *          the buffer for the postags, at least as long as the sentence
+   */
+  public final void posAnnotate(final String[] tokens, final String[] posTags) {
+    final String[] annotatedText = this.posTagger.tag(tokens);
+    System.arraycopy(annotatedText, 0, posTags, 0, annotatedText.length);
+  }
+
+  /**
+   * Fill the postags of a sentence.
+   * 
+   * @param sentence
+   *          the sentence
+   */
+  public final void annotate(final AnnotatedSentence sentence) {
+    posAnnotate(sentence.getTokens(), sentence.getTags());
+  }
   
   /**
    * Produces a multidimensional array containing all the tagging
@@ -116,6 +145,38 @@ public class StatisticalTagger {
     return allPosTags;
   }
 
+  /**
+   * Get the postags of the model, indexed by outcome id.
+   * 
+   * @return the postags
+   */
+  public final String[] getTags() {
+    final Object artifact = this.posModel
+        .getArtifact(POSModel.POS_MODEL_ENTRY_NAME);
+    if (!(artifact instanceof MaxentModel)) {
+      return this.posModel.getPosSequenceModel().getOutcomes();
+    }
+    final MaxentModel maxentModel = (MaxentModel) artifact;
+    final String[] tags = new String[maxentModel.getNumOutcomes()];
+    for (int i = 0; i < tags.length; i++) {
+      tags[i] = maxentModel.getOutcome(i);
+    }
+    return tags;
+  }
+
+  /**
+   * Get the cache of the word features shared by the decoders of the model.
+   * 
+   * @return the word feature cache or null if the model does not use one
+   */
+  public final WordFeatureCache getWordFeatureCache() {
+    if (this.posModel.getFactory() instanceof BaselineFactory) {
+      return ((BaselineFactory) this.posModel.getFactory())
+          .getWordFeatureCache();
+    }
+    return null;
+  }
+
   /**
    * Create {@code Morpheme} objects from the output of posAnnotate.
    * 
@@ -159,6 +220,7 @@ public class StatisticalTagger {
             model = new POSModel(new FileInputStream(modelName));
             posModels.put(lang, model);
           }
+          model = posModels.get(lang);
         }
       } else {
         model = new POSModel(new FileInputStream(modelName));
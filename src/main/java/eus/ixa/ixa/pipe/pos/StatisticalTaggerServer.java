@@ -89,8 +89,8 @@ public class StatisticalTaggerServer {
           outToClient = new BufferedWriter(new OutputStreamWriter(activeSocket.getOutputStream(), "UTF-8"));
           //get data from client
           String stringFromClient = getClientData(inFromClient);
-          // annotate
-          kafToString = getAnnotations(annotator, stringFromClient);
+          // annotate and write the output to the client
+          getAnnotations(annotator, stringFromClient, outToClient);
         } catch (JDOMException e) {
           kafToString = "\n-> ERROR: Badly formatted NAF document!!\n";
           sendDataToClient(outToClient, kafToString);
@@ -104,8 +104,8 @@ public class StatisticalTaggerServer {
           sendDataToClient(outToClient, kafToString);
           continue;
         }
-        //send data to server after all exceptions and close the outToClient
-        sendDataToClient(outToClient, kafToString);
+        //close the outToClient after all exceptions
+        outToClient.close();
         //close the resources
         inFromClient.close();
         activeSocket.close();
@@ -159,40 +159,39 @@ public class StatisticalTaggerServer {
   }
   
   /**
-   * MorphoTagger annotator.
+   * MorphoTagger annotator. The CoNLL output is written sentence by sentence.
    * @param annotator the annotator
    * @param stringFromClient the string to be annotated
-   * @return the annotation result
+   * @param outToClient the outputstream to the client
    * @throws IOException if io error
    * @throws JDOMException if xml error
    */
-  private String getAnnotations(Annotate annotator, String stringFromClient) throws IOException, JDOMException {
+  private void getAnnotations(Annotate annotator, String stringFromClient, BufferedWriter outToClient) throws IOException, JDOMException {
   //get a breader from the string coming from the client
     BufferedReader clientReader = new BufferedReader(new StringReader(stringFromClient));
     KAFDocument kaf = KAFDocument.createFromStream(clientReader);
     final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
         "terms", "ixa-pipe-pos-" + Files.getNameWithoutExtension(model),
-        this.version + "-" + this.commit);
+        PreviousAnnotations.getTermsVersion(this.version + "-" + this.commit,
+            annotator.getModelIdentity()));
     newLp.setBeginTimestamp();
-    String kafToString = null;
     if (allMorphology) {
       if (outputFormat.equalsIgnoreCase("conll")) {
-        kafToString = annotator.getAllTagsLemmasToCoNLL(kaf);
+        annotator.getAllTagsLemmasToCoNLL(kaf, outToClient);
       } else {
         annotator.getAllTagsLemmasToNAF(kaf);
         newLp.setEndTimestamp();
-        kafToString = kaf.toString();
+        outToClient.write(kaf.toString());
       }
     } else {
       if (outputFormat.equalsIgnoreCase("conll")) {
-        kafToString = annotator.annotatePOSToCoNLL(kaf);
+        annotator.annotatePOSToCoNLL(kaf, outToClient);
       } else {
         annotator.annotatePOSToKAF(kaf);
         newLp.setEndTimestamp();
-        kafToString = kaf.toString();
+        outToClient.write(kaf.toString());
       }
     }
-    return kafToString;
   }
 
 }
\ No newline at end of file
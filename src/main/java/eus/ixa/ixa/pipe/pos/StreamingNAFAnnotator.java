@@ -0,0 +1,651 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import opennlp.tools.util.Span;
+
+import com.google.common.base.Joiner;
+import com.google.common.io.Files;
+
+/**
+ * Streaming annotation of NAF documents. The document is read with StAX and
+ * annotated sentence by sentence, without building a {@link KAFDocument}: the
+ * input is copied to the output as it is read, and the terms of every sentence
+ * are spooled to a temporary file and written after the text layer. Memory is
+ * thus bounded by the longest sentence rather than by the document.
+ * <p>
+ * The sentences are the runs of consecutive WFs with the same {@code sent}
+ * attribute, as produced by the tokenizer. Documents already containing a terms
+ * layer are not supported. As the header is written before the document is
+ * annotated, the linguistic processor is added without end timestamp.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class StreamingNAFAnnotator {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String NAF = "NAF";
+  private static final String NAF_HEADER = "nafHeader";
+  private static final String TEXT = "text";
+  private static final String WF = "wf";
+  private static final String TERMS = "terms";
+  /**
+   * Property of the JDK StAX implementation to report CDATA sections.
+   */
+  private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+  /**
+   * The properties to create the annotator.
+   */
+  private final Properties properties;
+  /**
+   * The name of the linguistic processor.
+   */
+  private final String lpName;
+  /**
+   * The version of the linguistic processor.
+   */
+  private final String lpVersion;
+  /**
+   * The annotator, created once the language of the document is known.
+   */
+  private Annotate annotator;
+  /**
+   * The forms of the current sentence.
+   */
+  private final List<String> forms = new ArrayList<String>();
+  /**
+   * The WF ids of the current sentence.
+   */
+  private final List<String> wfIds = new ArrayList<String>();
+  /**
+   * The sent attribute of the current sentence.
+   */
+  private String currentSent;
+  /**
+   * The number of terms written.
+   */
+  private int termCounter;
+
+  /**
+   * Construct a streaming annotator. If the properties do not provide a
+   * language, the language of each document is used.
+   *
+   * @param aProperties
+   *          the properties to create the annotator
+   * @param aLpName
+   *          the name of the linguistic processor added to the header
+   * @param aLpVersion
+   *          the version of the linguistic processor added to the header
+   */
+  public StreamingNAFAnnotator(final Properties aProperties,
+      final String aLpName, final String aLpVersion) {
+    this.properties = aProperties;
+    this.lpName = aLpName;
+    this.lpVersion = aLpVersion;
+  }
+
+  /**
+   * Get the annotator used for the last document.
+   *
+   * @return the annotator or null if no document has been annotated
+   */
+  public final Annotate getAnnotator() {
+    return this.annotator;
+  }
+
+  /**
+   * Annotate morphological information into a NAF document.
+   *
+   * @param reader
+   *          the NAF input document
+   * @param writer
+   *          the NAF output document; it is not closed
+   * @throws IOException
+   *           if malformed NAF or io problems
+   */
+  public final void annotatePOSToKAF(final Reader reader, final Writer writer)
+      throws IOException {
+    final File spoolFile = File.createTempFile("ixa-pipe-pos-terms", ".xml");
+    spoolFile.deleteOnExit();
+    XMLStreamReader xmlReader = null;
+    final Writer spoolWriter = new OutputStreamWriter(new FileOutputStream(
+        spoolFile), UTF_8);
+    XMLStreamWriter termsWriter = null;
+    try {
+      xmlReader = createReader(reader);
+      final XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance()
+          .createXMLStreamWriter(writer);
+      termsWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(
+          spoolWriter);
+      resetSentence();
+      this.termCounter = 0;
+      String lang = null;
+      boolean header = false;
+      boolean inText = false;
+      int depth = 0;
+      int event = xmlReader.getEventType();
+      while (true) {
+        switch (event) {
+        case XMLStreamConstants.START_DOCUMENT:
+          xmlWriter.writeStartDocument("UTF-8",
+              xmlReader.getVersion() == null ? "1.0" : xmlReader.getVersion());
+          xmlWriter.writeCharacters("\n");
+          break;
+        case XMLStreamConstants.START_ELEMENT:
+          final String name = xmlReader.getLocalName();
+          depth++;
+          if (depth == 2 && !header && !NAF_HEADER.equals(name)) {
+            // no header in the input
+            writeHeader(xmlWriter, lang, true);
+            header = true;
+          }
+          if (depth == 1 && NAF.equals(name)) {
+            lang = xmlReader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+            loadAnnotator(lang);
+          } else if (depth == 2 && TERMS.equals(name)) {
+            throw new IOException(
+                "The NAF document already contains a terms layer!");
+          } else if (depth == 2 && TEXT.equals(name)) {
+            inText = true;
+          } else if (inText && WF.equals(name)) {
+            new StartTag(xmlReader).write(xmlWriter, false);
+            final String wfId = xmlReader.getAttributeValue(null, "id");
+            final String sent = xmlReader.getAttributeValue(null, "sent");
+            final String form = xmlReader.getElementText();
+            xmlWriter.writeCharacters(form);
+            xmlWriter.writeEndElement();
+            depth--;
+            addWord(wfId, sent, form, termsWriter);
+            break;
+          }
+          final StartTag startTag = new StartTag(xmlReader);
+          event = xmlReader.next();
+          startTag.write(xmlWriter, event == XMLStreamConstants.END_ELEMENT);
+          if (event == XMLStreamConstants.END_ELEMENT) {
+            depth--;
+            break;
+          }
+          // the event following the start element is not processed yet
+          continue;
+        case XMLStreamConstants.END_ELEMENT:
+          final String endName = xmlReader.getLocalName();
+          if (depth == 2 && NAF_HEADER.equals(endName)) {
+            writeHeader(xmlWriter, lang, false);
+            header = true;
+          }
+          xmlWriter.writeEndElement();
+          if (depth == 2 && TEXT.equals(endName)) {
+            inText = false;
+            annotateSentence(termsWriter);
+            termsWriter.flush();
+            termsWriter.close();
+            termsWriter = null;
+            spoolWriter.close();
+            writeTerms(xmlWriter, writer, spoolFile);
+          }
+          depth--;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+          xmlWriter.writeCharacters(xmlReader.getTextCharacters(),
+              xmlReader.getTextStart(), xmlReader.getTextLength());
+          break;
+        case XMLStreamConstants.CDATA:
+          xmlWriter.writeCData(xmlReader.getText());
+          break;
+        case XMLStreamConstants.COMMENT:
+          xmlWriter.writeComment(xmlReader.getText());
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          xmlWriter.writeProcessingInstruction(xmlReader.getPITarget(),
+              xmlReader.getPIData());
+          break;
+        case XMLStreamConstants.DTD:
+          xmlWriter.writeDTD(xmlReader.getText());
+          break;
+        case XMLStreamConstants.ENTITY_REFERENCE:
+          xmlWriter.writeEntityRef(xmlReader.getLocalName());
+          break;
+        default:
+          break;
+        }
+        if (event == XMLStreamConstants.END_DOCUMENT) {
+          xmlWriter.writeEndDocument();
+          xmlWriter.writeCharacters("\n");
+          xmlWriter.flush();
+          break;
+        }
+        event = xmlReader.next();
+      }
+    } catch (final XMLStreamException e) {
+      throw new IOException("Badly formatted NAF document!", e);
+    } finally {
+      closeQuietly(xmlReader, termsWriter);
+      spoolWriter.close();
+      spoolFile.delete();
+    }
+  }
+
+  /**
+   * Annotate morphological information in tabulated CoNLL-style format.
+   *
+   * @param reader
+   *          the NAF input document
+   * @param writer
+   *          the output in tabulated format; it is not closed
+   * @throws IOException
+   *           if malformed NAF or io problems
+   */
+  public final void annotatePOSToCoNLL(final Reader reader, final Writer writer)
+      throws IOException {
+    XMLStreamReader xmlReader = null;
+    try {
+      xmlReader = createReader(reader);
+      resetSentence();
+      boolean inText = false;
+      int depth = 0;
+      while (xmlReader.hasNext()) {
+        final int event = xmlReader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          final String name = xmlReader.getLocalName();
+          depth++;
+          if (depth == 1 && NAF.equals(name)) {
+            loadAnnotator(xmlReader.getAttributeValue(XMLConstants.XML_NS_URI,
+                "lang"));
+          } else if (depth == 2 && TEXT.equals(name)) {
+            inText = true;
+          } else if (inText && WF.equals(name)) {
+            final String wfId = xmlReader.getAttributeValue(null, "id");
+            final String sent = xmlReader.getAttributeValue(null, "sent");
+            if (!this.forms.isEmpty() && !equal(sent, this.currentSent)) {
+              writeCoNLL(writer);
+            }
+            this.currentSent = sent;
+            this.forms.add(xmlReader.getElementText());
+            this.wfIds.add(wfId);
+            depth--;
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          if (depth == 2 && TEXT.equals(xmlReader.getLocalName())) {
+            inText = false;
+            writeCoNLL(writer);
+          }
+          depth--;
+        }
+      }
+      writer.flush();
+    } catch (final XMLStreamException e) {
+      throw new IOException("Badly formatted NAF document!", e);
+    } finally {
+      closeQuietly(xmlReader, null);
+    }
+  }
+
+  /**
+   * Create the StAX reader without support for external entities.
+   *
+   * @param reader
+   *          the NAF input document
+   * @return the StAX reader
+   * @throws XMLStreamException
+   *           if the reader can not be created
+   */
+  private static XMLStreamReader createReader(final Reader reader)
+      throws XMLStreamException {
+    final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+        Boolean.FALSE);
+    inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    // keep the raw layer in a CDATA section
+    if (inputFactory.isPropertySupported(REPORT_CDATA)) {
+      inputFactory.setProperty(REPORT_CDATA, Boolean.TRUE);
+    }
+    return inputFactory.createXMLStreamReader(reader);
+  }
+
+  /**
+   * Create the annotator for the language of the document.
+   *
+   * @param docLang
+   *          the xml:lang attribute of the document, may be null
+   * @throws IOException
+   *           if no language is available or the models can not be loaded
+   */
+  private void loadAnnotator(final String docLang) throws IOException {
+    final String lang = this.properties.getProperty("language");
+    if (lang == null) {
+      if (docLang == null) {
+        throw new IOException("No language in the NAF document nor in the CLI!");
+      }
+      final Properties docProperties = new Properties();
+      docProperties.putAll(this.properties);
+      docProperties.setProperty("language", docLang);
+      this.annotator = new Annotate(docProperties);
+    } else {
+      if (docLang != null && !docLang.equalsIgnoreCase(lang)) {
+        System.err.println("Language parameter in NAF and CLI do not match!!");
+      }
+      if (this.annotator == null) {
+        this.annotator = new Annotate(this.properties);
+      }
+    }
+  }
+
+  /**
+   * Add a word to the current sentence, annotating the previous sentence if
+   * the word starts a new one.
+   */
+  private void addWord(final String wfId, final String sent,
+      final String form, final XMLStreamWriter termsWriter)
+      throws XMLStreamException {
+    if (!this.forms.isEmpty() && !equal(sent, this.currentSent)) {
+      annotateSentence(termsWriter);
+    }
+    this.currentSent = sent;
+    this.forms.add(form);
+    this.wfIds.add(wfId);
+  }
+
+  /**
+   * Annotate the current sentence and write its terms to the spool.
+   *
+   * @param termsWriter
+   *          the writer of the terms spool
+   * @throws XMLStreamException
+   *           if the terms can not be written
+   */
+  private void annotateSentence(final XMLStreamWriter termsWriter)
+      throws XMLStreamException {
+    if (this.forms.isEmpty()) {
+      return;
+    }
+    final String[] tokens = this.forms.toArray(new String[this.forms.size()]);
+    final SentenceAnnotation annotation = this.annotator.annotate(tokens);
+    final Span[] multiWordSpans = annotation.getMultiWordSpans();
+    int token = 0;
+    int nextSpan = 0;
+    for (int i = 0; i < annotation.getLength(); i++) {
+      int end = token + 1;
+      if (nextSpan < multiWordSpans.length
+          && multiWordSpans[nextSpan].getStart() == token) {
+        end = multiWordSpans[nextSpan].getEnd();
+        nextSpan++;
+      }
+      final String posId = annotation.getPosIds()[i];
+      termsWriter.writeCharacters("\n    ");
+      termsWriter.writeComment(toComment(Joiner.on(" ").join(
+          this.forms.subList(token, end))));
+      termsWriter.writeCharacters("\n    ");
+      termsWriter.writeStartElement("term");
+      termsWriter.writeAttribute("id", "t" + ++this.termCounter);
+      termsWriter.writeAttribute("type", annotation.getTermTypes()[i]);
+      termsWriter.writeAttribute("lemma", annotation.getLemmas()[i]);
+      termsWriter.writeAttribute("pos", posId);
+      termsWriter.writeAttribute("morphofeat", annotation.getTags()[i]);
+      termsWriter.writeCharacters("\n      ");
+      termsWriter.writeStartElement("span");
+      for (int j = token; j < end; j++) {
+        termsWriter.writeCharacters("\n        ");
+        termsWriter.writeEmptyElement("target");
+        termsWriter.writeAttribute("id", this.wfIds.get(j));
+      }
+      termsWriter.writeCharacters("\n      ");
+      termsWriter.writeEndElement();
+      termsWriter.writeCharacters("\n    ");
+      termsWriter.writeEndElement();
+      token = end;
+    }
+    resetSentence();
+  }
+
+  /**
+   * Annotate the current sentence and write it in tabulated format.
+   *
+   * @param writer
+   *          the output
+   * @throws IOException
+   *           if io problems
+   */
+  private void writeCoNLL(final Writer writer) throws IOException {
+    if (this.forms.isEmpty()) {
+      return;
+    }
+    final String[] tokens = this.forms.toArray(new String[this.forms.size()]);
+    final SentenceAnnotation annotation = this.annotator.annotate(tokens);
+    for (int i = 0; i < annotation.getLength(); i++) {
+      writer.write(annotation.getWords()[i]);
+      writer.write("\t");
+      writer.write(annotation.getLemmas()[i]);
+      writer.write("\t");
+      writer.write(annotation.getTags()[i]);
+      writer.write("\n");
+    }
+    writer.write("\n");
+    resetSentence();
+  }
+
+  /**
+   * Write the terms linguistic processor into the header.
+   *
+   * @param xmlWriter
+   *          the output
+   * @param lang
+   *          the language of the document
+   * @param newHeader
+   *          whether to write the header element as well
+   * @throws XMLStreamException
+   *           if the header can not be written
+   * @throws IOException
+   *           if the models can not be read to identify them
+   */
+  private void writeHeader(final XMLStreamWriter xmlWriter, final String lang,
+      final boolean newHeader) throws XMLStreamException, IOException {
+    final KAFDocument.LinguisticProcessor lp = new KAFDocument(
+        lang == null ? "" : lang, "v3").addLinguisticProcessor(TERMS,
+        this.lpName, PreviousAnnotations.getTermsVersion(this.lpVersion,
+            this.annotator.getModelIdentity()));
+    lp.setBeginTimestamp();
+    if (newHeader) {
+      xmlWriter.writeStartElement(NAF_HEADER);
+      xmlWriter.writeCharacters("\n    ");
+    } else {
+      xmlWriter.writeCharacters("  ");
+    }
+    xmlWriter.writeStartElement("linguisticProcessors");
+    xmlWriter.writeAttribute("layer", TERMS);
+    xmlWriter.writeCharacters("\n      ");
+    xmlWriter.writeEmptyElement("lp");
+    xmlWriter.writeAttribute("name", lp.getName());
+    xmlWriter.writeAttribute("beginTimestamp", lp.getBeginTimestamp());
+    xmlWriter.writeAttribute("version", lp.getVersion());
+    if (lp.hasHostname()) {
+      xmlWriter.writeAttribute("hostname", lp.getHostname());
+    }
+    xmlWriter.writeCharacters("\n    ");
+    xmlWriter.writeEndElement();
+    xmlWriter.writeCharacters("\n  ");
+    if (newHeader) {
+      xmlWriter.writeEndElement();
+      xmlWriter.writeCharacters("\n  ");
+    }
+  }
+
+  /**
+   * Write the terms layer from the spool after the text layer.
+   *
+   * @param xmlWriter
+   *          the output
+   * @param writer
+   *          the writer of the output
+   * @param spoolFile
+   *          the terms spool
+   * @throws XMLStreamException
+   *           if the terms can not be written
+   * @throws IOException
+   *           if io problems while reading the spool
+   */
+  private void writeTerms(final XMLStreamWriter xmlWriter, final Writer writer,
+      final File spoolFile) throws XMLStreamException, IOException {
+    if (this.termCounter == 0) {
+      return;
+    }
+    xmlWriter.writeCharacters("\n  ");
+    xmlWriter.writeStartElement(TERMS);
+    // closes the start tag before copying the spool
+    xmlWriter.writeCharacters("");
+    xmlWriter.flush();
+    Files.asCharSource(spoolFile, UTF_8).copyTo(writer);
+    xmlWriter.writeCharacters("\n  ");
+    xmlWriter.writeEndElement();
+  }
+
+  private void resetSentence() {
+    this.forms.clear();
+    this.wfIds.clear();
+    this.currentSent = null;
+  }
+
+  /**
+   * A start element read from the input, kept until it is known whether the
+   * element is empty.
+   */
+  private static final class StartTag {
+
+    private final String prefix;
+    private final String localName;
+    private final String namespace;
+    private final List<String[]> namespaces = new ArrayList<String[]>();
+    private final List<String[]> attributes = new ArrayList<String[]>();
+
+    /**
+     * Read the start element the reader is positioned at.
+     *
+     * @param xmlReader
+     *          the input
+     */
+    StartTag(final XMLStreamReader xmlReader) {
+      this.prefix = xmlReader.getPrefix();
+      this.localName = xmlReader.getLocalName();
+      this.namespace = xmlReader.getNamespaceURI();
+      for (int i = 0; i < xmlReader.getNamespaceCount(); i++) {
+        this.namespaces.add(new String[] { xmlReader.getNamespacePrefix(i),
+            xmlReader.getNamespaceURI(i) });
+      }
+      for (int i = 0; i < xmlReader.getAttributeCount(); i++) {
+        this.attributes.add(new String[] { xmlReader.getAttributePrefix(i),
+            xmlReader.getAttributeNamespace(i),
+            xmlReader.getAttributeLocalName(i), xmlReader.getAttributeValue(i) });
+      }
+    }
+
+    /**
+     * Write the element with its namespaces and attributes.
+     *
+     * @param xmlWriter
+     *          the output
+     * @param empty
+     *          whether to write an empty element
+     * @throws XMLStreamException
+     *           if the element can not be written
+     */
+    void write(final XMLStreamWriter xmlWriter, final boolean empty)
+        throws XMLStreamException {
+      final String elementPrefix = this.prefix == null ? "" : this.prefix;
+      if (empty && this.namespace == null) {
+        xmlWriter.writeEmptyElement(this.localName);
+      } else if (empty) {
+        xmlWriter.writeEmptyElement(elementPrefix, this.localName,
+            this.namespace);
+      } else if (this.namespace == null) {
+        xmlWriter.writeStartElement(this.localName);
+      } else {
+        xmlWriter.writeStartElement(elementPrefix, this.localName,
+            this.namespace);
+      }
+      for (final String[] ns : this.namespaces) {
+        if (ns[0] == null || ns[0].isEmpty()) {
+          xmlWriter.writeDefaultNamespace(ns[1]);
+        } else {
+          xmlWriter.writeNamespace(ns[0], ns[1]);
+        }
+      }
+      for (final String[] att : this.attributes) {
+        if (att[0] == null || att[0].isEmpty()) {
+          xmlWriter.writeAttribute(att[2], att[3]);
+        } else {
+          xmlWriter.writeAttribute(att[0], att[1], att[2], att[3]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Make a form a valid XML comment.
+   *
+   * @param form
+   *          the form
+   * @return the comment text
+   */
+  private static String toComment(final String form) {
+    String comment = form.replace("--", "- -");
+    if (comment.endsWith("-")) {
+      comment = comment + " ";
+    }
+    return comment;
+  }
+
+  private static boolean equal(final String a, final String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  private static void closeQuietly(final XMLStreamReader xmlReader,
+      final XMLStreamWriter termsWriter) {
+    try {
+      if (xmlReader != null) {
+        xmlReader.close();
+      }
+      if (termsWriter != null) {
+        termsWriter.close();
+      }
+    } catch (final XMLStreamException e) {
+      // nothing to do
+    }
+  }
+
+}
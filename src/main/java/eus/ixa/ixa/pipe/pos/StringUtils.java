@@ -320,8 +320,21 @@ public static void computeShortestEditScript(String wordForm, String lemma, int[
    * @return the lemma
    */
   public static String decodeShortestEditScript(String wordForm, String permutations) {
+    return decodeShortestEditScript(wordForm, wordForm.toLowerCase(), permutations);
+  }
+
+  /**
+   * Read predicted SES by the lemmatizer model and apply the
+   * permutations to obtain the lemma from the wordForm, whose lowercased
+   * form is already known.
+   * @param wordForm the wordForm
+   * @param lowerCaseWordForm the lowercased wordForm
+   * @param permutations the permutations predicted by the lemmatizer model
+   * @return the lemma
+   */
+  public static String decodeShortestEditScript(String wordForm, String lowerCaseWordForm, String permutations) {
     
-    StringBuffer lemma = new StringBuffer(wordForm.toLowerCase()).reverse();
+    StringBuffer lemma = new StringBuffer(lowerCaseWordForm).reverse();
     
     int permIndex = 0;
     while(true) {
@@ -384,6 +397,76 @@ public static void computeShortestEditScript(String wordForm, String lemma, int[
     return lemma.reverse().toString();
 }
 
+  /**
+   * Check whether a predicted SES can be applied to a wordForm, that is,
+   * whether {@link #decodeShortestEditScript(String, String)} obtains a lemma
+   * from it instead of returning the wordForm unchanged. As in the decoder,
+   * every permutation must refer to a position within the word, while a
+   * replacement whose character is not found is skipped and a deletion
+   * removes whatever character is found.
+   * @param wordForm the wordForm
+   * @param permutations the permutations of the lemma class
+   * @return true if the permutations can be applied to the wordForm
+   */
+  public static boolean isApplicableEditScript(String wordForm, String permutations) {
+
+    if (permutations.equals("O") || permutations.equals("1")) {
+      return true;
+    }
+    return isApplicableLowerCaseEditScript(wordForm.toLowerCase(), permutations);
+  }
+
+  /**
+   * Check whether a predicted SES can be applied to a wordForm already
+   * lowercased.
+   * @param lowerCaseWordForm the lowercased wordForm
+   * @param permutations the permutations of the lemma class
+   * @return true if the permutations can be applied to the wordForm
+   */
+  public static boolean isApplicableLowerCaseEditScript(String lowerCaseWordForm, String permutations) {
+
+    if (permutations.equals("O") || permutations.equals("1")) {
+      return true;
+    }
+    // only the length of the lemma matters to the decoder
+    int length = lowerCaseWordForm.length();
+    int permIndex = 0;
+    while (permIndex < permutations.length()) {
+      char nextOperation = permutations.charAt(permIndex);
+      permIndex++;
+      if (nextOperation != 'R' && nextOperation != 'I'
+          && nextOperation != 'D') {
+        // the decoder skips unknown operations
+        continue;
+      }
+      if (permutations.length() <= permIndex
+          || !Character.isDigit(permutations.charAt(permIndex))) {
+        return false;
+      }
+      int charIndex = Character.digit(permutations.charAt(permIndex), 10);
+      permIndex++;
+      if (nextOperation == 'R') {
+        if (permutations.length() <= permIndex + 1 || length <= charIndex) {
+          return false;
+        }
+        permIndex += 2;
+      } else if (nextOperation == 'I') {
+        if (permutations.length() <= permIndex || length < charIndex) {
+          return false;
+        }
+        length++;
+        permIndex++;
+      } else {
+        if (length <= charIndex) {
+          return false;
+        }
+        length--;
+        permIndex++;
+      }
+    }
+    return true;
+  }
+
     /**
      * Get the SES required to go from a word to a lemma.
      *
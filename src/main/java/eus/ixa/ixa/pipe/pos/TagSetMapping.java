@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.io.Files;
+
+/**
+ * Mapping of the postags of a model to the KAF postags and term types. The
+ * mapping of every tag of the model is computed once, when the model is
+ * loaded, so that mapping a token is a table lookup instead of a chain of
+ * string comparisons. Tags not known by the model, such as those coming from
+ * the monosemic dictionaries, are mapped and added to the table the first time
+ * they are seen.
+ * <p>
+ * The mapping of each language is given by {@link Resources#getKafTagSet}
+ * unless a mapping file is provided with the {@code tagsetMapping} property.
+ * Every line of a mapping file contains a postag, a KAF postag and optionally
+ * the term type, separated by tabs. A postag ending with {@code *} matches the
+ * tags starting with it; otherwise it matches the tags equal to it, ignoring
+ * case. The first matching line is used and tags not matched by any line are
+ * mapped to {@code O}. Empty lines and lines starting with {@code #} are
+ * ignored.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class TagSetMapping {
+
+  /**
+   * The mappings for every model. The keys of the hashmap are built from the
+   * model, language and mapping file.
+   */
+  private final static ConcurrentHashMap<String, TagSetMapping> tagSetMappings = new ConcurrentHashMap<String, TagSetMapping>();
+  /**
+   * The KAF postag of the tags not matched by a mapping file.
+   */
+  private static final String OTHER = "O";
+  /**
+   * The language.
+   */
+  private final String lang;
+  /**
+   * The rules read from the mapping file or null to use the built-in mapping.
+   */
+  private final List<String[]> rules;
+  /**
+   * The outcome id of every tag of the model.
+   */
+  private final Map<String, Integer> outcomeIds;
+  /**
+   * The KAF postag of every outcome id.
+   */
+  private final String[] posIds;
+  /**
+   * The term type of every outcome id.
+   */
+  private final String[] termTypes;
+  /**
+   * The mapping of the tags not known by the model, as {KAF postag, type}.
+   */
+  private final ConcurrentHashMap<String, String[]> unknownTags = new ConcurrentHashMap<String, String[]>();
+
+  /**
+   * Construct the mapping of the tags of a model.
+   *
+   * @param aLang
+   *          the language
+   * @param aRules
+   *          the rules of the mapping file or null for the built-in mapping
+   * @param tags
+   *          the tags of the model, indexed by outcome id
+   */
+  private TagSetMapping(final String aLang, final List<String[]> aRules,
+      final String[] tags) {
+    this.lang = aLang;
+    this.rules = aRules;
+    this.outcomeIds = new HashMap<String, Integer>(tags.length * 2);
+    this.posIds = new String[tags.length];
+    this.termTypes = new String[tags.length];
+    for (int i = 0; i < tags.length; i++) {
+      final String[] mapping = map(tags[i]);
+      this.outcomeIds.put(tags[i], i);
+      this.posIds[i] = mapping[0];
+      this.termTypes[i] = mapping[1];
+    }
+  }
+
+  /**
+   * Get the mapping shared by the annotators using the same model, language
+   * and mapping file.
+   *
+   * @param props
+   *          the properties of the annotator
+   * @param tags
+   *          the tags of the model, indexed by outcome id
+   * @return the tagset mapping
+   * @throws IOException
+   *           if the mapping file can not be read
+   */
+  public static TagSetMapping getSharedMapping(final Properties props,
+      final String[] tags) throws IOException {
+    final String lang = props.getProperty("language");
+    final String mappingFile = props.getProperty("tagsetMapping");
+    final String key = props.getProperty("model") + "\t" + lang + "\t"
+        + mappingFile;
+    TagSetMapping tagSetMapping = tagSetMappings.get(key);
+    if (tagSetMapping == null) {
+      final List<String[]> rules = mappingFile == null ? null
+          : loadRules(new File(mappingFile));
+      tagSetMapping = new TagSetMapping(lang, rules, tags);
+      final TagSetMapping previous = tagSetMappings.putIfAbsent(key,
+          tagSetMapping);
+      if (previous != null) {
+        tagSetMapping = previous;
+      }
+    }
+    return tagSetMapping;
+  }
+
+  /**
+   * Read the rules of a mapping file.
+   *
+   * @param mappingFile
+   *          the mapping file
+   * @return the rules as {postag, KAF postag, type or null}
+   * @throws IOException
+   *           if the file can not be read or is malformed
+   */
+  private static List<String[]> loadRules(final File mappingFile)
+      throws IOException {
+    final List<String[]> rules = new ArrayList<String[]>();
+    for (final String line : Files.readLines(mappingFile,
+        Charset.forName("UTF-8"))) {
+      final String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      final String[] fields = trimmed.split("\t");
+      if (fields.length < 2 || fields.length > 3) {
+        throw new IOException("Malformed tagset mapping line in "
+            + mappingFile + ": " + line);
+      }
+      rules.add(new String[] { fields[0], fields[1],
+          fields.length == 3 ? fields[2] : null });
+    }
+    return rules;
+  }
+
+  /**
+   * Get the KAF postag of a tag.
+   *
+   * @param postag
+   *          the postag
+   * @return the KAF postag
+   */
+  public final String getPosId(final String postag) {
+    final Integer outcomeId = this.outcomeIds.get(postag);
+    return outcomeId == null ? getUnknownTag(postag)[0]
+        : this.posIds[outcomeId];
+  }
+
+  /**
+   * Get the term type of a tag.
+   *
+   * @param postag
+   *          the postag
+   * @return the term type
+   */
+  public final String getTermType(final String postag) {
+    final Integer outcomeId = this.outcomeIds.get(postag);
+    return outcomeId == null ? getUnknownTag(postag)[1]
+        : this.termTypes[outcomeId];
+  }
+
+  /**
+   * Get the KAF postag of an outcome of the model.
+   *
+   * @param outcomeId
+   *          the outcome id
+   * @return the KAF postag
+   */
+  public final String getPosId(final int outcomeId) {
+    return this.posIds[outcomeId];
+  }
+
+  /**
+   * Get the term type of an outcome of the model.
+   *
+   * @param outcomeId
+   *          the outcome id
+   * @return the term type
+   */
+  public final String getTermType(final int outcomeId) {
+    return this.termTypes[outcomeId];
+  }
+
+  private String[] getUnknownTag(final String postag) {
+    String[] mapping = this.unknownTags.get(postag);
+    if (mapping == null) {
+      mapping = map(postag);
+      this.unknownTags.putIfAbsent(postag, mapping);
+    }
+    return mapping;
+  }
+
+  /**
+   * Map a tag with the rules or with the built-in mapping.
+   *
+   * @param postag
+   *          the postag
+   * @return the KAF postag and term type
+   */
+  private String[] map(final String postag) {
+    if (this.rules == null) {
+      final String posId = Resources.getKafTagSet(postag, this.lang);
+      return new String[] { posId, Resources.setTermType(posId) };
+    }
+    for (final String[] rule : this.rules) {
+      final boolean matches = rule[0].endsWith("*") ? postag
+          .startsWith(rule[0].substring(0, rule[0].length() - 1)) : postag
+          .equalsIgnoreCase(rule[0]);
+      if (matches) {
+        return new String[] { rule[1],
+            rule[2] == null ? Resources.setTermType(rule[1]) : rule[2] };
+      }
+    }
+    return new String[] { OTHER, Resources.setTermType(OTHER) };
+  }
+
+}
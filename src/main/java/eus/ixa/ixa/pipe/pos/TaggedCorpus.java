@@ -0,0 +1,866 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.util.ObjectStream;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+
+import eus.ixa.ixa.pipe.lemma.LemmaSample;
+import eus.ixa.ixa.pipe.lemma.LemmaSampleStream;
+import eus.ixa.ixa.pipe.lemma.ParallelLemmaProcessor;
+import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
+
+/**
+ * In-memory tagged corpus, parsed once and stored by columns. Every word and
+ * tag is interned in a symbol table and the corpus only keeps the symbol ids
+ * of every token and the end of every sentence, so that it can be iterated
+ * as many times as needed, e.g., to build the dictionaries, to train and to
+ * evaluate, without reading and parsing the corpus again. A corpus may also
+ * keep the lemma class, that is, the shortest edit script from the word to its
+ * lemma, of every token.
+ * <p>
+ * A corpus can be saved in a binary format with {@link #write(File)}, so that
+ * training and evaluation runs read the symbol ids directly instead of parsing
+ * the text corpus and computing the lemma classes again. The
+ * {@link #loadPOSCorpus(String)} and {@link #loadLemmaCorpus(String)} methods
+ * read either format, and {@link #streamPOSCorpus(String)} and
+ * {@link #streamLemmaCorpus(String)} stream either format for the corpora
+ * which do not fit in memory.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class TaggedCorpus {
+
+  /**
+   * The magic number of the binary corpus files.
+   */
+  private static final int MAGIC = 0x49584150;
+  /**
+   * The version of the binary corpus format.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * The symbols, indexed by id.
+   */
+  private final List<String> symbols = new ArrayList<String>();
+  /**
+   * The id of every symbol.
+   */
+  private final Map<String, Integer> symbolIds = new HashMap<String, Integer>();
+  /**
+   * The word id of every token.
+   */
+  private int[] words = new int[1024];
+  /**
+   * The tag id of every token.
+   */
+  private int[] tags = new int[1024];
+  /**
+   * The lemma class id of every token, or null if the corpus has no lemmas.
+   */
+  private int[] lemmaClasses;
+  /**
+   * The number of tokens.
+   */
+  private int numTokens;
+  /**
+   * The index of the token following every sentence.
+   */
+  private int[] sentenceEnds = new int[64];
+  /**
+   * The number of sentences.
+   */
+  private int numSentences;
+
+  /**
+   * Load a corpus from a stream of samples, e.g., a {@link MorphoSampleStream}.
+   * The stream is read once and closed.
+   *
+   * @param samples
+   *          the samples
+   * @return the corpus
+   * @throws IOException
+   *           if the samples can not be read
+   */
+  public static TaggedCorpus load(final ObjectStream<POSSample> samples)
+      throws IOException {
+    final TaggedCorpus corpus = new TaggedCorpus();
+    try {
+      POSSample sample;
+      while ((sample = samples.read()) != null) {
+        corpus.add(sample.getSentence(), sample.getTags());
+      }
+    } finally {
+      samples.close();
+    }
+    return corpus;
+  }
+
+  /**
+   * Load a corpus with lemma classes from a stream of samples, e.g., a
+   * {@link LemmaSampleStream}. The stream is read once and closed.
+   *
+   * @param samples
+   *          the samples
+   * @return the corpus
+   * @throws IOException
+   *           if the samples can not be read
+   */
+  public static TaggedCorpus loadLemmas(final ObjectStream<LemmaSample> samples)
+      throws IOException {
+    final TaggedCorpus corpus = new TaggedCorpus();
+    corpus.lemmaClasses = new int[corpus.words.length];
+    try {
+      LemmaSample sample;
+      while ((sample = samples.read()) != null) {
+        corpus.add(sample.getTokens(), sample.getTags(), sample.getLemmas());
+      }
+    } finally {
+      samples.close();
+    }
+    return corpus;
+  }
+
+  /**
+   * Load a corpus for postagging from a tabulated text corpus or from a binary
+   * corpus.
+   *
+   * @param file
+   *          the corpus file
+   * @return the corpus
+   * @throws IOException
+   *           if the corpus can not be read
+   */
+  public static TaggedCorpus loadPOSCorpus(final String file)
+      throws IOException {
+    if (isBinary(new File(file))) {
+      return read(new File(file));
+    }
+    return load(new MorphoSampleStream(
+        InputOutputUtils.readFileIntoMarkableStreamFactory(file)));
+  }
+
+  /**
+   * Load a corpus for lemmatization from a tabulated text corpus or from a
+   * binary corpus with lemma classes.
+   *
+   * @param file
+   *          the corpus file
+   * @return the corpus
+   * @throws IOException
+   *           if the corpus can not be read or has no lemma classes
+   */
+  public static TaggedCorpus loadLemmaCorpus(final String file)
+      throws IOException {
+    return loadLemmaCorpus(file, 1);
+  }
+
+  /**
+   * Load a corpus for lemmatization from a tabulated text corpus or from a
+   * binary corpus with lemma classes. The lemma classes of a text corpus are
+   * computed by several threads.
+   *
+   * @param file
+   *          the corpus file
+   * @param threads
+   *          the number of threads
+   * @return the corpus
+   * @throws IOException
+   *           if the corpus can not be read or has no lemma classes
+   */
+  public static TaggedCorpus loadLemmaCorpus(final String file,
+      final int threads) throws IOException {
+    if (isBinary(new File(file))) {
+      final TaggedCorpus corpus = read(new File(file));
+      if (!corpus.hasLemmaClasses()) {
+        throw new IOException("The corpus " + file + " has no lemmas!");
+      }
+      return corpus;
+    }
+    if (threads <= 1) {
+      return loadLemmas(new LemmaSampleStream(
+          InputOutputUtils.readFileIntoMarkableStreamFactory(file)));
+    }
+    final TaggedCorpus corpus = new TaggedCorpus();
+    corpus.lemmaClasses = new int[corpus.words.length];
+    final ObjectStream<LemmaSample> samples = new LemmaSampleStream(
+        InputOutputUtils.readFileIntoMarkableStreamFactory(file), false);
+    final ParallelLemmaProcessor processor = new ParallelLemmaProcessor(null,
+        threads);
+    try {
+      final List<LemmaSample> batch = new ArrayList<LemmaSample>();
+      LemmaSample sample = samples.read();
+      while (sample != null) {
+        batch.add(sample);
+        sample = samples.read();
+        if (sample == null
+            || batch.size() == ParallelLemmaProcessor.DEFAULT_BATCH_SIZE) {
+          for (final LemmaSample encoded : processor.encodeLemmas(batch)) {
+            corpus.add(encoded.getTokens(), encoded.getTags(),
+                encoded.getLemmas());
+          }
+          batch.clear();
+        }
+      }
+    } finally {
+      samples.close();
+      processor.close();
+    }
+    return corpus;
+  }
+
+  /**
+   * Stream the samples for postagging from a tabulated text corpus or from a
+   * binary corpus without loading the corpus in memory: the text corpus is
+   * parsed again and the binary corpus is read again every time the stream
+   * is reset. Only the symbols of a binary corpus are kept in memory.
+   *
+   * @param file
+   *          the corpus file
+   * @return the stream of samples
+   * @throws IOException
+   *           if the corpus can not be read
+   */
+  public static ObjectStream<POSSample> streamPOSCorpus(final String file)
+      throws IOException {
+    if (isBinary(new File(file))) {
+      return new BinaryStream<POSSample>(new File(file), false) {
+        @Override
+        protected POSSample createSample(final String[] sentenceWords,
+            final String[] sentenceTags, final String[] sentenceLemmaClasses) {
+          return new POSSample(sentenceWords, sentenceTags);
+        }
+      };
+    }
+    return new MorphoSampleStream(
+        InputOutputUtils.readFileIntoMarkableStreamFactory(file));
+  }
+
+  /**
+   * Stream the samples for lemmatization from a tabulated text corpus or from
+   * a binary corpus with lemma classes, as in {@link #streamPOSCorpus(String)}.
+   * The lemma classes of a text corpus are computed again every time the
+   * stream is reset.
+   *
+   * @param file
+   *          the corpus file
+   * @return the stream of samples
+   * @throws IOException
+   *           if the corpus can not be read or has no lemma classes
+   */
+  public static ObjectStream<LemmaSample> streamLemmaCorpus(final String file)
+      throws IOException {
+    if (isBinary(new File(file))) {
+      return new BinaryStream<LemmaSample>(new File(file), true) {
+        @Override
+        protected LemmaSample createSample(final String[] sentenceWords,
+            final String[] sentenceTags, final String[] sentenceLemmaClasses) {
+          return new LemmaSample(sentenceWords, sentenceTags,
+              sentenceLemmaClasses);
+        }
+      };
+    }
+    return new LemmaSampleStream(
+        InputOutputUtils.readFileIntoMarkableStreamFactory(file));
+  }
+
+  /**
+   * Add a sentence to the corpus.
+   *
+   * @param sentenceWords
+   *          the words of the sentence
+   * @param sentenceTags
+   *          the tags of the sentence
+   */
+  public final void add(final String[] sentenceWords,
+      final String[] sentenceTags) {
+    add(sentenceWords, sentenceTags, null);
+  }
+
+  /**
+   * Add a sentence to the corpus.
+   *
+   * @param sentenceWords
+   *          the words of the sentence
+   * @param sentenceTags
+   *          the tags of the sentence
+   * @param sentenceLemmaClasses
+   *          the lemma classes of the sentence, required if and only if the
+   *          corpus has lemma classes
+   */
+  public final void add(final String[] sentenceWords,
+      final String[] sentenceTags, final String[] sentenceLemmaClasses) {
+    if (sentenceWords.length != sentenceTags.length
+        || sentenceLemmaClasses != null
+        && sentenceLemmaClasses.length != sentenceWords.length) {
+      throw new IllegalArgumentException(
+          "The number of words, tags and lemmas must be the same!");
+    }
+    if (sentenceLemmaClasses == null && this.lemmaClasses != null
+        || sentenceLemmaClasses != null && this.lemmaClasses == null) {
+      throw new IllegalArgumentException(
+          "Either every sentence or none must have lemmas!");
+    }
+    final int length = this.numTokens + sentenceWords.length;
+    if (length > this.words.length) {
+      final int capacity = Math.max(length, this.words.length * 2);
+      this.words = Arrays.copyOf(this.words, capacity);
+      this.tags = Arrays.copyOf(this.tags, capacity);
+      if (this.lemmaClasses != null) {
+        this.lemmaClasses = Arrays.copyOf(this.lemmaClasses, capacity);
+      }
+    }
+    for (int i = 0; i < sentenceWords.length; i++) {
+      this.words[this.numTokens] = getSymbolId(sentenceWords[i]);
+      this.tags[this.numTokens] = getSymbolId(sentenceTags[i]);
+      if (this.lemmaClasses != null) {
+        this.lemmaClasses[this.numTokens] = getSymbolId(sentenceLemmaClasses[i]);
+      }
+      this.numTokens++;
+    }
+    if (this.numSentences == this.sentenceEnds.length) {
+      this.sentenceEnds = Arrays.copyOf(this.sentenceEnds,
+          this.numSentences * 2);
+    }
+    this.sentenceEnds[this.numSentences++] = this.numTokens;
+  }
+
+  /**
+   * Get the id of a symbol, adding it to the symbol table if needed.
+   *
+   * @param symbol
+   *          the symbol
+   * @return the id
+   */
+  private int getSymbolId(final String symbol) {
+    Integer id = this.symbolIds.get(symbol);
+    if (id == null) {
+      id = this.symbols.size();
+      this.symbols.add(symbol);
+      this.symbolIds.put(symbol, id);
+    }
+    return id;
+  }
+
+  /**
+   * Get the number of sentences.
+   *
+   * @return the number of sentences
+   */
+  public final int getNumSentences() {
+    return this.numSentences;
+  }
+
+  /**
+   * Get the number of tokens.
+   *
+   * @return the number of tokens
+   */
+  public final int getNumTokens() {
+    return this.numTokens;
+  }
+
+  /**
+   * Get the words of a sentence.
+   *
+   * @param sentence
+   *          the index of the sentence
+   * @return the words
+   */
+  public final String[] getWords(final int sentence) {
+    return getSymbols(this.words, sentence);
+  }
+
+  /**
+   * Get the tags of a sentence.
+   *
+   * @param sentence
+   *          the index of the sentence
+   * @return the tags
+   */
+  public final String[] getTags(final int sentence) {
+    return getSymbols(this.tags, sentence);
+  }
+
+  /**
+   * Whether the corpus keeps the lemma class of every token.
+   *
+   * @return true if the corpus has lemma classes
+   */
+  public final boolean hasLemmaClasses() {
+    return this.lemmaClasses != null;
+  }
+
+  /**
+   * Get the lemma classes of a sentence.
+   *
+   * @param sentence
+   *          the index of the sentence
+   * @return the lemma classes
+   */
+  public final String[] getLemmaClasses(final int sentence) {
+    if (this.lemmaClasses == null) {
+      throw new IllegalStateException("The corpus has no lemmas!");
+    }
+    return getSymbols(this.lemmaClasses, sentence);
+  }
+
+  /**
+   * Get the sample of a sentence.
+   *
+   * @param sentence
+   *          the index of the sentence
+   * @return the sample
+   */
+  public final POSSample getPOSSample(final int sentence) {
+    return new POSSample(getWords(sentence), getTags(sentence));
+  }
+
+  /**
+   * Get the lemma sample of a sentence.
+   *
+   * @param sentence
+   *          the index of the sentence
+   * @return the sample
+   */
+  public final LemmaSample getLemmaSample(final int sentence) {
+    return new LemmaSample(getWords(sentence), getTags(sentence),
+        getLemmaClasses(sentence));
+  }
+
+  /**
+   * Get the symbols of a column for a sentence.
+   *
+   * @param column
+   *          the column
+   * @param sentence
+   *          the index of the sentence
+   * @return the symbols
+   */
+  private String[] getSymbols(final int[] column, final int sentence) {
+    final int start = sentence == 0 ? 0 : this.sentenceEnds[sentence - 1];
+    final String[] sentenceSymbols = new String[this.sentenceEnds[sentence]
+        - start];
+    for (int i = 0; i < sentenceSymbols.length; i++) {
+      sentenceSymbols[i] = this.symbols.get(column[start + i]);
+    }
+    return sentenceSymbols;
+  }
+
+  /**
+   * Get a new stream over the samples of the corpus. Streams are independent
+   * of each other and can be reset.
+   *
+   * @return the stream of samples
+   */
+  public final ObjectStream<POSSample> getPOSSamples() {
+    return new ObjectStream<POSSample>() {
+      private int next;
+
+      public POSSample read() {
+        return this.next < TaggedCorpus.this.numSentences ? getPOSSample(this.next++)
+            : null;
+      }
+
+      public void reset() {
+        this.next = 0;
+      }
+
+      public void close() {
+      }
+    };
+  }
+
+  /**
+   * Get a new stream over the lemma samples of the corpus. Streams are
+   * independent of each other and can be reset.
+   *
+   * @return the stream of samples
+   */
+  public final ObjectStream<LemmaSample> getLemmaSamples() {
+    if (this.lemmaClasses == null) {
+      throw new IllegalStateException("The corpus has no lemmas!");
+    }
+    return new ObjectStream<LemmaSample>() {
+      private int next;
+
+      public LemmaSample read() {
+        return this.next < TaggedCorpus.this.numSentences ? getLemmaSample(this.next++)
+            : null;
+      }
+
+      public void reset() {
+        this.next = 0;
+      }
+
+      public void close() {
+      }
+    };
+  }
+
+  /**
+   * Get a new stream over the samples of a cross validation fold. Sentence i
+   * belongs to fold i % folds; the training samples of a fold are the
+   * sentences of every other fold. Streams are independent of each other, can
+   * be reset and can be read concurrently.
+   *
+   * @param fold
+   *          the fold, from 0 to folds - 1
+   * @param folds
+   *          the number of folds
+   * @param heldOut
+   *          true for the held out samples of the fold, false for its
+   *          training samples
+   * @return the stream of samples
+   */
+  public final ObjectStream<POSSample> getPOSSamples(final int fold,
+      final int folds, final boolean heldOut) {
+    return new FoldStream<POSSample>(fold, folds, heldOut) {
+      @Override
+      protected POSSample getSample(final int sentence) {
+        return getPOSSample(sentence);
+      }
+    };
+  }
+
+  /**
+   * Get a new stream over the lemma samples of a cross validation fold, as in
+   * {@link #getPOSSamples(int, int, boolean)}.
+   *
+   * @param fold
+   *          the fold, from 0 to folds - 1
+   * @param folds
+   *          the number of folds
+   * @param heldOut
+   *          true for the held out samples of the fold, false for its
+   *          training samples
+   * @return the stream of samples
+   */
+  public final ObjectStream<LemmaSample> getLemmaSamples(final int fold,
+      final int folds, final boolean heldOut) {
+    if (this.lemmaClasses == null) {
+      throw new IllegalStateException("The corpus has no lemmas!");
+    }
+    return new FoldStream<LemmaSample>(fold, folds, heldOut) {
+      @Override
+      protected LemmaSample getSample(final int sentence) {
+        return getLemmaSample(sentence);
+      }
+    };
+  }
+
+  /**
+   * A stream over the sentences of a cross validation fold.
+   */
+  private abstract class FoldStream<T> implements ObjectStream<T> {
+
+    private final int fold;
+    private final int folds;
+    private final boolean heldOut;
+    private int next;
+
+    FoldStream(final int aFold, final int aFolds, final boolean aHeldOut) {
+      if (aFold < 0 || aFold >= aFolds) {
+        throw new IllegalArgumentException("Fold " + aFold
+            + " is not between 0 and " + (aFolds - 1) + "!");
+      }
+      this.fold = aFold;
+      this.folds = aFolds;
+      this.heldOut = aHeldOut;
+    }
+
+    protected abstract T getSample(int sentence);
+
+    public T read() {
+      while (this.next < TaggedCorpus.this.numSentences
+          && (this.next % this.folds == this.fold) != this.heldOut) {
+        this.next++;
+      }
+      return this.next < TaggedCorpus.this.numSentences ? getSample(this.next++)
+          : null;
+    }
+
+    public void reset() {
+      this.next = 0;
+    }
+
+    public void close() {
+    }
+  }
+
+  /**
+   * A stream over the sentences of a binary corpus which only keeps the
+   * symbols in memory. The sentence ends and every column are read
+   * sequentially from their own position in the file.
+   */
+  private abstract static class BinaryStream<T> implements ObjectStream<T> {
+
+    private final File file;
+    private final List<String> streamSymbols = new ArrayList<String>();
+    private final int streamNumSentences;
+    private final long sentenceEndsOffset;
+    private final long wordsOffset;
+    private final long tagsOffset;
+    /**
+     * The offset of the lemma classes, or -1 if they are not read.
+     */
+    private final long lemmaClassesOffset;
+    private DataInputStream sentenceEndsIn;
+    private DataInputStream wordsIn;
+    private DataInputStream tagsIn;
+    private DataInputStream lemmaClassesIn;
+    private int next;
+    private int start;
+
+    BinaryStream(final File aFile, final boolean withLemmaClasses)
+        throws IOException {
+      this.file = aFile;
+      final CountingInputStream counter = new CountingInputStream(
+          new BufferedInputStream(new FileInputStream(aFile)));
+      final DataInputStream in = new DataInputStream(counter);
+      final int numTokens;
+      try {
+        readHeader(in, aFile);
+        final int numSymbols = in.readInt();
+        for (int i = 0; i < numSymbols; i++) {
+          this.streamSymbols.add(in.readUTF());
+        }
+        this.streamNumSentences = in.readInt();
+        this.sentenceEndsOffset = counter.getCount();
+        ByteStreams.skipFully(in, 4L * this.streamNumSentences);
+        numTokens = in.readInt();
+        this.wordsOffset = counter.getCount();
+        this.tagsOffset = this.wordsOffset + 4L * numTokens;
+        ByteStreams.skipFully(in, 8L * numTokens);
+        final boolean hasLemmaClasses = in.readBoolean();
+        if (withLemmaClasses && !hasLemmaClasses) {
+          throw new IOException("The corpus " + aFile + " has no lemmas!");
+        }
+        this.lemmaClassesOffset = withLemmaClasses ? counter.getCount() : -1;
+      } finally {
+        in.close();
+      }
+      open();
+    }
+
+    protected abstract T createSample(String[] sentenceWords,
+        String[] sentenceTags, String[] sentenceLemmaClasses);
+
+    private DataInputStream openColumn(final long offset) throws IOException {
+      final FileInputStream in = new FileInputStream(this.file);
+      try {
+        ByteStreams.skipFully(in, offset);
+      } catch (final IOException e) {
+        in.close();
+        throw e;
+      }
+      return new DataInputStream(new BufferedInputStream(in));
+    }
+
+    private void open() throws IOException {
+      this.sentenceEndsIn = openColumn(this.sentenceEndsOffset);
+      this.wordsIn = openColumn(this.wordsOffset);
+      this.tagsIn = openColumn(this.tagsOffset);
+      if (this.lemmaClassesOffset >= 0) {
+        this.lemmaClassesIn = openColumn(this.lemmaClassesOffset);
+      }
+      this.next = 0;
+      this.start = 0;
+    }
+
+    private String[] readSymbols(final DataInputStream in, final int length)
+        throws IOException {
+      final String[] sentenceSymbols = new String[length];
+      for (int i = 0; i < length; i++) {
+        sentenceSymbols[i] = this.streamSymbols.get(in.readInt());
+      }
+      return sentenceSymbols;
+    }
+
+    public T read() throws IOException {
+      if (this.next >= this.streamNumSentences) {
+        return null;
+      }
+      final int end = this.sentenceEndsIn.readInt();
+      final int length = end - this.start;
+      this.start = end;
+      this.next++;
+      return createSample(readSymbols(this.wordsIn, length),
+          readSymbols(this.tagsIn, length),
+          this.lemmaClassesIn == null ? null : readSymbols(
+              this.lemmaClassesIn, length));
+    }
+
+    public void reset() throws IOException {
+      close();
+      open();
+    }
+
+    public void close() throws IOException {
+      this.sentenceEndsIn.close();
+      this.wordsIn.close();
+      this.tagsIn.close();
+      if (this.lemmaClassesIn != null) {
+        this.lemmaClassesIn.close();
+      }
+    }
+  }
+
+  /**
+   * Whether a file is a binary corpus.
+   *
+   * @param file
+   *          the file
+   * @return true if the file starts with the magic number of binary corpora
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public static boolean isBinary(final File file) throws IOException {
+    if (file.length() < 4) {
+      return false;
+    }
+    final DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      return in.readInt() == MAGIC;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Save the corpus in binary format.
+   *
+   * @param file
+   *          the output file
+   * @throws IOException
+   *           if the file can not be written
+   */
+  public final void write(final File file) throws IOException {
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(this.symbols.size());
+      for (final String symbol : this.symbols) {
+        out.writeUTF(symbol);
+      }
+      out.writeInt(this.numSentences);
+      writeInts(out, this.sentenceEnds, this.numSentences);
+      out.writeInt(this.numTokens);
+      writeInts(out, this.words, this.numTokens);
+      writeInts(out, this.tags, this.numTokens);
+      out.writeBoolean(this.lemmaClasses != null);
+      if (this.lemmaClasses != null) {
+        writeInts(out, this.lemmaClasses, this.numTokens);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Read a corpus in binary format.
+   *
+   * @param file
+   *          the corpus file
+   * @return the corpus
+   * @throws IOException
+   *           if the file can not be read or is not a binary corpus
+   */
+  public static TaggedCorpus read(final File file) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+    try {
+      readHeader(in, file);
+      final TaggedCorpus corpus = new TaggedCorpus();
+      final int numSymbols = in.readInt();
+      for (int i = 0; i < numSymbols; i++) {
+        corpus.getSymbolId(in.readUTF());
+      }
+      corpus.numSentences = in.readInt();
+      corpus.sentenceEnds = readInts(in, corpus.numSentences);
+      corpus.numTokens = in.readInt();
+      corpus.words = readInts(in, corpus.numTokens);
+      corpus.tags = readInts(in, corpus.numTokens);
+      if (in.readBoolean()) {
+        corpus.lemmaClasses = readInts(in, corpus.numTokens);
+      }
+      return corpus;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Read and check the magic number and the version of a binary corpus.
+   *
+   * @param in
+   *          the input
+   * @param file
+   *          the corpus file
+   * @throws IOException
+   *           if the file is not a binary corpus of this version
+   */
+  private static void readHeader(final DataInputStream in, final File file)
+      throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException(file + " is not a binary corpus!");
+    }
+    final int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported binary corpus version " + version
+          + " in " + file);
+    }
+  }
+
+  private static void writeInts(final DataOutputStream out, final int[] ints,
+      final int length) throws IOException {
+    for (int i = 0; i < length; i++) {
+      out.writeInt(ints[i]);
+    }
+  }
+
+  private static int[] readInts(final DataInputStream in, final int length)
+      throws IOException {
+    // keep room for a sentence to be added
+    final int[] ints = new int[Math.max(length, 1)];
+    for (int i = 0; i < length; i++) {
+      ints[i] = in.readInt();
+    }
+    return ints;
+  }
+
+}
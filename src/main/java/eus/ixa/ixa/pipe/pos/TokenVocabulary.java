@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded vocabulary of the tokens seen by an annotator. The lowercased form
+ * of every token is computed once, so that the multiword matcher, the
+ * dictionaries and the lemmatizer share it instead of lowercasing the same
+ * word again at every stage. The least recently used tokens are evicted when
+ * the vocabulary is full. A vocabulary is not thread safe; every annotator has
+ * its own.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class TokenVocabulary {
+
+  /**
+   * Shape flag of the tokens containing an uppercase letter.
+   */
+  public static final int HAS_CAP = 1;
+  /**
+   * Shape flag of the tokens containing a digit.
+   */
+  public static final int HAS_DIGIT = 2;
+  /**
+   * Shape flag of the tokens containing a hyphen.
+   */
+  public static final int HAS_HYPHEN = 4;
+  /**
+   * Default maximum number of tokens.
+   */
+  public static final int DEFAULT_MAXIMUM_SIZE = 100000;
+
+  /**
+   * The lowercased forms of the tokens, in access order.
+   */
+  private final Map<String, String> lowerCaseForms;
+  /**
+   * The maximum number of tokens.
+   */
+  private final int maximumSize;
+
+  /**
+   * Construct a vocabulary with the default maximum size.
+   */
+  public TokenVocabulary() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * Construct a vocabulary.
+   *
+   * @param aMaximumSize
+   *          the maximum number of tokens
+   */
+  public TokenVocabulary(final int aMaximumSize) {
+    this.maximumSize = aMaximumSize;
+    this.lowerCaseForms = new LinkedHashMap<String, String>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+        return size() > TokenVocabulary.this.maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Get the lowercased forms of a sentence.
+   *
+   * @param forms
+   *          the tokens of the sentence
+   * @return the lowercased tokens
+   */
+  public final String[] getLowerCase(final String[] forms) {
+    final String[] lowerCase = new String[forms.length];
+    for (int i = 0; i < forms.length; i++) {
+      String lowerCaseForm = this.lowerCaseForms.get(forms[i]);
+      if (lowerCaseForm == null) {
+        lowerCaseForm = forms[i].toLowerCase();
+        this.lowerCaseForms.put(forms[i], lowerCaseForm);
+      }
+      lowerCase[i] = lowerCaseForm;
+    }
+    return lowerCase;
+  }
+
+  /**
+   * Compute the lexical shape of a word: whether it contains ASCII uppercase
+   * letters, ASCII digits or hyphens.
+   *
+   * @param form
+   *          the word
+   * @return the shape flags
+   */
+  public static int getShape(final String form) {
+    int shape = 0;
+    for (int i = 0; i < form.length(); i++) {
+      final char c = form.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        shape |= HAS_CAP;
+      } else if (c >= '0' && c <= '9') {
+        shape |= HAS_DIGIT;
+      } else if (c == '-') {
+        shape |= HAS_HYPHEN;
+      }
+    }
+    return shape;
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * Bounded cache of the lexical features of every word type, that is, the
+ * features which only depend on the word and not on its context, such as
+ * prefixes, suffixes and shape. A cache belongs to a model factory and is
+ * shared by every decoder of the model, in any thread; the cache is lock
+ * striped, so that concurrent decoders rarely contend. Its size is bounded by
+ * an estimate of the memory taken by the cached features.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class WordFeatureCache {
+
+  /**
+   * Default maximum memory of the cached features, in bytes.
+   */
+  public static final long DEFAULT_MAXIMUM_MEMORY = 32L * 1024 * 1024;
+  /**
+   * Estimated memory of an empty string, in bytes.
+   */
+  private static final int STRING_OVERHEAD = 40;
+  /**
+   * Estimated memory of a cache entry and of an empty array, in bytes.
+   */
+  private static final int ENTRY_OVERHEAD = 64;
+
+  /**
+   * The lexical features of every word type.
+   */
+  private final Cache<String, String[]> cache;
+  /**
+   * The maximum memory of the cached features, in bytes.
+   */
+  private final long maximumMemory;
+
+  /**
+   * Construct a cache with the default maximum memory.
+   */
+  public WordFeatureCache() {
+    this(DEFAULT_MAXIMUM_MEMORY);
+  }
+
+  /**
+   * Construct a cache.
+   *
+   * @param aMaximumMemory
+   *          the maximum memory of the cached features, in bytes
+   */
+  public WordFeatureCache(final long aMaximumMemory) {
+    this.maximumMemory = aMaximumMemory;
+    this.cache = CacheBuilder.newBuilder().maximumWeight(aMaximumMemory)
+        .weigher(new Weigher<String, String[]>() {
+          public int weigh(final String word, final String[] features) {
+            return getMemory(word, features);
+          }
+        }).concurrencyLevel(Runtime.getRuntime().availableProcessors())
+        .recordStats().build();
+  }
+
+  /**
+   * Get the cached features of a word.
+   *
+   * @param word
+   *          the word
+   * @return the features or null if not cached
+   */
+  public final String[] get(final String word) {
+    return this.cache.getIfPresent(word);
+  }
+
+  /**
+   * Cache the features of a word. The features array must not be modified
+   * afterwards.
+   *
+   * @param word
+   *          the word
+   * @param features
+   *          the features
+   */
+  public final void put(final String word, final String[] features) {
+    this.cache.put(word, features);
+  }
+
+  /**
+   * Get the number of word types cached.
+   *
+   * @return the number of word types
+   */
+  public final long size() {
+    return this.cache.size();
+  }
+
+  /**
+   * Get the maximum memory of the cached features.
+   *
+   * @return the maximum memory, in bytes
+   */
+  public final long getMaximumMemory() {
+    return this.maximumMemory;
+  }
+
+  /**
+   * Get the hit and miss counters of the cache.
+   *
+   * @return the cache statistics
+   */
+  public final CacheStats getStats() {
+    return this.cache.stats();
+  }
+
+  /**
+   * Estimate the memory taken by a cache entry.
+   *
+   * @param word
+   *          the word
+   * @param features
+   *          the features
+   * @return the estimated memory, in bytes
+   */
+  private static int getMemory(final String word, final String[] features) {
+    int memory = ENTRY_OVERHEAD + STRING_OVERHEAD + 2 * word.length();
+    for (final String feature : features) {
+      memory += 4 + STRING_OVERHEAD + 2 * feature.length();
+    }
+    return memory;
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.dict;
+
+import java.util.List;
+
+/**
+ * The result of looking up a word in the {@link MorfologikDictionary}: the
+ * candidate postags and lemmas found in the lemmatizer dictionary and the
+ * postag of the monosemic dictionary, if any. It is shared by dictionary
+ * tagging and dictionary lemmatization so that each word is only looked up
+ * once.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class DictionaryAnalysis {
+
+  /**
+   * Analysis of words not found in any dictionary.
+   */
+  static final DictionaryAnalysis EMPTY = new DictionaryAnalysis(new String[0],
+      new String[0], null);
+  /**
+   * Lemma returned when the word and postag are not in the dictionary.
+   */
+  public static final String NO_LEMMA = "O";
+
+  /**
+   * The candidate postags, in dictionary order.
+   */
+  private final String[] tags;
+  /**
+   * The lemmas of each candidate postag.
+   */
+  private final String[] lemmas;
+  /**
+   * The postag in the monosemic dictionary, or null.
+   */
+  private final String monosemicTag;
+
+  /**
+   * Construct an analysis.
+   *
+   * @param aTags
+   *          the candidate postags
+   * @param aLemmas
+   *          the lemmas of each candidate postag
+   * @param aMonosemicTag
+   *          the monosemic postag or null
+   */
+  DictionaryAnalysis(final String[] aTags, final String[] aLemmas,
+      final String aMonosemicTag) {
+    this.tags = aTags;
+    this.lemmas = aLemmas;
+    this.monosemicTag = aMonosemicTag;
+  }
+
+  /**
+   * Get the postag for the word: the monosemic dictionary postag if the word
+   * is monosemic, the given postag otherwise.
+   *
+   * @param posTag
+   *          the postag to be post-processed
+   * @return the postag
+   */
+  public final String getTag(final String posTag) {
+    return this.monosemicTag == null ? posTag : this.monosemicTag;
+  }
+
+  /**
+   * Get the lemma of the word for a postag.
+   *
+   * @param posTag
+   *          the postag
+   * @return the lemma or {@link #NO_LEMMA} if not in the dictionary
+   */
+  public final String getLemma(final String posTag) {
+    for (int i = this.tags.length - 1; i >= 0; i--) {
+      if (this.tags[i].equals(posTag)) {
+        return this.lemmas[i];
+      }
+    }
+    return NO_LEMMA;
+  }
+
+  /**
+   * Add every postag and lemma of the word in postag#lemma format.
+   *
+   * @param posLemmaValues
+   *          the list to add the postag#lemma values to
+   */
+  public final void getAllPosLemmas(final List<String> posLemmaValues) {
+    for (int i = 0; i < this.tags.length; i++) {
+      posLemmaValues.add(this.tags[i] + "#" + this.lemmas[i]);
+    }
+  }
+
+  /**
+   * Whether the word is in the monosemic dictionary.
+   *
+   * @return true if the word is monosemic
+   */
+  public final boolean isMonosemic() {
+    return this.monosemicTag != null;
+  }
+
+  /**
+   * Get the candidate postags of the word.
+   *
+   * @return the candidate postags
+   */
+  public final String[] getTags() {
+    return this.tags.clone();
+  }
+
+  /**
+   * Get the lemmas of the word, one per candidate postag.
+   *
+   * @return the lemmas
+   */
+  public final String[] getLemmas() {
+    return this.lemmas.clone();
+  }
+
+}
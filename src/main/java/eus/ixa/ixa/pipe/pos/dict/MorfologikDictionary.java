@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.dict;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+import morfologik.stemming.Dictionary;
+import morfologik.stemming.DictionaryLookup;
+import morfologik.stemming.IStemmer;
+import morfologik.stemming.WordData;
+
+/**
+ * Morphological dictionary combining the Morfologik FSA lemmatizer dictionary
+ * and the monosemic postag dictionary. Every word is looked up once in each
+ * dictionary and the result is returned as a {@link DictionaryAnalysis} to be
+ * used for both dictionary tagging and lemmatization. Instances are not
+ * thread safe, as the Morfologik lookups are not.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class MorfologikDictionary {
+
+  /**
+   * The lemmatizer dictionary lookup, or null.
+   */
+  private final IStemmer lemmaLookup;
+  /**
+   * The monosemic dictionary lookup, or null.
+   */
+  private final IStemmer monosemicLookup;
+
+  /**
+   * Reads the dictionaries in morfologik FSA format.
+   *
+   * @param lemmaDictURL
+   *          the URL of the lemmatizer dictionary, or null
+   * @param monosemicDictURL
+   *          the URL of the monosemic postag dictionary, or null
+   * @throws IOException
+   *           throws an exception if dictionary path is not correct
+   */
+  public MorfologikDictionary(final URL lemmaDictURL,
+      final URL monosemicDictURL) throws IOException {
+    this.lemmaLookup = lemmaDictURL == null ? null : new DictionaryLookup(
+        Dictionary.read(lemmaDictURL));
+    this.monosemicLookup = monosemicDictURL == null ? null
+        : new DictionaryLookup(Dictionary.read(monosemicDictURL));
+  }
+
+  /**
+   * Whether a lemmatizer dictionary is available.
+   *
+   * @return true if the lemmatizer dictionary was loaded
+   */
+  public final boolean hasLemmas() {
+    return this.lemmaLookup != null;
+  }
+
+  /**
+   * Whether a monosemic postag dictionary is available.
+   *
+   * @return true if the monosemic dictionary was loaded
+   */
+  public final boolean hasMonosemicTags() {
+    return this.monosemicLookup != null;
+  }
+
+  /**
+   * Look up every token of a sentence, ignoring case.
+   *
+   * @param tokens
+   *          the tokens
+   * @return the analysis of each token
+   */
+  public final DictionaryAnalysis[] lookup(final String[] tokens) {
+    final DictionaryAnalysis[] analyses = new DictionaryAnalysis[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      analyses[i] = lookup(tokens[i]);
+    }
+    return analyses;
+  }
+
+  /**
+   * Look up every token of a sentence already lowercased.
+   *
+   * @param lowerCaseTokens
+   *          the lowercased tokens
+   * @return the analysis of each token
+   */
+  public final DictionaryAnalysis[] lookupLowerCase(
+      final String[] lowerCaseTokens) {
+    final DictionaryAnalysis[] analyses = new DictionaryAnalysis[lowerCaseTokens.length];
+    for (int i = 0; i < lowerCaseTokens.length; i++) {
+      analyses[i] = lookupForm(lowerCaseTokens[i], true);
+    }
+    return analyses;
+  }
+
+  /**
+   * Look up a word ignoring case.
+   *
+   * @param word
+   *          the word
+   * @return the analysis
+   */
+  public final DictionaryAnalysis lookup(final String word) {
+    return lookupForm(word.toLowerCase(), true);
+  }
+
+  /**
+   * Look up the exact form of the word in the lemmatizer dictionary only.
+   *
+   * @param word
+   *          the word
+   * @return the analysis
+   */
+  public final DictionaryAnalysis lookupCaseSensitive(final String word) {
+    return lookupForm(word, false);
+  }
+
+  /**
+   * Look up a form in the dictionaries.
+   *
+   * @param form
+   *          the form
+   * @param useMonosemic
+   *          whether to look up the monosemic dictionary
+   * @return the analysis
+   */
+  private DictionaryAnalysis lookupForm(final String form,
+      final boolean useMonosemic) {
+    String[] tags = new String[0];
+    String[] lemmas = tags;
+    if (this.lemmaLookup != null) {
+      // WordData objects are reused by the lookup, copy them
+      final List<WordData> wdList = this.lemmaLookup.lookup(form);
+      tags = new String[wdList.size()];
+      lemmas = new String[wdList.size()];
+      for (int i = 0; i < tags.length; i++) {
+        tags[i] = wdList.get(i).getTag().toString();
+        lemmas[i] = wdList.get(i).getStem().toString();
+      }
+    }
+    String monosemicTag = null;
+    if (useMonosemic && this.monosemicLookup != null) {
+      for (final WordData wd : this.monosemicLookup.lookup(form)) {
+        monosemicTag = wd.getTag().toString();
+      }
+    }
+    if (tags.length == 0 && monosemicTag == null) {
+      return DictionaryAnalysis.EMPTY;
+    }
+    return new DictionaryAnalysis(tags, lemmas, monosemicTag);
+  }
+
+}
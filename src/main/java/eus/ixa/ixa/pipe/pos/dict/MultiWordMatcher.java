@@ -36,8 +36,8 @@ import java.util.regex.Pattern;
 import opennlp.tools.util.Span;
 
 import com.google.common.base.Joiner;
-
-import eus.ixa.ixa.pipe.pos.StringUtils;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 /**
  * Reads a dictionary multiword\tmultiwordlemma\tpostag\tambiguity and matches
@@ -52,6 +52,7 @@ public class MultiWordMatcher {
   private static final Pattern tabPattern = Pattern.compile("\t");
   private static final Pattern linePattern = Pattern.compile("#");
   private static Map<String, String> dictionary;
+  private static String dictionaryHash;
 
   /**
    * Construct a multiword matcher with a dictionary for a given language.
@@ -88,8 +89,10 @@ public class MultiWordMatcher {
     }
     final BufferedReader breader = new BufferedReader(new InputStreamReader(
         dictInputStream, Charset.forName("UTF-8")));
+    final Hasher hasher = Hashing.sha1().newHasher();
     String line;
     while ((line = breader.readLine()) != null) {
+      hasher.putString(line, Charset.forName("UTF-8")).putChar('\n');
       final String[] lineArray = tabPattern.split(line);
       if (lineArray.length == 4) {
         final Matcher lineMatcher = linePattern.matcher(lineArray[0]
@@ -100,6 +103,7 @@ public class MultiWordMatcher {
             + " is not well-formed; skipping!!");
       }
     }
+    dictionaryHash = hasher.hash().toString();
   }
 
   /**
@@ -152,7 +156,20 @@ public class MultiWordMatcher {
    * @return the output text with the joined multiwords
    */
   public final String[] getTokensWithMultiWords(final String[] tokens) {
-    final Span[] multiWordSpans = multiWordsToSpans(tokens);
+    return getTokensWithMultiWords(tokens, multiWordsToSpans(tokens));
+  }
+
+  /**
+   * Join the multiwords already detected in the input text.
+   * 
+   * @param tokens
+   *          the input text
+   * @param multiWordSpans
+   *          the spans of the multiwords detected in the input text
+   * @return the output text with the joined multiwords
+   */
+  public final String[] getTokensWithMultiWords(final String[] tokens,
+      final Span[] multiWordSpans) {
     final List<String> tokenList = new ArrayList<String>(Arrays.asList(tokens));
     int counter = 0;
     for (final Span mwSpan : multiWordSpans) {
@@ -182,26 +199,40 @@ public class MultiWordMatcher {
    * @return spans of the multiword
    */
   public final Span[] multiWordsToSpans(final String[] tokens) {
+    final String[] lowerCaseTokens = new String[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      lowerCaseTokens[i] = tokens[i].toLowerCase();
+    }
+    return lowerCaseMultiWordsToSpans(lowerCaseTokens);
+  }
+
+  /**
+   * Detects multiword expressions in a sentence already lowercased.
+   * 
+   * @param lowerCaseTokens
+   *          the lowercased tokens of the sentence
+   * @return spans of the multiword
+   */
+  public final Span[] lowerCaseMultiWordsToSpans(final String[] lowerCaseTokens) {
     final List<Span> multiWordsFound = new LinkedList<Span>();
+    final StringBuilder entryBuilder = new StringBuilder();
 
-    for (int offsetFrom = 0; offsetFrom < tokens.length; offsetFrom++) {
+    for (int offsetFrom = 0; offsetFrom < lowerCaseTokens.length; offsetFrom++) {
       Span multiwordFound = null;
-      String tokensSearching[] = new String[] {};
+      entryBuilder.setLength(0);
 
-      for (int offsetTo = offsetFrom; offsetTo < tokens.length; offsetTo++) {
+      for (int offsetTo = offsetFrom; offsetTo < lowerCaseTokens.length; offsetTo++) {
 
         final int lengthSearching = offsetTo - offsetFrom + 1;
         if (lengthSearching > getMaxTokenCount()) {
           break;
         } else {
-          tokensSearching = new String[lengthSearching];
-          System.arraycopy(tokens, offsetFrom, tokensSearching, 0,
-              lengthSearching);
-
-          final String entryForSearch = StringUtils
-              .getStringFromTokens(tokensSearching);
-          final String entryValue = dictionary
-              .get(entryForSearch.toLowerCase());
+          // the window grows one token at a time
+          if (lengthSearching > 1) {
+            entryBuilder.append(' ');
+          }
+          entryBuilder.append(lowerCaseTokens[offsetTo]);
+          final String entryValue = dictionary.get(entryBuilder.toString());
           if (entryValue != null) {
             multiwordFound = new Span(offsetFrom, offsetTo + 1, entryValue);
           }
@@ -223,4 +254,13 @@ public class MultiWordMatcher {
   public int getMaxTokenCount() {
     return dictionary.size();
   }
+
+  /**
+   * Get the hash of the contents of the dictionary.
+   * 
+   * @return the dictionary hash
+   */
+  public String getDictionaryHash() {
+    return dictionaryHash;
+  }
 }
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.eval;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.TrainingParameters;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import eus.ixa.ixa.pipe.lemma.train.LemmatizerFixedTrainer;
+import eus.ixa.ixa.pipe.pos.TaggedCorpus;
+import eus.ixa.ixa.pipe.pos.train.FixedTrainer;
+import eus.ixa.ixa.pipe.pos.train.Flags;
+import eus.ixa.ixa.pipe.pos.train.ParallelPerceptronTrainer;
+
+/**
+ * Cross validation of the POS tagger or the lemmatizer, training the folds
+ * concurrently. The training set is parsed once into a {@link TaggedCorpus}
+ * shared by every fold. At most {@code FoldThreads} folds are trained at the
+ * same time, fewer if the memory estimated for every fold does not fit in the
+ * free memory of the JVM.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class CrossValidator {
+
+  /**
+   * The training parameters not applied to the folds: every fold would write
+   * the same checkpoints, and stopping early on the held out fold would
+   * overestimate the accuracy.
+   */
+  private static final String[] FOLD_EXCLUDED_PARAMS = {
+      ParallelPerceptronTrainer.CHECKPOINT_DIR_PARAM,
+      ParallelPerceptronTrainer.RESUME_PARAM, "EvalInterval" };
+  /**
+   * Rough estimate of the memory taken by a training token while a fold is
+   * trained: the features of its event, their strings and their indexes.
+   */
+  static final long BYTES_PER_TRAINING_TOKEN = 2048;
+
+  /**
+   * The component, POS or Lemma.
+   */
+  private final String component;
+  /**
+   * The training parameters of every fold.
+   */
+  private final TrainingParameters foldParams;
+  /**
+   * The corpus shared by the folds.
+   */
+  private final TaggedCorpus corpus;
+  /**
+   * The number of folds.
+   */
+  private final int folds;
+  /**
+   * The maximum number of folds trained at the same time.
+   */
+  private final int foldThreads;
+
+  /**
+   * Construct a cross validator. The params define the component, the
+   * training set, the number of folds and of folds trained at the same time
+   * and the training parameters of every fold.
+   *
+   * @param params
+   *          the training parameters
+   * @throws IOException
+   *           if the training set can not be read
+   */
+  public CrossValidator(final TrainingParameters params) throws IOException {
+    this.component = Flags.getComponent(params);
+    final String trainData = Flags.getDataSet("TrainSet", params);
+    if (this.component.equalsIgnoreCase("pos")) {
+      this.corpus = TaggedCorpus.loadPOSCorpus(trainData);
+    } else {
+      this.corpus = TaggedCorpus.loadLemmaCorpus(trainData,
+          Flags.getThreads(params));
+    }
+    this.folds = Flags.getFolds(params);
+    if (this.folds < 2 || this.folds > this.corpus.getNumSentences()) {
+      System.err.println("Cross validation requires at least 2 Folds and "
+          + "no more Folds than sentences in the TrainSet!");
+      System.exit(1);
+    }
+    final int requestedFoldThreads = Math.max(1,
+        Math.min(Flags.getFoldThreads(params), this.folds));
+    final long foldMemory = BYTES_PER_TRAINING_TOKEN
+        * this.corpus.getNumTokens() / this.folds * (this.folds - 1);
+    final Runtime runtime = Runtime.getRuntime();
+    final long freeMemory = runtime.maxMemory()
+        - (runtime.totalMemory() - runtime.freeMemory());
+    this.foldThreads = getFoldThreads(requestedFoldThreads, foldMemory,
+        freeMemory);
+    if (this.foldThreads < requestedFoldThreads) {
+      System.err.println("WARNING: every fold needs about "
+          + foldMemory / (1024 * 1024) + " MB and only "
+          + freeMemory / (1024 * 1024) + " MB are free, training "
+          + this.foldThreads + " folds at the same time instead of "
+          + requestedFoldThreads);
+    }
+    this.foldParams = getFoldParams(params);
+  }
+
+  /**
+   * Get the number of folds that can be trained at the same time.
+   *
+   * @param foldThreads
+   *          the number of folds to train at the same time
+   * @param foldMemory
+   *          the estimated memory of a fold, in bytes
+   * @param freeMemory
+   *          the free memory, in bytes
+   * @return the fold threads whose folds fit in the free memory, at least one
+   */
+  static int getFoldThreads(final int foldThreads, final long foldMemory,
+      final long freeMemory) {
+    final long fitting = foldMemory <= 0 ? foldThreads : freeMemory
+        / foldMemory;
+    return (int) Math.max(1, Math.min(foldThreads, fitting));
+  }
+
+  /**
+   * Get the maximum number of folds trained at the same time.
+   *
+   * @return the fold threads
+   */
+  public final int getFoldThreads() {
+    return this.foldThreads;
+  }
+
+  private static TrainingParameters getFoldParams(
+      final TrainingParameters params) {
+    final List<String> excludedParams = Arrays.asList(FOLD_EXCLUDED_PARAMS);
+    final TrainingParameters foldParams = new TrainingParameters();
+    for (final Map.Entry<String, String> entry : params.getSettings()
+        .entrySet()) {
+      if (excludedParams.contains(entry.getKey())) {
+        System.err.println("WARNING: " + entry.getKey()
+            + " is not used in cross validation");
+      } else {
+        foldParams.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return foldParams;
+  }
+
+  /**
+   * Train and evaluate every fold, printing the accuracy and training time of
+   * each fold and the word accuracy over every fold.
+   *
+   * @param out
+   *          the stream to print to
+   * @throws IOException
+   *           if a fold can not be trained
+   */
+  public final void crossValidate(final PrintStream out) throws IOException {
+    final FoldResult[] results = new FoldResult[this.folds];
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        this.foldThreads, new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("ixa-pipe-fold-%d").build());
+    final CompletionService<FoldResult> completion = new ExecutorCompletionService<FoldResult>(
+        executor);
+    final long start = System.nanoTime();
+    try {
+      for (int fold = 0; fold < this.folds; fold++) {
+        completion.submit(new Fold(fold));
+      }
+      for (int i = 0; i < this.folds; i++) {
+        final FoldResult result = getResult(completion);
+        results[result.fold] = result;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    final double seconds = (System.nanoTime() - start) / 1e9;
+    printResults(results, seconds, out);
+  }
+
+  private static FoldResult getResult(
+      final CompletionService<FoldResult> completion) throws IOException {
+    try {
+      return completion.take().get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while cross validating!", e);
+    } catch (final ExecutionException e) {
+      throw new IOException("Error while cross validating!", e.getCause());
+    }
+  }
+
+  private void printResults(final FoldResult[] results, final double seconds,
+      final PrintStream out) {
+    long words = 0;
+    double correct = 0;
+    double foldSeconds = 0;
+    out.println("Fold\tSentences\tWords\tAccuracy\tSeconds");
+    for (final FoldResult result : results) {
+      out.println(result.fold + "\t" + result.sentences + "\t" + result.words
+          + "\t" + result.accuracy + "\t" + result.seconds);
+      words += result.words;
+      correct += result.accuracy * result.words;
+      foldSeconds += result.seconds;
+    }
+    double variance = 0;
+    final double meanFoldAccuracy = getMeanFoldAccuracy(results);
+    for (final FoldResult result : results) {
+      variance += (result.accuracy - meanFoldAccuracy)
+          * (result.accuracy - meanFoldAccuracy);
+    }
+    variance /= results.length;
+    out.println("Word accuracy: " + correct / words
+        + " (standard deviation over folds " + Math.sqrt(variance) + ")");
+    out.println("Training time: " + seconds + " s for " + results.length
+        + " folds with " + this.foldThreads + " fold threads, " + foldSeconds
+        + " s in total");
+  }
+
+  private static double getMeanFoldAccuracy(final FoldResult[] results) {
+    double sum = 0;
+    for (final FoldResult result : results) {
+      sum += result.accuracy;
+    }
+    return sum / results.length;
+  }
+
+  /**
+   * Trains a model on every other fold and evaluates it on its fold.
+   */
+  private class Fold implements Callable<FoldResult> {
+
+    private final int fold;
+
+    Fold(final int aFold) {
+      this.fold = aFold;
+    }
+
+    public FoldResult call() throws IOException {
+      final int folds = CrossValidator.this.folds;
+      final TaggedCorpus corpus = CrossValidator.this.corpus;
+      final TrainingParameters params = CrossValidator.this.foldParams;
+      int sentences = 0;
+      long words = 0;
+      final ObjectStream<POSSample> heldOut = corpus.getPOSSamples(this.fold,
+          folds, true);
+      POSSample sample;
+      while ((sample = heldOut.read()) != null) {
+        sentences++;
+        words += sample.getSentence().length;
+      }
+      final long start = System.nanoTime();
+      final double accuracy;
+      if (CrossValidator.this.component.equalsIgnoreCase("pos")) {
+        final FixedTrainer trainer = new FixedTrainer(params,
+            corpus.getPOSSamples(this.fold, folds, false),
+            corpus.getPOSSamples(this.fold, folds, false),
+            corpus.getPOSSamples(this.fold, folds, true));
+        trainer.train(params);
+        accuracy = trainer.getWordAccuracy();
+      } else {
+        final LemmatizerFixedTrainer trainer = new LemmatizerFixedTrainer(
+            params, corpus.getLemmaSamples(this.fold, folds, false),
+            corpus.getLemmaSamples(this.fold, folds, true));
+        trainer.train(params);
+        accuracy = trainer.getWordAccuracy();
+      }
+      return new FoldResult(this.fold, sentences, words, accuracy,
+          (System.nanoTime() - start) / 1e9);
+    }
+  }
+
+  /**
+   * The evaluation of a fold.
+   */
+  private static class FoldResult {
+
+    private final int fold;
+    private final int sentences;
+    private final long words;
+    private final double accuracy;
+    private final double seconds;
+
+    FoldResult(final int aFold, final int aSentences, final long aWords,
+        final double aAccuracy, final double aSeconds) {
+      this.fold = aFold;
+      this.sentences = aSentences;
+      this.words = aWords;
+      this.accuracy = aAccuracy;
+      this.seconds = aSeconds;
+    }
+  }
+
+}
@@ -30,6 +30,7 @@ import opennlp.tools.postag.WordTagSampleStream;
 import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
 import opennlp.tools.util.eval.EvaluationMonitor;
+import eus.ixa.ixa.pipe.pos.TaggedCorpus;
 import eus.ixa.ixa.pipe.pos.train.BaselineFactory;
 import eus.ixa.ixa.pipe.pos.train.Flags;
 import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
@@ -84,9 +85,13 @@ public class POSCrossValidator {
   public POSCrossValidator(final TrainingParameters params) throws IOException {
     this.lang = Flags.getLanguage(params);
     final String trainData = Flags.getDataSet("TrainSet", params);
-    final ObjectStream<String> trainStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(trainData);
-    this.trainSamples = new WordTagSampleStream(trainStream);
+    if (TaggedCorpus.isBinary(new File(trainData))) {
+      this.trainSamples = TaggedCorpus.loadPOSCorpus(trainData).getPOSSamples();
+    } else {
+      final ObjectStream<String> trainStream = InputOutputUtils
+          .readFileIntoMarkableStreamFactory(trainData);
+      this.trainSamples = new WordTagSampleStream(trainStream);
+    }
     this.dictCutOff = Flags.getAutoDictFeatures(params);
     this.folds = Flags.getFolds(params);
     createPOSFactory(params);
@@ -29,10 +29,9 @@ import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSSample;
 import opennlp.tools.postag.POSTaggerEvaluationMonitor;
 import opennlp.tools.postag.POSTaggerME;
-import eus.ixa.ixa.pipe.pos.MorphoSampleStream;
 import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.eval.EvaluationMonitor;
-import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
+import eus.ixa.ixa.pipe.pos.TaggedCorpus;
 
 /**
  * Evaluation class mostly inspired by {@link POSEvaluator}.
@@ -67,9 +66,7 @@ public class POSEvaluate implements Evaluate {
    */
   public POSEvaluate(final String testData, final String model) throws IOException {
 
-    final ObjectStream<String> testStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(testData);
-    this.testSamples = new MorphoSampleStream(testStream);
+    this.testSamples = TaggedCorpus.loadPOSCorpus(testData).getPOSSamples();
     InputStream trainedModelInputStream = null;
     try {
       if (posModel == null) {
@@ -90,6 +87,34 @@ public class POSEvaluate implements Evaluate {
     this.posTagger = new POSTaggerME(posModel);
   }
 
+  /**
+   * Construct an evaluator of a model already loaded.
+   * 
+   * @param aTestSamples
+   *          the reference samples to evaluate against
+   * @param model
+   *          the model to be evaluated
+   */
+  public POSEvaluate(final ObjectStream<POSSample> aTestSamples,
+      final POSModel model) {
+    this.testSamples = aTestSamples;
+    this.posTagger = new POSTaggerME(model);
+  }
+
+  /**
+   * Get the word accuracy, evaluating from the start of the reference samples.
+   * 
+   * @return the word accuracy
+   * @throws IOException
+   *           if the reference samples can not be read
+   */
+  public final double getWordAccuracy() throws IOException {
+    this.testSamples.reset();
+    final POSEvaluator evaluator = new POSEvaluator(this.posTagger);
+    evaluator.evaluate(this.testSamples);
+    return evaluator.getWordAccuracy();
+  }
+
   /**
    * Evaluate word accuracy.
    */
@@ -18,10 +18,11 @@ package eus.ixa.ixa.pipe.pos.train;
 import java.io.File;
 import java.io.IOException;
 
-import eus.ixa.ixa.pipe.pos.MorphoSampleStream;
+import eus.ixa.ixa.pipe.pos.TaggedCorpus;
 
 import opennlp.tools.cmdline.TerminateToolException;
 import opennlp.tools.dictionary.Dictionary;
+import opennlp.tools.ml.model.MaxentModel;
 import opennlp.tools.postag.MutableTagDictionary;
 import opennlp.tools.postag.POSEvaluator;
 import opennlp.tools.postag.POSModel;
@@ -57,7 +58,7 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
    * ObjectStream of the automatically created dictionary data, taken from the
    * training data.
    */
-  private MorphoSampleStream dictSamples;
+  private ObjectStream<POSSample> dictSamples;
   /**
    * Cutoff value to create tag dictionary from training data.
    */
@@ -71,11 +72,19 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
    * this one.
    */
   private POSTaggerFactory posTaggerFactory;
+  /**
+   * The word accuracy of the last model trained on the test data.
+   */
+  private double wordAccuracy;
 
   /**
    * Construct an AbstractTrainer. In the params parameter there is information
    * about the language, the featureset, and whether to use pos tag dictionaries
-   * or automatically created dictionaries from the training set.
+   * or automatically created dictionaries from the training set. The training
+   * set is parsed once into a {@link TaggedCorpus}, unless it is already a
+   * binary corpus, which is then iterated to build the dictionaries and to
+   * train. When the events are indexed on disk, the training set is streamed
+   * from its file instead.
    * 
    * @param params
    *          the training parameters
@@ -86,27 +95,54 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
     this.lang = Flags.getLanguage(params);
     final String trainData = Flags.getDataSet("TrainSet", params);
     final String testData = Flags.getDataSet("TestSet", params);
-    final ObjectStream<String> trainStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(trainData);
-    this.trainSamples = new MorphoSampleStream(trainStream);
-    final ObjectStream<String> testStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(testData);
-    this.testSamples = new MorphoSampleStream(testStream);
-    final ObjectStream<String> dictStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(trainData);
-    setDictSamples(new MorphoSampleStream(dictStream));
+    if (Flags.isIndexDir(params)) {
+      this.trainSamples = TaggedCorpus.streamPOSCorpus(trainData);
+      setDictSamples(TaggedCorpus.streamPOSCorpus(trainData));
+    } else {
+      final TaggedCorpus trainCorpus = TaggedCorpus.loadPOSCorpus(trainData);
+      this.trainSamples = trainCorpus.getPOSSamples();
+      setDictSamples(trainCorpus.getPOSSamples());
+    }
+    this.testSamples = TaggedCorpus.loadPOSCorpus(testData).getPOSSamples();
     this.dictCutOff = Flags.getAutoDictFeatures(params);
     this.ngramCutOff = Flags.getNgramDictFeatures(params);
 
   }
 
+  /**
+   * Construct an AbstractTrainer with samples already loaded, e.g., the folds
+   * of a cross validation. The dictionaries are built from the dictSamples,
+   * which must be an independent stream over the training samples.
+   * 
+   * @param params
+   *          the training parameters
+   * @param aTrainSamples
+   *          the training samples
+   * @param aDictSamples
+   *          the training samples to build the dictionaries
+   * @param aTestSamples
+   *          the test samples
+   */
+  public AbstractTaggerTrainer(final TrainingParameters params,
+      final ObjectStream<POSSample> aTrainSamples,
+      final ObjectStream<POSSample> aDictSamples,
+      final ObjectStream<POSSample> aTestSamples) {
+    this.lang = Flags.getLanguage(params);
+    this.trainSamples = aTrainSamples;
+    this.testSamples = aTestSamples;
+    setDictSamples(aDictSamples);
+    this.dictCutOff = Flags.getAutoDictFeatures(params);
+    this.ngramCutOff = Flags.getNgramDictFeatures(params);
+  }
+
   /*
    * (non-Javadoc)
    * 
    * @see es.ehu.si.ixa.pipe.pos.train.Trainer#train(opennlp.tools.util.
    * TrainingParameters)
    */
-  public final POSModel train(final TrainingParameters params) {
+  public final POSModel train(final TrainingParameters params)
+      throws IOException {
     // features
     if (getPosTaggerFactory() == null) {
       throw new IllegalStateException(
@@ -116,21 +152,79 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
     // training model
     POSModel trainedModel = null;
     POSEvaluator posEvaluator = null;
+    EarlyStopping earlyStopping = null;
     try {
+      earlyStopping = createEarlyStopping(params);
+      EarlyStopping.setCurrent(earlyStopping);
       trainedModel = POSTaggerME.train(this.lang, this.trainSamples, params,
           getPosTaggerFactory());
       final POSTaggerME posTagger = new POSTaggerME(trainedModel);
       posEvaluator = new POSEvaluator(posTagger);
+      this.testSamples.reset();
       posEvaluator.evaluate(this.testSamples);
-    } catch (final IOException e) {
-      System.err.println("IO error while loading training and test sets!");
-      e.printStackTrace();
-      System.exit(1);
+    } finally {
+      EarlyStopping.setCurrent(null);
+      if (earlyStopping != null) {
+        earlyStopping.close();
+      }
     }
-    System.out.println("Final result: " + posEvaluator.getWordAccuracy());
+    this.wordAccuracy = posEvaluator.getWordAccuracy();
     return trainedModel;
   }
 
+  /**
+   * Get the word accuracy on the test data of the last model trained.
+   * 
+   * @return the word accuracy
+   */
+  public final double getWordAccuracy() {
+    return this.wordAccuracy;
+  }
+
+  /**
+   * Create the early stopping on the development set if the training
+   * parameters define an evaluation interval. The test set is only used to
+   * report the accuracy of the final model, so without a development set
+   * early stopping is disabled.
+   * 
+   * @param params
+   *          the training parameters
+   * @return the early stopping or null
+   * @throws IOException
+   *           if the development set can not be read
+   */
+  private EarlyStopping createEarlyStopping(final TrainingParameters params)
+      throws IOException {
+    if (!Flags.isEarlyStopping(params)) {
+      return null;
+    }
+    if (!EarlyStopping.isSupported(params)) {
+      System.err.println("WARNING: early stopping requires the "
+          + ParallelPerceptronTrainer.PARALLEL_PERCEPTRON_VALUE
+          + " algorithm, training all the iterations");
+      return null;
+    }
+    if (!Flags.isDevSet(params)) {
+      System.err.println("WARNING: early stopping requires a DevSet, "
+          + "training all the iterations");
+      return null;
+    }
+    final ObjectStream<POSSample> devSamples = TaggedCorpus.loadPOSCorpus(
+        Flags.getDevSet(params)).getPOSSamples();
+    final int beamSize = Flags.getBeamsize(params);
+    return new EarlyStopping(new EarlyStopping.HeldOutEvaluator() {
+      public double evaluate(final MaxentModel model) throws IOException {
+        final POSModel posModel = new POSModel(AbstractTaggerTrainer.this.lang,
+            model, beamSize, null, getPosTaggerFactory());
+        final POSEvaluator posEvaluator = new POSEvaluator(new POSTaggerME(
+            posModel));
+        devSamples.reset();
+        posEvaluator.evaluate(devSamples);
+        return posEvaluator.getWordAccuracy();
+      }
+    }, Flags.getEvalInterval(params), Flags.getPatience(params));
+  }
+
   /**
    * Create a tag dictionary with the dictionary contained in the dictPath.
    * 
@@ -212,9 +306,9 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
   /**
    * Get the dictSamples to automatically create tag dictionary.
    * 
-   * @return the MorphoSampleStream dictSamples
+   * @return the dictSamples
    */
-  protected final MorphoSampleStream getDictSamples() {
+  protected final ObjectStream<POSSample> getDictSamples() {
     return this.dictSamples;
   }
 
@@ -222,9 +316,9 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
    * Set the dictSamples to automatically create tag dictionary.
    * 
    * @param aDictSamples
-   *          the dict samples as a {@code MorphoSampleStream}
+   *          the dict samples
    */
-  protected final void setDictSamples(final MorphoSampleStream aDictSamples) {
+  protected final void setDictSamples(final ObjectStream<POSSample> aDictSamples) {
     this.dictSamples = aDictSamples;
   }
 
@@ -16,19 +16,25 @@
 package eus.ixa.ixa.pipe.pos.train;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Pattern;
 
 import opennlp.tools.dictionary.Dictionary;
 import opennlp.tools.postag.POSContextGenerator;
 import opennlp.tools.util.Cache;
 import opennlp.tools.util.StringList;
+import eus.ixa.ixa.pipe.pos.FeatureHasher;
+import eus.ixa.ixa.pipe.pos.TokenVocabulary;
+import eus.ixa.ixa.pipe.pos.WordFeatureCache;
 
 /**
  * An improved context generator for the POS Tagger. This baseline generator
  * provides more contextual features such as bigrams to the
  * {@code @DefaultPOSContextGenerator}. These extra features require at least
- * 2GB memory to train, more if training data is large.
+ * 2GB memory to train, more if training data is large. The features depending
+ * only on the word are looked up in a {@link WordFeatureCache}, if any, and
+ * computed once per word type. If a {@link FeatureHasher} is given every
+ * feature is replaced by its bucket.
  * 
  * @author ragerri
  * @version 2014-07-08
@@ -51,14 +57,6 @@ public class BaselineContextGenerator implements POSContextGenerator {
    * Default suffix length.
    */
   private static final int SUFFIX_LENGTH = 4;
-  /**
-   * Has capital regexp.
-   */
-  private static Pattern hasCap = Pattern.compile("[A-Z]");
-  /**
-   * Has number regexp.
-   */
-  private static Pattern hasNum = Pattern.compile("[0-9]");
   /**
    * The context Cache.
    */
@@ -75,6 +73,14 @@ public class BaselineContextGenerator implements POSContextGenerator {
    * The dictionary ngrams.
    */
   private final String[] dictGram;
+  /**
+   * The cache of the word features or null.
+   */
+  private final WordFeatureCache wordFeatureCache;
+  /**
+   * The feature hasher or null.
+   */
+  private final FeatureHasher featureHasher;
 
   /**
    * Initializes the current instance.
@@ -95,8 +101,43 @@ public class BaselineContextGenerator implements POSContextGenerator {
    *          the dictionary
    */
   public BaselineContextGenerator(final int cacheSize, final Dictionary aDict) {
+    this(cacheSize, aDict, null);
+  }
+
+  /**
+   * Initializes the current instance.
+   * 
+   * @param cacheSize
+   *          the cache size
+   * @param aDict
+   *          the dictionary
+   * @param aWordFeatureCache
+   *          the word feature cache or null
+   */
+  public BaselineContextGenerator(final int cacheSize, final Dictionary aDict,
+      final WordFeatureCache aWordFeatureCache) {
+    this(cacheSize, aDict, aWordFeatureCache, null);
+  }
+
+  /**
+   * Initializes the current instance.
+   * 
+   * @param cacheSize
+   *          the cache size
+   * @param aDict
+   *          the dictionary
+   * @param aWordFeatureCache
+   *          the word feature cache or null
+   * @param aFeatureHasher
+   *          the feature hasher or null
+   */
+  public BaselineContextGenerator(final int cacheSize, final Dictionary aDict,
+      final WordFeatureCache aWordFeatureCache,
+      final FeatureHasher aFeatureHasher) {
     this.dict = aDict;
     this.dictGram = new String[1];
+    this.wordFeatureCache = aWordFeatureCache;
+    this.featureHasher = aFeatureHasher;
     if (cacheSize > 0) {
       this.contextsCache = new Cache(cacheSize);
     }
@@ -203,7 +244,58 @@ public class BaselineContextGenerator implements POSContextGenerator {
       }
     }
     final List<String> featureList = new ArrayList<String>();
-    featureList.add("default");
+    featureList.add(feature("default"));
+    featureList.addAll(Arrays.asList(getWordFeatures(lex)));
+    // add the words and pos's of the surrounding context
+    if (prev != null) {
+      featureList.add(feature("pw=" + prev));
+      // bigram w-1,w
+      featureList.add(feature("pw,w=" + prev + "," + lex));
+      if (tagprev != null) {
+        featureList.add(feature("pt=" + tagprev));
+        // bigram tag-1, w
+        featureList.add(feature("pt,w=" + tagprev + "," + lex));
+      }
+      if (prevprev != null) {
+        featureList.add(feature("ppw=" + prevprev));
+        if (tagprevprev != null) {
+          // bigram tag-2,tag-1
+          featureList.add(feature("pt2,pt1=" + tagprevprev + "," + tagprev));
+        }
+      }
+    }
+
+    if (next != null) {
+      featureList.add(feature("nw=" + next));
+      if (nextnext != null) {
+        featureList.add(feature("nnw=" + nextnext));
+
+      }
+    }
+    final String[] contexts = featureList
+        .toArray(new String[featureList.size()]);
+    if (this.contextsCache != null) {
+      this.contextsCache.put(cacheKey, contexts);
+    }
+    return contexts;
+  }
+
+  /**
+   * Get the features of a word which do not depend on its context.
+   * 
+   * @param lex
+   *          the word
+   * @return the word itself and, if not in the ngram dictionary, its
+   *         suffixes, prefixes and shape, hashed if there is a feature hasher
+   */
+  private String[] getWordFeatures(final String lex) {
+    if (this.wordFeatureCache != null) {
+      final String[] wordFeatures = this.wordFeatureCache.get(lex);
+      if (wordFeatures != null) {
+        return wordFeatures;
+      }
+    }
+    final List<String> featureList = new ArrayList<String>();
     // add the word itself
     featureList.add("w=" + lex);
     this.dictGram[0] = lex;
@@ -219,50 +311,40 @@ public class BaselineContextGenerator implements POSContextGenerator {
         featureList.add("pre=" + pref);
       }
       // see if the word has any special characters
-      if (lex.indexOf('-') != -1) {
+      final int shape = TokenVocabulary.getShape(lex);
+      if ((shape & TokenVocabulary.HAS_HYPHEN) != 0) {
         featureList.add("h");
       }
 
-      if (hasCap.matcher(lex).find()) {
+      if ((shape & TokenVocabulary.HAS_CAP) != 0) {
         featureList.add("c");
       }
 
-      if (hasNum.matcher(lex).find()) {
+      if ((shape & TokenVocabulary.HAS_DIGIT) != 0) {
         featureList.add("d");
       }
     }
-    // add the words and pos's of the surrounding context
-    if (prev != null) {
-      featureList.add("pw=" + prev);
-      // bigram w-1,w
-      featureList.add("pw,w=" + prev + "," + lex);
-      if (tagprev != null) {
-        featureList.add("pt=" + tagprev);
-        // bigram tag-1, w
-        featureList.add("pt,w=" + tagprev + "," + lex);
-      }
-      if (prevprev != null) {
-        featureList.add("ppw=" + prevprev);
-        if (tagprevprev != null) {
-          // bigram tag-2,tag-1
-          featureList.add("pt2,pt1=" + tagprevprev + "," + tagprev);
-        }
-      }
-    }
-
-    if (next != null) {
-      featureList.add("nw=" + next);
-      if (nextnext != null) {
-        featureList.add("nnw=" + nextnext);
-
-      }
+    String[] wordFeatures = featureList.toArray(new String[featureList
+        .size()]);
+    if (this.featureHasher != null) {
+      wordFeatures = this.featureHasher.hash(wordFeatures);
     }
-    final String[] contexts = featureList
-        .toArray(new String[featureList.size()]);
-    if (this.contextsCache != null) {
-      this.contextsCache.put(cacheKey, contexts);
+    if (this.wordFeatureCache != null) {
+      this.wordFeatureCache.put(lex, wordFeatures);
     }
-    return contexts;
+    return wordFeatures;
+  }
+
+  /**
+   * Get a feature, hashed if there is a feature hasher.
+   * 
+   * @param feature
+   *          the feature
+   * @return the feature or its bucket
+   */
+  private String feature(final String feature) {
+    return this.featureHasher == null ? feature : this.featureHasher
+        .hash(feature);
   }
 
 }
@@ -15,10 +15,14 @@
  */
 package eus.ixa.ixa.pipe.pos.train;
 
+import java.util.Map;
+
 import opennlp.tools.dictionary.Dictionary;
 import opennlp.tools.postag.POSContextGenerator;
 import opennlp.tools.postag.POSTaggerFactory;
 import opennlp.tools.postag.TagDictionary;
+import eus.ixa.ixa.pipe.pos.FeatureHasher;
+import eus.ixa.ixa.pipe.pos.WordFeatureCache;
 
 /**
  * Extends the POSTagger Factory. Right now we only override the context
@@ -26,6 +30,15 @@ import opennlp.tools.postag.TagDictionary;
  */
 public class BaselineFactory extends POSTaggerFactory {
 
+  /**
+   * The word features shared by the context generators of this factory.
+   */
+  private final WordFeatureCache wordFeatureCache = new WordFeatureCache();
+  /**
+   * The feature hasher, if the features are hashed.
+   */
+  private FeatureHasher featureHasher;
+
   /**
    * Creates a {@link BaselineFactory} that provides the default implementation
    * of the resources.
@@ -54,7 +67,8 @@ public class BaselineFactory extends POSTaggerFactory {
    */
   @Override
   public final POSContextGenerator getPOSContextGenerator() {
-    return new BaselineContextGenerator(0, getDictionary());
+    return new BaselineContextGenerator(0, getDictionary(),
+        this.wordFeatureCache, getFeatureHasher());
   }
 
   /*
@@ -64,7 +78,52 @@ public class BaselineFactory extends POSTaggerFactory {
    */
   @Override
   public final POSContextGenerator getPOSContextGenerator(final int cacheSize) {
-    return new BaselineContextGenerator(cacheSize, getDictionary());
+    return new BaselineContextGenerator(cacheSize, getDictionary(),
+        this.wordFeatureCache, getFeatureHasher());
+  }
+
+  @Override
+  public Map<String, String> createManifestEntries() {
+    final Map<String, String> manifestEntries = super.createManifestEntries();
+    if (getFeatureHasher() != null) {
+      manifestEntries.put(FeatureHasher.MANIFEST_ENTRY,
+          Integer.toString(getFeatureHasher().getDimension()));
+    }
+    return manifestEntries;
+  }
+
+  /**
+   * Get the feature hasher, reading its dimension from the model manifest if
+   * required.
+   * 
+   * @return the feature hasher or null if the features are not hashed
+   */
+  public final FeatureHasher getFeatureHasher() {
+    if (this.featureHasher == null && this.artifactProvider != null) {
+      this.featureHasher = FeatureHasher.create(this.artifactProvider
+          .getManifestProperty(FeatureHasher.MANIFEST_ENTRY));
+    }
+    return this.featureHasher;
+  }
+
+  /**
+   * Set the feature hasher used to train the model.
+   * 
+   * @param aFeatureHasher
+   *          the feature hasher
+   */
+  public final void setFeatureHasher(final FeatureHasher aFeatureHasher) {
+    this.featureHasher = aFeatureHasher;
+  }
+
+  /**
+   * Get the cache of the word features shared by every context generator
+   * created by this factory.
+   * 
+   * @return the word feature cache
+   */
+  public final WordFeatureCache getWordFeatureCache() {
+    return this.wordFeatureCache;
   }
 
 }
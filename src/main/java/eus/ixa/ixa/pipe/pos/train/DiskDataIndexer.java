@@ -0,0 +1,580 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import opennlp.tools.ml.model.DataIndexer;
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.util.ObjectStream;
+
+/**
+ * Data indexer which keeps the training events on disk, for corpora whose
+ * events do not fit in memory. The events are indexed in two passes:
+ * <ol>
+ * <li>the events are written to a temporary file while their features are
+ * counted; when too many distinct features are counted, the counts are
+ * written as a sorted run and merged at the end of the pass.
+ * <li>the features above the cutoff are indexed and the events are read back
+ * and written as integers to an index file.
+ * </ol>
+ * The index file is memory mapped in segments and the trainer streams the
+ * events from it at every iteration with an {@link EventReader}; only the
+ * features and outcomes kept by the model stay in memory. Events whose
+ * features are all below the cutoff are dropped, and the events are neither
+ * sorted nor merged. The {@link ParallelPerceptronTrainer} reads the events
+ * with an {@link EventReader}; {@link #getContexts()} and
+ * {@link #getOutcomeList()} read them all into memory, so the index is only
+ * allowed with that trainer (see
+ * {@link ParallelPerceptronTrainer#INDEX_DIR_PARAM}).
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class DiskDataIndexer implements DataIndexer {
+
+  /**
+   * Default number of distinct features counted in memory before writing a
+   * sorted run.
+   */
+  public static final int DEFAULT_MAX_COUNTS = 1 << 20;
+  /**
+   * Maximum size of a memory mapped segment of the index file, in bytes.
+   */
+  private static final long SEGMENT_SIZE = 1L << 28;
+
+  private final String[] predLabels;
+  private final int[] predCounts;
+  private final String[] outcomeLabels;
+  private final int numEvents;
+  /**
+   * The index file.
+   */
+  private final File indexFile;
+  /**
+   * The memory mapped segments of the index file.
+   */
+  private final IntBuffer[] segments;
+  /**
+   * The index of the first event of every segment.
+   */
+  private final int[] segmentFirstEvents;
+  /**
+   * Fingerprint of the indexed events.
+   */
+  private final long fingerprint;
+
+  /**
+   * Index the events with the default number of distinct features counted in
+   * memory.
+   *
+   * @param events
+   *          the events
+   * @param cutoff
+   *          the minimum number of times a feature must be seen
+   * @param dir
+   *          the directory of the temporary and index files
+   * @throws IOException
+   *           if the events can not be read or the files written
+   */
+  public DiskDataIndexer(final ObjectStream<Event> events, final int cutoff,
+      final File dir) throws IOException {
+    this(events, cutoff, dir, DEFAULT_MAX_COUNTS);
+  }
+
+  /**
+   * Index the events.
+   *
+   * @param events
+   *          the events
+   * @param cutoff
+   *          the minimum number of times a feature must be seen
+   * @param dir
+   *          the directory of the temporary and index files
+   * @param maxCounts
+   *          the number of distinct features counted in memory before writing
+   *          a sorted run
+   * @throws IOException
+   *           if the events can not be read or the files written
+   */
+  public DiskDataIndexer(final ObjectStream<Event> events, final int cutoff,
+      final File dir, final int maxCounts) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can not create index directory " + dir);
+    }
+    System.err.println("Indexing events on disk in " + dir
+        + " using cutoff of " + cutoff + "\n");
+    System.err.print("\tComputing event counts...  ");
+    final File eventFile = File.createTempFile("events", ".tmp", dir);
+    eventFile.deleteOnExit();
+    final List<File> runs = new ArrayList<File>();
+    final Map<String, Integer> predIndex;
+    try {
+      final Map<String, int[]> counts = new HashMap<String, int[]>();
+      final int numAllEvents = writeEvents(events, eventFile, counts, runs, dir,
+          maxCounts);
+      System.err.println("done. " + numAllEvents + " events");
+      System.err.print("\tIndexing...  ");
+      final List<String> preds = new ArrayList<String>();
+      final List<Integer> predCountList = new ArrayList<Integer>();
+      if (runs.isEmpty()) {
+        final String[] keys = counts.keySet().toArray(new String[counts.size()]);
+        Arrays.sort(keys);
+        for (final String key : keys) {
+          final int count = counts.get(key)[0];
+          if (count >= cutoff) {
+            preds.add(key);
+            predCountList.add(count);
+          }
+        }
+      } else {
+        runs.add(writeRun(counts, dir));
+        mergeRuns(runs, cutoff, preds, predCountList);
+      }
+      this.predLabels = preds.toArray(new String[preds.size()]);
+      this.predCounts = new int[this.predLabels.length];
+      predIndex = new HashMap<String, Integer>();
+      for (int i = 0; i < this.predLabels.length; i++) {
+        predIndex.put(this.predLabels[i], i);
+        this.predCounts[i] = predCountList.get(i);
+      }
+    } finally {
+      for (final File run : runs) {
+        run.delete();
+      }
+    }
+    this.indexFile = File.createTempFile("index", ".tmp", dir);
+    this.indexFile.deleteOnExit();
+    final List<String> outcomes = new ArrayList<String>();
+    final List<Long> segmentOffsets = new ArrayList<Long>();
+    final List<Integer> firstEvents = new ArrayList<Integer>();
+    long hash = 1125899906842597L;
+    int eventCount = 0;
+    long position = 0;
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(eventFile)));
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(this.indexFile)));
+    try {
+      final Map<String, Integer> outcomeIndex = new HashMap<String, Integer>();
+      int[] context = new int[64];
+      String outcome;
+      while ((outcome = readOutcome(in)) != null) {
+        final int numPreds = in.readInt();
+        if (context.length < numPreds) {
+          context = new int[numPreds];
+        }
+        int length = 0;
+        for (int i = 0; i < numPreds; i++) {
+          final Integer pred = predIndex.get(in.readUTF());
+          if (pred != null) {
+            context[length++] = pred;
+          }
+        }
+        if (length == 0) {
+          System.err.println("Dropped event " + outcome);
+          continue;
+        }
+        Integer oi = outcomeIndex.get(outcome);
+        if (oi == null) {
+          oi = outcomes.size();
+          outcomeIndex.put(outcome, oi);
+          outcomes.add(outcome);
+        }
+        final long size = 4L * (length + 2);
+        if (segmentOffsets.isEmpty()
+            || position + size - segmentOffsets.get(segmentOffsets.size() - 1) > SEGMENT_SIZE) {
+          segmentOffsets.add(position);
+          firstEvents.add(eventCount);
+        }
+        out.writeInt(oi);
+        out.writeInt(length);
+        hash = 31 * hash + oi;
+        for (int i = 0; i < length; i++) {
+          out.writeInt(context[i]);
+          hash = 31 * hash + context[i];
+        }
+        position += size;
+        eventCount++;
+      }
+    } finally {
+      in.close();
+      out.close();
+      eventFile.delete();
+    }
+    this.outcomeLabels = outcomes.toArray(new String[outcomes.size()]);
+    this.numEvents = eventCount;
+    for (final String pred : this.predLabels) {
+      hash = 31 * hash + pred.hashCode();
+    }
+    for (final String outcome : this.outcomeLabels) {
+      hash = 31 * hash + outcome.hashCode();
+    }
+    this.fingerprint = hash;
+    this.segments = new IntBuffer[segmentOffsets.size()];
+    this.segmentFirstEvents = new int[segmentOffsets.size()];
+    final RandomAccessFile file = new RandomAccessFile(this.indexFile, "r");
+    try {
+      final FileChannel channel = file.getChannel();
+      for (int s = 0; s < this.segments.length; s++) {
+        final long offset = segmentOffsets.get(s);
+        final long end = s + 1 < this.segments.length ? segmentOffsets
+            .get(s + 1) : position;
+        this.segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+            end - offset).asIntBuffer();
+        this.segmentFirstEvents[s] = firstEvents.get(s);
+      }
+    } finally {
+      file.close();
+    }
+    System.err.println("done.");
+  }
+
+  /**
+   * First pass: write the events to a temporary file and count their
+   * features, writing the counts as sorted runs when there are too many.
+   */
+  private static int writeEvents(final ObjectStream<Event> events,
+      final File eventFile, final Map<String, int[]> counts,
+      final List<File> runs, final File dir, final int maxCounts)
+      throws IOException {
+    int numAllEvents = 0;
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(eventFile)));
+    try {
+      Event event;
+      while ((event = events.read()) != null) {
+        if (event.getValues() != null) {
+          throw new UnsupportedOperationException(
+              "Real valued features are not supported when indexing on disk!");
+        }
+        final String[] context = event.getContext();
+        out.writeUTF(event.getOutcome());
+        out.writeInt(context.length);
+        for (final String pred : context) {
+          out.writeUTF(pred);
+          final int[] count = counts.get(pred);
+          if (count == null) {
+            counts.put(pred, new int[] { 1 });
+          } else {
+            count[0]++;
+          }
+        }
+        if (counts.size() >= maxCounts) {
+          runs.add(writeRun(counts, dir));
+        }
+        numAllEvents++;
+      }
+    } finally {
+      out.close();
+    }
+    return numAllEvents;
+  }
+
+  /**
+   * Write the feature counts sorted by feature and clear them.
+   */
+  private static File writeRun(final Map<String, int[]> counts, final File dir)
+      throws IOException {
+    final File run = File.createTempFile("counts", ".tmp", dir);
+    run.deleteOnExit();
+    final String[] keys = counts.keySet().toArray(new String[counts.size()]);
+    Arrays.sort(keys);
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(run)));
+    try {
+      for (final String key : keys) {
+        out.writeUTF(key);
+        out.writeInt(counts.get(key)[0]);
+      }
+    } finally {
+      out.close();
+    }
+    counts.clear();
+    return run;
+  }
+
+  /**
+   * Merge the sorted runs, adding up the counts of every feature, and keep
+   * the features above the cutoff, in sorted order.
+   */
+  private static void mergeRuns(final List<File> runs, final int cutoff,
+      final List<String> preds, final List<Integer> predCounts)
+      throws IOException {
+    final PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+    try {
+      for (final File run : runs) {
+        final RunReader reader = new RunReader(run);
+        if (reader.next()) {
+          queue.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+      while (!queue.isEmpty()) {
+        final String pred = queue.peek().pred;
+        int count = 0;
+        while (!queue.isEmpty() && queue.peek().pred.equals(pred)) {
+          final RunReader reader = queue.poll();
+          count += reader.count;
+          if (reader.next()) {
+            queue.add(reader);
+          } else {
+            reader.close();
+          }
+        }
+        if (count >= cutoff) {
+          preds.add(pred);
+          predCounts.add(count);
+        }
+      }
+    } finally {
+      for (final RunReader reader : queue) {
+        reader.close();
+      }
+    }
+  }
+
+  private static String readOutcome(final DataInputStream in)
+      throws IOException {
+    try {
+      return in.readUTF();
+    } catch (final EOFException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Get a reader of a range of events.
+   *
+   * @param fromEvent
+   *          the first event
+   * @param toEvent
+   *          the event after the last one
+   * @return the reader
+   */
+  public final EventReader getReader(final int fromEvent, final int toEvent) {
+    return new EventReader(fromEvent, toEvent);
+  }
+
+  /**
+   * Get a fingerprint of the indexed events.
+   *
+   * @return the fingerprint
+   */
+  public final long getFingerprint() {
+    return this.fingerprint;
+  }
+
+  /**
+   * Delete the index file.
+   */
+  public final void close() {
+    this.indexFile.delete();
+  }
+
+  public String[] getPredLabels() {
+    return this.predLabels;
+  }
+
+  public int[] getPredCounts() {
+    return this.predCounts;
+  }
+
+  public String[] getOutcomeLabels() {
+    return this.outcomeLabels;
+  }
+
+  public int getNumEvents() {
+    return this.numEvents;
+  }
+
+  /**
+   * Read the contexts of all the events from the index file. The events stay
+   * on disk for the {@link ParallelPerceptronTrainer}; this is only meant for
+   * the code which needs the events in memory.
+   *
+   * @return the contexts of the events
+   */
+  public int[][] getContexts() {
+    final int[][] contexts = new int[this.numEvents][];
+    final EventReader reader = getReader(0, this.numEvents);
+    for (int ei = 0; reader.next(); ei++) {
+      contexts[ei] = Arrays.copyOf(reader.getContext(),
+          reader.getContextLength());
+    }
+    return contexts;
+  }
+
+  /**
+   * The events are not merged, so every event is seen once.
+   *
+   * @return the number of times every event is seen
+   */
+  public int[] getNumTimesEventsSeen() {
+    final int[] numTimesEventsSeen = new int[this.numEvents];
+    Arrays.fill(numTimesEventsSeen, 1);
+    return numTimesEventsSeen;
+  }
+
+  /**
+   * Read the outcomes of all the events from the index file.
+   *
+   * @return the outcome of every event
+   */
+  public int[] getOutcomeList() {
+    final int[] outcomeList = new int[this.numEvents];
+    final EventReader reader = getReader(0, this.numEvents);
+    for (int ei = 0; reader.next(); ei++) {
+      outcomeList[ei] = reader.getOutcome();
+    }
+    return outcomeList;
+  }
+
+  public float[][] getValues() {
+    return null;
+  }
+
+  /**
+   * Reads a range of events from the memory mapped index file. Every reader
+   * has its own position, so that several threads can read the events at
+   * once.
+   */
+  public final class EventReader {
+
+    private int segment;
+    private IntBuffer buffer;
+    private int event;
+    private final int toEvent;
+    private int outcome;
+    private int[] context = new int[64];
+    private int contextLength;
+
+    private EventReader(final int fromEvent, final int aToEvent) {
+      this.toEvent = aToEvent;
+      if (fromEvent >= aToEvent) {
+        return;
+      }
+      int s = Arrays.binarySearch(DiskDataIndexer.this.segmentFirstEvents,
+          fromEvent);
+      if (s < 0) {
+        s = -s - 2;
+      }
+      this.segment = s;
+      this.buffer = DiskDataIndexer.this.segments[s].duplicate();
+      this.event = DiskDataIndexer.this.segmentFirstEvents[s];
+      while (this.event < fromEvent) {
+        this.buffer.get();
+        final int length = this.buffer.get();
+        this.buffer.position(this.buffer.position() + length);
+        this.event++;
+      }
+    }
+
+    /**
+     * Read the next event.
+     *
+     * @return false if there are no more events in the range
+     */
+    public boolean next() {
+      if (this.event >= this.toEvent) {
+        return false;
+      }
+      if (!this.buffer.hasRemaining()) {
+        this.segment++;
+        this.buffer = DiskDataIndexer.this.segments[this.segment].duplicate();
+      }
+      this.outcome = this.buffer.get();
+      this.contextLength = this.buffer.get();
+      if (this.context.length < this.contextLength) {
+        this.context = new int[this.contextLength];
+      }
+      this.buffer.get(this.context, 0, this.contextLength);
+      this.event++;
+      return true;
+    }
+
+    public int getOutcome() {
+      return this.outcome;
+    }
+
+    /**
+     * Get the features of the event; only the first
+     * {@link #getContextLength()} are valid, and the array is reused by the
+     * next event.
+     *
+     * @return the features
+     */
+    public int[] getContext() {
+      return this.context;
+    }
+
+    public int getContextLength() {
+      return this.contextLength;
+    }
+  }
+
+  /**
+   * Reads a sorted run of feature counts.
+   */
+  private static class RunReader implements Comparable<RunReader> {
+
+    private final DataInputStream in;
+    private String pred;
+    private int count;
+
+    RunReader(final File run) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(run)));
+    }
+
+    boolean next() throws IOException {
+      try {
+        this.pred = this.in.readUTF();
+      } catch (final EOFException e) {
+        return false;
+      }
+      this.count = this.in.readInt();
+      return true;
+    }
+
+    void close() throws IOException {
+      this.in.close();
+    }
+
+    public int compareTo(final RunReader other) {
+      return this.pred.compareTo(other.pred);
+    }
+  }
+
+}
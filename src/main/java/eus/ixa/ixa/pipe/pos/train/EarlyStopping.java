@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.util.TrainingParameters;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Early stopping on held-out accuracy. Every {@code EvalInterval} iterations
+ * the trainer hands a snapshot of the model, which is evaluated on the
+ * development set by a background thread while the trainer goes on with the
+ * next iterations. Training stops when the accuracy has not improved for
+ * {@code Patience} evaluations, and the best model evaluated is kept as the
+ * trained model.
+ * <p>
+ * The result of an evaluation is collected when the next snapshot is handed,
+ * so that the stopping iteration does not depend on the speed of the
+ * evaluation. Early stopping is set for the training thread with
+ * {@link #setCurrent(EarlyStopping)}, from where the trainer retrieves it;
+ * it is supported by the {@link ParallelPerceptronTrainer}.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class EarlyStopping {
+
+  /**
+   * The early stopping of the training thread.
+   */
+  private static final ThreadLocal<EarlyStopping> CURRENT =
+      new ThreadLocal<EarlyStopping>();
+
+  /**
+   * Evaluates a model snapshot on the held-out data.
+   */
+  public interface HeldOutEvaluator {
+    /**
+     * Evaluate a model.
+     *
+     * @param model
+     *          the model
+     * @return the held-out accuracy
+     * @throws IOException
+     *           if the held-out data can not be read
+     */
+    double evaluate(MaxentModel model) throws IOException;
+  }
+
+  /**
+   * The held-out evaluator.
+   */
+  private final HeldOutEvaluator evaluator;
+  /**
+   * The number of iterations between evaluations.
+   */
+  private final int interval;
+  /**
+   * The number of evaluations without improvement before stopping.
+   */
+  private final int patience;
+  /**
+   * The evaluation thread.
+   */
+  private final ExecutorService executor;
+  /**
+   * The evaluation in progress, or null.
+   */
+  private Future<Double> pending;
+  private MaxentModel pendingModel;
+  private int pendingIteration;
+  /**
+   * The last iteration evaluated.
+   */
+  private int lastIteration;
+  private MaxentModel bestModel;
+  private double bestAccuracy = -1;
+  private int bestIteration;
+  /**
+   * The number of evaluations since the best accuracy.
+   */
+  private int evaluationsWithoutImprovement;
+
+  /**
+   * Construct an early stopping.
+   *
+   * @param aEvaluator
+   *          the held-out evaluator
+   * @param aInterval
+   *          the number of iterations between evaluations
+   * @param aPatience
+   *          the number of evaluations without improvement before stopping
+   */
+  public EarlyStopping(final HeldOutEvaluator aEvaluator, final int aInterval,
+      final int aPatience) {
+    if (aInterval < 1 || aPatience < 1) {
+      throw new IllegalArgumentException(
+          "The evaluation interval and the patience must be positive!");
+    }
+    this.evaluator = aEvaluator;
+    this.interval = aInterval;
+    this.patience = aPatience;
+    this.executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("ixa-pipe-heldout-evaluator-%d").build());
+  }
+
+  /**
+   * Set the early stopping of the current thread.
+   *
+   * @param earlyStopping
+   *          the early stopping or null to remove it
+   */
+  public static void setCurrent(final EarlyStopping earlyStopping) {
+    if (earlyStopping == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(earlyStopping);
+    }
+  }
+
+  /**
+   * Get the early stopping of the current thread.
+   *
+   * @return the early stopping or null if training should not stop early
+   */
+  public static EarlyStopping getCurrent() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Check whether the training algorithm supports early stopping.
+   *
+   * @param params
+   *          the training parameters
+   * @return true if the trainer is the {@link ParallelPerceptronTrainer}
+   */
+  public static boolean isSupported(final TrainingParameters params) {
+    return ParallelPerceptronTrainer.isSelected(params);
+  }
+
+  /**
+   * Whether a snapshot should be evaluated after an iteration.
+   *
+   * @param iteration
+   *          the iteration, starting at 1
+   * @return true if the snapshot should be evaluated
+   */
+  public final boolean isEvaluated(final int iteration) {
+    return iteration % this.interval == 0;
+  }
+
+  /**
+   * Collect the previous evaluation and evaluate a new snapshot in the
+   * background.
+   *
+   * @param iteration
+   *          the iteration of the snapshot
+   * @param model
+   *          the snapshot
+   * @return true if training should stop
+   * @throws IOException
+   *           if the evaluation fails
+   */
+  public final boolean iterationCompleted(final int iteration,
+      final MaxentModel model) throws IOException {
+    collect();
+    if (this.evaluationsWithoutImprovement >= this.patience) {
+      System.err.println("Stopping: no held-out improvement in "
+          + this.patience + " evaluations");
+      return true;
+    }
+    submit(iteration, model);
+    return false;
+  }
+
+  /**
+   * Finish the evaluations, evaluating the last snapshot if needed, and get
+   * the best model.
+   *
+   * @param iteration
+   *          the last iteration
+   * @param model
+   *          the last snapshot
+   * @return the model with the best held-out accuracy
+   * @throws IOException
+   *           if the evaluation fails
+   */
+  public final MaxentModel getBestModel(final int iteration,
+      final MaxentModel model) throws IOException {
+    collect();
+    if (iteration != this.lastIteration) {
+      submit(iteration, model);
+      collect();
+    }
+    System.err.println("Best held-out accuracy " + this.bestAccuracy
+        + " at iteration " + this.bestIteration);
+    return this.bestModel;
+  }
+
+  /**
+   * Wait for the evaluation in progress, if any, so that the best model and
+   * the evaluation counters are up to date, e.g., to write them in a
+   * checkpoint.
+   *
+   * @throws IOException
+   *           if the evaluation fails
+   */
+  public final void finishEvaluation() throws IOException {
+    collect();
+  }
+
+  /**
+   * Get the best model evaluated so far.
+   *
+   * @return the best model or null if no model was evaluated
+   */
+  public final MaxentModel getBestSnapshot() {
+    return this.bestModel;
+  }
+
+  public final double getBestAccuracy() {
+    return this.bestAccuracy;
+  }
+
+  public final int getBestIteration() {
+    return this.bestIteration;
+  }
+
+  public final int getLastIteration() {
+    return this.lastIteration;
+  }
+
+  public final int getEvaluationsWithoutImprovement() {
+    return this.evaluationsWithoutImprovement;
+  }
+
+  /**
+   * Restore the evaluations of an interrupted training, e.g., from a
+   * checkpoint.
+   *
+   * @param aBestModel
+   *          the best model evaluated
+   * @param aBestAccuracy
+   *          the accuracy of the best model
+   * @param aBestIteration
+   *          the iteration of the best model
+   * @param aLastIteration
+   *          the last iteration evaluated
+   * @param aEvaluationsWithoutImprovement
+   *          the number of evaluations since the best accuracy
+   */
+  public final void restore(final MaxentModel aBestModel,
+      final double aBestAccuracy, final int aBestIteration,
+      final int aLastIteration, final int aEvaluationsWithoutImprovement) {
+    if (this.pending != null) {
+      throw new IllegalStateException("An evaluation is in progress!");
+    }
+    this.bestModel = aBestModel;
+    this.bestAccuracy = aBestAccuracy;
+    this.bestIteration = aBestIteration;
+    this.lastIteration = aLastIteration;
+    this.evaluationsWithoutImprovement = aEvaluationsWithoutImprovement;
+  }
+
+  /**
+   * Stop the evaluation thread.
+   */
+  public final void close() {
+    this.executor.shutdownNow();
+  }
+
+  private void submit(final int iteration, final MaxentModel model) {
+    this.pendingIteration = iteration;
+    this.pendingModel = model;
+    this.pending = this.executor.submit(new Callable<Double>() {
+      public Double call() throws IOException {
+        return EarlyStopping.this.evaluator.evaluate(model);
+      }
+    });
+  }
+
+  /**
+   * Wait for the evaluation in progress, if any, and keep its model if it is
+   * the best so far.
+   *
+   * @throws IOException
+   *           if the evaluation fails
+   */
+  private void collect() throws IOException {
+    if (this.pending == null) {
+      return;
+    }
+    double accuracy;
+    try {
+      accuracy = this.pending.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while evaluating held-out data!", e);
+    } catch (final ExecutionException e) {
+      throw new IOException("Error while evaluating held-out data!",
+          e.getCause());
+    }
+    System.err.println("Held-out accuracy at iteration "
+        + this.pendingIteration + ": " + accuracy);
+    if (accuracy > this.bestAccuracy) {
+      this.bestAccuracy = accuracy;
+      this.bestModel = this.pendingModel;
+      this.bestIteration = this.pendingIteration;
+      this.evaluationsWithoutImprovement = 0;
+    } else {
+      this.evaluationsWithoutImprovement++;
+    }
+    this.lastIteration = this.pendingIteration;
+    this.pending = null;
+    this.pendingModel = null;
+  }
+
+}
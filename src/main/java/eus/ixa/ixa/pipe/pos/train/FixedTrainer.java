@@ -18,9 +18,12 @@ package eus.ixa.ixa.pipe.pos.train;
 import java.io.IOException;
 
 import opennlp.tools.dictionary.Dictionary;
+import opennlp.tools.postag.POSSample;
 import opennlp.tools.postag.POSTaggerFactory;
 import opennlp.tools.util.InvalidFormatException;
+import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
+import eus.ixa.ixa.pipe.pos.FeatureHasher;
 
 /**
  * FixedTrainer to train the pos tagger.
@@ -41,12 +44,40 @@ public class FixedTrainer extends AbstractTaggerTrainer {
    */
   public FixedTrainer(final TrainingParameters params) throws IOException {
     super(params);
+    createFeatures(params);
+  }
+
+  /**
+   * Extends the {@code AbstractTrainer} with samples already loaded.
+   * 
+   * @param params
+   *          the training parameters
+   * @param trainSamples
+   *          the training samples
+   * @param dictSamples
+   *          the training samples to build the dictionaries
+   * @param testSamples
+   *          the test samples
+   */
+  public FixedTrainer(final TrainingParameters params,
+      final ObjectStream<POSSample> trainSamples,
+      final ObjectStream<POSSample> dictSamples,
+      final ObjectStream<POSSample> testSamples) {
+    super(params, trainSamples, dictSamples, testSamples);
+    createFeatures(params);
+  }
 
+  /**
+   * Create the {@code POSTaggerFactory} and its dictionaries.
+   * 
+   * @param params
+   *          the training parameters
+   */
+  private void createFeatures(final TrainingParameters params) {
     final String dictPath = Flags.getDictionaryFeatures(params);
     setPosTaggerFactory(getTrainerFactory(params));
     createTagDictionary(dictPath);
     createAutomaticDictionary(getDictSamples(), getDictCutOff());
-
   }
 
   /**
@@ -81,6 +112,15 @@ public class FixedTrainer extends AbstractTaggerTrainer {
         e.printStackTrace();
       }
     }
+    if (Flags.isFeatureHashing(params)) {
+      if (posTaggerFactory instanceof BaselineFactory) {
+        ((BaselineFactory) posTaggerFactory).setFeatureHasher(new FeatureHasher(
+            Flags.getFeatureHashing(params)));
+      } else {
+        System.err.println("WARNING: feature hashing is only supported by the "
+            + "Baseline featureset, not hashing the features");
+      }
+    }
     return posTaggerFactory;
   }
 
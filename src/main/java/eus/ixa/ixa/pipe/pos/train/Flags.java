@@ -23,10 +23,17 @@ public class Flags {
    */
   public static final int DEFAULT_BEAM_SIZE = 3;
   public static final int DEFAULT_FOLDS_VALUE = 10;
+  public static final int DEFAULT_THREADS = 1;
+  public static final int DEFAULT_FOLD_THREADS = 1;
+  public static final int DEFAULT_EVAL_INTERVAL = 0;
+  public static final int DEFAULT_PATIENCE = 3;
+  public static final String DEFAULT_DEV_SET = "off";
+  public static final int DEFAULT_FEATURE_HASHING = 0;
   public static final String DEFAULT_EVALUATE_MODEL = "off";
   public static final String DEFAULT_FEATURESET_FLAG = "Baseline";
   public static final String DEFAULT_DICT_PATH = "off";
   public static final int DEFAULT_DICT_CUTOFF = -1;
+  public static final int DEFAULT_LEMMA_CLASS_INDEX = -1;
   public static final String DEFAULT_EVAL_FORMAT = "opennlp";
   public static final String DEFAULT_OUTPUT_FORMAT = "naf";
   public static final String DEFAULT_HOSTNAME = "localhost";
@@ -139,6 +146,16 @@ public class Flags {
     return Integer.parseInt(dictionaryFlag);
   }
 
+  public static Integer getLemmaClassIndex(final TrainingParameters params) {
+    String lemmaClassIndexFlag = null;
+    if (params.getSettings().get("LemmaClassIndex") != null) {
+      lemmaClassIndexFlag = params.getSettings().get("LemmaClassIndex");
+    } else {
+      lemmaClassIndexFlag = Integer.toString(Flags.DEFAULT_LEMMA_CLASS_INDEX);
+    }
+    return Integer.parseInt(lemmaClassIndexFlag);
+  }
+
   public static Integer getFolds(final TrainingParameters params) {
     Integer folds = null;
     if (params.getSettings().get("Folds") == null) {
@@ -149,6 +166,66 @@ public class Flags {
     return folds;
   }
 
+  public static Integer getThreads(final TrainingParameters params) {
+    Integer threads = null;
+    if (params.getSettings().get("Threads") == null) {
+      threads = Flags.DEFAULT_THREADS;
+    } else {
+      threads = Integer.parseInt(params.getSettings().get("Threads"));
+    }
+    return threads;
+  }
+
+  public static Integer getFoldThreads(final TrainingParameters params) {
+    Integer foldThreads = null;
+    if (params.getSettings().get("FoldThreads") == null) {
+      foldThreads = Flags.DEFAULT_FOLD_THREADS;
+    } else {
+      foldThreads = Integer.parseInt(params.getSettings().get("FoldThreads"));
+    }
+    return foldThreads;
+  }
+
+  public static Integer getEvalInterval(final TrainingParameters params) {
+    Integer evalInterval = null;
+    if (params.getSettings().get("EvalInterval") == null) {
+      evalInterval = Flags.DEFAULT_EVAL_INTERVAL;
+    } else {
+      evalInterval = Integer.parseInt(params.getSettings().get("EvalInterval"));
+    }
+    return evalInterval;
+  }
+
+  public static Integer getPatience(final TrainingParameters params) {
+    Integer patience = null;
+    if (params.getSettings().get("Patience") == null) {
+      patience = Flags.DEFAULT_PATIENCE;
+    } else {
+      patience = Integer.parseInt(params.getSettings().get("Patience"));
+    }
+    return patience;
+  }
+
+  public static String getDevSet(final TrainingParameters params) {
+    String devSet = null;
+    if (params.getSettings().get("DevSet") == null) {
+      devSet = Flags.DEFAULT_DEV_SET;
+    } else {
+      devSet = params.getSettings().get("DevSet");
+    }
+    return devSet;
+  }
+
+  public static Integer getFeatureHashing(final TrainingParameters params) {
+    Integer dimension = null;
+    if (params.getSettings().get("FeatureHashing") == null) {
+      dimension = Flags.DEFAULT_FEATURE_HASHING;
+    } else {
+      dimension = Integer.parseInt(params.getSettings().get("FeatureHashing"));
+    }
+    return dimension;
+  }
+
   public static void componentException() {
     System.err
         .println("Please provide a component name in the Component field in the parameters file!");
@@ -195,4 +272,20 @@ public class Flags {
     return !dictFeatures.equalsIgnoreCase(Flags.DEFAULT_DICT_PATH);
   }
 
+  public static boolean isFeatureHashing(final TrainingParameters params) {
+    return getFeatureHashing(params) != Flags.DEFAULT_FEATURE_HASHING;
+  }
+
+  public static boolean isEarlyStopping(final TrainingParameters params) {
+    return getEvalInterval(params) != Flags.DEFAULT_EVAL_INTERVAL;
+  }
+
+  public static boolean isDevSet(final TrainingParameters params) {
+    return !getDevSet(params).equalsIgnoreCase(Flags.DEFAULT_DEV_SET);
+  }
+
+  public static boolean isIndexDir(final TrainingParameters params) {
+    return params.getSettings().get(ParallelPerceptronTrainer.INDEX_DIR_PARAM) != null;
+  }
+
 }
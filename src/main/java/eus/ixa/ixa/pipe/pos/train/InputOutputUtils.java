@@ -120,6 +120,19 @@ public final class InputOutputUtils {
         }
       }
 
+      if (ParallelPerceptronTrainer.PARALLEL_PERCEPTRON_VALUE.equals(params
+          .getSettings().get(TrainingParameters.ALGORITHM_PARAM))) {
+        params.put(TrainingParameters.ALGORITHM_PARAM,
+            ParallelPerceptronTrainer.class.getName());
+      }
+      if (Flags.isIndexDir(params)
+          && !ParallelPerceptronTrainer.isSelected(params)) {
+        throw new TerminateToolException(1, "Training parameters file '"
+            + paramFile + "' sets an "
+            + ParallelPerceptronTrainer.INDEX_DIR_PARAM + " which requires the "
+            + ParallelPerceptronTrainer.PARALLEL_PERCEPTRON_VALUE
+            + " algorithm!");
+      }
       if (!TrainerFactory.isValid(params.getSettings())) {
         throw new TerminateToolException(1, "Training parameters file '"
             + paramFile + "' is invalid!");
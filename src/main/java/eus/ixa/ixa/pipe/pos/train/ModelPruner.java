@@ -0,0 +1,416 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import opennlp.tools.ml.BeamSearch;
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.IndexHashTable;
+import opennlp.tools.ml.perceptron.PerceptronModel;
+import opennlp.tools.postag.POSDictionary;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerFactory;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.postag.TagDictionary;
+import opennlp.tools.util.model.BaseModel;
+import eus.ixa.ixa.pipe.lemma.LemmatizerFactory;
+import eus.ixa.ixa.pipe.lemma.LemmatizerME;
+import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
+import eus.ixa.ixa.pipe.lemma.eval.LemmaEvaluate;
+import eus.ixa.ixa.pipe.pos.TaggedCorpus;
+import eus.ixa.ixa.pipe.pos.eval.POSEvaluate;
+
+/**
+ * Prunes a trained POS or lemmatizer model: the weights whose magnitude is
+ * below a threshold are removed, and so are the predicates and the outcomes
+ * left without weights, unless the tag dictionary of the model refers to
+ * them. The pruned models are evaluated on a test corpus to
+ * report their size, accuracy and throughput. Only perceptron and maxent
+ * models can be pruned.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class ModelPruner {
+
+  /**
+   * The manifest entry with the threshold a model was pruned with.
+   */
+  public static final String MANIFEST_ENTRY = "Pruning-Threshold";
+  /**
+   * The fractions of the weights kept in the pruning curve.
+   */
+  private static final double[] CURVE = { 1.0, 0.5, 0.25, 0.1, 0.05, 0.01 };
+
+  /**
+   * The model to be pruned.
+   */
+  private final BaseModel model;
+  /**
+   * The classifier of the model.
+   */
+  private final AbstractModel classifier;
+  /**
+   * The test corpus.
+   */
+  private final TaggedCorpus testCorpus;
+  /**
+   * The magnitudes of the non zero weights, from largest to smallest.
+   */
+  private final double[] magnitudes;
+  /**
+   * The outcomes kept even without weights, because the tag dictionary of the
+   * model refers to them.
+   */
+  private final Set<String> dictionaryOutcomes = new HashSet<String>();
+
+  /**
+   * Construct a pruner.
+   *
+   * @param aModel
+   *          the POS or lemmatizer model
+   * @param aTestCorpus
+   *          the corpus to evaluate the pruned models
+   */
+  public ModelPruner(final BaseModel aModel, final TaggedCorpus aTestCorpus) {
+    final Object maxentModel;
+    if (aModel instanceof POSModel) {
+      maxentModel = aModel.getArtifact(POSModel.POS_MODEL_ENTRY_NAME);
+    } else if (aModel instanceof LemmatizerModel) {
+      maxentModel = ((LemmatizerModel) aModel).getLemmatizerMaxentModel();
+    } else {
+      throw new IllegalArgumentException("Only POS and lemmatizer models "
+          + "can be pruned!");
+    }
+    if (!(maxentModel instanceof PerceptronModel)
+        && !(maxentModel instanceof GISModel)) {
+      throw new IllegalArgumentException("Only perceptron and maxent models "
+          + "can be pruned!");
+    }
+    this.model = aModel;
+    this.classifier = (AbstractModel) maxentModel;
+    this.testCorpus = aTestCorpus;
+    if (aModel instanceof POSModel) {
+      final TagDictionary tagDictionary = ((POSModel) aModel).getFactory()
+          .getTagDictionary();
+      if (tagDictionary instanceof POSDictionary) {
+        for (final String word : (POSDictionary) tagDictionary) {
+          this.dictionaryOutcomes.addAll(Arrays.asList(tagDictionary
+              .getTags(word)));
+        }
+      }
+    }
+
+    final List<Double> weights = new ArrayList<Double>();
+    for (final Context context : getContexts()) {
+      for (final double weight : context.getParameters()) {
+        if (weight != 0) {
+          weights.add(Math.abs(weight));
+        }
+      }
+    }
+    this.magnitudes = new double[weights.size()];
+    for (int i = 0; i < this.magnitudes.length; i++) {
+      this.magnitudes[i] = -weights.get(i);
+    }
+    Arrays.sort(this.magnitudes);
+    for (int i = 0; i < this.magnitudes.length; i++) {
+      this.magnitudes[i] = -this.magnitudes[i];
+    }
+  }
+
+  /**
+   * Get the number of non zero weights of the model.
+   *
+   * @return the number of weights
+   */
+  public final int getNumWeights() {
+    return this.magnitudes.length;
+  }
+
+  /**
+   * Get the threshold which keeps the largest weights of the model. Weights
+   * tied with the last one kept are kept too.
+   *
+   * @param weights
+   *          the number of weights to keep
+   * @return the threshold
+   */
+  public final double getThresholdForWeights(final int weights) {
+    if (weights < 1) {
+      throw new IllegalArgumentException("At least one weight must be kept!");
+    }
+    return this.magnitudes[Math.min(weights, this.magnitudes.length) - 1];
+  }
+
+  /**
+   * Get the lowest threshold whose pruned model is not larger than a size.
+   *
+   * @param size
+   *          the maximum size of the serialized model in bytes
+   * @return the threshold
+   * @throws IOException
+   *           if the model can not be serialized
+   */
+  public final double getThresholdForSize(final long size) throws IOException {
+    int low = 1;
+    int high = this.magnitudes.length;
+    if (getSize(prune(getThresholdForWeights(low))) > size) {
+      throw new IllegalArgumentException("The model can not be pruned to "
+          + size + " bytes!");
+    }
+    while (low < high) {
+      final int middle = low + (high - low + 1) / 2;
+      if (getSize(prune(getThresholdForWeights(middle))) <= size) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return getThresholdForWeights(low);
+  }
+
+  /**
+   * Prune the model.
+   *
+   * @param threshold
+   *          the minimum magnitude of the weights kept
+   * @return the pruned model
+   * @throws IOException
+   *           if the artifacts of the model can not be read
+   */
+  public final BaseModel prune(final double threshold) throws IOException {
+    final Object[] dataStructures = this.classifier.getDataStructures();
+    final Context[] contexts = getContexts();
+    @SuppressWarnings("unchecked")
+    final IndexHashTable<String> pmap = (IndexHashTable<String>) dataStructures[1];
+    final String[] predLabels = pmap.toArray(new String[pmap.size()]);
+    final String[] outcomeNames = (String[]) dataStructures[2];
+
+    // outcomes are renumbered once the unused ones are removed
+    final int[] outcomeMap = new int[outcomeNames.length];
+    Arrays.fill(outcomeMap, -1);
+    for (final Context context : contexts) {
+      final int[] outcomes = context.getOutcomes();
+      final double[] parameters = context.getParameters();
+      for (int i = 0; i < outcomes.length; i++) {
+        if (isKept(parameters[i], threshold)) {
+          outcomeMap[outcomes[i]] = 0;
+        }
+      }
+    }
+    final List<String> prunedOutcomes = new ArrayList<String>();
+    for (int oi = 0; oi < outcomeNames.length; oi++) {
+      if (outcomeMap[oi] == 0
+          || this.dictionaryOutcomes.contains(outcomeNames[oi])) {
+        outcomeMap[oi] = prunedOutcomes.size();
+        prunedOutcomes.add(outcomeNames[oi]);
+      }
+    }
+    if (prunedOutcomes.isEmpty()) {
+      throw new IllegalArgumentException("The threshold " + threshold
+          + " removes every weight of the model!");
+    }
+
+    final List<Context> prunedContexts = new ArrayList<Context>();
+    final List<String> prunedPreds = new ArrayList<String>();
+    for (int pi = 0; pi < contexts.length; pi++) {
+      final int[] outcomes = contexts[pi].getOutcomes();
+      final double[] parameters = contexts[pi].getParameters();
+      int kept = 0;
+      for (int i = 0; i < outcomes.length; i++) {
+        if (isKept(parameters[i], threshold)) {
+          kept++;
+        }
+      }
+      if (kept == 0) {
+        continue;
+      }
+      final int[] prunedContextOutcomes = new int[kept];
+      final double[] prunedParameters = new double[kept];
+      kept = 0;
+      for (int i = 0; i < outcomes.length; i++) {
+        if (isKept(parameters[i], threshold)) {
+          prunedContextOutcomes[kept] = outcomeMap[outcomes[i]];
+          prunedParameters[kept] = parameters[i];
+          kept++;
+        }
+      }
+      prunedContexts.add(new Context(prunedContextOutcomes, prunedParameters));
+      prunedPreds.add(predLabels[pi]);
+    }
+
+    final Context[] params = prunedContexts
+        .toArray(new Context[prunedContexts.size()]);
+    final String[] preds = prunedPreds.toArray(new String[prunedPreds.size()]);
+    final String[] outcomes = prunedOutcomes
+        .toArray(new String[prunedOutcomes.size()]);
+    final AbstractModel prunedClassifier;
+    if (this.classifier instanceof GISModel) {
+      prunedClassifier = new GISModel(params, preds, outcomes,
+          (Integer) dataStructures[3], (Double) dataStructures[4]);
+    } else {
+      prunedClassifier = new PerceptronModel(params, preds, outcomes);
+    }
+    return createModel(prunedClassifier, threshold);
+  }
+
+  /**
+   * Print the size, accuracy and throughput of the model pruned to keep
+   * decreasing fractions of its weights.
+   *
+   * @param out
+   *          the stream to print to
+   * @throws IOException
+   *           if the test corpus can not be read
+   */
+  public final void printCurve(final PrintStream out) throws IOException {
+    // warm up the JIT so that the throughput of the first model is comparable
+    evaluate(this.model);
+    printHeader(out);
+    for (final double fraction : CURVE) {
+      final int weights = (int) Math.ceil(fraction * this.magnitudes.length);
+      if (weights > 0) {
+        printEvaluation(getThresholdForWeights(weights), out);
+      }
+    }
+  }
+
+  /**
+   * Print the header of the evaluation columns.
+   *
+   * @param out
+   *          the stream to print to
+   */
+  public static void printHeader(final PrintStream out) {
+    out.println("Threshold\tWeights\tPredicates\tOutcomes\tBytes\tAccuracy"
+        + "\tWords/s");
+  }
+
+  /**
+   * Prune the model and print its size, accuracy and throughput.
+   *
+   * @param threshold
+   *          the minimum magnitude of the weights kept
+   * @param out
+   *          the stream to print to
+   * @return the pruned model
+   * @throws IOException
+   *           if the model can not be pruned or the test corpus can not be
+   *           read
+   */
+  public final BaseModel printEvaluation(final double threshold,
+      final PrintStream out) throws IOException {
+    final BaseModel prunedModel = prune(threshold);
+    final AbstractModel prunedClassifier = getClassifier(prunedModel);
+    int weights = 0;
+    for (final Context context : (Context[]) prunedClassifier
+        .getDataStructures()[0]) {
+      weights += context.getOutcomes().length;
+    }
+    final int predicates = ((IndexHashTable<?>) prunedClassifier
+        .getDataStructures()[1]).size();
+    final long start = System.nanoTime();
+    final double accuracy = evaluate(prunedModel);
+    final double seconds = (System.nanoTime() - start) / 1e9;
+    out.println(threshold + "\t" + weights + "\t" + predicates + "\t"
+        + prunedClassifier.getNumOutcomes() + "\t" + getSize(prunedModel)
+        + "\t" + accuracy + "\t"
+        + Math.round(this.testCorpus.getNumTokens() / seconds));
+    return prunedModel;
+  }
+
+  private Context[] getContexts() {
+    return (Context[]) this.classifier.getDataStructures()[0];
+  }
+
+  private static boolean isKept(final double weight, final double threshold) {
+    return weight != 0 && Math.abs(weight) >= threshold;
+  }
+
+  /**
+   * Create a model with the pruned classifier and the rest of the artifacts of
+   * the model being pruned. The factory of a loaded model only reads its
+   * artifacts from the model, so a new factory with the same artifacts is
+   * created for the pruned model.
+   */
+  private BaseModel createModel(final AbstractModel prunedClassifier,
+      final double threshold) throws IOException {
+    final Map<String, String> manifestInfoEntries = new HashMap<String, String>();
+    manifestInfoEntries.put(MANIFEST_ENTRY, Double.toString(threshold));
+    final String beamSize = this.model
+        .getManifestProperty(BeamSearch.BEAM_SIZE_PARAMETER);
+    if (this.model instanceof POSModel) {
+      final POSTaggerFactory posFactory = ((POSModel) this.model).getFactory();
+      final POSTaggerFactory factory = POSTaggerFactory.create(posFactory
+          .getClass().getName(), posFactory.getDictionary(), posFactory
+          .getTagDictionary());
+      if (factory instanceof BaselineFactory) {
+        ((BaselineFactory) factory).setFeatureHasher(((BaselineFactory) posFactory)
+            .getFeatureHasher());
+      }
+      return new POSModel(this.model.getLanguage(), prunedClassifier,
+          beamSize == null ? POSTaggerME.DEFAULT_BEAM_SIZE : Integer
+              .parseInt(beamSize), manifestInfoEntries, factory);
+    } else {
+      final LemmatizerFactory lemmatizerFactory = ((LemmatizerModel) this.model)
+          .getFactory();
+      final LemmatizerFactory factory = LemmatizerFactory
+          .create(lemmatizerFactory.getClass().getName());
+      factory.setLemmaClassIndex(lemmatizerFactory.getLemmaClassIndex());
+      factory.setFeatureHasher(lemmatizerFactory.getFeatureHasher());
+      return new LemmatizerModel(this.model.getLanguage(), prunedClassifier,
+          beamSize == null ? LemmatizerME.DEFAULT_BEAM_SIZE : Integer
+              .parseInt(beamSize), manifestInfoEntries, factory);
+    }
+  }
+
+  private static AbstractModel getClassifier(final BaseModel aModel) {
+    if (aModel instanceof POSModel) {
+      return aModel.getArtifact(POSModel.POS_MODEL_ENTRY_NAME);
+    }
+    return (AbstractModel) ((LemmatizerModel) aModel)
+        .getLemmatizerMaxentModel();
+  }
+
+  private double evaluate(final BaseModel aModel) throws IOException {
+    if (aModel instanceof POSModel) {
+      return new POSEvaluate(this.testCorpus.getPOSSamples(), (POSModel) aModel)
+          .getWordAccuracy();
+    }
+    return new LemmaEvaluate(this.testCorpus.getLemmaSamples(),
+        (LemmatizerModel) aModel).getWordAccuracy();
+  }
+
+  private static long getSize(final BaseModel aModel) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    aModel.serialize(out);
+    return out.size();
+  }
+
+}
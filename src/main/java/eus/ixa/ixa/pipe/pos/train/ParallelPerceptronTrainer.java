@@ -0,0 +1,635 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opennlp.tools.ml.AbstractEventTrainer;
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.DataIndexer;
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.ml.perceptron.PerceptronModel;
+import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.TrainingParameters;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Multi-threaded averaged perceptron trainer based on iterative parameter
+ * mixing. The training events are split in as many shards as threads; at
+ * every iteration each shard runs a perceptron epoch over its events starting
+ * from the current weights and the weights of the shards are then averaged.
+ * The final model averages the weights of every iteration.
+ * <p>
+ * The shards only read the shared weights and keep their own updates, which
+ * are mixed in shard order, so that the model only depends on the training
+ * events, the number of threads and the seed, not on thread scheduling. If a
+ * {@code Seed} is given the events of every shard are shuffled at every
+ * iteration with it.
+ * <p>
+ * The trainer produces a standard perceptron model and is selected with
+ * {@code Algorithm=PARALLEL_PERCEPTRON} (or the name of this class) in the
+ * training parameters; it uses the {@code Threads}, {@code Iterations},
+ * {@code Cutoff}, {@code Tolerance} and {@code Seed} parameters. If an
+ * {@link EarlyStopping} is set for the training thread the averaged model is
+ * evaluated on held-out data during training and the best one is returned.
+ * With {@code CheckpointDir} the training state, including the best model of
+ * the early stopping, is written every {@code CheckpointInterval} iterations,
+ * and {@code Resume=true} continues training from the last checkpoint. With
+ * {@code IndexDir} the events are indexed on disk by a {@link DiskDataIndexer}
+ * and streamed at every iteration.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class ParallelPerceptronTrainer extends AbstractEventTrainer {
+
+  /**
+   * The name of the algorithm in the training parameters.
+   */
+  public static final String PARALLEL_PERCEPTRON_VALUE = "PARALLEL_PERCEPTRON";
+  /**
+   * The threads parameter.
+   */
+  public static final String THREADS_PARAM = "Threads";
+  /**
+   * The seed parameter.
+   */
+  public static final String SEED_PARAM = "Seed";
+  /**
+   * The tolerance parameter.
+   */
+  public static final String TOLERANCE_PARAM = "Tolerance";
+  /**
+   * Default tolerance of the change in training accuracy to stop training.
+   */
+  public static final double TOLERANCE_DEFAULT = .00001;
+  /**
+   * The directory where the checkpoints are written.
+   */
+  public static final String CHECKPOINT_DIR_PARAM = "CheckpointDir";
+  /**
+   * The number of iterations between checkpoints.
+   */
+  public static final String CHECKPOINT_INTERVAL_PARAM = "CheckpointInterval";
+  /**
+   * Default number of iterations between checkpoints.
+   */
+  public static final int CHECKPOINT_INTERVAL_DEFAULT = 10;
+  /**
+   * The parameter to resume training from the last checkpoint.
+   */
+  public static final String RESUME_PARAM = "Resume";
+  /**
+   * The directory where the events are indexed on disk.
+   */
+  public static final String INDEX_DIR_PARAM = "IndexDir";
+  /**
+   * The name of the checkpoint file in the checkpoint directory.
+   */
+  private static final String CHECKPOINT_FILE = "perceptron.checkpoint";
+
+  private Map<String, String> settings;
+  private File checkpointFile;
+  private int checkpointInterval;
+  private boolean resume;
+  private String[] predLabels;
+  private String[] outcomeLabels;
+  private int numPreds;
+  private int numOutcomes;
+  private DiskDataIndexer diskIndexer;
+  private int numUniqueEvents;
+  private int[][] contexts;
+  private float[][] values;
+  private int[] outcomeList;
+  private int[] numTimesEventsSeen;
+
+  public ParallelPerceptronTrainer() {
+  }
+
+  /**
+   * Check whether the training parameters select this trainer.
+   *
+   * @param params
+   *          the training parameters
+   * @return true if the algorithm is the parallel perceptron
+   */
+  public static boolean isSelected(final TrainingParameters params) {
+    return ParallelPerceptronTrainer.class.getName().equals(
+        params.getSettings().get(TrainingParameters.ALGORITHM_PARAM));
+  }
+
+  @Override
+  public void init(final Map<String, String> trainParams,
+      final Map<String, String> reportMap) {
+    super.init(trainParams, reportMap);
+    this.settings = trainParams;
+  }
+
+  @Override
+  public boolean isValid() {
+    return super.isValid() && getIntParam(THREADS_PARAM, 1) > 0;
+  }
+
+  @Override
+  public boolean isSortAndMerge() {
+    return false;
+  }
+
+  @Override
+  public DataIndexer getDataIndexer(final ObjectStream<Event> events)
+      throws IOException {
+    final String indexDir = this.settings.get(INDEX_DIR_PARAM);
+    if (indexDir == null) {
+      return super.getDataIndexer(events);
+    }
+    return new DiskDataIndexer(events, getCutoff(), new File(indexDir));
+  }
+
+  @Override
+  public MaxentModel doTrain(final DataIndexer indexer) throws IOException {
+    if (!isValid()) {
+      throw new IllegalArgumentException("trainParams are not valid!");
+    }
+    if (indexer instanceof DiskDataIndexer) {
+      this.diskIndexer = (DiskDataIndexer) indexer;
+      this.numUniqueEvents = indexer.getNumEvents();
+    } else {
+      this.contexts = indexer.getContexts();
+      this.values = indexer.getValues();
+      this.outcomeList = indexer.getOutcomeList();
+      this.numTimesEventsSeen = indexer.getNumTimesEventsSeen();
+      this.numUniqueEvents = this.contexts.length;
+    }
+    this.predLabels = indexer.getPredLabels();
+    this.outcomeLabels = indexer.getOutcomeLabels();
+    this.numPreds = this.predLabels.length;
+    this.numOutcomes = this.outcomeLabels.length;
+    final int threads = Math.max(1,
+        Math.min(getIntParam(THREADS_PARAM, 1), this.numUniqueEvents));
+    // optional parameters, which getStringParam would report with a null
+    // default value
+    String seed = this.settings.get(SEED_PARAM);
+    if (seed != null && this.diskIndexer != null) {
+      System.err.println("WARNING: the events indexed on disk are not shuffled, ignoring the Seed");
+      seed = null;
+    }
+    final String checkpointDir = this.settings.get(CHECKPOINT_DIR_PARAM);
+    if (checkpointDir != null) {
+      final File dir = new File(checkpointDir);
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("Can not create checkpoint directory " + dir);
+      }
+      this.checkpointFile = new File(dir, CHECKPOINT_FILE);
+      this.checkpointInterval = getIntParam(CHECKPOINT_INTERVAL_PARAM,
+          CHECKPOINT_INTERVAL_DEFAULT);
+      if (this.checkpointInterval < 1) {
+        throw new IllegalArgumentException(
+            "The checkpoint interval must be positive!");
+      }
+      this.resume = Boolean.parseBoolean(this.settings.get(RESUME_PARAM));
+    }
+    try {
+      return train(getIterations(), threads, seed == null ? null
+          : Long.valueOf(seed), getDoubleParam(TOLERANCE_PARAM,
+          TOLERANCE_DEFAULT), EarlyStopping.getCurrent());
+    } finally {
+      if (this.diskIndexer != null) {
+        this.diskIndexer.close();
+      }
+    }
+  }
+
+  /**
+   * Create a perceptron model from the summed weights of several iterations.
+   *
+   * @param weights
+   *          the weights
+   * @param numIterations
+   *          the number of iterations summed
+   * @return the model with the averaged weights
+   */
+  private MaxentModel getModel(final PerceptronWeights weights,
+      final int numIterations) {
+    return new PerceptronModel(weights.getAveraged(numIterations),
+        this.predLabels, this.outcomeLabels);
+  }
+
+  /**
+   * Train the weights.
+   *
+   * @param iterations
+   *          the maximum number of iterations
+   * @param threads
+   *          the number of threads and shards
+   * @param seed
+   *          the seed to shuffle the events or null
+   * @param tolerance
+   *          the change in training accuracy to stop training
+   * @param earlyStopping
+   *          the held-out early stopping or null
+   * @return the model with the averaged weights
+   * @throws IOException
+   *           if a shard or the held-out evaluation fails
+   */
+  private MaxentModel train(final int iterations, final int threads,
+      final Long seed, final double tolerance,
+      final EarlyStopping earlyStopping) throws IOException {
+    System.err.println("Performing " + iterations
+        + " iterations of parallel perceptron training with " + threads
+        + " threads.");
+    PerceptronWeights weights = new PerceptronWeights(this.numPreds,
+        this.numOutcomes);
+    final int[][] shards = this.diskIndexer == null ? getShards(threads)
+        : null;
+    final Random[] randoms = new Random[threads];
+    for (int s = 0; s < threads; s++) {
+      randoms[s] = seed == null ? null : new Random(seed + s);
+    }
+    // the training accuracies of the last three iterations
+    double[] prevAccuracies = new double[3];
+    int numIterations = 0;
+    long fingerprint = 0;
+    if (this.checkpointFile != null) {
+      fingerprint = this.diskIndexer == null ? getFingerprint()
+          : this.diskIndexer.getFingerprint();
+    }
+    if (this.resume && this.checkpointFile.exists()) {
+      final PerceptronCheckpoint checkpoint = PerceptronCheckpoint
+          .read(this.checkpointFile);
+      checkpoint.check(fingerprint, threads, seed);
+      weights = checkpoint.getWeights();
+      prevAccuracies = checkpoint.getPrevAccuracies();
+      numIterations = checkpoint.getIteration();
+      final PerceptronCheckpoint.HeldOut heldOut = checkpoint.getHeldOut();
+      if (earlyStopping != null && heldOut != null) {
+        earlyStopping.restore(new PerceptronModel(heldOut.getBestParams(),
+            this.predLabels, this.outcomeLabels), heldOut.getBestAccuracy(),
+            heldOut.getBestIteration(), heldOut.getLastIteration(),
+            heldOut.getEvaluationsWithoutImprovement());
+      }
+      // replay the shuffles to restore the order of the events
+      for (int i = 0; i < numIterations; i++) {
+        for (int s = 0; s < threads; s++) {
+          if (randoms[s] != null) {
+            shuffle(shards[s], randoms[s]);
+          }
+        }
+      }
+      System.err.println("Resuming training after iteration " + numIterations
+          + " from " + this.checkpointFile);
+    } else if (this.resume) {
+      System.err.println("No checkpoint found in " + this.checkpointFile
+          + ", training from the first iteration.");
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("ixa-pipe-perceptron-%d").build());
+    int numEvents = 0;
+    if (this.diskIndexer != null) {
+      numEvents = this.diskIndexer.getNumEvents();
+    } else {
+      for (final int seen : this.numTimesEventsSeen) {
+        numEvents += seen;
+      }
+    }
+    try {
+      for (int iteration = numIterations + 1; iteration <= iterations; iteration++) {
+        final PerceptronWeights currentWeights = weights;
+        final List<Future<ShardUpdate>> futures = new ArrayList<Future<ShardUpdate>>();
+        for (int s = 0; s < threads; s++) {
+          if (this.diskIndexer != null) {
+            final DiskDataIndexer.EventReader reader = this.diskIndexer
+                .getReader(getShardStart(s, threads),
+                    getShardStart(s + 1, threads));
+            futures.add(executor.submit(new Callable<ShardUpdate>() {
+              public ShardUpdate call() {
+                return runEpoch(currentWeights, reader);
+              }
+            }));
+            continue;
+          }
+          final int[] shard = shards[s];
+          final Random random = randoms[s];
+          if (random != null) {
+            shuffle(shard, random);
+          }
+          futures.add(executor.submit(new Callable<ShardUpdate>() {
+            public ShardUpdate call() {
+              return runEpoch(currentWeights, shard);
+            }
+          }));
+        }
+        // wait for every shard, which read the weights, and then mix their
+        // updates in shard order
+        final List<ShardUpdate> updates = new ArrayList<ShardUpdate>(threads);
+        for (final Future<ShardUpdate> future : futures) {
+          updates.add(getUpdate(future));
+        }
+        int numCorrect = 0;
+        for (final ShardUpdate update : updates) {
+          numCorrect += update.numCorrect;
+          update.addTo(weights, 1.0 / threads);
+        }
+        weights.sum();
+        numIterations = iteration;
+        final double accuracy = (double) numCorrect / numEvents;
+        System.err.println(iteration + ". (" + numCorrect + "/" + numEvents
+            + ") " + accuracy);
+        if (Math.abs(prevAccuracies[0] - accuracy) < tolerance
+            && Math.abs(prevAccuracies[1] - accuracy) < tolerance
+            && Math.abs(prevAccuracies[2] - accuracy) < tolerance) {
+          System.err.println("Stopping: change in training set accuracy less than "
+              + tolerance);
+          break;
+        }
+        if (earlyStopping != null && earlyStopping.isEvaluated(iteration)
+            && earlyStopping.iterationCompleted(iteration,
+                getModel(weights, iteration))) {
+          break;
+        }
+        prevAccuracies[0] = prevAccuracies[1];
+        prevAccuracies[1] = prevAccuracies[2];
+        prevAccuracies[2] = accuracy;
+        if (this.checkpointFile != null
+            && iteration % this.checkpointInterval == 0) {
+          new PerceptronCheckpoint(fingerprint, threads, seed, iteration,
+              weights, prevAccuracies, getHeldOut(earlyStopping)).write(
+              this.checkpointFile);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+    final MaxentModel model = getModel(weights, numIterations);
+    if (earlyStopping != null) {
+      return earlyStopping.getBestModel(numIterations, model);
+    }
+    return model;
+  }
+
+  /**
+   * Get the held-out evaluations to write in a checkpoint, waiting for the
+   * evaluation in progress.
+   *
+   * @param earlyStopping
+   *          the early stopping or null
+   * @return the evaluations or null if there are none
+   * @throws IOException
+   *           if the evaluation fails
+   */
+  private static PerceptronCheckpoint.HeldOut getHeldOut(
+      final EarlyStopping earlyStopping) throws IOException {
+    if (earlyStopping == null) {
+      return null;
+    }
+    earlyStopping.finishEvaluation();
+    final MaxentModel bestModel = earlyStopping.getBestSnapshot();
+    if (bestModel == null) {
+      return null;
+    }
+    return new PerceptronCheckpoint.HeldOut(
+        (Context[]) ((AbstractModel) bestModel).getDataStructures()[0],
+        earlyStopping.getBestAccuracy(), earlyStopping.getBestIteration(),
+        earlyStopping.getLastIteration(),
+        earlyStopping.getEvaluationsWithoutImprovement());
+  }
+
+  /**
+   * Compute a fingerprint of the indexed events to check that a checkpoint
+   * belongs to the same training data and features.
+   *
+   * @return the fingerprint
+   */
+  private long getFingerprint() {
+    long hash = 1125899906842597L;
+    for (final String pred : this.predLabels) {
+      hash = 31 * hash + pred.hashCode();
+    }
+    for (final String outcome : this.outcomeLabels) {
+      hash = 31 * hash + outcome.hashCode();
+    }
+    for (int ei = 0; ei < this.contexts.length; ei++) {
+      hash = 31 * hash + this.outcomeList[ei];
+      hash = 31 * hash + this.numTimesEventsSeen[ei];
+      for (int ci = 0; ci < this.contexts[ei].length; ci++) {
+        hash = 31 * hash + this.contexts[ei][ci];
+        if (this.values != null) {
+          hash = 31 * hash + Float.floatToIntBits(this.values[ei][ci]);
+        }
+      }
+    }
+    return hash;
+  }
+
+
+  /**
+   * Split the events in contiguous shards.
+   *
+   * @param threads
+   *          the number of shards
+   * @return the event indexes of every shard
+   */
+  private int[][] getShards(final int threads) {
+    final int[][] shards = new int[threads][];
+    for (int s = 0; s < threads; s++) {
+      final int from = getShardStart(s, threads);
+      final int to = getShardStart(s + 1, threads);
+      shards[s] = new int[to - from];
+      for (int ei = from; ei < to; ei++) {
+        shards[s][ei - from] = ei;
+      }
+    }
+    return shards;
+  }
+
+  /**
+   * Get the first event of a shard.
+   *
+   * @param shard
+   *          the shard
+   * @param threads
+   *          the number of shards
+   * @return the index of the first event
+   */
+  private int getShardStart(final int shard, final int threads) {
+    return (int) ((long) this.numUniqueEvents * shard / threads);
+  }
+
+  private static void shuffle(final int[] events, final Random random) {
+    for (int i = events.length - 1; i > 0; i--) {
+      final int j = random.nextInt(i + 1);
+      final int tmp = events[i];
+      events[i] = events[j];
+      events[j] = tmp;
+    }
+  }
+
+  private static ShardUpdate getUpdate(final Future<ShardUpdate> future)
+      throws IOException {
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while training!", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof Error) {
+        // e.g., running out of memory, which the caller may recover from
+        throw (Error) e.getCause();
+      }
+      throw new IOException("Error while training!", e.getCause());
+    }
+  }
+
+  /**
+   * Run a perceptron epoch over the events of a shard, starting from the
+   * shared weights, which are not modified.
+   *
+   * @param weights
+   *          the shared weights
+   * @param shard
+   *          the events of the shard
+   * @return the updates of the shard
+   */
+  private ShardUpdate runEpoch(final PerceptronWeights weights,
+      final int[] shard) {
+    final ShardUpdate update = new ShardUpdate();
+    final double[] scores = new double[this.numOutcomes];
+    for (final int ei : shard) {
+      final int[] context = this.contexts[ei];
+      final float[] contextValues = this.values == null ? null
+          : this.values[ei];
+      for (int ni = 0; ni < this.numTimesEventsSeen[ei]; ni++) {
+        train(update, weights, scores, this.outcomeList[ei], context,
+            context.length, contextValues);
+      }
+    }
+    return update;
+  }
+
+  /**
+   * Run a perceptron epoch over the events of a shard indexed on disk,
+   * starting from the shared weights, which are not modified.
+   *
+   * @param weights
+   *          the shared weights
+   * @param reader
+   *          the reader of the events of the shard
+   * @return the updates of the shard
+   */
+  private ShardUpdate runEpoch(final PerceptronWeights weights,
+      final DiskDataIndexer.EventReader reader) {
+    final ShardUpdate update = new ShardUpdate();
+    final double[] scores = new double[this.numOutcomes];
+    while (reader.next()) {
+      train(update, weights, scores, reader.getOutcome(), reader.getContext(),
+          reader.getContextLength(), null);
+    }
+    return update;
+  }
+
+  /**
+   * Perceptron update for an event.
+   *
+   * @param update
+   *          the updates of the shard
+   * @param weights
+   *          the shared weights
+   * @param scores
+   *          the scores of the outcomes, overwritten
+   * @param targetOutcome
+   *          the outcome of the event
+   * @param context
+   *          the features of the event
+   * @param length
+   *          the number of features
+   * @param contextValues
+   *          the values of the features or null
+   */
+  private void train(final ShardUpdate update, final PerceptronWeights weights,
+      final double[] scores, final int targetOutcome, final int[] context,
+      final int length, final float[] contextValues) {
+    Arrays.fill(scores, 0);
+    for (int ci = 0; ci < length; ci++) {
+      final int pi = context[ci];
+      final double value = contextValues == null ? 1 : contextValues[ci];
+      weights.score(pi, value, scores);
+      if (update.deltas[pi] != null) {
+        update.deltas[pi].score(value, scores);
+      }
+    }
+    int maxOutcome = 0;
+    for (int oi = 1; oi < this.numOutcomes; oi++) {
+      if (scores[oi] > scores[maxOutcome]) {
+        maxOutcome = oi;
+      }
+    }
+    if (maxOutcome == targetOutcome) {
+      update.numCorrect++;
+    } else {
+      for (int ci = 0; ci < length; ci++) {
+        final double value = contextValues == null ? 1 : contextValues[ci];
+        final PerceptronWeights.SparseRow predDeltas = update
+            .getDeltas(context[ci]);
+        predDeltas.add(targetOutcome, value);
+        predDeltas.add(maxOutcome, -value);
+      }
+    }
+  }
+
+  /**
+   * The weight updates of a shard during an epoch. Every predicate updated by
+   * the shard has a sparse row with the changes of the weights of the outcomes
+   * it was updated with, so that the memory of a shard grows with its updates
+   * instead of the number of outcomes.
+   */
+  private class ShardUpdate {
+
+    private final PerceptronWeights.SparseRow[] deltas = new PerceptronWeights.SparseRow[ParallelPerceptronTrainer.this.numPreds];
+    private int numCorrect;
+
+    PerceptronWeights.SparseRow getDeltas(final int pi) {
+      PerceptronWeights.SparseRow predDeltas = this.deltas[pi];
+      if (predDeltas == null) {
+        predDeltas = new PerceptronWeights.SparseRow();
+        this.deltas[pi] = predDeltas;
+      }
+      return predDeltas;
+    }
+
+    void addTo(final PerceptronWeights weights, final double weight) {
+      for (int pi = 0; pi < this.deltas.length; pi++) {
+        if (this.deltas[pi] != null) {
+          weights.add(pi, this.deltas[pi], weight);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import opennlp.tools.ml.model.Context;
+
+/**
+ * The state of the {@link ParallelPerceptronTrainer} after an iteration: the
+ * current and summed weights, the iteration and the last training accuracies
+ * and, with {@link EarlyStopping}, the best model evaluated and its held-out
+ * accuracy and iteration.
+ * A checkpoint also records a fingerprint of the indexed events, the number of
+ * threads and the seed, so that training is only resumed with the same
+ * events and shards. Checkpoints are written to a temporary file which then
+ * replaces the previous checkpoint, so that a job killed while writing keeps
+ * the previous one.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+public class PerceptronCheckpoint {
+
+  /**
+   * The first bytes of a checkpoint.
+   */
+  private static final int MAGIC = 0x49584143;
+  /**
+   * The version of the checkpoint format.
+   */
+  private static final int VERSION = 1;
+
+  private final long fingerprint;
+  private final int threads;
+  private final Long seed;
+  private final int iteration;
+  private final PerceptronWeights weights;
+  private final double[] prevAccuracies;
+  private final HeldOut heldOut;
+
+  /**
+   * Construct a checkpoint.
+   *
+   * @param aFingerprint
+   *          the fingerprint of the indexed events
+   * @param aThreads
+   *          the number of threads
+   * @param aSeed
+   *          the seed or null
+   * @param aIteration
+   *          the last iteration trained
+   * @param aWeights
+   *          the current weights and their sums over the iterations
+   * @param aPrevAccuracies
+   *          the training accuracies of the last iterations
+   * @param aHeldOut
+   *          the held-out evaluations or null
+   */
+  PerceptronCheckpoint(final long aFingerprint, final int aThreads,
+      final Long aSeed, final int aIteration, final PerceptronWeights aWeights,
+      final double[] aPrevAccuracies, final HeldOut aHeldOut) {
+    this.fingerprint = aFingerprint;
+    this.threads = aThreads;
+    this.seed = aSeed;
+    this.iteration = aIteration;
+    this.weights = aWeights;
+    this.prevAccuracies = aPrevAccuracies;
+    this.heldOut = aHeldOut;
+  }
+
+  /**
+   * Check that the checkpoint was written by the same training.
+   *
+   * @param aFingerprint
+   *          the fingerprint of the indexed events
+   * @param aThreads
+   *          the number of threads
+   * @param aSeed
+   *          the seed or null
+   * @throws IOException
+   *           if the checkpoint belongs to a different training
+   */
+  public final void check(final long aFingerprint, final int aThreads,
+      final Long aSeed) throws IOException {
+    if (this.fingerprint != aFingerprint) {
+      throw new IOException(
+          "The checkpoint was written for different training data or features!");
+    }
+    if (this.threads != aThreads
+        || (this.seed == null ? aSeed != null : !this.seed.equals(aSeed))) {
+      throw new IOException(
+          "The checkpoint was written with different Threads or Seed parameters!");
+    }
+  }
+
+  public final int getIteration() {
+    return this.iteration;
+  }
+
+  final PerceptronWeights getWeights() {
+    return this.weights;
+  }
+
+  public final double[] getPrevAccuracies() {
+    return this.prevAccuracies;
+  }
+
+  /**
+   * Get the held-out evaluations.
+   *
+   * @return the evaluations or null if training did not stop early or no
+   *         model was evaluated yet
+   */
+  public final HeldOut getHeldOut() {
+    return this.heldOut;
+  }
+
+  /**
+   * Write the checkpoint, replacing the previous one.
+   *
+   * @param file
+   *          the checkpoint file
+   * @throws IOException
+   *           if the checkpoint can not be written
+   */
+  public final void write(final File file) throws IOException {
+    final File tmpFile = new File(file.getPath() + ".tmp");
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(tmpFile)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(this.fingerprint);
+      out.writeInt(this.threads);
+      out.writeBoolean(this.seed != null);
+      if (this.seed != null) {
+        out.writeLong(this.seed);
+      }
+      out.writeInt(this.iteration);
+      out.writeInt(this.prevAccuracies.length);
+      for (final double accuracy : this.prevAccuracies) {
+        out.writeDouble(accuracy);
+      }
+      this.weights.write(out);
+      out.writeBoolean(this.heldOut != null);
+      if (this.heldOut != null) {
+        this.heldOut.write(out);
+      }
+    } finally {
+      out.close();
+    }
+    Files.move(tmpFile.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Read a checkpoint.
+   *
+   * @param file
+   *          the checkpoint file
+   * @return the checkpoint
+   * @throws IOException
+   *           if the file is not a checkpoint or can not be read
+   */
+  public static PerceptronCheckpoint read(final File file) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(file + " is not a perceptron checkpoint!");
+      }
+      final long fingerprint = in.readLong();
+      final int threads = in.readInt();
+      final Long seed = in.readBoolean() ? Long.valueOf(in.readLong()) : null;
+      final int iteration = in.readInt();
+      final double[] prevAccuracies = new double[in.readInt()];
+      for (int i = 0; i < prevAccuracies.length; i++) {
+        prevAccuracies[i] = in.readDouble();
+      }
+      final PerceptronWeights weights = PerceptronWeights.read(in);
+      final HeldOut heldOut = in.readBoolean() ? HeldOut.read(in) : null;
+      return new PerceptronCheckpoint(fingerprint, threads, seed, iteration,
+          weights, prevAccuracies, heldOut);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * The held-out evaluations of the {@link EarlyStopping}: the weights of the
+   * best model, its accuracy and iteration, the last iteration evaluated and
+   * the number of evaluations since the best accuracy.
+   */
+  public static final class HeldOut {
+
+    private final Context[] bestParams;
+    private final double bestAccuracy;
+    private final int bestIteration;
+    private final int lastIteration;
+    private final int evaluationsWithoutImprovement;
+
+    public HeldOut(final Context[] aBestParams, final double aBestAccuracy,
+        final int aBestIteration, final int aLastIteration,
+        final int aEvaluationsWithoutImprovement) {
+      this.bestParams = aBestParams;
+      this.bestAccuracy = aBestAccuracy;
+      this.bestIteration = aBestIteration;
+      this.lastIteration = aLastIteration;
+      this.evaluationsWithoutImprovement = aEvaluationsWithoutImprovement;
+    }
+
+    public Context[] getBestParams() {
+      return this.bestParams;
+    }
+
+    public double getBestAccuracy() {
+      return this.bestAccuracy;
+    }
+
+    public int getBestIteration() {
+      return this.bestIteration;
+    }
+
+    public int getLastIteration() {
+      return this.lastIteration;
+    }
+
+    public int getEvaluationsWithoutImprovement() {
+      return this.evaluationsWithoutImprovement;
+    }
+
+    private void write(final DataOutputStream out) throws IOException {
+      out.writeDouble(this.bestAccuracy);
+      out.writeInt(this.bestIteration);
+      out.writeInt(this.lastIteration);
+      out.writeInt(this.evaluationsWithoutImprovement);
+      out.writeInt(this.bestParams.length);
+      for (final Context context : this.bestParams) {
+        final int[] outcomes = context.getOutcomes();
+        final double[] parameters = context.getParameters();
+        out.writeInt(outcomes.length);
+        for (int i = 0; i < outcomes.length; i++) {
+          out.writeInt(outcomes[i]);
+          out.writeDouble(parameters[i]);
+        }
+      }
+    }
+
+    private static HeldOut read(final DataInputStream in) throws IOException {
+      final double bestAccuracy = in.readDouble();
+      final int bestIteration = in.readInt();
+      final int lastIteration = in.readInt();
+      final int evaluationsWithoutImprovement = in.readInt();
+      final Context[] bestParams = new Context[in.readInt()];
+      for (int pi = 0; pi < bestParams.length; pi++) {
+        final int[] outcomes = new int[in.readInt()];
+        final double[] parameters = new double[outcomes.length];
+        for (int i = 0; i < outcomes.length; i++) {
+          outcomes[i] = in.readInt();
+          parameters[i] = in.readDouble();
+        }
+        bestParams[pi] = new Context(outcomes, parameters);
+      }
+      return new HeldOut(bestParams, bestAccuracy, bestIteration,
+          lastIteration, evaluationsWithoutImprovement);
+    }
+  }
+
+}
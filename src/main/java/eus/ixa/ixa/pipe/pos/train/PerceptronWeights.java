@@ -0,0 +1,289 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import opennlp.tools.ml.model.Context;
+
+/**
+ * The weights of the {@link ParallelPerceptronTrainer} and their sums over the
+ * iterations, by predicate. Every predicate only keeps the outcomes it was
+ * updated with, in the order of their first update, and the predicates never
+ * updated only take an empty row, so that the memory grows with the number of
+ * weights learned instead of the number of predicates times the number of
+ * outcomes.
+ *
+ * @author ragerri
+ * @version 2016-03-01
+ */
+final class PerceptronWeights {
+
+  private final int numOutcomes;
+  /**
+   * The outcomes of every predicate, or null if it was never updated.
+   */
+  private final int[][] outcomes;
+  private final double[][] params;
+  private final double[][] summedParams;
+  /**
+   * The number of outcomes of every predicate.
+   */
+  private final int[] sizes;
+  /**
+   * The position of every outcome in the row being updated, or -1.
+   */
+  private final int[] positions;
+
+  /**
+   * Construct the weights with every weight at zero.
+   *
+   * @param numPreds
+   *          the number of predicates
+   * @param aNumOutcomes
+   *          the number of outcomes
+   */
+  PerceptronWeights(final int numPreds, final int aNumOutcomes) {
+    this.numOutcomes = aNumOutcomes;
+    this.outcomes = new int[numPreds][];
+    this.params = new double[numPreds][];
+    this.summedParams = new double[numPreds][];
+    this.sizes = new int[numPreds];
+    this.positions = new int[aNumOutcomes];
+    Arrays.fill(this.positions, -1);
+  }
+
+  int getNumPreds() {
+    return this.sizes.length;
+  }
+
+  int getNumOutcomes() {
+    return this.numOutcomes;
+  }
+
+  /**
+   * Add the weights of a predicate to the scores of the outcomes.
+   *
+   * @param pi
+   *          the predicate
+   * @param value
+   *          the value of the feature
+   * @param scores
+   *          the scores of the outcomes
+   */
+  void score(final int pi, final double value, final double[] scores) {
+    final int size = this.sizes[pi];
+    if (size == 0) {
+      return;
+    }
+    final int[] predOutcomes = this.outcomes[pi];
+    final double[] predParams = this.params[pi];
+    for (int k = 0; k < size; k++) {
+      scores[predOutcomes[k]] += predParams[k] * value;
+    }
+  }
+
+  /**
+   * Add the changes of the weights of a predicate. Not thread safe.
+   *
+   * @param pi
+   *          the predicate
+   * @param deltas
+   *          the changes of the weights of the outcomes updated
+   * @param weight
+   *          the factor of the changes
+   */
+  void add(final int pi, final SparseRow deltas, final double weight) {
+    int size = this.sizes[pi];
+    for (int k = 0; k < size; k++) {
+      this.positions[this.outcomes[pi][k]] = k;
+    }
+    for (int d = 0; d < deltas.size; d++) {
+      if (deltas.values[d] == 0) {
+        continue;
+      }
+      final int oi = deltas.outcomes[d];
+      int k = this.positions[oi];
+      if (k < 0) {
+        if (this.outcomes[pi] == null) {
+          this.outcomes[pi] = new int[2];
+          this.params[pi] = new double[2];
+          this.summedParams[pi] = new double[2];
+        } else if (size == this.outcomes[pi].length) {
+          final int capacity = Math.min(2 * size, this.numOutcomes);
+          this.outcomes[pi] = Arrays.copyOf(this.outcomes[pi], capacity);
+          this.params[pi] = Arrays.copyOf(this.params[pi], capacity);
+          this.summedParams[pi] = Arrays.copyOf(this.summedParams[pi],
+              capacity);
+        }
+        k = size++;
+        this.outcomes[pi][k] = oi;
+        this.positions[oi] = k;
+      }
+      this.params[pi][k] += deltas.values[d] * weight;
+    }
+    this.sizes[pi] = size;
+    for (int k = 0; k < size; k++) {
+      this.positions[this.outcomes[pi][k]] = -1;
+    }
+  }
+
+  /**
+   * Add the current weights to the summed weights, once per iteration.
+   */
+  void sum() {
+    for (int pi = 0; pi < this.sizes.length; pi++) {
+      final double[] predParams = this.params[pi];
+      final double[] predSummedParams = this.summedParams[pi];
+      for (int k = 0; k < this.sizes[pi]; k++) {
+        predSummedParams[k] += predParams[k];
+      }
+    }
+  }
+
+  /**
+   * Get the summed weights averaged over a number of iterations, with the
+   * outcomes of every predicate sorted.
+   *
+   * @param iterations
+   *          the number of iterations summed
+   * @return the averaged weights of every predicate
+   */
+  Context[] getAveraged(final int iterations) {
+    final Context[] contexts = new Context[this.sizes.length];
+    final double[] averaged = new double[this.numOutcomes];
+    for (int pi = 0; pi < this.sizes.length; pi++) {
+      final int size = this.sizes[pi];
+      final int[] predOutcomes = size == 0 ? new int[0] : Arrays.copyOf(
+          this.outcomes[pi], size);
+      for (int k = 0; k < size; k++) {
+        averaged[predOutcomes[k]] = this.summedParams[pi][k] / iterations;
+      }
+      Arrays.sort(predOutcomes);
+      final double[] predParams = new double[size];
+      for (int k = 0; k < size; k++) {
+        predParams[k] = averaged[predOutcomes[k]];
+      }
+      contexts[pi] = new Context(predOutcomes, predParams);
+    }
+    return contexts;
+  }
+
+  /**
+   * Write the weights.
+   *
+   * @param out
+   *          the output
+   * @throws IOException
+   *           if the weights can not be written
+   */
+  void write(final DataOutputStream out) throws IOException {
+    out.writeInt(this.sizes.length);
+    out.writeInt(this.numOutcomes);
+    for (int pi = 0; pi < this.sizes.length; pi++) {
+      out.writeInt(this.sizes[pi]);
+      for (int k = 0; k < this.sizes[pi]; k++) {
+        out.writeInt(this.outcomes[pi][k]);
+        out.writeDouble(this.params[pi][k]);
+        out.writeDouble(this.summedParams[pi][k]);
+      }
+    }
+  }
+
+  /**
+   * Read weights written by {@link #write(DataOutputStream)}.
+   *
+   * @param in
+   *          the input
+   * @return the weights
+   * @throws IOException
+   *           if the weights can not be read
+   */
+  static PerceptronWeights read(final DataInputStream in) throws IOException {
+    final int numPreds = in.readInt();
+    final PerceptronWeights weights = new PerceptronWeights(numPreds,
+        in.readInt());
+    for (int pi = 0; pi < numPreds; pi++) {
+      final int size = in.readInt();
+      if (size == 0) {
+        continue;
+      }
+      weights.outcomes[pi] = new int[size];
+      weights.params[pi] = new double[size];
+      weights.summedParams[pi] = new double[size];
+      for (int k = 0; k < size; k++) {
+        weights.outcomes[pi][k] = in.readInt();
+        weights.params[pi][k] = in.readDouble();
+        weights.summedParams[pi][k] = in.readDouble();
+      }
+      weights.sizes[pi] = size;
+    }
+    return weights;
+  }
+
+  /**
+   * The changes of the weights of a predicate, only for the outcomes updated,
+   * in the order of their first update.
+   */
+  static final class SparseRow {
+
+    private int[] outcomes = new int[2];
+    private double[] values = new double[2];
+    private int size;
+
+    /**
+     * Add a change to the weight of an outcome.
+     *
+     * @param oi
+     *          the outcome
+     * @param delta
+     *          the change
+     */
+    void add(final int oi, final double delta) {
+      for (int k = 0; k < this.size; k++) {
+        if (this.outcomes[k] == oi) {
+          this.values[k] += delta;
+          return;
+        }
+      }
+      if (this.size == this.outcomes.length) {
+        this.outcomes = Arrays.copyOf(this.outcomes, 2 * this.size);
+        this.values = Arrays.copyOf(this.values, 2 * this.size);
+      }
+      this.outcomes[this.size] = oi;
+      this.values[this.size] = delta;
+      this.size++;
+    }
+
+    /**
+     * Add the changes to the scores of the outcomes.
+     *
+     * @param value
+     *          the value of the feature
+     * @param scores
+     *          the scores of the outcomes
+     */
+    void score(final double value, final double[] scores) {
+      for (int k = 0; k < this.size; k++) {
+        scores[this.outcomes[k]] += this.values[k] * value;
+      }
+    }
+  }
+
+}
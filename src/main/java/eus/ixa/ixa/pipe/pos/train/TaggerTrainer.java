@@ -15,6 +15,8 @@
  */
 package eus.ixa.ixa.pipe.pos.train;
 
+import java.io.IOException;
+
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.util.TrainingParameters;
 
@@ -32,7 +34,9 @@ public interface TaggerTrainer {
    * @param params
    *          the parameters file
    * @return the {@code POSModel} trained
+   * @throws IOException
+   *           if the training, development or test samples can not be read
    */
-  POSModel train(TrainingParameters params);
+  POSModel train(TrainingParameters params) throws IOException;
 
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.pos.WordFeatureCache;
+
+public class DefaultLemmatizerContextGeneratorTest {
+
+  private static final String[] TOKENS = { "The", "dogs", "barked", "at",
+      "the", "dogs", "of", "Covid-19" };
+  private static final String[] TAGS = { "DT", "NNS", "VBD", "IN", "DT",
+      "NNS", "IN", "NNP" };
+  private static final String[] PREDS = { "D0T", "D0s", "D0dD1e", "O", "O",
+      "D0s", "O", "O" };
+
+  @Test
+  public void testCachedFeaturesAreTheSame() {
+    final WordFeatureCache cache = new WordFeatureCache();
+    final DefaultLemmatizerContextGenerator cached = new DefaultLemmatizerContextGenerator(
+        cache);
+    final DefaultLemmatizerContextGenerator uncached = new DefaultLemmatizerContextGenerator();
+    // twice, so that the second pass reads every word from the cache
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < TOKENS.length; i++) {
+        assertArrayEquals(uncached.getContext(i, TOKENS, TAGS, PREDS),
+            cached.getContext(i, TOKENS, TAGS, PREDS));
+      }
+    }
+    // the word types are cached once, however many times they occur
+    assertEquals(TOKENS.length - 1, cache.size());
+    assertEquals(TOKENS.length + 1, cache.getStats().hitCount());
+  }
+
+}
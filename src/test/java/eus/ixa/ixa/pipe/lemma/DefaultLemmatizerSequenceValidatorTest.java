@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DefaultLemmatizerSequenceValidatorTest {
+
+  private static final String[] TOKENS = { "The", "dogs", "barked" };
+  private static final String[] TAGS = { "DT", "NNS", "VBD" };
+
+  private static DefaultLemmatizerSequenceValidator createValidator() {
+    final LemmaClassIndex index = new LemmaClassIndex(2);
+    index.put("cats", "NNS", "D0s");
+    index.put("jumped", "VBD", "D0dD1e");
+    return new DefaultLemmatizerSequenceValidator(index, TAGS);
+  }
+
+  @Test
+  public void testIndexFiltering() {
+    final DefaultLemmatizerSequenceValidator validator = createValidator();
+    assertTrue(validator.validSequence(1, TOKENS, new String[1], "D0s"));
+    // applicable to the word, but never seen with its suffix and postag
+    assertFalse(validator.validSequence(1, TOKENS, new String[1], "I0e"));
+    assertFalse(validator.validSequence(2, TOKENS, new String[2], "D0s"));
+    assertTrue(validator.validSequence(2, TOKENS, new String[2], "D0dD1e"));
+  }
+
+  @Test
+  public void testIdentityIsAlwaysValid() {
+    final DefaultLemmatizerSequenceValidator validator = createValidator();
+    assertTrue(validator.validSequence(1, TOKENS, new String[1], "O"));
+    assertTrue(validator.validSequence(2, TOKENS, new String[2], "O"));
+  }
+
+  @Test
+  public void testUnknownPostagIsUnrestricted() {
+    final DefaultLemmatizerSequenceValidator validator = createValidator();
+    assertNull(validator.getCandidates(0, TOKENS[0]));
+    assertTrue(validator.validSequence(0, TOKENS, new String[0], "1"));
+    assertTrue(validator.validSequence(0, TOKENS, new String[0], "R0ea"));
+  }
+
+  @Test
+  public void testInapplicableEditScripts() {
+    final DefaultLemmatizerSequenceValidator validator = new DefaultLemmatizerSequenceValidator();
+    assertTrue(validator.validSequence(1, TOKENS, new String[1], "D0s"));
+    // "dogs" has no fifth character to delete
+    assertFalse(validator.validSequence(1, TOKENS, new String[1], "D4s"));
+    assertFalse(validator.validSequence(1, TOKENS, new String[1], "R7ab"));
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import opennlp.tools.util.InvalidFormatException;
+
+public class LemmaClassIndexTest {
+
+  private static LemmaClassIndex createIndex() {
+    final LemmaClassIndex index = new LemmaClassIndex(3);
+    index.put("dogs", "NNS", "D0s");
+    index.put("cats", "NNS", "D0s");
+    index.put("glasses", "NNS", "D0sD1e");
+    index.put("walked", "VBD", "D0dD1e");
+    index.put("Paris", "NNP", "O");
+    return index;
+  }
+
+  @Test
+  public void testLongestSuffixCandidates() {
+    final LemmaClassIndex index = createIndex();
+    assertEquals(new HashSet<String>(Arrays.asList("D0s")),
+        index.getCandidates("bats", "NNS"));
+    assertEquals(new HashSet<String>(Arrays.asList("D0sD1e")),
+        index.getCandidates("MASSES", "NNS"));
+    // only the empty suffix matches, which holds every class of the postag
+    assertEquals(new HashSet<String>(Arrays.asList("D0s", "D0sD1e")),
+        index.getCandidates("oxen", "NNS"));
+    assertNull(index.getCandidates("dogs", "VBZ"));
+  }
+
+  @Test
+  public void testSerializationRoundTrip() throws IOException {
+    final LemmaClassIndex index = createIndex();
+    final LemmaClassIndexSerializer serializer = new LemmaClassIndexSerializer();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    serializer.serialize(index, out);
+    final LemmaClassIndex copy = serializer.create(new ByteArrayInputStream(
+        out.toByteArray()));
+    assertEquals(index.getSuffixLength(), copy.getSuffixLength());
+    assertEquals(index.getClassIndex(), copy.getClassIndex());
+    assertEquals(index.getCandidates("masses", "NNS"),
+        copy.getCandidates("masses", "NNS"));
+  }
+
+  @Test(expected = InvalidFormatException.class)
+  public void testCorruptIndex() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new LemmaClassIndexSerializer().serialize(createIndex(), out);
+    final byte[] bytes = out.toByteArray();
+    // a negative number of keys
+    bytes[4] = (byte) 0xff;
+    new LemmaClassIndexSerializer().create(new ByteArrayInputStream(bytes));
+  }
+
+  @Test
+  public void testNegativeSuffixLength() {
+    try {
+      new LemmaClassIndex(-1);
+    } catch (final IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("-1"));
+      return;
+    }
+    throw new AssertionError("A negative suffix length was accepted");
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.ml.perceptron.PerceptronModel;
+
+public class LemmaClassScorerTest {
+
+  private static final String[] PREDS = { "w=dogs", "suf=s", "pos=NNS" };
+  private static final String[] OUTCOMES = { "O", "D0s", "D0sD1e", "1" };
+  private static final String[] CONTEXT = { "w=dogs", "suf=s", "pos=NNS",
+      "unseen" };
+
+  private static Context[] createParams() {
+    return new Context[] {
+        new Context(new int[] { 0, 1 }, new double[] { 0.5, 2.0 }),
+        new Context(new int[] { 1, 2, 3 }, new double[] { 1.5, 1.0, -0.5 }),
+        new Context(new int[] { 0, 2 }, new double[] { -1.0, 0.25 }) };
+  }
+
+  private static void assertScores(final MaxentModel model,
+      final boolean keepsRatios) {
+    final LemmaClassScorer scorer = LemmaClassScorer.create(model);
+    assertNotNull(scorer);
+    final double[] expected = model.eval(CONTEXT);
+    // scoring every lemma class gives the probabilities of the model
+    assertEquals(expected.length, OUTCOMES.length);
+    final double[] all = scorer.eval(CONTEXT, new int[] { 3, 1, 0, 2 });
+    assertEquals(expected[3], all[0], 1e-9);
+    assertEquals(expected[1], all[1], 1e-9);
+    assertEquals(expected[0], all[2], 1e-9);
+    assertEquals(expected[2], all[3], 1e-9);
+    // scoring a subset normalizes over the subset and keeps the ranking
+    final double[] subset = scorer.eval(CONTEXT, new int[] { 2, 0 });
+    assertEquals(2, subset.length);
+    assertEquals(1.0, subset[0] + subset[1], 1e-9);
+    assertTrue(expected[2] > expected[0]);
+    assertTrue(subset[0] > subset[1]);
+    if (keepsRatios) {
+      assertEquals(expected[2] / expected[0], subset[0] / subset[1], 1e-9);
+    }
+  }
+
+  @Test
+  public void testPerceptronScores() {
+    // the perceptron scales the scores by the largest scored one
+    assertScores(new PerceptronModel(createParams(), PREDS, OUTCOMES), false);
+  }
+
+  @Test
+  public void testMaxentScores() {
+    assertScores(new GISModel(createParams(), PREDS, OUTCOMES, 3, 0.0), true);
+    assertScores(new GISModel(createParams(), PREDS, OUTCOMES, 3, 0.2), true);
+  }
+
+}
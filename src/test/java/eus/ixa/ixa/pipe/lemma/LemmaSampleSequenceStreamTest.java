@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.ml.model.Sequence;
+import opennlp.tools.util.ObjectStreamUtils;
+
+public class LemmaSampleSequenceStreamTest {
+
+  private static List<LemmaSample> createSamples() {
+    final String[][] words = { { "The", "dogs", "barked" },
+        { "A", "cat", "sleeps" }, { "Cats", "slept" } };
+    final String[][] tags = { { "DT", "NNS", "VBD" }, { "DT", "NN", "VBZ" },
+        { "NNS", "VBD" } };
+    final String[][] lemmaClasses = { { "D0T", "D0s", "D0dD1e" },
+        { "D0A", "O", "D0s" }, { "D0CD1s", "R2e" } };
+    // more samples than a batch, so that several batches are read
+    final List<LemmaSample> samples = new ArrayList<LemmaSample>();
+    for (int i = 0; samples.size() < ParallelLemmaProcessor.DEFAULT_BATCH_SIZE + 10; i++) {
+      samples.add(new LemmaSample(words[i % 3], tags[i % 3],
+          lemmaClasses[i % 3]));
+    }
+    return samples;
+  }
+
+  @Test
+  public void testParallelEventsAreTheSame() throws IOException {
+    final List<LemmaSample> samples = createSamples();
+    final LemmatizerFactory factory = new LemmatizerFactory();
+    final LemmaSampleSequenceStream sequential = new LemmaSampleSequenceStream(
+        ObjectStreamUtils.createObjectStream(samples),
+        factory.getContextGenerator());
+    final LemmaSampleSequenceStream parallel = new LemmaSampleSequenceStream(
+        ObjectStreamUtils.createObjectStream(samples), factory, 3);
+    // the stream is read again after a reset, as the trainers do every epoch
+    for (int pass = 0; pass < 2; pass++) {
+      for (final LemmaSample sample : samples) {
+        final Sequence<?> expected = sequential.read();
+        final Sequence<?> actual = parallel.read();
+        assertSame(sample, actual.getSource());
+        assertEquals(expected.getEvents().length, actual.getEvents().length);
+        for (int i = 0; i < expected.getEvents().length; i++) {
+          final Event expectedEvent = expected.getEvents()[i];
+          final Event actualEvent = actual.getEvents()[i];
+          assertEquals(expectedEvent.getOutcome(), actualEvent.getOutcome());
+          assertArrayEquals(expectedEvent.getContext(),
+              actualEvent.getContext());
+        }
+      }
+      assertNull(sequential.read());
+      assertNull(parallel.read());
+      sequential.reset();
+      parallel.reset();
+    }
+    sequential.close();
+    parallel.close();
+  }
+
+}
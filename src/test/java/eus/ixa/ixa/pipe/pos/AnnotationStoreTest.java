@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import opennlp.tools.util.Span;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import eus.ixa.ixa.pipe.pos.AnnotationCache.CachedSentence;
+
+public class AnnotationStoreTest {
+
+  private static final String[] FIRST = { "The", "dogs", "barked" };
+  private static final String[] SECOND = { "New", "York", "sleeps" };
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static CachedSentence annotate(final String[] tokens,
+      final String tag) {
+    final String[] tags = new String[tokens.length];
+    final String[] lemmas = new String[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      tags[i] = tag;
+      lemmas[i] = tokens[i].toLowerCase();
+    }
+    return new CachedSentence(tokens, tags, lemmas,
+        new Span[] { new Span(0, 2, "MW") });
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    final File logFile = folder.newFile("test" + AnnotationStore.EXTENSION);
+    AnnotationStore store = new AnnotationStore(logFile);
+    store.put(FIRST, annotate(FIRST, "NN"));
+    store.put(SECOND, annotate(SECOND, "NNP"));
+    store.close();
+    store = new AnnotationStore(logFile);
+    assertEquals(2, store.size());
+    final CachedSentence cached = store.get(SECOND);
+    assertNotNull(cached);
+    assertArrayEquals(new String[] { "NNP", "NNP", "NNP" }, cached.getTags());
+    assertArrayEquals(new String[] { "new", "york", "sleeps" },
+        cached.getLemmas());
+    assertEquals(0, cached.getMultiWordSpans()[0].getStart());
+    assertEquals(2, cached.getMultiWordSpans()[0].getEnd());
+    assertNull(store.get(new String[] { "The", "dogs" }));
+    assertEquals(0.5, store.getHitRatio(), 0.0);
+    store.close();
+  }
+
+  @Test
+  public void testLongToken() throws IOException {
+    final File logFile = folder.newFile("test" + AnnotationStore.EXTENSION);
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 70000; i++) {
+      builder.append(i % 2 == 0 ? 'a' : '\u00f1');
+    }
+    final String[] tokens = { "The", builder.toString(), "barked" };
+    AnnotationStore store = new AnnotationStore(logFile);
+    store.put(tokens, annotate(tokens, "NN"));
+    store.close();
+    store = new AnnotationStore(logFile);
+    assertEquals(1, store.size());
+    final CachedSentence cached = store.get(tokens);
+    assertNotNull(cached);
+    assertArrayEquals(tokens, cached.getWords());
+    assertEquals(tokens[1].toLowerCase(), cached.getLemmas()[1]);
+    store.close();
+  }
+
+  @Test
+  public void testTruncatedRecordIsDiscarded() throws IOException {
+    final File logFile = folder.newFile("crash" + AnnotationStore.EXTENSION);
+    AnnotationStore store = new AnnotationStore(logFile);
+    store.put(FIRST, annotate(FIRST, "NN"));
+    final long firstLength = logFile.length();
+    store.put(SECOND, annotate(SECOND, "NNP"));
+    store.close();
+    // an interrupted run wrote only part of the second record
+    final RandomAccessFile log = new RandomAccessFile(logFile, "rw");
+    log.setLength(logFile.length() - 3);
+    log.close();
+    store = new AnnotationStore(logFile);
+    assertEquals(1, store.size());
+    assertEquals(firstLength, logFile.length());
+    assertNotNull(store.get(FIRST));
+    assertNull(store.get(SECOND));
+    // the store keeps working after the recovery
+    store.put(SECOND, annotate(SECOND, "NNP"));
+    store.close();
+    store = new AnnotationStore(logFile);
+    assertEquals(2, store.size());
+    assertNotNull(store.get(SECOND));
+    store.close();
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidLogFile() throws IOException {
+    final File logFile = folder.newFile("invalid" + AnnotationStore.EXTENSION);
+    Files.write("not a store", logFile, Charsets.UTF_8);
+    new AnnotationStore(logFile);
+  }
+
+  @Test
+  public void testPutIfAbsent() throws IOException {
+    final File logFile = folder.newFile("once" + AnnotationStore.EXTENSION);
+    final AnnotationStore store = new AnnotationStore(logFile);
+    assertNull(store.putIfAbsent(FIRST, annotate(FIRST, "NN")));
+    final long length = logFile.length();
+    final CachedSentence stored = store.putIfAbsent(FIRST,
+        annotate(FIRST, "VB"));
+    assertNotNull(stored);
+    assertArrayEquals(new String[] { "NN", "NN", "NN" }, stored.getTags());
+    assertEquals(length, logFile.length());
+    store.close();
+  }
+
+  @Test
+  public void testModelIdentity() throws IOException {
+    final File model = folder.newFile("model.bin");
+    Files.write("first model", model, Charsets.UTF_8);
+    final URL[] noDicts = {};
+    final String identity = AnnotationStore.getModelIdentity(
+        new File[] { model, null }, noDicts, "en", "false");
+    assertEquals(identity, AnnotationStore.getModelIdentity(
+        new File[] { model, null }, noDicts, "en", "false"));
+    assertNotEquals(identity, AnnotationStore.getModelIdentity(
+        new File[] { model, null }, noDicts, "es", "false"));
+    // a changed model is hashed again
+    Files.write("second model, longer", model, Charsets.UTF_8);
+    assertNotEquals(identity, AnnotationStore.getModelIdentity(
+        new File[] { model, null }, noDicts, "en", "false"));
+  }
+
+}
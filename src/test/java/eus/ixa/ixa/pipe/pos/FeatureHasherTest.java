@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.IndexHashTable;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.util.TrainingParameters;
+import eus.ixa.ixa.pipe.pos.train.BaselineFactory;
+
+public class FeatureHasherTest {
+
+  private static final String[][] SENTENCES = {
+      { "the", "DT", "dog", "NN", "barks", "VBZ" },
+      { "a", "DT", "cat", "NN", "sleeps", "VBZ" },
+      { "the", "DT", "cats", "NNS", "sleep", "VBP" },
+      { "dogs", "NNS", "bark", "VBP", "loudly", "RB" } };
+
+  private static Set<String> hashFeatures(final FeatureHasher hasher,
+      final int numFeatures) {
+    final Set<String> buckets = new HashSet<String>();
+    for (int i = 0; i < numFeatures; i++) {
+      final String bucket = hasher.hash("w=word" + i);
+      final int index = Integer.parseInt(bucket, Character.MAX_RADIX);
+      assertTrue(index >= 0 && index < hasher.getDimension());
+      buckets.add(bucket);
+    }
+    return buckets;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static IndexHashTable<String> getPreds(final POSModel model) {
+    return (IndexHashTable<String>) ((AbstractModel) model
+        .getArtifact(POSModel.POS_MODEL_ENTRY_NAME)).getDataStructures()[1];
+  }
+
+  @Test
+  public void testCollisionsStayInTheDimension() {
+    final FeatureHasher hasher = new FeatureHasher(50);
+    final Set<String> buckets = hashFeatures(hasher, 1000);
+    // many more features than buckets: the features collide in every bucket
+    assertEquals(50, buckets.size());
+    assertEquals(buckets, hashFeatures(new FeatureHasher(50), 1000));
+    assertEquals(hasher.hash("w=word1"), FeatureHasher.create("50").hash(
+        "w=word1"));
+  }
+
+  @Test
+  public void testFewCollisionsInALargeDimension() {
+    // about 0.5 collisions are expected for 1000 features in 2^20 buckets
+    assertTrue(hashFeatures(new FeatureHasher(1 << 20), 1000).size() >= 995);
+  }
+
+  @Test
+  public void testModelOnlyKeepsTheBuckets() throws IOException {
+    final TaggedCorpus corpus = new TaggedCorpus();
+    for (final String[] sentence : SENTENCES) {
+      final String[] words = new String[sentence.length / 2];
+      final String[] tags = new String[words.length];
+      for (int i = 0; i < words.length; i++) {
+        words[i] = sentence[2 * i];
+        tags[i] = sentence[2 * i + 1];
+      }
+      corpus.add(words, tags);
+    }
+    final TrainingParameters params = new TrainingParameters();
+    params.put(TrainingParameters.ALGORITHM_PARAM, "PERCEPTRON");
+    params.put(TrainingParameters.ITERATIONS_PARAM, "10");
+    params.put(TrainingParameters.CUTOFF_PARAM, "0");
+    final BaselineFactory factory = new BaselineFactory(null, null);
+    factory.setFeatureHasher(new FeatureHasher(64));
+    final POSModel model = POSTaggerME.train("en", corpus.getPOSSamples(),
+        params, factory);
+    // the colliding features share the predicates of their buckets
+    final IndexHashTable<String> preds = getPreds(model);
+    assertTrue(preds.size() <= 64);
+    for (final String pred : preds.toArray(new String[preds.size()])) {
+      assertTrue(Integer.parseInt(pred, Character.MAX_RADIX) < 64);
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    model.serialize(out);
+    final POSModel loaded = new POSModel(new ByteArrayInputStream(
+        out.toByteArray()));
+    assertEquals("64", loaded.getManifestProperty(FeatureHasher.MANIFEST_ENTRY));
+    final String[] words = { "the", "dogs", "sleep", "quietly" };
+    assertArrayEquals(new POSTaggerME(model).tag(words), new POSTaggerME(
+        loaded).tag(words));
+  }
+
+}
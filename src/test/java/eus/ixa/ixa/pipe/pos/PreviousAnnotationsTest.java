@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ixa.kaflib.KAFDocument;
+import ixa.kaflib.Term;
+import ixa.kaflib.WF;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class PreviousAnnotationsTest {
+
+  private static final String NAME = "ixa-pipe-pos-en-pos";
+  private static final String VERSION = "1.5.3-abc";
+  private static final String IDENTITY = "0123456789abcdef";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static List<WF> addSentence(final KAFDocument kaf, final int sent,
+      final String... forms) {
+    final List<WF> wfs = new ArrayList<WF>();
+    for (final String form : forms) {
+      wfs.add(kaf.newWF(0, form, sent));
+    }
+    return wfs;
+  }
+
+  private static KAFDocument createPrevious(final String lpName,
+      final String lpVersion, final String modelIdentity) {
+    final KAFDocument kaf = new KAFDocument("en", "v3");
+    kaf.addLinguisticProcessor("terms", lpName,
+        PreviousAnnotations.getTermsVersion(lpVersion, modelIdentity));
+    final List<WF> wfs = addSentence(kaf, 1, "Dogs", "bark");
+    for (final WF wf : wfs) {
+      final List<WF> target = new ArrayList<WF>();
+      target.add(wf);
+      final Term term = kaf.newTerm(KAFDocument.newWFSpan(target));
+      term.setLemma(wf.getForm().toLowerCase());
+      term.setPos("N");
+      term.setMorphofeat("NNS");
+    }
+    return kaf;
+  }
+
+  @Test
+  public void testCopySameProcessor() {
+    final PreviousAnnotations previous = new PreviousAnnotations(
+        createPrevious(NAME, VERSION, IDENTITY), NAME, VERSION, IDENTITY);
+    assertTrue(previous.isSameProcessor());
+    assertEquals(1, previous.size());
+    final KAFDocument kaf = new KAFDocument("en", "v3");
+    assertTrue(previous.copyTerms(kaf, addSentence(kaf, 1, "Dogs", "bark")));
+    assertEquals(2, kaf.getTerms().size());
+    assertEquals("dogs", kaf.getTerms().get(0).getLemma());
+    assertFalse(previous.copyTerms(kaf, addSentence(kaf, 2, "Cats", "bark")));
+  }
+
+  @Test
+  public void testOtherModelIsNotReused() {
+    final PreviousAnnotations previous = new PreviousAnnotations(
+        createPrevious("ixa-pipe-pos-es-pos", VERSION, IDENTITY), NAME,
+        VERSION, IDENTITY);
+    assertFalse(previous.isSameProcessor());
+    assertEquals(0, previous.size());
+    final KAFDocument kaf = new KAFDocument("en", "v3");
+    assertFalse(previous.copyTerms(kaf, addSentence(kaf, 1, "Dogs", "bark")));
+  }
+
+  @Test
+  public void testOtherVersionIsNotReused() {
+    final PreviousAnnotations previous = new PreviousAnnotations(
+        createPrevious(NAME, "1.5.2-def", IDENTITY), NAME, VERSION, IDENTITY);
+    assertFalse(previous.isSameProcessor());
+    assertEquals(0, previous.size());
+  }
+
+  /**
+   * Identify a configuration as {@link Annotate#getModelIdentity()} does.
+   */
+  private static String getIdentity(final File model,
+      final File lemmatizerModel, final boolean dictag) throws IOException {
+    return AnnotationStore.getModelIdentity(
+        new File[] { model, lemmatizerModel }, new URL[] { null, null }, "en",
+        "false", Boolean.toString(dictag), "false", null);
+  }
+
+  @Test
+  public void testOtherConfigurationIsNotReused() throws IOException {
+    final File model = folder.newFile("pos.bin");
+    Files.write("postag model", model, Charsets.UTF_8);
+    final File lemmatizerModel = folder.newFile("lemma.bin");
+    Files.write("lemmatizer model", lemmatizerModel, Charsets.UTF_8);
+    final KAFDocument previousKaf = createPrevious(NAME, VERSION,
+        getIdentity(model, lemmatizerModel, false));
+    assertTrue(new PreviousAnnotations(previousKaf, NAME, VERSION,
+        getIdentity(model, lemmatizerModel, false)).isSameProcessor());
+    // only the dictag option changes
+    final PreviousAnnotations otherDictag = new PreviousAnnotations(
+        previousKaf, NAME, VERSION, getIdentity(model, lemmatizerModel, true));
+    assertFalse(otherDictag.isSameProcessor());
+    assertEquals(0, otherDictag.size());
+    // only the lemmatizer model changes
+    final File otherLemmatizerModel = folder.newFile("other-lemma.bin");
+    Files.write("another lemmatizer model", otherLemmatizerModel,
+        Charsets.UTF_8);
+    final PreviousAnnotations otherLemmatizer = new PreviousAnnotations(
+        previousKaf, NAME, VERSION, getIdentity(model, otherLemmatizerModel,
+            false));
+    assertFalse(otherLemmatizer.isSameProcessor());
+    assertEquals(0, otherLemmatizer.size());
+  }
+
+  @Test
+  public void testTermsWithoutIdentityAreNotReused() {
+    final KAFDocument previousKaf = createPrevious(NAME, VERSION, IDENTITY);
+    previousKaf.getLinguisticProcessors().get("terms").get(0)
+        .setVersion(VERSION);
+    assertFalse(new PreviousAnnotations(previousKaf, NAME, VERSION, IDENTITY)
+        .isSameProcessor());
+  }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import ixa.kaflib.KAFDocument;
+import ixa.kaflib.KAFDocument.LinguisticProcessor;
+import ixa.kaflib.Term;
+import ixa.kaflib.WF;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Properties;
+
+import org.jdom2.JDOMException;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.model.BaseModel;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
+import eus.ixa.ixa.pipe.lemma.train.LemmatizerFixedTrainer;
+import eus.ixa.ixa.pipe.pos.train.FixedTrainer;
+
+public class StreamingNAFAnnotatorTest {
+
+  private static final String[] SENTENCES = {
+      "The\tDT\tthe\ndogs\tNNS\tdog\nbark\tVBP\tbark\n",
+      "A\tDT\ta\ncat\tNN\tcat\nsleeps\tVBZ\tsleep\n",
+      "Cats\tNNS\tcat\nsleep\tVBP\tsleep\nquietly\tRB\tquietly\n",
+      "The\tDT\tthe\ncat\tNN\tcat\nbarks\tVBZ\tbark\n",
+      "A\tDT\ta\ndog\tNN\tdog\nsleeps\tVBZ\tsleep\nloudly\tRB\tloudly\n" };
+  private static final String LP_NAME = "ixa-pipe-pos-test";
+  private static final String LP_VERSION = "1.0";
+  private static final String HEADER = "  <nafHeader>\n"
+      + "    <linguisticProcessors layer=\"text\">\n"
+      + "      <lp name=\"ixa-pipe-tok\" version=\"1.8\""
+      + " timestamp=\"2016-01-01T00:00:00+0000\"/>\n"
+      + "    </linguisticProcessors>\n" + "  </nafHeader>\n";
+  private static final String BODY = "  <raw><![CDATA[The dogs bark."
+      + " A cat sleeps.]]></raw>\n" + "  <text>\n"
+      + "    <wf id=\"w1\" offset=\"0\" length=\"3\" sent=\"1\" para=\"1\">"
+      + "The</wf>\n"
+      + "    <wf id=\"w2\" offset=\"4\" length=\"4\" sent=\"1\" para=\"1\">"
+      + "dogs</wf>\n"
+      + "    <wf id=\"w3\" offset=\"9\" length=\"4\" sent=\"1\" para=\"1\">"
+      + "bark</wf>\n"
+      + "    <wf id=\"w4\" offset=\"13\" length=\"1\" sent=\"1\" para=\"1\">"
+      + ".</wf>\n"
+      + "    <wf id=\"w5\" offset=\"15\" length=\"1\" sent=\"2\" para=\"1\">"
+      + "A</wf>\n"
+      + "    <wf id=\"w6\" offset=\"17\" length=\"3\" sent=\"2\" para=\"1\">"
+      + "cat</wf>\n"
+      + "    <wf id=\"w7\" offset=\"21\" length=\"6\" sent=\"2\" para=\"1\">"
+      + "sleeps</wf>\n"
+      + "    <wf id=\"w8\" offset=\"27\" length=\"1\" sent=\"2\" para=\"1\">"
+      + ".</wf>\n" + "  </text>\n";
+
+  @ClassRule
+  public static TemporaryFolder folder = new TemporaryFolder();
+
+  private static Properties properties;
+
+  @BeforeClass
+  public static void trainModels() throws IOException {
+    final StringBuilder corpus = new StringBuilder();
+    for (final String sentence : SENTENCES) {
+      corpus.append(sentence).append('\n');
+    }
+    final File corpusFile = folder.newFile();
+    Files.write(corpus, corpusFile, Charsets.UTF_8);
+    final TrainingParameters params = new TrainingParameters();
+    params.put("Language", "en");
+    params.put("TrainSet", corpusFile.getPath());
+    params.put("TestSet", corpusFile.getPath());
+    params.put(TrainingParameters.ALGORITHM_PARAM, "PERCEPTRON");
+    params.put(TrainingParameters.ITERATIONS_PARAM, "10");
+    params.put(TrainingParameters.CUTOFF_PARAM, "0");
+    final POSModel posModel = new FixedTrainer(params).train(params);
+    final LemmatizerModel lemmatizerModel = new LemmatizerFixedTrainer(params)
+        .train(params);
+    properties = new Properties();
+    properties.setProperty("language", "en");
+    properties.setProperty("model", writeModel(posModel, "pos.bin").getPath());
+    properties.setProperty("lemmatizerModel",
+        writeModel(lemmatizerModel, "lemma.bin").getPath());
+    properties.setProperty("multiwords", "false");
+    properties.setProperty("dictag", "false");
+    properties.setProperty("dictionaryFirst", "false");
+  }
+
+  private static File writeModel(final BaseModel model, final String name)
+      throws IOException {
+    final File modelFile = folder.newFile(name);
+    final OutputStream modelOut = new BufferedOutputStream(
+        new FileOutputStream(modelFile));
+    try {
+      model.serialize(modelOut);
+    } finally {
+      modelOut.close();
+    }
+    return modelFile;
+  }
+
+  private static String createNAF(final String header) {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<NAF xml:lang=\"en\" version=\"v3\">\n" + header + BODY
+        + "</NAF>\n";
+  }
+
+  private static KAFDocument annotateStreaming(final String naf)
+      throws IOException, JDOMException {
+    final StreamingNAFAnnotator annotator = new StreamingNAFAnnotator(
+        properties, LP_NAME, LP_VERSION);
+    final StringWriter writer = new StringWriter();
+    annotator.annotatePOSToKAF(new StringReader(naf), writer);
+    return KAFDocument.createFromStream(new StringReader(writer.toString()));
+  }
+
+  @Test
+  public void testSameTermsAsDocumentAnnotation() throws IOException,
+      JDOMException {
+    final String naf = createNAF(HEADER);
+    final KAFDocument kaf = KAFDocument.createFromStream(new StringReader(naf));
+    new Annotate(properties).annotatePOSToKAF(kaf);
+    final List<Term> expected = kaf.getTerms();
+    final List<Term> terms = annotateStreaming(naf).getTerms();
+    assertEquals(8, expected.size());
+    assertEquals(expected.size(), terms.size());
+    for (int i = 0; i < terms.size(); i++) {
+      final Term expectedTerm = expected.get(i);
+      final Term term = terms.get(i);
+      assertEquals(expectedTerm.getId(), term.getId());
+      assertEquals(expectedTerm.getType(), term.getType());
+      assertEquals(expectedTerm.getLemma(), term.getLemma());
+      assertEquals(expectedTerm.getPos(), term.getPos());
+      assertEquals(expectedTerm.getMorphofeat(), term.getMorphofeat());
+      final List<WF> expectedTargets = expectedTerm.getSpan().getTargets();
+      final List<WF> targets = term.getSpan().getTargets();
+      assertEquals(expectedTargets.size(), targets.size());
+      for (int j = 0; j < targets.size(); j++) {
+        assertEquals(expectedTargets.get(j).getId(), targets.get(j).getId());
+      }
+    }
+  }
+
+  @Test
+  public void testOtherLayersAreCopied() throws IOException,
+      JDOMException {
+    final String naf = createNAF(HEADER);
+    final KAFDocument input = KAFDocument.createFromStream(new StringReader(
+        naf));
+    final KAFDocument output = annotateStreaming(naf);
+    assertEquals(input.getLang(), output.getLang());
+    assertEquals(input.getVersion(), output.getVersion());
+    assertEquals(input.getRawText(), output.getRawText());
+    final List<WF> inputWFs = input.getWFs();
+    final List<WF> outputWFs = output.getWFs();
+    assertEquals(inputWFs.size(), outputWFs.size());
+    for (int i = 0; i < outputWFs.size(); i++) {
+      final WF inputWF = inputWFs.get(i);
+      final WF outputWF = outputWFs.get(i);
+      assertEquals(inputWF.getId(), outputWF.getId());
+      assertEquals(inputWF.getForm(), outputWF.getForm());
+      assertEquals(inputWF.getOffset(), outputWF.getOffset());
+      assertEquals(inputWF.getLength(), outputWF.getLength());
+      assertEquals(inputWF.getSent(), outputWF.getSent());
+      assertEquals(inputWF.getPara(), outputWF.getPara());
+    }
+    final LinguisticProcessor textLp = output.getLinguisticProcessors()
+        .get("text").get(0);
+    assertEquals("ixa-pipe-tok", textLp.getName());
+    assertEquals("1.8", textLp.getVersion());
+    assertNotNull(output.getLinguisticProcessors().get("terms"));
+  }
+
+  @Test
+  public void testHeaderIsAddedIfMissing() throws IOException,
+      JDOMException {
+    final KAFDocument output = annotateStreaming(createNAF(""));
+    final List<LinguisticProcessor> termsLps = output
+        .getLinguisticProcessors().get("terms");
+    assertNotNull(termsLps);
+    assertEquals(1, termsLps.size());
+    assertEquals(LP_NAME, termsLps.get(0).getName());
+    assertEquals(PreviousAnnotations.getTermsVersion(LP_VERSION,
+        new Annotate(properties).getModelIdentity()), termsLps.get(0)
+        .getVersion());
+    assertTrue(output.getTerms().size() > 0);
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StringUtilsTest {
+
+  @Test
+  public void testShortestEditScriptsAreApplicable() {
+    final String[][] pairs = { { "dogs", "dog" }, { "walked", "walk" },
+        { "studies", "study" }, { "went", "go" }, { "Paris", "Paris" },
+        { "The", "the" }, { "a", "be" } };
+    for (final String[] pair : pairs) {
+      final String ses = StringUtils.getShortestEditScript(pair[0], pair[1]);
+      assertTrue(ses, StringUtils.isApplicableEditScript(pair[0], ses));
+      if (!ses.equals("O") && !ses.equals("1")) {
+        assertEquals(pair[1].toLowerCase(),
+            StringUtils.decodeShortestEditScript(pair[0], ses));
+      }
+    }
+  }
+
+  @Test
+  public void testApplicableAsInTheDecoder() {
+    // the decoder skips a replacement of a character not found
+    assertTrue(StringUtils.isApplicableEditScript("dogs", "R0xy"));
+    assertEquals("dogs", StringUtils.decodeShortestEditScript("dogs", "R0xy"));
+    // and deletes whatever character is found
+    assertTrue(StringUtils.isApplicableEditScript("dogs", "D0x"));
+    assertEquals("dog", StringUtils.decodeShortestEditScript("dogs", "D0x"));
+    // inserting at the end of the word is allowed
+    assertTrue(StringUtils.isApplicableEditScript("dog", "I3a"));
+    assertEquals("adog", StringUtils.decodeShortestEditScript("dog", "I3a"));
+  }
+
+  @Test
+  public void testNotApplicableOutOfTheWord() {
+    assertFalse(StringUtils.isApplicableEditScript("dogs", "R4sx"));
+    assertFalse(StringUtils.isApplicableEditScript("dogs", "D4s"));
+    assertFalse(StringUtils.isApplicableEditScript("dog", "I4a"));
+    // positions are checked against the word as edited so far
+    assertFalse(StringUtils.isApplicableEditScript("ab", "D0bD1a"));
+    assertTrue(StringUtils.isApplicableEditScript("ab", "I2cD2a"));
+    // truncated scripts can not be decoded
+    assertFalse(StringUtils.isApplicableEditScript("dogs", "R0s"));
+    assertFalse(StringUtils.isApplicableLowerCaseEditScript("dogs", "D"));
+  }
+
+}
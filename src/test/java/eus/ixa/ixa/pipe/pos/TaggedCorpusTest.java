@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import opennlp.tools.util.ObjectStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class TaggedCorpusTest {
+
+  private static final String CORPUS = "The\tDT\tthe\ndogs\tNNS\tdog\n"
+      + "barked\tVBD\tbark\n\nA\tDT\ta\ncat\tNN\tcat\nsleeps\tVBZ\tsleep\n"
+      + "quietly\tRB\tquietly\n\nCats\tNNS\tcat\nsleep\tVBP\tsleep\n\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File writeCorpus() throws IOException {
+    final File file = folder.newFile("corpus.tsv");
+    Files.write(CORPUS, file, Charsets.UTF_8);
+    return file;
+  }
+
+  /**
+   * Check that a stream gives the same samples as another one, twice, and
+   * close both.
+   */
+  private static <T> void assertSameSamples(final ObjectStream<T> expected,
+      final ObjectStream<T> actual) throws IOException {
+    for (int pass = 0; pass < 2; pass++) {
+      int samples = 0;
+      T sample;
+      while ((sample = expected.read()) != null) {
+        assertEquals(sample, actual.read());
+        samples++;
+      }
+      assertNull(actual.read());
+      assertEquals(3, samples);
+      expected.reset();
+      actual.reset();
+    }
+    expected.close();
+    actual.close();
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException {
+    final File file = writeCorpus();
+    final TaggedCorpus corpus = TaggedCorpus.loadLemmaCorpus(file.getPath());
+    final File binary = folder.newFile("roundtrip.bin");
+    corpus.write(binary);
+    assertTrue(TaggedCorpus.isBinary(binary));
+    assertFalse(TaggedCorpus.isBinary(file));
+    final TaggedCorpus read = TaggedCorpus.read(binary);
+    assertEquals(corpus.getNumSentences(), read.getNumSentences());
+    assertEquals(corpus.getNumTokens(), read.getNumTokens());
+    assertTrue(read.hasLemmaClasses());
+    assertSameSamples(corpus.getLemmaSamples(), read.getLemmaSamples());
+    // the binary corpus is loaded as the text corpus
+    assertSameSamples(TaggedCorpus.loadPOSCorpus(file.getPath())
+        .getPOSSamples(), TaggedCorpus.loadPOSCorpus(binary.getPath())
+        .getPOSSamples());
+    // a corpus read back can still grow and be written again
+    read.add(new String[] { "Dogs", "bark" }, new String[] { "NNS", "VBP" },
+        new String[] { "D0s", "O" });
+    final File rewritten = folder.newFile("rewritten.bin");
+    read.write(rewritten);
+    final TaggedCorpus reread = TaggedCorpus.read(rewritten);
+    assertEquals(4, reread.getNumSentences());
+    assertEquals(corpus.getNumTokens() + 2, reread.getNumTokens());
+    assertArrayEquals(new String[] { "D0s", "O" },
+        reread.getLemmaClasses(3));
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadTextCorpusAsBinary() throws IOException {
+    TaggedCorpus.read(writeCorpus());
+  }
+
+  @Test
+  public void testStreamTabulatedCorpus() throws IOException {
+    final File file = writeCorpus();
+    assertSameSamples(TaggedCorpus.loadPOSCorpus(file.getPath())
+        .getPOSSamples(), TaggedCorpus.streamPOSCorpus(file.getPath()));
+    assertSameSamples(TaggedCorpus.loadLemmaCorpus(file.getPath())
+        .getLemmaSamples(), TaggedCorpus.streamLemmaCorpus(file.getPath()));
+  }
+
+  @Test
+  public void testStreamBinaryCorpus() throws IOException {
+    final TaggedCorpus corpus = TaggedCorpus.loadLemmaCorpus(writeCorpus()
+        .getPath());
+    final File binary = folder.newFile("corpus.bin");
+    corpus.write(binary);
+    assertSameSamples(corpus.getPOSSamples(),
+        TaggedCorpus.streamPOSCorpus(binary.getPath()));
+    assertSameSamples(corpus.getLemmaSamples(),
+        TaggedCorpus.streamLemmaCorpus(binary.getPath()));
+  }
+
+  @Test(expected = IOException.class)
+  public void testStreamLemmasOfPOSCorpus() throws IOException {
+    final File binary = folder.newFile("pos.bin");
+    TaggedCorpus.loadPOSCorpus(writeCorpus().getPath()).write(binary);
+    TaggedCorpus.streamLemmaCorpus(binary.getPath());
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TokenVocabularyTest {
+
+  @Test
+  public void testLowerCaseIsComputedOnce() {
+    final TokenVocabulary vocabulary = new TokenVocabulary(2);
+    final String[] first = vocabulary.getLowerCase(new String[] { "The",
+        "Dogs", "The" });
+    assertArrayEquals(new String[] { "the", "dogs", "the" }, first);
+    assertSame(first[0], first[2]);
+    assertSame(first[1], vocabulary.getLowerCase(new String[] { "Dogs" })[0]);
+    // evicted tokens are lowercased again
+    vocabulary.getLowerCase(new String[] { "Bark", "Loudly" });
+    assertEquals("dogs", vocabulary.getLowerCase(new String[] { "Dogs" })[0]);
+  }
+
+  @Test
+  public void testShape() {
+    assertEquals(0, TokenVocabulary.getShape("dogs"));
+    assertEquals(TokenVocabulary.HAS_CAP | TokenVocabulary.HAS_DIGIT
+        | TokenVocabulary.HAS_HYPHEN, TokenVocabulary.getShape("COVID-19"));
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import opennlp.tools.util.TrainingParameters;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class CrossValidatorTest {
+
+  private static final String[] SENTENCES = {
+      "The\tDT\tthe\ndogs\tNNS\tdog\nbark\tVBP\tbark\n",
+      "A\tDT\ta\ncat\tNN\tcat\nsleeps\tVBZ\tsleep\n",
+      "Cats\tNNS\tcat\nsleep\tVBP\tsleep\nquietly\tRB\tquietly\n",
+      "The\tDT\tthe\ncat\tNN\tcat\nbarks\tVBZ\tbark\n",
+      "A\tDT\ta\ndog\tNN\tdog\nsleeps\tVBZ\tsleep\nloudly\tRB\tloudly\n" };
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TrainingParameters createParams(final String algorithm)
+      throws IOException {
+    final StringBuilder corpus = new StringBuilder();
+    for (int n = 0; n < 2; n++) {
+      for (final String sentence : SENTENCES) {
+        corpus.append(sentence).append('\n');
+      }
+    }
+    final File file = folder.newFile();
+    Files.write(corpus, file, Charsets.UTF_8);
+    final TrainingParameters params = new TrainingParameters();
+    params.put("Component", "POS");
+    params.put("Language", "en");
+    params.put("TrainSet", file.getPath());
+    params.put("Folds", "5");
+    params.put("FoldThreads", "3");
+    params.put(TrainingParameters.ALGORITHM_PARAM, algorithm);
+    params.put(TrainingParameters.ITERATIONS_PARAM, "10");
+    params.put(TrainingParameters.CUTOFF_PARAM, "0");
+    return params;
+  }
+
+  @Test
+  public void testFoldThreadsFitInMemory() {
+    assertEquals(4, CrossValidator.getFoldThreads(4, 100, 1000));
+    assertEquals(2, CrossValidator.getFoldThreads(4, 100, 250));
+    // a fold is always trained, even if it does not seem to fit
+    assertEquals(1, CrossValidator.getFoldThreads(4, 100, 50));
+    assertEquals(4, CrossValidator.getFoldThreads(4, 0, 0));
+  }
+
+  @Test
+  public void testEveryFoldIsReportedInOrder() throws IOException {
+    final CrossValidator validator = new CrossValidator(
+        createParams("PERCEPTRON"));
+    assertEquals(3, validator.getFoldThreads());
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    validator.crossValidate(new PrintStream(out, true, "UTF-8"));
+    final String[] lines = out.toString("UTF-8").split("\n");
+    assertEquals("Fold\tSentences\tWords\tAccuracy\tSeconds", lines[0]);
+    int sentences = 0;
+    for (int fold = 0; fold < 5; fold++) {
+      final String[] columns = lines[fold + 1].split("\t");
+      assertEquals(Integer.toString(fold), columns[0]);
+      sentences += Integer.parseInt(columns[1]);
+    }
+    assertEquals(10, sentences);
+    assertTrue(lines[6].startsWith("Word accuracy: "));
+    assertTrue(lines[7].contains("5 folds with 3 fold threads"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailedFoldStopsTheCrossValidation() throws IOException {
+    new CrossValidator(createParams("UNKNOWN")).crossValidate(new PrintStream(
+        new ByteArrayOutputStream(), true, "UTF-8"));
+  }
+
+}
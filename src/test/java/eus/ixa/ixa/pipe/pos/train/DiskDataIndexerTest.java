@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import opennlp.tools.ml.model.DataIndexer;
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.ml.model.OnePassDataIndexer;
+import opennlp.tools.util.ObjectStreamUtils;
+
+public class DiskDataIndexerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Map<String, Integer> getPredCounts(final DataIndexer indexer) {
+    final Map<String, Integer> predCounts = new HashMap<String, Integer>();
+    for (int pi = 0; pi < indexer.getPredLabels().length; pi++) {
+      predCounts.put(indexer.getPredLabels()[pi], indexer.getPredCounts()[pi]);
+    }
+    return predCounts;
+  }
+
+  /**
+   * Get an event of an indexer as its outcome and its sorted predicates.
+   */
+  private static String[] getEvent(final DataIndexer indexer, final int ei) {
+    final int[] context = indexer.getContexts()[ei];
+    final String[] event = new String[context.length + 1];
+    event[0] = indexer.getOutcomeLabels()[indexer.getOutcomeList()[ei]];
+    for (int i = 0; i < context.length; i++) {
+      event[i + 1] = indexer.getPredLabels()[context[i]];
+    }
+    Arrays.sort(event, 1, event.length);
+    return event;
+  }
+
+  private static void assertSameEvents(final DataIndexer expected,
+      final DiskDataIndexer actual) {
+    assertEquals(getPredCounts(expected), getPredCounts(actual));
+    final String[] expectedOutcomes = expected.getOutcomeLabels().clone();
+    final String[] actualOutcomes = actual.getOutcomeLabels().clone();
+    Arrays.sort(expectedOutcomes);
+    Arrays.sort(actualOutcomes);
+    assertArrayEquals(expectedOutcomes, actualOutcomes);
+    assertEquals(expected.getNumEvents(), actual.getNumEvents());
+    for (int ei = 0; ei < expected.getNumEvents(); ei++) {
+      assertArrayEquals(getEvent(expected, ei), getEvent(actual, ei));
+      assertEquals(1, actual.getNumTimesEventsSeen()[ei]);
+    }
+  }
+
+  @Test
+  public void testSameEventsAsOnePassDataIndexer() throws IOException {
+    final List<Event> events = ParallelPerceptronTrainerTest.createEvents(500,
+        3);
+    for (final int cutoff : new int[] { 0, 30 }) {
+      final DataIndexer expected = new OnePassDataIndexer(
+          ObjectStreamUtils.createObjectStream(events), cutoff, false);
+      // count the features in memory and in sorted runs
+      for (final int maxCounts : new int[] { 1000000, 5 }) {
+        final DiskDataIndexer actual = new DiskDataIndexer(
+            ObjectStreamUtils.createObjectStream(events), cutoff,
+            folder.newFolder(), maxCounts);
+        assertSameEvents(expected, actual);
+        actual.close();
+      }
+    }
+  }
+
+  @Test
+  public void testSameModelAsInMemory() throws IOException {
+    final List<Event> events = ParallelPerceptronTrainerTest.createEvents(600,
+        4);
+    for (final int threads : new int[] { 1, 3 }) {
+      final Map<String, String> params = ParallelPerceptronTrainerTest
+          .createParams(threads);
+      // the events indexed on disk are not shuffled
+      params.remove(ParallelPerceptronTrainer.SEED_PARAM);
+      final Map<String, String> diskParams = new HashMap<String, String>(
+          params);
+      diskParams.put(ParallelPerceptronTrainer.INDEX_DIR_PARAM, folder
+          .newFolder().getPath());
+      ParallelPerceptronTrainerTest.assertSameWeights(
+          ParallelPerceptronTrainerTest.train(events, params),
+          ParallelPerceptronTrainerTest.train(events, diskParams));
+    }
+  }
+
+}
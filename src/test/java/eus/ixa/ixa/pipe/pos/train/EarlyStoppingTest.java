@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import opennlp.tools.util.TrainingParameters;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class EarlyStoppingTest {
+
+  private static final String CORPUS = "The\tDT\tthe\ndogs\tNNS\tdog\n"
+      + "bark\tVBP\tbark\n\nA\tDT\ta\ncat\tNN\tcat\nsleeps\tVBZ\tsleep\n\n"
+      + "Cats\tNNS\tcat\nsleep\tVBP\tsleep\nquietly\tRB\tquietly\n\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TrainingParameters createParams() throws IOException {
+    final File corpus = folder.newFile("train.tsv");
+    Files.write(CORPUS, corpus, Charsets.UTF_8);
+    final TrainingParameters params = new TrainingParameters();
+    params.put("Language", "en");
+    params.put("TrainSet", corpus.getPath());
+    params.put("TestSet", corpus.getPath());
+    params.put(TrainingParameters.ALGORITHM_PARAM,
+        ParallelPerceptronTrainer.class.getName());
+    params.put(TrainingParameters.ITERATIONS_PARAM, "20");
+    params.put(TrainingParameters.CUTOFF_PARAM, "0");
+    params.put("EvalInterval", "1");
+    params.put("Patience", "1");
+    return params;
+  }
+
+  /**
+   * Train a postagger and get what it reported on the standard error.
+   */
+  private static String train(final TrainingParameters params)
+      throws IOException {
+    final PrintStream err = System.err;
+    final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(log, true, "UTF-8"));
+    try {
+      new FixedTrainer(params).train(params);
+    } finally {
+      System.setErr(err);
+    }
+    return log.toString("UTF-8");
+  }
+
+  @Test
+  public void testDisabledWithoutDevSet() throws IOException {
+    final String log = train(createParams());
+    assertTrue(log.contains("early stopping requires a DevSet"));
+    assertFalse(log.contains("Held-out accuracy"));
+  }
+
+  @Test
+  public void testEvaluatesOnDevSet() throws IOException {
+    final TrainingParameters params = createParams();
+    // a development set with tags never seen in training, unlike the test set
+    final File devSet = folder.newFile("dev.tsv");
+    Files.write(CORPUS.replaceAll("\t[A-Z]+\t", "\tXX\t"), devSet,
+        Charsets.UTF_8);
+    params.put("DevSet", devSet.getPath());
+    final String log = train(params);
+    assertTrue(log.contains("Held-out accuracy at iteration 1: 0.0"));
+    assertFalse(log.matches("(?s).*Held-out accuracy at iteration \\d+: 0\\.[1-9].*"));
+    assertTrue(log.contains("Stopping: no held-out improvement"));
+  }
+
+}
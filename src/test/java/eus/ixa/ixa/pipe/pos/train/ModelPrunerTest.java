@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerFactory;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.model.BaseModel;
+import eus.ixa.ixa.pipe.pos.TaggedCorpus;
+
+public class ModelPrunerTest {
+
+  private static final String[][] SENTENCES = {
+      { "the", "DT", "dog", "NN", "barks", "VBZ" },
+      { "a", "DT", "cat", "NN", "sleeps", "VBZ" },
+      { "the", "DT", "cats", "NNS", "sleep", "VBP" },
+      { "dogs", "NNS", "bark", "VBP", "loudly", "RB" },
+      { "a", "DT", "dog", "NN", "sleeps", "VBZ", "quietly", "RB" } };
+
+  private static TaggedCorpus corpus;
+  private static POSModel model;
+
+  @BeforeClass
+  public static void train() throws IOException {
+    corpus = new TaggedCorpus();
+    for (int n = 0; n < 4; n++) {
+      for (final String[] sentence : SENTENCES) {
+        final String[] words = new String[sentence.length / 2];
+        final String[] tags = new String[words.length];
+        for (int i = 0; i < words.length; i++) {
+          words[i] = sentence[2 * i];
+          tags[i] = sentence[2 * i + 1];
+        }
+        corpus.add(words, tags);
+      }
+    }
+    final TrainingParameters params = new TrainingParameters();
+    params.put(TrainingParameters.ALGORITHM_PARAM, "PERCEPTRON");
+    params.put(TrainingParameters.ITERATIONS_PARAM, "20");
+    params.put(TrainingParameters.CUTOFF_PARAM, "0");
+    model = POSTaggerME.train("en", corpus.getPOSSamples(), params,
+        new POSTaggerFactory());
+  }
+
+  private static int countWeights(final BaseModel aModel) {
+    int weights = 0;
+    for (final Context context : (Context[]) ((AbstractModel) aModel
+        .getArtifact(POSModel.POS_MODEL_ENTRY_NAME)).getDataStructures()[0]) {
+      for (final double weight : context.getParameters()) {
+        if (weight != 0) {
+          weights++;
+        }
+      }
+    }
+    return weights;
+  }
+
+  private static double getAccuracy(final ModelPruner pruner,
+      final double threshold) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    pruner.printEvaluation(threshold, new PrintStream(out, true, "UTF-8"));
+    final String[] columns = out.toString("UTF-8").trim().split("\t");
+    return Double.parseDouble(columns[5]);
+  }
+
+  @Test
+  public void testNoPruningKeepsTheAccuracy() throws IOException {
+    final ModelPruner pruner = new ModelPruner(model, corpus);
+    assertEquals(countWeights(model), pruner.getNumWeights());
+    final BaseModel pruned = pruner.prune(0);
+    assertEquals(pruner.getNumWeights(), countWeights(pruned));
+    assertEquals(1.0, getAccuracy(pruner, 0), 0.0);
+  }
+
+  @Test
+  public void testThresholdForWeights() throws IOException {
+    final ModelPruner pruner = new ModelPruner(model, corpus);
+    final int half = pruner.getNumWeights() / 2;
+    final double threshold = pruner.getThresholdForWeights(half);
+    final int kept = countWeights(pruner.prune(threshold));
+    // only the weights tied with the smallest kept one may exceed the target
+    assertTrue(kept >= half);
+    assertTrue(countWeights(pruner.prune(Math.nextUp(threshold))) < half);
+    assertTrue(threshold >= pruner.getThresholdForWeights(
+        pruner.getNumWeights()));
+  }
+
+  @Test
+  public void testPrunedModelsLoad() throws IOException {
+    final ModelPruner pruner = new ModelPruner(model, corpus);
+    for (final int weights : new int[] { pruner.getNumWeights() / 2,
+        pruner.getNumWeights() / 10, 1 }) {
+      final double threshold = pruner.getThresholdForWeights(weights);
+      final double accuracy = getAccuracy(pruner, threshold);
+      assertTrue(accuracy >= 0 && accuracy <= 1);
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      pruner.prune(threshold).serialize(out);
+      final POSModel loaded = new POSModel(new ByteArrayInputStream(
+          out.toByteArray()));
+      assertEquals(Double.toString(threshold),
+          loaded.getManifestProperty(ModelPruner.MANIFEST_ENTRY));
+    }
+  }
+
+}
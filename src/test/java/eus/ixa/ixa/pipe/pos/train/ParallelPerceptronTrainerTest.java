@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.ml.model.IndexHashTable;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.TrainingParameters;
+
+public class ParallelPerceptronTrainerTest {
+
+  private static final String[] OUTCOMES = { "DT", "NN", "VB", "JJ" };
+
+  /**
+   * Events whose outcome is given by their first feature, with noise features.
+   */
+  static List<Event> createEvents(final int numEvents, final long seed) {
+    final Random random = new Random(seed);
+    final List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < numEvents; i++) {
+      final int outcome = random.nextInt(OUTCOMES.length);
+      final String[] context = { "w=" + OUTCOMES[outcome].toLowerCase()
+          + random.nextInt(5), "n=" + random.nextInt(20),
+          "m=" + random.nextInt(7) };
+      events.add(new Event(OUTCOMES[outcome], context));
+    }
+    return events;
+  }
+
+  static Map<String, String> createParams(final int threads) {
+    final Map<String, String> params = new HashMap<String, String>();
+    params.put(TrainingParameters.ALGORITHM_PARAM,
+        ParallelPerceptronTrainer.class.getName());
+    params.put(TrainingParameters.ITERATIONS_PARAM, "15");
+    params.put(TrainingParameters.CUTOFF_PARAM, "0");
+    params.put(ParallelPerceptronTrainer.THREADS_PARAM,
+        Integer.toString(threads));
+    params.put(ParallelPerceptronTrainer.SEED_PARAM, "7");
+    return params;
+  }
+
+  static MaxentModel train(final List<Event> events,
+      final Map<String, String> params) throws IOException {
+    final ParallelPerceptronTrainer trainer = new ParallelPerceptronTrainer();
+    trainer.init(params, new HashMap<String, String>());
+    return trainer.train(ObjectStreamUtils.createObjectStream(events));
+  }
+
+  /**
+   * Check that two models have exactly the same predicates, outcomes and
+   * weights.
+   */
+  static void assertSameWeights(final MaxentModel expected,
+      final MaxentModel actual) {
+    final Object[] expectedData = ((AbstractModel) expected)
+        .getDataStructures();
+    final Object[] actualData = ((AbstractModel) actual).getDataStructures();
+    assertArrayEquals((String[]) expectedData[2], (String[]) actualData[2]);
+    final IndexHashTable<String> expectedPreds = getPreds(expectedData);
+    final IndexHashTable<String> actualPreds = getPreds(actualData);
+    assertEquals(expectedPreds.size(), actualPreds.size());
+    final Context[] expectedParams = (Context[]) expectedData[0];
+    final Context[] actualParams = (Context[]) actualData[0];
+    for (final String pred : expectedPreds.toArray(new String[expectedPreds
+        .size()])) {
+      final int expectedIndex = expectedPreds.get(pred);
+      final int actualIndex = actualPreds.get(pred);
+      assertTrue(actualIndex >= 0);
+      assertArrayEquals(expectedParams[expectedIndex].getOutcomes(),
+          actualParams[actualIndex].getOutcomes());
+      assertArrayEquals(expectedParams[expectedIndex].getParameters(),
+          actualParams[actualIndex].getParameters(), 0.0);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static IndexHashTable<String> getPreds(final Object[] dataStructures) {
+    return (IndexHashTable<String>) dataStructures[1];
+  }
+
+  private static double getAccuracy(final MaxentModel model,
+      final List<Event> events) {
+    int correct = 0;
+    for (final Event event : events) {
+      if (model.getBestOutcome(model.eval(event.getContext())).equals(
+          event.getOutcome())) {
+        correct++;
+      }
+    }
+    return (double) correct / events.size();
+  }
+
+  @Test
+  public void testSameModelEveryRun() throws IOException {
+    final List<Event> events = createEvents(600, 1);
+    final MaxentModel first = train(events, createParams(4));
+    for (int run = 0; run < 3; run++) {
+      assertSameWeights(first, train(events, createParams(4)));
+    }
+  }
+
+  @Test
+  public void testLearnsWithSeveralThreads() throws IOException {
+    final List<Event> events = createEvents(600, 2);
+    assertEquals(1.0, getAccuracy(train(events, createParams(1)), events),
+        0.0);
+    assertEquals(1.0, getAccuracy(train(events, createParams(4)), events),
+        0.0);
+  }
+
+}
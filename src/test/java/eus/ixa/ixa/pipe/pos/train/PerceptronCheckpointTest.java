@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import static eus.ixa.ixa.pipe.pos.train.ParallelPerceptronTrainerTest.assertSameWeights;
+import static eus.ixa.ixa.pipe.pos.train.ParallelPerceptronTrainerTest.createEvents;
+import static eus.ixa.ixa.pipe.pos.train.ParallelPerceptronTrainerTest.createParams;
+import static eus.ixa.ixa.pipe.pos.train.ParallelPerceptronTrainerTest.train;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.util.TrainingParameters;
+
+public class PerceptronCheckpointTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Map<String, String> createCheckpointParams(final int iterations,
+      final boolean resume) throws IOException {
+    final Map<String, String> params = createParams(3);
+    params.put(TrainingParameters.ITERATIONS_PARAM,
+        Integer.toString(iterations));
+    params.put(ParallelPerceptronTrainer.CHECKPOINT_DIR_PARAM,
+        new File(folder.getRoot(), "checkpoints").getPath());
+    params.put(ParallelPerceptronTrainer.CHECKPOINT_INTERVAL_PARAM, "4");
+    params.put(ParallelPerceptronTrainer.RESUME_PARAM,
+        Boolean.toString(resume));
+    // keep training after the training accuracy stops changing
+    params.put(ParallelPerceptronTrainer.TOLERANCE_PARAM, "-1");
+    return params;
+  }
+
+  /**
+   * Train with an early stopping which prefers the models with fewer non zero
+   * weights, that is, the models of the first iterations.
+   */
+  private static MaxentModel trainWithEarlyStopping(final List<Event> events,
+      final Map<String, String> params) throws IOException {
+    final EarlyStopping earlyStopping = new EarlyStopping(
+        new EarlyStopping.HeldOutEvaluator() {
+          public double evaluate(final MaxentModel model) {
+            int weights = 0;
+            for (final Context context : (Context[]) ((AbstractModel) model)
+                .getDataStructures()[0]) {
+              for (final double weight : context.getParameters()) {
+                if (weight != 0) {
+                  weights++;
+                }
+              }
+            }
+            return 1.0 / (1 + weights);
+          }
+        }, 1, 100);
+    EarlyStopping.setCurrent(earlyStopping);
+    try {
+      return train(events, params);
+    } finally {
+      EarlyStopping.setCurrent(null);
+      earlyStopping.close();
+    }
+  }
+
+  @Test
+  public void testResumeGivesTheSameModel() throws IOException {
+    final List<Event> events = createEvents(400, 3);
+    final Map<String, String> params = createParams(3);
+    params.put(TrainingParameters.ITERATIONS_PARAM, "15");
+    params.put(ParallelPerceptronTrainer.TOLERANCE_PARAM, "-1");
+    final MaxentModel uninterrupted = train(events, params);
+    // interrupted after the checkpoint of iteration 8
+    train(events, createCheckpointParams(10, false));
+    assertSameWeights(uninterrupted,
+        train(events, createCheckpointParams(15, true)));
+  }
+
+  @Test
+  public void testResumeKeepsTheBestModel() throws IOException {
+    final List<Event> events = createEvents(400, 4);
+    final Map<String, String> params = createParams(3);
+    params.put(TrainingParameters.ITERATIONS_PARAM, "15");
+    params.put(ParallelPerceptronTrainer.TOLERANCE_PARAM, "-1");
+    final MaxentModel uninterrupted = trainWithEarlyStopping(events, params);
+    trainWithEarlyStopping(events, createCheckpointParams(10, false));
+    final File checkpointFile = new File(new File(folder.getRoot(),
+        "checkpoints"), "perceptron.checkpoint");
+    final PerceptronCheckpoint.HeldOut heldOut = PerceptronCheckpoint.read(
+        checkpointFile).getHeldOut();
+    assertNotNull(heldOut);
+    assertEquals(8, heldOut.getLastIteration());
+    assertTrue(heldOut.getBestIteration() <= 8);
+    // the best model of the first run is kept after resuming
+    assertSameWeights(uninterrupted,
+        trainWithEarlyStopping(events, createCheckpointParams(15, true)));
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import opennlp.tools.ml.model.Context;
+
+public class PerceptronWeightsTest {
+
+  private static PerceptronWeights.SparseRow createRow(final int... deltas) {
+    final PerceptronWeights.SparseRow row = new PerceptronWeights.SparseRow();
+    for (int i = 0; i < deltas.length; i += 2) {
+      row.add(deltas[i], deltas[i + 1]);
+    }
+    return row;
+  }
+
+  private static PerceptronWeights createWeights() {
+    final PerceptronWeights weights = new PerceptronWeights(3, 5);
+    weights.add(0, createRow(3, 2), 1.0);
+    // the changes of an outcome are added up and the zero ones skipped
+    weights.add(0, createRow(1, -2, 2, 1, 1, 1, 2, -1), 1.0);
+    weights.sum();
+    weights.add(0, createRow(4, 1, 1, 4), 0.5);
+    weights.add(2, createRow(0, 1), 1.0);
+    weights.sum();
+    return weights;
+  }
+
+  private static void assertAveraged(final Context[] contexts) {
+    assertEquals(3, contexts.length);
+    // the outcomes are sorted although they were added out of order
+    assertArrayEquals(new int[] { 1, 3, 4 }, contexts[0].getOutcomes());
+    assertArrayEquals(new double[] { 0, 2, 0.25 },
+        contexts[0].getParameters(), 0.0);
+    assertEquals(0, contexts[1].getOutcomes().length);
+    assertArrayEquals(new int[] { 0 }, contexts[2].getOutcomes());
+    assertArrayEquals(new double[] { 0.5 }, contexts[2].getParameters(), 0.0);
+  }
+
+  @Test
+  public void testOnlyUpdatedOutcomesAreKept() {
+    final PerceptronWeights weights = createWeights();
+    final double[] scores = new double[5];
+    weights.score(0, 2.0, scores);
+    weights.score(1, 2.0, scores);
+    assertArrayEquals(new double[] { 0, 2, 0, 4, 1 }, scores, 0.0);
+    assertAveraged(weights.getAveraged(2));
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    createWeights().write(out);
+    out.close();
+    final PerceptronWeights weights = PerceptronWeights
+        .read(new DataInputStream(new ByteArrayInputStream(bytes
+            .toByteArray())));
+    assertEquals(3, weights.getNumPreds());
+    assertEquals(5, weights.getNumOutcomes());
+    assertAveraged(weights.getAveraged(2));
+  }
+
+}